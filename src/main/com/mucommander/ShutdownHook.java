@@ -21,6 +21,7 @@ package com.mucommander;
 import com.mucommander.auth.CredentialsManager;
 import com.mucommander.bookmark.BookmarkManager;
 import com.mucommander.conf.MuConfigurations;
+import com.mucommander.search.FileIndexer;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.ui.action.ActionKeymapIO;
 import com.mucommander.ui.main.commandbar.CommandBarIO;
@@ -86,6 +87,9 @@ public class ShutdownHook extends Thread {
         
         TreeIOThreadManager.getInstance().interrupt();
 
+        // Close the file index, committing its changes
+        FileIndexer.stop();
+
         // Save snapshot
         try{
             MuConfigurations.saveSnapshot();
@@ -23,6 +23,7 @@ import com.mucommander.bookmark.file.BookmarkProtocolProvider;
 import com.mucommander.command.Command;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
+import com.mucommander.commons.file.ArchiveCatalogCache;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.impl.ftp.FTPProtocolProvider;
@@ -33,6 +34,7 @@ import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.extension.ExtensionManager;
 import com.mucommander.profiler.Profiler;
+import com.mucommander.search.FileIndexer;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.ui.action.ActionKeymapIO;
 import com.mucommander.ui.action.ActionManager;
@@ -58,6 +60,7 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -397,6 +400,26 @@ public class TrolCommander {
         }
     }
 
+    private static class StartFileIndexerTask extends LauncherTask {
+        /** Name of the preferences sub-folder that holds the file index */
+        private static final String FILE_INDEX_FOLDER = "file_index";
+
+        StartFileIndexerTask(LauncherCmdHelper helper, LauncherTask... depends) {
+            super("file_indexer", helper, depends);
+        }
+
+        @Override
+        void run() throws Exception {
+            List<String> folders = MuConfigurations.getPreferences().getListVariable(MuPreference.FIND_FILE_INDEXED_FOLDERS,
+                    MuPreferences.FIND_FILE_INDEXED_FOLDERS_SEPARATOR);
+            // Indexing is opt-in
+            if (folders != null && !folders.isEmpty()) {
+                printStartupMessage("Starting file indexer...");
+                FileIndexer.start(new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), FILE_INDEX_FOLDER), folders);
+            }
+        }
+    }
+
     private static class InitDesktopTask extends LauncherTask {
         InitDesktopTask(LauncherCmdHelper helper, LauncherTask... depends) {
             super("desktop", helper, depends);
@@ -503,6 +526,9 @@ public class TrolCommander {
     }
 
     private static class ConfigureFsTask extends LauncherTask {
+        /** Name of the preferences sub-folder that holds the archive catalog cache */
+        private static final String ARCHIVE_CATALOGS_FOLDER = "archive_catalogs";
+
         ConfigureFsTask(LauncherCmdHelper helper, LauncherTask... depends) {
             super("configure_fs", helper, depends);
         }
@@ -526,6 +552,14 @@ public class TrolCommander {
 
             // Register the application-specific 'bookmark' protocol.
             FileFactory.registerProtocol(BookmarkProtocolProvider.BOOKMARK, new com.mucommander.bookmark.file.BookmarkProtocolProvider());
+
+            // Keep the catalogs of slow-to-list archives (e.g. tar.gz) in the preferences folder
+            ArchiveCatalogCache.setMaxSize(getArchiveCatalogCacheSize() * 1024L * 1024L);
+            ArchiveCatalogCache.setCacheFolder(new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), ARCHIVE_CATALOGS_FOLDER));
+        }
+
+        private static int getArchiveCatalogCacheSize() {
+            return MuConfigurations.getPreferences().getVariable(MuPreference.ARCHIVE_CATALOG_CACHE_SIZE, MuPreferences.DEFAULT_ARCHIVE_CATALOG_CACHE_SIZE);
         }
 
         private static boolean isListHiddenFiles() {
@@ -829,6 +863,7 @@ public class TrolCommander {
             LauncherTask taskLoadIcons = new LoadIconsTask(helper);
             LauncherTask taskInitBars = new InitBarsTask(helper, taskRegisterActions);
             LauncherTask taskStartBonjour = new StartBonjourTask(helper);
+            LauncherTask taskStartFileIndexer = new StartFileIndexerTask(helper, taskLoadConfigs);
             LauncherTask enableNotificationsTask = new EnableNotificationsTask(helper, taskRegisterActions);
             LauncherTask taskCreateWindow = new CreateWindowTask(helper, taskLoadTheme, taskShowSplash, taskInitBars, taskRegisterActions, taskLoadCustomCommands);
             LauncherTask taskShowSetupWindow = new ShowSetupWindowTask(helper, taskLoadConfigs);
@@ -860,6 +895,7 @@ public class TrolCommander {
             tasks.add(taskInitCustomDataFormat);
             //    tasks.add(taskRegisterActions);
             tasks.add(taskStartBonjour);
+            tasks.add(taskStartFileIndexer);
             tasks.add(taskInitBars);
             tasks.add(taskCreateWindow);
             tasks.add(enableNotificationsTask);
@@ -25,10 +25,12 @@ import com.mucommander.commons.file.impl.ProxyFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 import java.util.WeakHashMap;
@@ -56,7 +58,8 @@ import java.util.WeakHashMap;
  * ones at the top level but also the ones nested one of several levels below. Using this list of entries, it creates
  * a tree to map the structure of the archive and list the content of any particular directory within the archive.
  * This tree is recreated (<code>getEntryIterator()</code> is called again) only if the archive file has changed, i.e.
- * if its date has changed since the tree was created.
+ * if its date has changed since the tree was created. Archive formats that opt in with {@link #isCatalogCacheable()}
+ * may also have their entries loaded from the {@link ArchiveCatalogCache}, which persists across sessions.
  *
  * <p>Files returned by the <code>ls()</code> are {@link AbstractArchiveEntryFile} instances which use an {@link ArchiveEntry}
  * object to retrieve the entry's attributes. In turn, these <code>AbstractArchiveEntryFile</code> instances query the
@@ -115,25 +118,44 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         archiveEntryFiles = new WeakHashMap<>();
 
         long start = System.currentTimeMillis();
-        ArchiveEntryIterator entries = getEntryIterator();
-        try {
-            ArchiveEntry entry;
-            while ((entry = entries.nextEntry()) != null) {
+        boolean useCatalogCache = isCatalogCacheable() && ArchiveCatalogCache.isEnabled();
+        List<ArchiveEntry> cachedEntries = useCatalogCache ? ArchiveCatalogCache.load(this) : null;
+        if (cachedEntries != null) {
+            for (ArchiveEntry entry : cachedEntries) {
                 treeRoot.addArchiveEntry(entry);
             }
-
-            getLogger().info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
-
-            this.entryTreeRoot = treeRoot;
-            declareEntriesTreeUpToDate();
-        }
-        finally {
+        } else {
+            List<ArchiveEntry> catalog = useCatalogCache ? new ArrayList<>() : null;
+            ArchiveEntryIterator entries = getEntryIterator();
             try {
-                entries.close();
-            } catch(IOException e) {
-                // Not much we can do about it
+                ArchiveEntry entry;
+                while ((entry = entries.nextEntry()) != null) {
+                    treeRoot.addArchiveEntry(entry);
+                    if (catalog != null) {
+                        catalog.add(entry);
+                    }
+                }
+            }
+            finally {
+                try {
+                    entries.close();
+                } catch(IOException e) {
+                    // Not much we can do about it
+                }
+            }
+
+            if (catalog != null) {
+                ArchiveCatalogCache.store(this, catalog);
             }
         }
+
+        treeRoot.trimToSize();
+        getLogger().info("entries tree created"+(cachedEntries != null ? " from catalog cache" : "")+" in "+
+                (System.currentTimeMillis()-start)+" ms, "+treeRoot.getNodeCount()+" nodes, ~"+
+                (treeRoot.getEstimatedMemoryUsage()/1024)+" KB");
+
+        this.entryTreeRoot = treeRoot;
+        declareEntriesTreeUpToDate();
     }
 
     /**
@@ -185,12 +207,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException {
         checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
-
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
-        }
+        entryTreeRoot.removeEntryNode(entry.getPath());
     }
 
     /**
@@ -217,7 +234,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             throw new IOException();
         }
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+        ArchiveEntryTree.Node matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
         if (matchNode == null) {
             throw new IOException();
         }
@@ -231,7 +248,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
+    private AbstractFile[] ls(ArchiveEntryTree.Node treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
         AbstractFile files[];
         int nbChildren = treeNode.getChildCount();
 
@@ -239,15 +256,16 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if(filenameFilter==null) {
             files = new AbstractFile[nbChildren];
 
-            for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+            int c = 0;
+            for(ArchiveEntryTree.Node childNode : treeNode.getChildren()) {
+                files[c++] = getArchiveEntryFile(childNode.getEntry(), parentFile);
             }
         }
         // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
         else {
             List<AbstractFile> filesV = new Vector<>();
-            for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+            for(ArchiveEntryTree.Node childNode : treeNode.getChildren()) {
+                ArchiveEntry entry = childNode.getEntry();
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
@@ -345,7 +363,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         entryPath = entryPath.replace(File.separatorChar, ArchiveEntry.SEPARATOR_CHAR);
 
         // Find the entry node corresponding to the given path
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entryPath);
+        ArchiveEntryTree.Node entryNode = entryTreeRoot.findEntryNode(entryPath);
 
         if(entryNode==null) {
             int depth = ArchiveEntry.getDepth(entryPath);
@@ -378,11 +396,11 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @param entryNode tree node corresponding to the entry for which to return a file
      * @return an {@link AbstractFile} instance corresponding to the given entry node
      */
-    private AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+    private AbstractFile getArchiveEntryFile(ArchiveEntryTree.Node entryNode) throws IOException {
+        ArchiveEntryTree.Node parentNode = entryNode.getParent();
         return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
-                parentNode==entryTreeRoot
+                entryNode.getEntry(),
+                parentNode==entryTreeRoot.getRoot()
                     ?this
                     :getArchiveEntryFile(parentNode)
         );
@@ -445,6 +463,67 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     public abstract boolean isWritable();
 
 
+    /**
+     * Returns <code>true</code> if the entries of this archive can be stored in the {@link ArchiveCatalogCache}, so
+     * that the archive does not need to be read again the next time it is listed, as long as it hasn't changed.
+     * Archive formats that are cheap to list (e.g. that have a central directory) have little to gain from the cache.
+     *
+     * <p>Implementations returning <code>true</code> must override {@link #writeCatalogEntryObject(ArchiveEntry, DataOutput)}
+     * and {@link #readCatalogEntryObject(ArchiveEntry, DataInput)} if {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}
+     * relies on {@link ArchiveEntry#getEntryObject()}. This implementation returns <code>false</code>.</p>
+     *
+     * @return <code>true</code> if the entries of this archive can be stored in the catalog cache
+     */
+    protected boolean isCatalogCacheable() {
+        return false;
+    }
+
+    /**
+     * Writes the format-specific part of the given entry, typically what is held by its
+     * {@link ArchiveEntry#getEntryObject() entry object}, to the catalog cache. The common attributes (path, date,
+     * size, permissions...) have already been written. This implementation writes nothing.
+     *
+     * @param entry the entry being written to the catalog cache
+     * @param out the catalog output
+     * @throws IOException if an I/O error occurred
+     */
+    protected void writeCatalogEntryObject(ArchiveEntry entry, DataOutput out) throws IOException {
+    }
+
+    /**
+     * Reads the format-specific part of the given entry from the catalog cache, as written by
+     * {@link #writeCatalogEntryObject(ArchiveEntry, DataOutput)}, and restores the entry's
+     * {@link ArchiveEntry#setEntryObject(Object) entry object}. This implementation reads nothing.
+     *
+     * @param entry the entry being read from the catalog cache, its common attributes already set
+     * @param in the catalog input
+     * @throws IOException if an I/O error occurred
+     */
+    protected void readCatalogEntryObject(ArchiveEntry entry, DataInput in) throws IOException {
+    }
+
+    /**
+     * Writes archive-level data to the catalog cache, after all the entries have been written. This allows formats to
+     * persist what they have learnt about the archive while listing it, e.g. an index into a compressed stream.
+     * This implementation writes nothing.
+     *
+     * @param out the catalog output
+     * @throws IOException if an I/O error occurred
+     */
+    protected void writeCatalogData(DataOutput out) throws IOException {
+    }
+
+    /**
+     * Reads the archive-level data written by {@link #writeCatalogData(DataOutput)} from the catalog cache.
+     * This implementation reads nothing.
+     *
+     * @param in the catalog input
+     * @throws IOException if an I/O error occurred
+     */
+    protected void readCatalogData(DataInput in) throws IOException {
+    }
+
+
     /////////////////////////////////////////
     // Partial AbstractFile implementation //
     /////////////////////////////////////////
@@ -477,7 +556,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, null);
+        return ls(entryTreeRoot.getRoot(), this, null, null);
     }
 
     /**
@@ -500,7 +579,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, filter, null);
+        return ls(entryTreeRoot.getRoot(), this, filter, null);
     }
 
     /**
@@ -523,7 +602,29 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, filter);
+        return ls(entryTreeRoot.getRoot(), this, null, filter);
+    }
+
+    /**
+     * This method is overridden to pass the topmost entries contained by this archive to the listener, filtering out
+     * the ones that do not match the specified {@link FileFilter}. The entries tree is held in memory once the archive
+     * has been read, so they are passed in a single batch.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener to pass the topmost entries to
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if (!isArchive()) {
+            super.ls(filter, listener);
+            return;
+        }
+
+        listener.filesListed(ls(filter));
     }
 
     // Note: do not override #isDirectory() to always return true, as AbstractArchiveFile instances may be created when
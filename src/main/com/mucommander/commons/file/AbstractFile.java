@@ -563,6 +563,29 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
     }
 
 
+    /**
+     * Lists the children files that this file contains, filtering out files that do not match the specified
+     * FileFilter, and passes them to the given listener in batches as they are listed. This allows huge or slow
+     * folders to be presented before their listing is complete. This method returns once the listing is complete,
+     * or as soon as the listener has asked to stop it. For this operation to be successful, this file must be
+     * 'browsable', i.e. {@link #isBrowsable()} must return <code>true</code>.
+     *
+     * <p>This default implementation calls {@link #ls(FileFilter)} and passes all the children in a single batch.
+     * This method should be overridden by filesystems that can list a folder incrementally, typically using a
+     * {@link ListingBatcher}.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener to pass the children files to
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * Batches may have been passed to the listener before the error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        listener.filesListed(ls(filter));
+    }
+
+
     /**
      * Changes this file's permissions to the specified permissions int.
      * The permissions int should be constructed using the permission types and accesses defined in
@@ -621,11 +644,23 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
      * @return a string representation of this file's permissions
      */
     public String getPermissionsString() {
-        FilePermissions permissions = getPermissions();
+        return getPermissionsString(getPermissions(), isSymlink(), isDirectory());
+    }
+
+    /**
+     * Returns a string representation of the given permissions, in the format described in
+     * {@link #getPermissionsString()}.
+     *
+     * @param permissions the permissions of the file
+     * @param symlink <code>true</code> if the file is a symbolic link
+     * @param directory <code>true</code> if the file is a directory
+     * @return a string representation of the given permissions
+     */
+    protected static String getPermissionsString(FilePermissions permissions, boolean symlink, boolean directory) {
         int supportedPerms = permissions.getMask().getIntValue();
 
         StringBuilder sb = new StringBuilder();
-        sb.append(isSymlink() ? 'l' : isDirectory() ? 'd' : '-');
+        sb.append(symlink ? 'l' : directory ? 'd' : '-');
 
         int perms = permissions.getIntValue();
 
@@ -19,6 +19,14 @@
 
 package com.mucommander.commons.file;
 
+import com.mucommander.commons.io.BoundedPipe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * <code>AbstractROArchiveFile</code> represents a read-only archive file. This class is abstract and implemented
  * by read-only archive files.
@@ -31,10 +39,24 @@ package com.mucommander.commons.file;
  * </ul>
  * The {@link #isWritable()} method is implemented to always returns <code>false</code>.
  *
+ * <p>Implementations whose decoder can extract several entries in a single pass, which matters for solid archives,
+ * may also override {@link #extractEntries(List)}.
+ *
  * @author Maxence Bernard
  */
 public abstract class AbstractROArchiveFile extends AbstractArchiveFile {
 
+    /** Size of the buffer between the thread that decodes an entry and the stream that reads it */
+    public static final int ENTRY_PIPE_SIZE = 256 * 1024;
+
+    /** Threads that decode entries for the libraries that push the data they decode, shared by all archives.
+     * The number of threads is not bounded as a decoder blocks until the data it decoded has been read. */
+    private static final ExecutorService EXTRACTION_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Archive extraction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Creates an AbstractROArchiveFile on top of the given file.
      *
@@ -61,4 +83,46 @@ public abstract class AbstractROArchiveFile extends AbstractArchiveFile {
     }
 
 
+    /**
+     * Starts extracting the given entries with a single pass of the decoder, and returns the extraction to read their
+     * contents from, or <code>null</code> if this archive format doesn't support it, in which case entries have to be
+     * extracted one by one with {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}.
+     *
+     * <p>This implementation returns <code>null</code>. Implementations should override it if extracting entries one
+     * by one is significantly slower than extracting them together, as is the case for solid archives.</p>
+     *
+     * @param entries the regular file entries to extract, in any order
+     * @return the extraction, <code>null</code> if bulk extraction is not supported
+     * @throws IOException if an error occurred while starting the extraction
+     */
+    public BulkEntryExtraction extractEntries(List<ArchiveEntry> entries) throws IOException {
+        return null;
+    }
+
+    /**
+     * Starts a bulk extraction run by the shared extraction threads, see {@link #extractEntries(List)}.
+     *
+     * @param entries the entries to extract, in the order in which the decoder extracts them
+     * @param decoder decodes the entries
+     * @return the extraction
+     */
+    protected static BulkEntryExtraction startBulkExtraction(List<ArchiveEntry> entries, BulkEntryExtraction.Decoder decoder) {
+        return new BulkEntryExtraction(entries, decoder, EXTRACTION_EXECUTOR);
+    }
+
+    /**
+     * Returns a stream that reads the data written by the given producer, for archive libraries that write the
+     * contents of an entry to an <code>OutputStream</code> rather than providing an <code>InputStream</code>.
+     * The producer is run by a thread shared by all archives and writes to a {@link BoundedPipe} of
+     * {@link #ENTRY_PIPE_SIZE} bytes, so that it never gets ahead of the reader by more than that, whatever the
+     * size of the entry. Closing the stream before the end makes the producer's writes fail.
+     *
+     * @param producer writes the contents of an entry
+     * @return a stream that reads the data written by the producer
+     */
+    public static InputStream getPipedEntryInputStream(BoundedPipe.Producer producer) {
+        return BoundedPipe.start(EXTRACTION_EXECUTOR, ENTRY_PIPE_SIZE, producer);
+    }
+
+
 }
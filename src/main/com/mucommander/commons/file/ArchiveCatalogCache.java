@@ -0,0 +1,320 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent on-disk cache of archive catalogs, i.e. the list of entries returned by
+ * {@link AbstractArchiveFile#getEntryIterator()}. Listing an archive that has not changed since it was last listed
+ * then costs a single read of a small catalog file instead of a full pass over the (possibly compressed and remote)
+ * archive.
+ *
+ * <p>Catalogs are keyed by the archive's URL, size and date: a catalog is discarded as soon as one of them changes.
+ * Only archives for which {@link AbstractArchiveFile#isCatalogCacheable()} returns <code>true</code> are cached, the
+ * format-specific part of their entries, and any archive-level data, being serialized by the archive file itself.</p>
+ *
+ * <p>The cache is disabled until a folder has been set with {@link #setCacheFolder(File)}. The total size of the
+ * cache folder is capped by {@link #setMaxSize(long)}: when the cap is exceeded, the least recently used catalogs
+ * are deleted.</p>
+ */
+public final class ArchiveCatalogCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveCatalogCache.class);
+
+    /** Default maximum size of the cache folder, in bytes */
+    public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+    /** Extension of catalog files */
+    private static final String CATALOG_EXTENSION = ".catalog";
+
+    /** Magic number written at the beginning of every catalog file */
+    private static final int MAGIC = 0x6d754361;    // 'muCa'
+
+    /** Version of the catalog format, to be incremented whenever it changes */
+    private static final int FORMAT_VERSION = 2;
+
+    /** Folder where catalogs are stored, <code>null</code> if the cache is disabled */
+    private static File cacheFolder;
+
+    /** Maximum size of the cache folder, in bytes */
+    private static long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Prevents instantiation of this class.
+     */
+    private ArchiveCatalogCache() {
+    }
+
+    /**
+     * Sets the folder where catalogs are stored. The folder is created if it doesn't exist. Specifying
+     * <code>null</code> disables the cache.
+     *
+     * @param folder the folder where catalogs are stored, <code>null</code> to disable the cache
+     */
+    public static synchronized void setCacheFolder(File folder) {
+        cacheFolder = folder;
+    }
+
+    /**
+     * Returns the folder where catalogs are stored, <code>null</code> if the cache is disabled.
+     *
+     * @return the folder where catalogs are stored, <code>null</code> if the cache is disabled
+     */
+    public static synchronized File getCacheFolder() {
+        return cacheFolder;
+    }
+
+    /**
+     * Sets the maximum size of the cache folder, in bytes. A value of <code>0</code> disables the cache.
+     *
+     * @param size the maximum size of the cache folder, in bytes
+     */
+    public static synchronized void setMaxSize(long size) {
+        maxSize = size;
+        if (cacheFolder != null) {
+            evict();
+        }
+    }
+
+    /**
+     * Returns the maximum size of the cache folder, in bytes.
+     *
+     * @return the maximum size of the cache folder, in bytes
+     */
+    public static synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache has a folder and a non-zero size.
+     *
+     * @return <code>true</code> if the cache is enabled
+     */
+    public static synchronized boolean isEnabled() {
+        return cacheFolder != null && maxSize > 0;
+    }
+
+    /**
+     * Deletes all the catalogs stored in the cache folder.
+     */
+    public static synchronized void clear() {
+        for (File file : listCatalogs()) {
+            if (!file.delete()) {
+                LOGGER.debug("Could not delete catalog {}", file);
+            }
+        }
+    }
+
+    /**
+     * Returns the catalog of the given archive, <code>null</code> if the cache is disabled, if the archive has no
+     * catalog or if the archive has changed since its catalog was stored.
+     *
+     * @param archive the archive for which to load the catalog
+     * @return the entries of the archive, <code>null</code> if no up-to-date catalog could be found
+     */
+    static synchronized List<ArchiveEntry> load(AbstractArchiveFile archive) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String url = getKey(archive);
+        File file = getCatalogFile(url);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !url.equals(in.readUTF())
+                    || in.readLong() != archive.getSize()
+                    || in.readLong() != archive.getLastModifiedDate()) {
+                LOGGER.trace("Stale catalog for {}", url);
+                deleteCatalog(file);
+                return null;
+            }
+
+            int nbEntries = in.readInt();
+            List<ArchiveEntry> entries = new ArrayList<>(nbEntries);
+            for (int i = 0; i < nbEntries; i++) {
+                entries.add(readEntry(archive, in));
+            }
+            archive.readCatalogData(in);
+
+            // Mark the catalog as the most recently used one
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LOGGER.trace("Could not touch catalog {}", file);
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not read catalog of " + url, e);
+            deleteCatalog(file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the catalog of the given archive, and evicts the least recently used catalogs if the cache exceeds its
+     * maximum size. Does nothing if the cache is disabled.
+     *
+     * @param archive the archive for which to store the catalog
+     * @param entries the entries of the archive
+     */
+    static synchronized void store(AbstractArchiveFile archive, List<ArchiveEntry> entries) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!cacheFolder.isDirectory() && !cacheFolder.mkdirs()) {
+            LOGGER.info("Could not create catalog folder {}", cacheFolder);
+            return;
+        }
+
+        String url = getKey(archive);
+        File file = getCatalogFile(url);
+        File tmpFile = new File(cacheFolder, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(url);
+                out.writeLong(archive.getSize());
+                out.writeLong(archive.getLastModifiedDate());
+                out.writeInt(entries.size());
+                for (ArchiveEntry entry : entries) {
+                    writeEntry(archive, entry, out);
+                }
+                archive.writeCatalogData(out);
+            }
+            // Replace any previous catalog only once the new one is complete
+            if (file.exists()) {
+                deleteCatalog(file);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not write catalog of " + url, e);
+            deleteCatalog(tmpFile);
+            return;
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used catalogs until the total size of the cache folder is below the maximum size.
+     */
+    private static void evict() {
+        File[] catalogs = listCatalogs();
+        long totalSize = 0;
+        for (File catalog : catalogs) {
+            totalSize += catalog.length();
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        Arrays.sort(catalogs, Comparator.comparingLong(File::lastModified));
+        for (File catalog : catalogs) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            totalSize -= catalog.length();
+            LOGGER.debug("Evicting catalog {}", catalog);
+            deleteCatalog(catalog);
+        }
+    }
+
+    private static File[] listCatalogs() {
+        if (cacheFolder == null) {
+            return new File[0];
+        }
+        File[] catalogs = cacheFolder.listFiles((dir, name) -> name.endsWith(CATALOG_EXTENSION));
+        return catalogs == null ? new File[0] : catalogs;
+    }
+
+    private static void deleteCatalog(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.debug("Could not delete catalog {}", file);
+        }
+    }
+
+    private static void writeEntry(AbstractArchiveFile archive, ArchiveEntry entry, DataOutputStream out) throws IOException {
+        out.writeUTF(entry.getPath());
+        out.writeBoolean(entry.isDirectory());
+        out.writeLong(entry.getLastModifiedDate());
+        out.writeLong(entry.getSize());
+        out.writeInt(entry.getPermissions().getIntValue());
+        writeNullableString(entry.getOwner(), out);
+        writeNullableString(entry.getGroup(), out);
+        archive.writeCatalogEntryObject(entry, out);
+    }
+
+    private static ArchiveEntry readEntry(AbstractArchiveFile archive, DataInputStream in) throws IOException {
+        ArchiveEntry entry = new ArchiveEntry(in.readUTF(), in.readBoolean(), in.readLong(), in.readLong(), true);
+        entry.setPermissions(new SimpleFilePermissions(in.readInt()));
+        entry.setOwner(readNullableString(in));
+        entry.setGroup(readNullableString(in));
+        archive.readCatalogEntryObject(entry, in);
+        return entry;
+    }
+
+    private static void writeNullableString(String s, DataOutputStream out) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Returns the key under which the catalog of the given archive is stored: its URL, without credentials.
+     */
+    private static String getKey(AbstractArchiveFile archive) {
+        return archive.getURL().toString(false);
+    }
+
+    private static File getCatalogFile(String key) {
+        String name;
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            name = sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is always available, this should not happen
+            name = Integer.toHexString(key.hashCode());
+        }
+        return new File(cacheFolder, name + CATALOG_EXTENSION);
+    }
+}
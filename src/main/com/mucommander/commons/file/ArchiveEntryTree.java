@@ -19,29 +19,68 @@
 
 package com.mucommander.commons.file;
 
-import com.mucommander.commons.file.util.PathUtils;
-import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
- * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
- * are children of it (direct or indirect).
+ * inside the archive. The tree is made of {@link Node} instances, the root node being returned by {@link #getRoot()}.
+ *
+ * <p>Each directory node indexes its children by name in a hash map, so that looking up, adding or removing an entry
+ * costs one hash lookup per path segment, regardless of the number of entries in the directory. Path segments are
+ * interned at the tree level: archives typically repeat the same names (<code>src</code>, <code>index.html</code>...)
+ * many times, and only one copy of each name is kept.</p>
  *
  * @author Maxence Bernard
  */
-class ArchiveEntryTree extends DefaultMutableTreeNode {
+class ArchiveEntryTree {
     private static Logger logger;
 
+    /** Rough size in bytes of a {@link Node} instance: object header and 4 references */
+    private final static int NODE_SIZE = 32;
+    /** Rough size in bytes of an empty children map, i.e. the map itself and its initial table */
+    private final static int CHILDREN_MAP_SIZE = 64;
+    /** Rough size in bytes of a map entry (linked hash map entry and table slot) */
+    private final static int CHILD_ENTRY_SIZE = 44;
+    /** Rough size in bytes of a String instance, not counting its characters */
+    private final static int STRING_SIZE = 40;
+
+    /** The root node, which has no entry */
+    private final Node root = new Node(null, null, null);
+
+    /** Path segments interned by this tree */
+    private Map<String, String> segments = new HashMap<>();
+
+    /** Number of nodes in this tree, not counting the root */
+    private int nodeCount;
+
+    /** Number of nodes that have a children map */
+    private int directoryCount;
+
+    /** Number of characters held by interned path segments */
+    private long segmentChars;
+
     /**
      * Creates a new empty tree.
      */
     ArchiveEntryTree() {
     }
 
+    /**
+     * Returns the root node of this tree. The root node has no entry and no parent.
+     *
+     * @return the root node of this tree
+     */
+    Node getRoot() {
+        return root;
+    }
+
     /**
      * Adds the given entry to the archive tree, creating parent nodes as necessary.
      *
@@ -51,34 +90,20 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
         String entryPath = entry.getPath();
         int entryDepth = entry.getDepth();
         int slashPos = 0;
-        DefaultMutableTreeNode node = this;
+        Node node = root;
         for (int d = 1; d <= entryDepth; d++) {
-            if (d == entryDepth && !entry.isDirectory()) {
-                // create a leaf node for the entry
-                entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
-                break;
-            }
+            int segmentStart = slashPos;
+            int segmentEnd = d==entryDepth?entryPath.length():(slashPos=entryPath.indexOf('/', slashPos)+1);
+            String name = getSegment(entryPath, segmentStart, segmentEnd);
 
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for (int c = 0; c < nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if (PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
-
-            if (matchFound) {
+            Node childNode = node.getChild(name);
+            if (childNode != null) {
                 if (d == entryDepth) {
                     getLogger().trace("Replacing entry for node "+childNode);
-                    childNode.setUserObject(entry); // Replace existing entry
+                    if (!entry.isDirectory()) {
+                        entry.setExists(true);      // the entry has to exist
+                    }
+                    childNode.entry = entry;        // Replace existing entry
                 } else {
                     node = childNode;
                 }
@@ -86,17 +111,34 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
                 if (d == entryDepth) {
                     // create a leaf node for the entry
                     entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
+                    addChild(node, new Node(intern(name), entry, node));
                 } else {
+                    String subPath = entryPath.substring(0, segmentEnd);
                     getLogger().trace("Creating node for " + subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true), true);
-                    node.add(childNode);
+                    childNode = new Node(intern(name), new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true), node);
+                    addChild(node, childNode);
                     node = childNode;
                 }
             }
         }
     }
 
+    /**
+     * Removes the node that corresponds to the specified entry path from the tree, along with all of its children.
+     *
+     * @param entryPath the path to the entry to remove from this tree
+     * @return the removed node, <code>null</code> if no entry matching the path could be found
+     */
+    Node removeEntryNode(String entryPath) {
+        Node node = findEntryNode(entryPath);
+        if (node == null || node == root) {
+            return null;
+        }
+
+        node.parent.children.remove(node.name);
+        nodeCount -= node.countNodes();
+        return node;
+    }
 
     /**
      * Finds and returns the node that corresponds to the specified entry path, <code>null</code> if no entry matching
@@ -109,15 +151,16 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @param entryPath the path to the entry to look up in this tree
      * @return the node that corresponds to the specified entry path
      */
-    DefaultMutableTreeNode findEntryNode(String entryPath) {
+    Node findEntryNode(String entryPath) {
         int entryDepth = ArchiveEntry.getDepth(entryPath);
         int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
+        Node currentNode = root;
         for (int d = 1; d <= entryDepth; d++) {
-            String subPath = d == entryDepth ?
-                    entryPath :
-                    entryPath.substring(0, (slashPos = entryPath.indexOf('/', slashPos)+1));
-            DefaultMutableTreeNode matchNode = getDefaultMutableTreeNode(currentNode, subPath);
+            int segmentStart = slashPos;
+            int segmentEnd = d == entryDepth ?
+                    entryPath.length() :
+                    (slashPos = entryPath.indexOf('/', slashPos)+1);
+            Node matchNode = currentNode.getChild(getSegment(entryPath, segmentStart, segmentEnd));
             if (matchNode == null) {
                 return null;    // No node matching the provided path, return null
             }
@@ -128,19 +171,71 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
         return currentNode;
     }
 
-    @Nullable
-    private DefaultMutableTreeNode getDefaultMutableTreeNode(DefaultMutableTreeNode currentNode, String subPath) {
-        int nbChildren = currentNode.getChildCount();
-        for (int c = 0; c < nbChildren; c++) {
-            DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
+    /**
+     * Returns the number of nodes in this tree, not counting the root node.
+     *
+     * @return the number of nodes in this tree
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
 
-            // Path comparison is 'trailing slash insensitive'
-            if (PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                // Found the node, let's return it
-                return childNode;
-            }
+    /**
+     * Returns a rough estimate of the number of bytes used by this tree's structure, i.e. nodes, children maps and
+     * path segments. The memory used by the {@link ArchiveEntry} instances themselves is not accounted for.
+     *
+     * @return a rough estimate of the memory used by this tree, in bytes
+     */
+    long getEstimatedMemoryUsage() {
+        return (long)(nodeCount+1) * NODE_SIZE
+                + (long)directoryCount * CHILDREN_MAP_SIZE
+                + (long)nodeCount * CHILD_ENTRY_SIZE
+                + (segments == null ? 0 : (long)segments.size() * STRING_SIZE + segmentChars * 2);
+    }
+
+    /**
+     * Releases the resources that are needed only while the tree is being populated. Entries can still be added to
+     * the tree after this method has been called, but their path segments will no longer be interned.
+     */
+    void trimToSize() {
+        if (segments != null) {
+            getLogger().debug("Releasing {} interned path segments", segments.size());
+            segments = null;
+            segmentChars = 0;
         }
-        return null;
+    }
+
+    /**
+     * Returns the path segment located between <code>segmentStart</code> and <code>segmentEnd</code>, without any
+     * trailing separator. Path comparison is 'trailing slash insensitive', so segments never end with a separator.
+     */
+    private static String getSegment(String path, int segmentStart, int segmentEnd) {
+        if (segmentEnd > segmentStart && path.charAt(segmentEnd-1) == ArchiveEntry.SEPARATOR_CHAR) {
+            segmentEnd--;
+        }
+        return path.substring(segmentStart, segmentEnd);
+    }
+
+    private String intern(String segment) {
+        if (segments == null) {
+            return segment;
+        }
+        String interned = segments.get(segment);
+        if (interned == null) {
+            segments.put(segment, segment);
+            segmentChars += segment.length();
+            return segment;
+        }
+        return interned;
+    }
+
+    private void addChild(Node parent, Node child) {
+        if (parent.children == null) {
+            parent.children = new LinkedHashMap<>();
+            directoryCount++;
+        }
+        parent.children.put(child.name, child);
+        nodeCount++;
     }
 
     private static Logger getLogger() {
@@ -149,4 +244,61 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
         }
         return logger;
     }
+
+
+    /**
+     * A node of the archive entry tree. Leaf nodes (regular files and empty directories) do not allocate a children
+     * map. Children are returned in the order in which they were added to the tree, i.e. the archive's natural order.
+     */
+    static class Node {
+        /** Name of the entry, interned by the tree; <code>null</code> for the root node */
+        private final String name;
+        /** The entry this node maps; <code>null</code> for the root node */
+        private ArchiveEntry entry;
+        /** Parent node; <code>null</code> for the root node */
+        private final Node parent;
+        /** Children nodes keyed by their name, <code>null</code> if this node never had children */
+        private Map<String, Node> children;
+
+        private Node(String name, ArchiveEntry entry, Node parent) {
+            this.name = name;
+            this.entry = entry;
+            this.parent = parent;
+        }
+
+        ArchiveEntry getEntry() {
+            return entry;
+        }
+
+        Node getParent() {
+            return parent;
+        }
+
+        int getChildCount() {
+            return children == null ? 0 : children.size();
+        }
+
+        Collection<Node> getChildren() {
+            return children == null ? Collections.<Node>emptyList() : children.values();
+        }
+
+        private Node getChild(String name) {
+            return children == null ? null : children.get(name);
+        }
+
+        private int countNodes() {
+            int count = 1;
+            if (children != null) {
+                for (Node child : children.values()) {
+                    count += child.countNodes();
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return entry == null ? "/" : entry.getPath();
+        }
+    }
 }
@@ -0,0 +1,280 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.io.BoundedPipe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>BulkEntryExtraction</code> extracts a set of archive entries with a single pass of the archive's decoder, which
+ * for solid archives is much faster than extracting entries one by one: each of these extractions decodes the solid
+ * block from its start. It is returned by {@link AbstractROArchiveFile#extractEntries(List)}.
+ *
+ * <p>The decoder runs in the background and extracts entries in archive order, each entry being written to a
+ * {@link BoundedPipe}. The contents of the entries are read with {@link #getEntryInputStream(ArchiveEntry)}, which
+ * must be called in the same order, the stream of an entry being read to its end or closed before the next entry is
+ * requested. An entry whose stream is not requested, or which is closed before its end, is decoded and discarded.
+ * Calling {@link #close()} stops the decoder.</p>
+ */
+public class BulkEntryExtraction implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkEntryExtraction.class);
+
+    /** Marks the end of the extraction in the queue */
+    private static final EntryStream END = new EntryStream(-1, null);
+
+    /** Position of the entries in archive order, keyed by path */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /** Entries that have been decoded, or are being decoded, and whose stream has not been requested yet */
+    private final BlockingQueue<EntryStream> queue = new ArrayBlockingQueue<>(2);
+
+    /** Position of the entry that follows the last one requested */
+    private int nextPosition;
+
+    /** Pipe of the entry being decoded, accessed by the decoder thread only */
+    private BoundedPipe currentPipe;
+
+    /** Failure of the decoder */
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+
+    /**
+     * Starts extracting the given entries in the background.
+     *
+     * @param entries the entries to extract, in archive order, i.e. the order in which the decoder extracts them
+     * @param decoder decodes the entries
+     * @param executor the executor that runs the decoder
+     */
+    BulkEntryExtraction(List<ArchiveEntry> entries, final Decoder decoder, Executor executor) {
+        for (int i = 0; i < entries.size(); i++) {
+            positions.put(entries.get(i).getPath(), i);
+        }
+
+        executor.execute(() -> {
+            try {
+                decoder.decode(this);
+                closeCurrentEntry();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.info("Extraction failed", e);
+                failure = e instanceof IOException ? (IOException)e : new IOException(e);
+                if (currentPipe != null) {
+                    currentPipe.setFailure(failure);
+                }
+            } finally {
+                try {
+                    offer(END);
+                } catch (InterruptedIOException e) {
+                    LOGGER.debug("Interrupted", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a stream that reads the contents of the given entry. Entries must be requested in archive order:
+     * <code>null</code> is returned if the entry is not part of this extraction or if it comes before the entry
+     * requested last, in which case the entry has to be extracted separately.
+     *
+     * @param entry the entry to read
+     * @return a stream that reads the contents of the entry, <code>null</code> if this extraction can't provide it
+     * @throws IOException if the decoder failed before reaching the entry
+     */
+    public InputStream getEntryInputStream(ArchiveEntry entry) throws IOException {
+        Integer position = positions.get(entry.getPath());
+        if (position == null || position < nextPosition || closed) {
+            return null;
+        }
+
+        while (true) {
+            EntryStream entryStream;
+            try {
+                entryStream = queue.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            if (entryStream == END) {
+                nextPosition = Integer.MAX_VALUE;
+                // Let the next call see the end as well
+                queue.offer(END);
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+
+            nextPosition = entryStream.position + 1;
+            if (entryStream.position == position) {
+                return entryStream.in;
+            }
+            // The entry has not been requested, have the decoder discard it
+            entryStream.in.close();
+            if (entryStream.position > position) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stops the decoder and discards the entries that have not been read yet.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        EntryStream entryStream;
+        while ((entryStream = queue.poll()) != null) {
+            if (entryStream != END) {
+                try {
+                    entryStream.in.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close entry stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the decoder when it starts decoding one of the entries to extract, returns the stream to write its
+     * contents to. The stream doesn't need to be closed: it is closed when the next entry is opened or when the
+     * decoder returns.
+     *
+     * @param entry the entry that is being decoded
+     * @return the stream to write the contents of the entry to
+     * @throws IOException if the extraction has been closed, in which case the decoder should stop
+     */
+    public OutputStream openEntry(ArchiveEntry entry) throws IOException {
+        closeCurrentEntry();
+        checkClosed();
+
+        Integer position = positions.get(entry.getPath());
+        if (position == null) {
+            throw new IOException("Unexpected entry " + entry.getPath());
+        }
+
+        final BoundedPipe pipe = new BoundedPipe(AbstractROArchiveFile.ENTRY_PIPE_SIZE);
+        currentPipe = pipe;
+        offer(new EntryStream(position, pipe.getInputStream()));
+
+        return new OutputStream() {
+            /** True once the reader has closed the entry's stream */
+            private boolean discard;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                checkClosed();
+                if (discard) {
+                    return;
+                }
+                try {
+                    pipe.getOutputStream().write(b, off, len);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // The reader doesn't want the rest of the entry, but the decoder has to go through it
+                    checkClosed();
+                    discard = true;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                pipe.getOutputStream().close();
+            }
+        };
+    }
+
+    private void closeCurrentEntry() throws IOException {
+        if (currentPipe != null) {
+            currentPipe.getOutputStream().close();
+            currentPipe = null;
+        }
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Extraction closed");
+        }
+    }
+
+    /**
+     * Adds the given stream to the queue, waiting for the reader to make room for it unless the extraction is closed.
+     */
+    private void offer(EntryStream entryStream) throws InterruptedIOException {
+        try {
+            while (!queue.offer(entryStream, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * Decodes the entries of a bulk extraction.
+     */
+    public interface Decoder {
+
+        /**
+         * Decodes the entries of the extraction, in archive order, calling
+         * {@link BulkEntryExtraction#openEntry(ArchiveEntry)} for each of them and writing their contents to the
+         * returned stream.
+         *
+         * @param extraction the extraction to write the entries to
+         * @throws IOException if an error occurred while decoding the entries
+         */
+        void decode(BulkEntryExtraction extraction) throws IOException;
+    }
+
+    /**
+     * The stream of an entry and its position in the extraction.
+     */
+    private static class EntryStream {
+        private final int position;
+        private final InputStream in;
+
+        private EntryStream(int position, InputStream in) {
+            this.position = position;
+            this.in = in;
+        }
+    }
+}
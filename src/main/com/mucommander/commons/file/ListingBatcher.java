@@ -0,0 +1,121 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.FileFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>ListingBatcher</code> groups the children of a folder into batches as they are listed, and passes them to a
+ * {@link ListingListener}. It is used by the implementations of
+ * {@link AbstractFile#ls(FileFilter, ListingListener)}.
+ *
+ * <p>A folder that is listed quickly is delivered in a single batch. Otherwise, the first batch is delivered after
+ * {@link #FIRST_BATCH_DELAY} milliseconds, and the delay between two batches doubles every time up to
+ * {@link #MAX_BATCH_DELAY} milliseconds, so that listeners that merge each batch into the files they already have do
+ * not end up spending more time merging than listing.</p>
+ */
+public class ListingBatcher {
+
+    /** Number of milliseconds after which the first batch is delivered */
+    public final static long FIRST_BATCH_DELAY = 100;
+
+    /** Maximum number of milliseconds between two batches */
+    public final static long MAX_BATCH_DELAY = 1600;
+
+    private final FileFilter filter;
+    private final ListingListener listener;
+
+    /** Files that have not been delivered yet */
+    private List<AbstractFile> batch = new ArrayList<>();
+
+    /** Number of milliseconds between the last batch and the next one */
+    private long batchDelay = FIRST_BATCH_DELAY;
+
+    /** Time at which the last batch was delivered, or at which the listing started */
+    private long lastBatchTime = System.currentTimeMillis();
+
+    /** <code>true</code> if at least one batch has been delivered */
+    private boolean delivered;
+
+    /** <code>true</code> if the listener has asked to stop listing */
+    private boolean stopped;
+
+
+    /**
+     * Creates a new <code>ListingBatcher</code>.
+     *
+     * @param filter the filter that the children must match to be delivered, may be <code>null</code>
+     * @param listener the listener to deliver the children to
+     */
+    public ListingBatcher(FileFilter filter, ListingListener listener) {
+        this.filter = filter;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a listed child, delivering the current batch if it is time to. Returns <code>false</code> if the listener
+     * has asked to stop listing, in which case the caller should stop listing the folder and the file is discarded.
+     *
+     * @param file the child that has been listed
+     * @return <code>false</code> if the listing should be stopped
+     */
+    public boolean add(AbstractFile file) {
+        if (stopped) {
+            return false;
+        }
+        if (filter == null || filter.match(file)) {
+            batch.add(file);
+        }
+        if (!batch.isEmpty() && System.currentTimeMillis() - lastBatchTime >= batchDelay) {
+            deliver();
+            batchDelay = Math.min(batchDelay * 2, MAX_BATCH_DELAY);
+        }
+        return !stopped;
+    }
+
+    /**
+     * Returns <code>true</code> if the listener has asked to stop listing.
+     *
+     * @return <code>true</code> if the listing should be stopped
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Delivers the files that have not been delivered yet. This method must be called once the folder has been
+     * listed successfully: an empty batch is delivered if the folder has no children.
+     */
+    public void finish() {
+        if (!stopped && (!delivered || !batch.isEmpty())) {
+            deliver();
+        }
+    }
+
+    private void deliver() {
+        AbstractFile files[] = batch.toArray(new AbstractFile[batch.size()]);
+        batch = new ArrayList<>();
+        delivered = true;
+        stopped = !listener.filesListed(files);
+        lastBatchTime = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+/**
+ * Interface to be implemented by classes that wish to receive the children of a folder while it is being listed by
+ * {@link AbstractFile#ls(com.mucommander.commons.file.filter.FileFilter, ListingListener)}, rather than once the whole
+ * listing is complete. This allows the contents of a huge or slow folder to be presented early.
+ *
+ * @see ListingBatcher
+ */
+public interface ListingListener {
+
+    /**
+     * Called with the next batch of children of the folder being listed. This method is called in the thread that
+     * lists the folder, at least once (with an empty array if the folder has no children) when the listing succeeds.
+     * The same file is never passed twice.
+     *
+     * @param files the children that have been listed since the last batch
+     * @return <code>true</code> to continue listing the folder, <code>false</code> to stop listing it
+     */
+    boolean filesListed(AbstractFile[] files);
+}
@@ -3,7 +3,6 @@ package com.mucommander.commons.file;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.CounterOutputStream;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -96,7 +95,7 @@ public class RWArchiveEntryFile extends AbstractArchiveEntryFile {
         if (isDirectory()) {
             ArchiveEntryTree tree = rwArchiveFile.getArchiveEntryTree();
             if (tree != null) {
-                DefaultMutableTreeNode node = tree.findEntryNode(entry.getPath());
+                ArchiveEntryTree.Node node = tree.findEntryNode(entry.getPath());
                 if (node != null && node.getChildCount() > 0) {
                     throw new IOException();
                 }
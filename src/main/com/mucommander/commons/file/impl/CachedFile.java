@@ -4,9 +4,11 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.ListingListener;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.file.impl.local.LocalFileAttributes;
 import com.mucommander.commons.runtime.OsFamily;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,8 @@ import java.lang.reflect.Method;
  * <p>The values are retrieved and cached only when the 'cached methods' are called for the first time; they are
  * not preemptively retrieved in the constructor, so using this class has no negative impact on performance,
  * except for the small extra CPU cost added by proxying the methods and the extra RAM used to store cached values.
+ * The only exception are the attributes that {@link LocalFile} reads while listing a folder, which are passed to
+ * the constructor (see {@link LocalFile#lsWithAttributes(FileFilter, ListingListener)}).
  *
  * <p>Once the values are retrieved and cached, they never change: the same value will always be returned once a method
  * has been called for the first time. That means if the underlying file changes (e.g. its size or date has changed),
@@ -81,13 +85,23 @@ public class CachedFile extends ProxyFile {
 
     // others
     /** If true, AbstractFile instances returned by this class will be wrapped into CachedFile instances */
-    private static final int RECURSE_INSTANCES_MASK = 1 << 29;
+    private static final int RECURSE_INSTANCES_MASK = 1 << 31;
 
     /**
      * All boolean values stored here as bits
      */
     private int bitmask;
 
+    /**
+     * True if the attributes of the local file were read when it was listed
+     */
+    private boolean listingAttributes;
+
+    /**
+     * True if the cached permissions were read when the local file was listed
+     */
+    private boolean listingPermissions;
+
     ///////////////////
     // Cached values //
     ///////////////////
@@ -202,6 +216,101 @@ public class CachedFile extends ProxyFile {
         }
     }
 
+    /**
+     * Creates a new CachedFile instance around the specified local file, caching the given attributes that were read
+     * when it was listed, see {@link LocalFile#lsWithAttributes(FileFilter, ListingListener)}. The other values are
+     * retrieved and cached as the methods are called.
+     *
+     * @param file the AbstractFile instance for which returned values of getter methods should be cached
+     * @param recursiveInstances if true, AbstractFile instances returned by this class will be wrapped into CachedFile instances
+     * @param attributes the attributes read when the file was listed, <code>null</code> if they could not be read
+     */
+    public CachedFile(AbstractFile file, boolean recursiveInstances, LocalFileAttributes attributes) {
+        this(file, recursiveInstances);
+        if (attributes != null) {
+            setListingAttributes(attributes);
+        }
+    }
+
+    /**
+     * Creates a new CachedFile instance around the file of the given CachedFile, starting with the values it has
+     * cached so far. As CachedFile is not thread-safe, this allows to cache more values in a background thread
+     * without sharing the instance that is used by other threads.
+     *
+     * @param cachedFile the CachedFile whose file and cached values are copied
+     */
+    public CachedFile(CachedFile cachedFile) {
+        super(cachedFile.file);
+        bitmask = cachedFile.bitmask;
+        listingAttributes = cachedFile.listingAttributes;
+        listingPermissions = cachedFile.listingPermissions;
+        getSize = cachedFile.getSize;
+        getLastModified = cachedFile.getLastModified;
+        getCreationDate = cachedFile.getCreationDate;
+        getLastAccessDate = cachedFile.getLastAccessDate;
+        getAbsolutePath = cachedFile.getAbsolutePath;
+        getCanonicalPath = cachedFile.getCanonicalPath;
+        getExtension = cachedFile.getExtension;
+        getName = cachedFile.getName;
+        getFreeSpace = cachedFile.getFreeSpace;
+        getTotalSpace = cachedFile.getTotalSpace;
+        getPermissions = cachedFile.getPermissions;
+        getPermissionsString = cachedFile.getPermissionsString;
+        getOwner = cachedFile.getOwner;
+        getGroup = cachedFile.getGroup;
+        getParent = cachedFile.getParent;
+        getRoot = cachedFile.getRoot;
+        getCanonicalFile = cachedFile.getCanonicalFile;
+        supportedOperationsValuesMask = cachedFile.supportedOperationsValuesMask;
+        supportedOperationsCachedMask = cachedFile.supportedOperationsCachedMask;
+    }
+
+    /**
+     * Returns <code>true</code> if the attributes of the file were read when it was listed, in which case its size,
+     * date, type and permissions are cached already (see {@link LocalFile#lsWithAttributes(FileFilter, ListingListener)}).
+     *
+     * @return <code>true</code> if the attributes of the file were read when it was listed
+     */
+    public boolean hasListingAttributes() {
+        return listingAttributes;
+    }
+
+    /**
+     * Caches the attributes that were read when the local file was listed.
+     */
+    private void setListingAttributes(LocalFileAttributes attributes) {
+        listingAttributes = true;
+        getSize = attributes.getSize();
+        getLastModified = attributes.getLastModifiedDate();
+        bitmask |= SIZE_SET_MASK | LAST_MODIFICATION_SET_MASK | DIRECTORY_SET_MASK | EXISTS_SET_MASK | SYMLINK_SET_MASK;
+        if (attributes.isDirectory()) {
+            bitmask |= DIRECTORY_VALUE_MASK;
+        }
+        if (attributes.exists()) {
+            bitmask |= EXISTS_VALUE_MASK;
+        }
+        if (attributes.isSymlink()) {
+            bitmask |= SYMLINK_VALUE_MASK;
+        }
+        if (attributes.getPermissions() != null) {
+            getPermissions = attributes.getPermissions();
+            bitmask |= PERMISSIONS_SET_MASK;
+            listingPermissions = true;
+        }
+        if (attributes.isHidden() != null) {
+            if (attributes.isHidden()) {
+                bitmask |= HIDDEN_VALUE_MASK;
+            }
+            bitmask |= HIDDEN_SET_MASK;
+        }
+        if (attributes.isExecutable() != null) {
+            if (attributes.isExecutable()) {
+                bitmask |= EXECUTABLE_VALUE_MASK;
+            }
+            bitmask |= EXECUTABLE_SET_MASK;
+        }
+    }
+
 
     /**
      * Creates a CachedFile instance for each of the AbstractFile instances in the given array.
@@ -486,7 +595,9 @@ public class CachedFile extends ProxyFile {
     @Override
     public String getPermissionsString() {
         if ((bitmask & PERMISSIONS_STRING_SET_MASK) == 0) {
-            getPermissionsString = file.getPermissionsString();
+            // Avoid querying the permissions of the file again if they were read when it was listed
+            getPermissionsString = listingPermissions ? getPermissionsString(getPermissions, isSymlink(), isDirectory())
+                    : file.getPermissionsString();
             bitmask |= PERMISSIONS_STRING_SET_MASK;
         }
         return getPermissionsString;
@@ -620,6 +731,15 @@ public class CachedFile extends ProxyFile {
         return files;
     }
 
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        if ((bitmask & RECURSE_INSTANCES_MASK) != 0) {
+            file.ls(filter, files -> listener.filesListed(createCachedFiles(files)));
+        } else {
+            file.ls(filter, listener);
+        }
+    }
+
 
     @Override
     public boolean isFileOperationSupported(FileOperation op) {
@@ -3,22 +3,30 @@ package com.mucommander.commons.file.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractROArchiveFile;
 import com.mucommander.commons.file.ArchiveEntry;
 import com.mucommander.commons.file.ArchiveEntryIterator;
+import com.mucommander.commons.file.BulkEntryExtraction;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.WrapperArchiveEntryIterator;
 import com.mucommander.commons.file.impl.sevenzip.SevenZipArchiveFile.ExtractCallback;
 import com.mucommander.commons.file.impl.sevenzip.SignatureCheckedRandomAccessFile;
-import com.mucommander.commons.util.CircularByteBuffer;
 
 import net.sf.sevenzipjbinding.ArchiveFormat;
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
 import net.sf.sevenzipjbinding.IInArchive;
+import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.PropID;
 import net.sf.sevenzipjbinding.SevenZip;
 import net.sf.sevenzipjbinding.SevenZipException;
@@ -80,35 +88,66 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) {
-        final int[] in = new int[1];
-        in[0] = (Integer)entry.getEntryObject();
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-        new Thread(() -> {
-            synchronized (SevenZipJBindingROArchiveFile.this) {
-                try {
-                    final IInArchive sevenZipFile = openInArchive();
-                    sevenZipFile.extract(in, false, new ExtractCallback(inArchive, cbb.getOutputStream()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    if (inArchive != null) {
-                        try {
-                            inArchive.close();
-                        } catch (SevenZipException e) {
-                            e.printStackTrace();
-                        }
-                    }
+        final int[] in = new int[] {(Integer)entry.getEntryObject()};
+        // The entry is decoded in the background into a bounded pipe. The archive is opened for this entry only,
+        // so that entries can be extracted concurrently.
+        return getPipedEntryInputStream(out -> {
+            SignatureCheckedRandomAccessFile inStream = new SignatureCheckedRandomAccessFile(file, formatSignature);
+            IInArchive sevenZipFile = null;
+            try {
+                sevenZipFile = SevenZip.openInArchive(sevenZipJBindingFormat, inStream);
+                sevenZipFile.extract(in, false, new ExtractCallback(sevenZipFile, out));
+            } catch (SevenZipException e) {
+                // Rethrow the write error if the reader closed the stream, or the decoding error
+                throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e);
+            } finally {
+                if (sevenZipFile != null) {
                     try {
-                        cbb.getOutputStream().close();
-                    } catch (IOException e) {
+                        sevenZipFile.close();
+                    } catch (SevenZipException e) {
                         e.printStackTrace();
                     }
-                    inArchive = null;
                 }
+                inStream.close();
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Extracts the given entries with a single call to <code>IInArchive#extract</code>, which decodes each solid block
+     * once instead of once per entry.
+     */
+    @Override
+    public BulkEntryExtraction extractEntries(List<ArchiveEntry> entries) {
+        // Entries are extracted in the order of their index
+        final List<ArchiveEntry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparingInt(entry -> (Integer)entry.getEntryObject()));
+        final int[] indices = new int[sortedEntries.size()];
+        final Map<Integer, ArchiveEntry> entriesByIndex = new HashMap<>();
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (Integer)sortedEntries.get(i).getEntryObject();
+            entriesByIndex.put(indices[i], sortedEntries.get(i));
+        }
 
-        return cbb.getInputStream();
+        return startBulkExtraction(sortedEntries, extraction -> {
+            SignatureCheckedRandomAccessFile inStream = new SignatureCheckedRandomAccessFile(file, formatSignature);
+            IInArchive sevenZipFile = null;
+            try {
+                sevenZipFile = SevenZip.openInArchive(sevenZipJBindingFormat, inStream);
+                sevenZipFile.extract(indices, false, new BulkExtractCallback(extraction, entriesByIndex));
+            } catch (SevenZipException e) {
+                throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e);
+            } finally {
+                if (sevenZipFile != null) {
+                    try {
+                        sevenZipFile.close();
+                    } catch (SevenZipException e) {
+                        e.printStackTrace();
+                    }
+                }
+                inStream.close();
+            }
+        });
     }
 
     /**
@@ -134,4 +173,67 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         return result;
     }
 
+
+    /**
+     * Writes the extracted entries to a {@link BulkEntryExtraction}.
+     */
+    private static class BulkExtractCallback implements IArchiveExtractCallback {
+        private final BulkEntryExtraction extraction;
+        private final Map<Integer, ArchiveEntry> entriesByIndex;
+        private OutputStream out;
+
+        private BulkExtractCallback(BulkEntryExtraction extraction, Map<Integer, ArchiveEntry> entriesByIndex) {
+            this.extraction = extraction;
+            this.entriesByIndex = entriesByIndex;
+        }
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            ArchiveEntry entry = entriesByIndex.get(index);
+            if (entry == null || extractAskMode != ExtractAskMode.EXTRACT) {
+                return null;
+            }
+            try {
+                out = extraction.openEntry(entry);
+            } catch (IOException e) {
+                throw new SevenZipException(e);
+            }
+            return data -> {
+                try {
+                    out.write(data);
+                } catch (IOException e) {
+                    throw new SevenZipException(e);
+                }
+                return data.length;
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult extractOperationResult) throws SevenZipException {
+            if (out == null) {
+                return;
+            }
+            if (extractOperationResult != ExtractOperationResult.OK) {
+                throw new SevenZipException("Extraction error: " + extractOperationResult);
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new SevenZipException(e);
+            }
+            out = null;
+        }
+
+        @Override
+        public void setCompleted(long completeValue) {
+        }
+
+        @Override
+        public void setTotal(long total) {
+        }
+    }
 }
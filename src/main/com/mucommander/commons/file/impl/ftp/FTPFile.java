@@ -4,6 +4,7 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionHandlerFactory;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
@@ -21,6 +22,8 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 /**
@@ -130,47 +133,94 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Resolves the attributes of the file designated by the given URL, <code>null</code> if the file doesn't exist.
+     * The parent folder's listing is used if it is in the connection's listing cache, so that the attributes of
+     * sibling files are resolved with a single listing. Otherwise, the MLST command is used if the server supports it,
+     * and the parent folder is listed if it doesn't.
+     */
     private org.apache.commons.net.ftp.FTPFile getFTPFile(FileURL fileURL) throws IOException {
-        // Todo: this method is very ineffective as it lists the parent directory to retrieve the information about the
-        // requested file to workaround the fact that FTPClient#listFiles follows directories.
-        // => Use the MLST command if supported by the server (use FEAT command to find out if it is supported).
-        // See http://tools.ietf.org/html/draft-ietf-ftpext-mlst-16
         FileURL parentURL = fileURL.getParent();
         LOGGER.trace("fileURL={} parent={}", fileURL, parentURL);
 
         // Parent is null, create '/' file
         if (parentURL == null) {
             return createFTPFile("/", true);
-        } else {
-            FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
-            org.apache.commons.net.ftp.FTPFile files[];
-            try {
-                // Makes sure the connection is started, if not starts it
-                connHandler.checkConnection();
+        }
+
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        org.apache.commons.net.ftp.FTPFile files[];
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            files = connHandler.getCachedListing(parentURL.getPath());
+            if (files == null) {
+                if (connHandler.mlstSupported) {
+                    // Retrieve the attributes of this file only, using MLST (RFC 3659)
+                    return mlistFile(connHandler, fileURL);
+                }
 
                 // List files contained by this file's parent in order to retrieve the FTPFile instance corresponding
                 // to this file
                 files = listFiles(connHandler, parentURL.getPath());
-            } finally {
-                // Release the lock on the ConnectionHandler
-                connHandler.releaseLock();
             }
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
 
-            // File doesn't exist
-            if (files == null || files.length == 0) {
-                return null;
+        // Find the file in the parent folder's contents
+        String wantedName = fileURL.getFilename();
+        for (org.apache.commons.net.ftp.FTPFile f : files) {
+            if (f != null && f.getName().equalsIgnoreCase(wantedName)) {
+                return f;
             }
+        }
+
+        // File doesn't exists
+        return null;
+    }
 
-            // Find the file in the parent folder's contents
-            String wantedName = fileURL.getFilename();
-            for (org.apache.commons.net.ftp.FTPFile f : files) {
-                if (f.getName().equalsIgnoreCase(wantedName)) {
-                    return f;
+
+    /**
+     * Retrieves the attributes of the given file using the MLST command, <code>null</code> if the file doesn't exist.
+     * If the server turns out not to support MLST, it is marked as such in the connection handler and the file is
+     * looked up in its parent folder's listing instead.
+     */
+    private static org.apache.commons.net.ftp.FTPFile mlistFile(FTPConnectionHandler connHandler, FileURL fileURL) throws IOException {
+        try {
+            org.apache.commons.net.ftp.FTPFile file = connHandler.ftpClient.mlistFile(fileURL.getPath());
+            if (file != null) {
+                // The name returned by MLST is the file's path
+                file.setName(fileURL.getFilename());
+                return file;
+            }
+
+            int replyCode = connHandler.ftpClient.getReplyCode();
+            if (replyCode == FTPReply.UNRECOGNIZED_COMMAND || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED) {
+                LOGGER.info("marking MLST command as unsupported");
+                connHandler.mlstSupported = false;
+                connHandler.mlsdSupported = false;
+
+                for (org.apache.commons.net.ftp.FTPFile f : listFiles(connHandler, fileURL.getParent().getPath())) {
+                    if (f != null && f.getName().equalsIgnoreCase(fileURL.getFilename())) {
+                        return f;
+                    }
                 }
+            } else if (replyCode == FTPReply.SERVICE_NOT_AVAILABLE || replyCode == FTPReply.NOT_LOGGED_IN) {
+                // Throw an IOException (potentially an AuthException)
+                connHandler.checkServerReply();
             }
 
-            // File doesn't exists
+            // File doesn't exist
             return null;
+        } catch(IOException e) {
+            // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+            connHandler.checkSocketException(e);
+
+            // Throw back the IOException
+            throw e;
         }
     }
 
@@ -187,8 +237,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     /**
      * Lists and returns the contents of the given path on the server using the given connection handler.
-     * The directory contents is listed by issuing a CWD followed by a LIST so after this method is called, the current
-     * working directory is left to the specified path.
+     * The directory contents is listed by issuing a CWD followed by a MLSD if the server supports it, a LIST
+     * otherwise, so after this method is called, the current working directory is left to the specified path.
+     * Listings are kept for a short time in the connection handler's listing cache, the cached listing being returned
+     * without communicating with the server if there is one.
      *
      * @param connHandler the connection handler to use for communicating with the server
      * @param absPath absolute path to the directory to list
@@ -218,14 +270,37 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // http://www.mucommander.com/forums/viewtopic.php?f=4&t=714
             // http://issues.apache.org/jira/browse/NET-10
 
+            files = connHandler.getCachedListing(absPath);
+            if (files != null) {
+                return files;
+            }
+
             connHandler.ftpClient.changeWorkingDirectory(absPath);
-            files = connHandler.ftpClient.listFiles();
+            // Throw an IOException if server replied with an error
+            connHandler.checkServerReply();
+
+            files = null;
+            if (connHandler.mlsdSupported) {
+                // MLSD returns machine-readable listings (RFC 3659) that do not depend on the server's LIST format
+                files = connHandler.ftpClient.mlistDir();
+                int replyCode = connHandler.ftpClient.getReplyCode();
+                if (replyCode == FTPReply.UNRECOGNIZED_COMMAND || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED) {
+                    LOGGER.info("marking MLSD command as unsupported");
+                    connHandler.mlsdSupported = false;
+                    files = null;
+                }
+            }
+            if (!connHandler.mlsdSupported) {
+                files = connHandler.ftpClient.listFiles();
+            }
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
             if (files==null)     // In some rare conditions (bug) this method can return null
-                return new org.apache.commons.net.ftp.FTPFile[0];
+                files = new org.apache.commons.net.ftp.FTPFile[0];
+
+            connHandler.cacheListing(absPath, files);
 
             return files;
         }
@@ -243,6 +318,16 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Removes the listing of this file's parent folder, and of this file if it is a folder, from the listing cache of
+     * the connections to the server, after this file has been changed.
+     */
+    private void invalidateListings() {
+        FileURL parentURL = fileURL.getParent();
+        FTPConnectionHandler.invalidateListings(fileURL, absPath, parentURL == null ? null : parentURL.getPath());
+    }
+
+
     /////////////////////////////////////////////
     // ConnectionHandlerFactory implementation //
     /////////////////////////////////////////////
@@ -305,6 +390,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE UTIME {} {}", sdate, absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("UTIME "+sdate+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            invalidateListings();
 
             if (!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -506,6 +592,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 connHandler.ftpClient.deleteFile(absPath);
             }
             fileExists = false; // need be false because the file can be get from cache pool
+            invalidateListings();
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
@@ -524,18 +611,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     @Override
     public AbstractFile[] ls() throws IOException {
-        // Retrieve a ConnectionHandler and lock it
-        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
-        org.apache.commons.net.ftp.FTPFile files[];
-        try {
-            // Makes sure the connection is started, if not starts it
-            connHandler.checkConnection();
-
-            files = listFiles(connHandler, absPath);
-        } finally {
-            // Release the lock on the ConnectionHandler
-            connHandler.releaseLock();
-        }
+        org.apache.commons.net.ftp.FTPFile files[] = listChildren();
 
         if (files == null || files.length == 0) {
             return new AbstractFile[]{};
@@ -582,6 +658,57 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         return children;
     }
 
+    /**
+     * Overridden to pass the children to the listener in batches as they are created. Note that Commons Net reads the
+     * whole listing returned by the server before parsing it, so the folder is not listed incrementally: only the
+     * children are created and delivered incrementally, once the connection has been released.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        org.apache.commons.net.ftp.FTPFile files[] = listChildren();
+
+        ListingBatcher batcher = new ListingBatcher(filter, listener);
+        if (files != null) {
+            String parentPath = fileURL.getPath();
+            if (!parentPath.endsWith(SEPARATOR)) {
+                parentPath += SEPARATOR;
+            }
+
+            for (org.apache.commons.net.ftp.FTPFile file : files) {
+                // Discard '.' and '..' files
+                if (file == null || file.getName().equals(".") || file.getName().equals("..")) {
+                    continue;
+                }
+
+                FileURL childURL = (FileURL) fileURL.clone();
+                childURL.setPath(parentPath + file.getName());
+
+                if (!batcher.add(FileFactory.getFile(childURL, this, file))) {
+                    return;
+                }
+            }
+        }
+        batcher.finish();
+    }
+
+    /**
+     * Returns the FTP files contained by this folder, using a connection that is locked only while the folder is
+     * listed.
+     */
+    private org.apache.commons.net.ftp.FTPFile[] listChildren() throws IOException {
+        // Retrieve a ConnectionHandler and lock it
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            return listFiles(connHandler, absPath);
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+    }
+
 
     @Override
     public void mkdir() throws IOException {
@@ -592,6 +719,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             connHandler.checkConnection();
 
             connHandler.ftpClient.makeDirectory(absPath);
+            invalidateListings();
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
@@ -686,6 +814,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE CHMOD {} {}", Integer.toOctalString(permissions), absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("CHMOD "+Integer.toOctalString(permissions)+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            invalidateListings();
 
             if (!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -744,7 +873,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            if(!connHandler.ftpClient.rename(absPath, destFile.getURL().getPath()))
+            boolean success = connHandler.ftpClient.rename(absPath, destFile.getURL().getPath());
+            FileURL destParentURL = destFile.getURL().getParent();
+            invalidateListings();
+            FTPConnectionHandler.invalidateListings(fileURL, destParentURL == null ? null : destParentURL.getPath());
+            if (!success)
                 throw new IOException();
         } catch(IOException e) {
             // Checks if the IOException corresponds to a socket error and in that case, closes the connection
@@ -1084,6 +1217,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
             // we need to refresh the file after update
             // otherwise the file size for archives will be show incorrect etc.
+            invalidateListings();
             try {
                 FTPFile.this.file = getFTPFile(getURL());
             } catch (IOException e) {
@@ -1111,6 +1245,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 // Re-throw IOException
                 throw e;
             } finally {
+                // The file may have been listed by another connection while it was being written
+                invalidateListings();
                 // Release the lock on the ConnectionHandler
                 connHandler.releaseLock();
             }
@@ -1144,9 +1280,29 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         /** False if SITE CHMOD command is not supported by the remote server (once tried and failed) */
         private boolean chmodCommandSupported = true;
 
+        /** False if the MLST command is not supported by the remote server, as reported by FEAT or once tried and failed */
+        private boolean mlstSupported;
+
+        /** False if the MLSD command is not supported by the remote server, as reported by FEAT or once tried and failed */
+        private boolean mlsdSupported;
+
+        /** Recent directory listings, keyed by path, in access order. Guarded by itself. */
+        private final LinkedHashMap<String, CachedListing> listingCache = new LinkedHashMap<String, CachedListing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedListing> eldest) {
+                return size() > LISTING_CACHE_SIZE;
+            }
+        };
+
         /** Controls how ofter should keepAlive() be called by ConnectionPool */
         private final static long KEEP_ALIVE_PERIOD = 60;
 
+        /** Amount of time (in milliseconds) during which a directory listing is reused */
+        private final static long LISTING_CACHE_TTL = 5000;
+
+        /** Maximum number of directory listings kept by a connection */
+        private final static int LISTING_CACHE_SIZE = 8;
+
 //        /** Connection timeout to the FTP server in seconds */
 //        private final static int CONNECTION_TIMEOUT = 30;
 
@@ -1236,6 +1392,62 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         }
 
 
+        /**
+         * Returns the listing of the given directory if it has been cached less than {@link #LISTING_CACHE_TTL}
+         * milliseconds ago, <code>null</code> otherwise.
+         */
+        private org.apache.commons.net.ftp.FTPFile[] getCachedListing(String path) {
+            synchronized (listingCache) {
+                CachedListing listing = listingCache.get(normalizePath(path));
+                if (listing == null) {
+                    return null;
+                }
+                if (System.currentTimeMillis() - listing.timestamp > LISTING_CACHE_TTL) {
+                    listingCache.remove(normalizePath(path));
+                    return null;
+                }
+                LOGGER.trace("using cached listing of {}", path);
+                return listing.files;
+            }
+        }
+
+        /**
+         * Adds the listing of the given directory to the cache.
+         */
+        private void cacheListing(String path, org.apache.commons.net.ftp.FTPFile[] files) {
+            synchronized (listingCache) {
+                listingCache.put(normalizePath(path), new CachedListing(files));
+            }
+        }
+
+        /**
+         * Removes the listings of the given directories from the cache of all the FTP connections to the given
+         * location's server. This method must be called whenever the contents of a directory are changed.
+         *
+         * @param location a location on the server
+         * @param paths paths of the directories whose contents have changed, <code>null</code> values are ignored
+         */
+        private static void invalidateListings(FileURL location, String... paths) {
+            FileURL realm = location.getRealm();
+            for (ConnectionHandler connHandler : ConnectionPool.getConnectionHandlersSnapshot()) {
+                if (!(connHandler instanceof FTPConnectionHandler) || !connHandler.getRealm().equals(realm)) {
+                    continue;
+                }
+                LinkedHashMap<String, CachedListing> cache = ((FTPConnectionHandler)connHandler).listingCache;
+                synchronized (cache) {
+                    for (String path : paths) {
+                        if (path != null) {
+                            cache.remove(normalizePath(path));
+                        }
+                    }
+                }
+            }
+        }
+
+        private static String normalizePath(String path) {
+            return path.length() > 1 && path.endsWith(SEPARATOR) ? path.substring(0, path.length() - 1) : path;
+        }
+
         /**
          * Checks if the given IOException corresponds to a low-level socket exception, and if that is the case,
          * closes the connection so that {@link #isConnected()} returns false.
@@ -1330,6 +1542,12 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 	                    ftpClient.sendCommand("OPTS UTF8 ON");
 	                }
 
+	                // Find out if the server supports the MLST and MLSD commands (RFC 3659) using the FEAT command.
+	                // Servers that do not support FEAT are assumed not to support them.
+	                mlstSupported = ftpClient.hasFeature("MLST");
+	                mlsdSupported = mlstSupported;
+	                LOGGER.info("mlstSupported={}", mlstSupported);
+
 	                break;
 	            } catch(IOException e) {
                     // Attempt to retry if the connection failed, or if the server reply corresponds to a temporary error.
@@ -1409,6 +1627,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
                 ftpClient = null;
             }
+
+            synchronized (listingCache) {
+                listingCache.clear();
+            }
         }
 
 
@@ -1427,6 +1649,18 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         }
     }
 
+    /**
+     * A directory listing kept in the listing cache of an {@link FTPConnectionHandler}.
+     */
+    private static class CachedListing {
+        private final org.apache.commons.net.ftp.FTPFile[] files;
+        private final long timestamp = System.currentTimeMillis();
+
+        private CachedListing(org.apache.commons.net.ftp.FTPFile[] files) {
+            this.files = files;
+        }
+    }
+
     /**
      * A Permissions implementation for FTPFile.
      */
@@ -1,9 +1,10 @@
 package com.mucommander.commons.file.impl.http;
 
 import com.mucommander.commons.file.*;
-import com.mucommander.commons.io.BlockRandomInputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.ReadAheadRandomInputStream;
+import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.io.base64.Base64Encoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -728,22 +729,18 @@ public class HTTPFile extends ProtocolFile {
 
 
     /**
-     * HTTPRandomAccessInputStream extends BlockRandomInputStream to provide random read access to an HTTPFile.
-     * It uses the 'Range' request header to read the HTTP resource partially, chunk by chunk and reposition the offset
-     * when {@link #seek(long)} is called.
+     * HTTPRandomAccessInputStream extends ReadAheadRandomInputStream to provide random read access to an HTTPFile.
+     * It uses the 'Range' request header to read the HTTP resource partially, block by block, fetching larger ranges
+     * ahead of time when the resource is read sequentially. Connections are kept alive and reused by
+     * <code>HttpURLConnection</code>, provided that responses are read completely.
      */
-    private class HTTPRandomAccessInputStream extends BlockRandomInputStream {
-
-        /** Amount of data returned  */
-        private final static int CHUNK_SIZE = 1024;
+    private class HTTPRandomAccessInputStream extends ReadAheadRandomInputStream {
 
         /** Length of the HTTP resource */
         private long length;
 
 
         private HTTPRandomAccessInputStream() throws IOException {
-            super(CHUNK_SIZE);
-
             // HEAD the HTTP resource to get its length
             if (!fileResolved) {
                 resolveFile();
@@ -755,26 +752,31 @@ public class HTTPFile extends ProtocolFile {
             }
         }
 
-        ///////////////////////////////////////////
-        // BlockRandomInputStream implementation //
-        ///////////////////////////////////////////
+        ///////////////////////////////////////////////
+        // ReadAheadRandomInputStream implementation //
+        ///////////////////////////////////////////////
 
         @Override
-        protected int readBlock(long fileOffset, byte block[], int blockLen) throws IOException {
+        protected int readRange(long offset, byte b[], int len) throws IOException {
             HttpURLConnection conn = getHttpURLConnection(url);
 
-            // Note: 'Range' may not be supported by the HTTP server, in that case an IOException will be thrown
-            conn.setRequestProperty("Range", "bytes="+fileOffset +"-"+ Math.min(fileOffset+blockLen, length-1));
+            // Note: 'Range' may not be supported by the HTTP server, see below
+            conn.setRequestProperty("Range", "bytes="+offset +"-"+ (Math.min(offset+len, length)-1));
 
             conn.connect();
             checkHTTPResponse(conn);
 
-            // Read up to blockLen bytes
             try (InputStream in = conn.getInputStream()) {
+                // The server ignored the 'Range' header and returns the whole resource
+                if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                    StreamUtils.skipFully(in, offset);
+                }
+
+                // Read up to len bytes
                 int totalRead = 0;
                 int read;
-                while (totalRead < blockLen) {
-                    read = in.read(block, totalRead, blockLen - totalRead);
+                while (totalRead < len) {
+                    read = in.read(b, totalRead, len - totalRead);
                     if (read == -1) {
                         break;
                     }
@@ -788,10 +790,5 @@ public class HTTPFile extends ProtocolFile {
         public long getLength() {
             return length;
         }
-
-        @Override
-        public void close() throws IOException {
-            // No-op, the underlying stream is already closed
-        }
     }
 }
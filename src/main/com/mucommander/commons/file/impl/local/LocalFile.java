@@ -20,11 +20,14 @@
 package com.mucommander.commons.file.impl.local;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
+import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
@@ -42,6 +45,7 @@ import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
@@ -106,6 +110,10 @@ public class LocalFile extends ProtocolFile {
      * of having single a root folder '/' */
     public final static boolean USES_ROOT_DRIVES = IS_WINDOWS || OsFamily.OS_2.isCurrent();
 
+    /** Maximum number of bytes transferred by a single <code>FileChannel#transferTo</code> call, which bounds the time
+     * it takes for a throttled, paused or interrupted transfer to react */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
     /** Pattern matching Windows-like drives' root, e.g. C:\ */
     final static Pattern DRIVE_ROOT_PATTERN = Pattern.compile("^[a-zA-Z][:][\\\\]");
 
@@ -1007,19 +1015,117 @@ public class LocalFile extends ProtocolFile {
         return getVolumeInfo()[0];
     }	
 
-    // Unsupported file operations
+    /**
+     * Implementation notes: regular files are copied with {@link #transferTo(LocalFile, boolean, InputStream)}, which
+     * lets the kernel copy the data. The destination must be a local file.
+     */
+    @Override
+    public void copyRemotelyTo(AbstractFile destFile) throws IOException {
+        checkCopyRemotelyPrerequisites(destFile, false, false);
+
+        LocalFile destLocalFile = destFile.getAncestor(LocalFile.class);
+        if (destLocalFile == null) {
+            throw new IOException();
+        }
+
+        if (isDirectory()) {
+            copyRecursively(this, destFile);
+        } else {
+            transferTo(destLocalFile, false, null);
+        }
+    }
 
     /**
-     * Always throws {@link UnsupportedFileOperationException} when called.
+     * Copies the contents of this file to the given local file using <code>FileChannel#transferTo</code>, which lets
+     * the kernel copy the data (e.g. with <code>sendfile</code> or <code>copy_file_range</code> on Linux, the latter
+     * cloning the data on filesystems that support it) instead of moving it back and forth through a user-space buffer.
      *
-     * @throws UnsupportedFileOperationException always
+     * <p>The transfer can be paced by an <code>InputStream</code> reading this file at the position where the
+     * transfer starts, as returned by {@link #getInputStream()} or {@link #getInputStream(long)} and possibly wrapped
+     * by streams that do not buffer data. Each chunk of data is {@link InputStream#skip(long) skipped} in this stream
+     * before being transferred, so that streams that throttle or count the bytes they read apply to the transfer as
+     * if the data had been read from them. Closing the stream from another thread aborts the transfer.</p>
+     *
+     * @param destFile the file to copy this file's contents to
+     * @param append <code>true</code> to append this file's contents starting at the current size of the destination,
+     * <code>false</code> to overwrite the destination
+     * @param in the stream pacing the transfer, <code>null</code> to transfer the data as fast as possible
+     * @throws FileTransferException if an error occurred while transferring the data
      */
-    @Override
-    @UnsupportedFileOperation
-    public void copyRemotelyTo(AbstractFile destFile) throws UnsupportedFileOperationException {
-        throw new UnsupportedFileOperationException(FileOperation.COPY_REMOTELY);
+    public void transferTo(LocalFile destFile, boolean append, InputStream in) throws FileTransferException {
+        FileChannel source;
+        try {
+            source = new FileInputStream(file).getChannel();
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE, e);
+        }
+
+        try {
+            FileChannel dest;
+            try {
+                dest = new FileOutputStream(destFile.absPath, append).getChannel();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+            }
+
+            try {
+                transfer(source, dest, append, in);
+            } finally {
+                // Close channel even if transfer() threw an IOException
+                try {
+                    dest.close();
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.CLOSING_DESTINATION, e);
+                }
+            }
+        } finally {
+            try {
+                source.close();
+            } catch (IOException e) {
+                // Nothing was written to the source, not much we can do about it
+            }
+        }
     }
 
+    private static void transfer(FileChannel source, FileChannel dest, boolean append, InputStream in) throws FileTransferException {
+        long written = 0;
+        long position;
+        try {
+            position = append ? dest.size() : 0;
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+        }
+
+        while (true) {
+            long count;
+            try {
+                count = in == null ? Math.min(TRANSFER_CHUNK_SIZE, source.size() - position) : in.skip(TRANSFER_CHUNK_SIZE);
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.READING_SOURCE, written, e);
+            }
+            if (count <= 0) {
+                return;
+            }
+
+            for (long end = position + count; position < end; ) {
+                long nbTransferred;
+                try {
+                    nbTransferred = source.transferTo(position, end - position, dest);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION, written, e);
+                }
+                if (nbTransferred <= 0) {
+                    // The source file has been truncated since the transfer started
+                    throw new FileTransferException(FileTransferException.READING_SOURCE, written);
+                }
+                position += nbTransferred;
+                written += nbTransferred;
+            }
+        }
+    }
+
+    // Unsupported file operations
+
     @Override
     @UnsupportedFileOperation
     public short getReplication() throws UnsupportedFileOperationException {
@@ -1098,30 +1204,118 @@ public class LocalFile extends ProtocolFile {
     }
 
 
+    /**
+     * Overridden to list this folder with a <code>java.nio.file.DirectoryStream</code>.
+     */
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
-        File files[] = file.listFiles(filenameFilter == null ? null : new LocalFilenameFilter(filenameFilter));
-
-        if (files == null) {
-            throw new IOException();
+        List<AbstractFile> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath())) {
+            for (Path path : stream) {
+                if (filenameFilter == null || filenameFilter.accept(path.getFileName().toString())) {
+                    children.add(createChild(path, false));
+                }
+            }
+        } catch (AccessDeniedException e) {
+            throw new FileAccessDeniedException();
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
         }
 
-        int nbFiles = files.length;
-        AbstractFile children[] = new AbstractFile[nbFiles];
+        return children.toArray(new AbstractFile[children.size()]);
+    }
+
+    /**
+     * Overridden to list this folder with a <code>java.nio.file.DirectoryStream</code>, which returns the children as
+     * they are read from the filesystem, rather than with <code>java.io.File#listFiles()</code>, which returns them
+     * once the whole folder has been read.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        ls(filter, listener, false);
+    }
 
-        for(int i = 0; i < nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
-            // FileURL instance from scratch.
-            FileURL childURL = (FileURL)fileURL.clone();
+    /**
+     * Lists this folder like {@link #ls(FileFilter, ListingListener)}, and reads the attributes of each child with a
+     * single call (see {@link LocalFileAttributes}). The children are returned as {@link CachedFile} instances that
+     * hold these attributes already, so that they can be displayed without querying the filesystem for each of them.
+     * The filter is applied to these instances.
+     *
+     * <p>Reading the attributes costs one or two extra calls per child: this method should only be used when most of
+     * the attributes of the children are going to be retrieved, e.g. by a file table.</p>
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener that receives the children, wrapped into <code>CachedFile</code> instances
+     * @throws IOException if this folder could not be listed
+     */
+    public void lsWithAttributes(FileFilter filter, ListingListener listener) throws IOException {
+        ls(filter, listener, true);
+    }
 
-			childURL.setPath(absPath + SEPARATOR + files[i].getName());
+    /**
+     * Returns the children of this folder that match the given filter as {@link CachedFile} instances that hold the
+     * attributes that were read while listing them, see {@link #lsWithAttributes(FileFilter, ListingListener)}.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @return the children of this folder, wrapped into <code>CachedFile</code> instances
+     * @throws IOException if this folder could not be listed
+     */
+    public AbstractFile[] lsWithAttributes(FileFilter filter) throws IOException {
+        List<AbstractFile> children = new ArrayList<>();
+        ls(filter, files -> {
+            Collections.addAll(children, files);
+            return true;
+        }, true);
+        return children.toArray(new AbstractFile[children.size()]);
+    }
 
-            // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
-            // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
-            children[i] = FileFactory.getFile(childURL, this, files[i]);
+    private void ls(FileFilter filter, ListingListener listener, boolean readAttributes) throws IOException {
+        ListingBatcher batcher = new ListingBatcher(filter, listener);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath())) {
+            for (Path path : stream) {
+                if (!batcher.add(createChild(path, readAttributes))) {
+                    return;
+                }
+            }
+        } catch (AccessDeniedException e) {
+            throw new FileAccessDeniedException();
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+        batcher.finish();
+    }
+
+    /**
+     * Creates the file instance of a child of this folder returned by a <code>DirectoryStream</code>. If
+     * <code>readAttributes</code> is <code>true</code>, the attributes of the child are read and it is returned as a
+     * {@link CachedFile} holding them.
+     */
+    private AbstractFile createChild(Path path, boolean readAttributes) throws IOException {
+        File childFile = path.toFile();
+        // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+        // FileURL instance from scratch.
+        FileURL childURL = (FileURL)fileURL.clone();
+        childURL.setPath(absPath + SEPARATOR + childFile.getName());
+
+        // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
+        // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
+        AbstractFile child = FileFactory.getFile(childURL, this, childFile);
+        if (!readAttributes) {
+            return child;
         }
 
-        return children;
+        LocalFileAttributes attributes = null;
+        try {
+            attributes = LocalFileAttributes.read(path);
+        } catch (IOException e) {
+            // The attributes will be read separately
+            logger.trace("Could not read the attributes of {}", path, e);
+        }
+        return new CachedFile(child, true, attributes);
     }
 
     @Override
@@ -1493,26 +1687,4 @@ public class LocalFile extends ProtocolFile {
             return MASK;
         }
     }
-
-
-    /**
-     * Turns a {@link FilenameFilter} into a {@link java.io.FilenameFilter}.
-     */
-    private static class LocalFilenameFilter implements java.io.FilenameFilter {
-
-        private FilenameFilter filter;
-
-        private LocalFilenameFilter(FilenameFilter filter) {
-            this.filter = filter;
-        }
-
-
-        ///////////////////////////////////////////
-        // java.io.FilenameFilter implementation //
-        ///////////////////////////////////////////
-
-        public boolean accept(File dir, String name) {
-            return filter.accept(name);
-        }
-    }
 }
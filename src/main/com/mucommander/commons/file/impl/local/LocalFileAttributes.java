@@ -0,0 +1,235 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.local;
+
+import com.mucommander.commons.file.GroupedPermissionBits;
+import com.mucommander.commons.file.PermissionBits;
+import com.mucommander.commons.file.PermissionTypes;
+import com.mucommander.commons.file.SimpleFileAttributes;
+import com.mucommander.commons.file.SimpleFilePermissions;
+import com.mucommander.commons.runtime.OsFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/**
+ * The attributes of a local file, as they are read by {@link LocalFile} when it lists a folder. All the attributes
+ * that are displayed by a file table are read with a single <code>lstat</code> call per file (plus one
+ * <code>stat</code> for symbolic links), instead of the separate calls made by the {@link LocalFile} getters.
+ *
+ * <p>On UNIX-based systems the permissions are computed from the file mode, the owner and the group of the file, and
+ * the ids of the current user. Like the permissions returned by {@link LocalFile#getPermissions()}, they are limited
+ * to the 'user' access type, but ACLs and read-only mounts are not taken into account. On other systems, and when
+ * the ids of the current user cannot be retrieved, the permissions are left <code>null</code>, as are the hidden and
+ * executable flags when they cannot be determined from the attributes that were read.</p>
+ *
+ * @see com.mucommander.commons.file.impl.CachedFile
+ */
+public class LocalFileAttributes extends SimpleFileAttributes {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFileAttributes.class);
+
+    private static final boolean IS_WINDOWS = OsFamily.WINDOWS.isCurrent();
+    private static final boolean IS_MAC_OS_X = OsFamily.MAC_OS_X.isCurrent();
+    private static final boolean IS_UNIX_BASED = OsFamily.getCurrent().isUnixBased();
+
+    /** Attributes read with the 'unix' attribute view, in a single call */
+    private static final String UNIX_ATTRIBUTES = "unix:mode,uid,gid,size,lastModifiedTime,isDirectory,isSymbolicLink";
+
+    /** Mask of the permissions computed from the file mode: rwx------ (700 octal) */
+    private static final PermissionBits MASK = new GroupedPermissionBits(448);
+
+    /** Id of the current user, -1 if it could not be retrieved */
+    private static final long USER_ID;
+    /** Ids of the groups the current user belongs to, null if they could not be retrieved */
+    private static final long USER_GROUPS[];
+
+    static {
+        long uid = -1;
+        long groups[] = null;
+        if (IS_UNIX_BASED) {
+            // com.sun.security.auth.module.UnixSystem is not available on all platforms, hence the use of reflection
+            try {
+                Class<?> unixSystemClass = Class.forName("com.sun.security.auth.module.UnixSystem");
+                Object unixSystem = unixSystemClass.newInstance();
+                Method getGroups = unixSystemClass.getMethod("getGroups");
+                long gid = (Long)unixSystemClass.getMethod("getGid").invoke(unixSystem);
+                long supplementaryGroups[] = (long[])getGroups.invoke(unixSystem);
+                if (supplementaryGroups == null) {
+                    supplementaryGroups = new long[0];
+                }
+                groups = new long[supplementaryGroups.length + 1];
+                groups[0] = gid;
+                System.arraycopy(supplementaryGroups, 0, groups, 1, supplementaryGroups.length);
+                uid = (Long)unixSystemClass.getMethod("getUid").invoke(unixSystem);
+            } catch (Throwable e) {
+                LOGGER.info("Could not retrieve the ids of the current user, permissions will be read separately", e);
+                groups = null;
+            }
+        }
+        USER_ID = uid;
+        USER_GROUPS = groups;
+    }
+
+    /** Symlink attribute */
+    private boolean symlink;
+
+    /** Hidden attribute, null if unknown */
+    private Boolean hidden;
+
+    /** Executable attribute, null if unknown */
+    private Boolean executable;
+
+
+    /**
+     * Reads the attributes of the given local file, without following it if it is a symbolic link: only its
+     * <code>symlink</code> attribute refers to the link itself, the other attributes are those of its target.
+     * The <code>exists</code> attribute is <code>false</code> for broken links.
+     *
+     * @param path the path of the file
+     * @return the attributes of the file
+     * @throws IOException if the attributes could not be read
+     */
+    public static LocalFileAttributes read(Path path) throws IOException {
+        LocalFileAttributes attributes = new LocalFileAttributes();
+        attributes.setPath(path.toString());
+
+        if (IS_WINDOWS) {
+            // Symbolic links are not supported under Windows, see LocalFile#isSymlink()
+            DosFileAttributes dos = Files.readAttributes(path, DosFileAttributes.class);
+            attributes.setBasicAttributes(dos);
+            attributes.hidden = dos.isHidden();
+        } else if (IS_UNIX_BASED && USER_GROUPS != null) {
+            Map<String, Object> unix = Files.readAttributes(path, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+            if ((Boolean)unix.get("isSymbolicLink")) {
+                attributes.symlink = true;
+                try {
+                    unix = Files.readAttributes(path, UNIX_ATTRIBUTES);
+                } catch (NoSuchFileException e) {
+                    // Broken link
+                    return attributes;
+                }
+            }
+            attributes.setUnixAttributes(unix);
+        } else {
+            BasicFileAttributes basic = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (basic.isSymbolicLink()) {
+                attributes.symlink = true;
+                try {
+                    basic = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    return attributes;
+                }
+            }
+            attributes.setBasicAttributes(basic);
+        }
+
+        // Under macOS, hidden files are not only dot files, see LocalFile#isHidden()
+        if (IS_UNIX_BASED && !IS_MAC_OS_X) {
+            Path name = path.getFileName();
+            attributes.hidden = name != null && name.toString().startsWith(".");
+        }
+
+        return attributes;
+    }
+
+    private void setBasicAttributes(BasicFileAttributes basic) {
+        setExists(true);
+        setDirectory(basic.isDirectory());
+        setSize(basic.size());
+        setDate(basic.lastModifiedTime().toMillis());
+    }
+
+    private void setUnixAttributes(Map<String, Object> unix) {
+        boolean directory = (Boolean)unix.get("isDirectory");
+        setExists(true);
+        setDirectory(directory);
+        setSize((Long)unix.get("size"));
+        setDate(((FileTime)unix.get("lastModifiedTime")).toMillis());
+
+        int userPermissions = getUserPermissions((Integer)unix.get("mode"), (Integer)unix.get("uid"), (Integer)unix.get("gid"), directory);
+        setPermissions(new SimpleFilePermissions(userPermissions << 6, MASK));
+
+        // Under macOS, application bundles are executable too, see LocalFile#isExecutable()
+        if (!IS_MAC_OS_X) {
+            executable = !directory && (userPermissions & PermissionTypes.EXECUTE_PERMISSION) != 0;
+        }
+    }
+
+    /**
+     * Returns the permissions the current user has on a file with the given mode, owner and group, as
+     * <code>java.io.File#canRead()</code>, <code>canWrite()</code> and <code>canExecute()</code> would return them.
+     */
+    static int getUserPermissions(int mode, long uid, long gid, boolean directory) {
+        if (USER_ID == 0) {
+            // root can read and write anything, and execute files that are executable by someone
+            int permissions = PermissionTypes.READ_PERMISSION | PermissionTypes.WRITE_PERMISSION;
+            if (directory || (mode & 0111) != 0) {
+                permissions |= PermissionTypes.EXECUTE_PERMISSION;
+            }
+            return permissions;
+        }
+        if (uid == USER_ID) {
+            return (mode >> 6) & 7;
+        }
+        for (long group : USER_GROUPS) {
+            if (group == gid) {
+                return (mode >> 3) & 7;
+            }
+        }
+        return mode & 7;
+    }
+
+
+    /**
+     * Returns <code>true</code> if the file is a symbolic link.
+     *
+     * @return <code>true</code> if the file is a symbolic link
+     */
+    public boolean isSymlink() {
+        return symlink;
+    }
+
+    /**
+     * Returns <code>true</code> if the file is hidden, <code>null</code> if it is unknown.
+     *
+     * @return <code>true</code> if the file is hidden, <code>null</code> if it is unknown
+     */
+    public Boolean isHidden() {
+        return hidden;
+    }
+
+    /**
+     * Returns <code>true</code> if the file is executable, <code>null</code> if it is unknown.
+     *
+     * @return <code>true</code> if the file is executable, <code>null</code> if it is unknown
+     */
+    public Boolean isExecutable() {
+        return executable;
+    }
+}
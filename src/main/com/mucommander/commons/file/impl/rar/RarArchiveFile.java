@@ -3,7 +3,9 @@ package com.mucommander.commons.file.impl.rar;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
@@ -11,6 +13,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractROArchiveFile;
 import com.mucommander.commons.file.ArchiveEntry;
 import com.mucommander.commons.file.ArchiveEntryIterator;
+import com.mucommander.commons.file.BulkEntryExtraction;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.WrapperArchiveEntryIterator;
 
@@ -125,4 +128,35 @@ public class RarArchiveFile extends AbstractROArchiveFile {
 			throw new IOException();
 		}
 	}
+
+    /**
+     * Extracts the given entries with a single pass over the RAR file, which for solid archives decodes the data that
+     * precedes each entry once instead of once per entry.
+     */
+    @Override
+    public synchronized BulkEntryExtraction extractEntries(List<ArchiveEntry> entries) throws IOException {
+        Map<String, ArchiveEntry> entriesByPath = new HashMap<>();
+        for (ArchiveEntry entry : entries) {
+            entriesByPath.put(entry.getPath(), entry);
+        }
+
+        // Sort the entries in the order of the RAR file
+        final Map<String, ArchiveEntry> entriesByRarPath = new HashMap<>();
+        List<ArchiveEntry> sortedEntries = new ArrayList<>();
+        try {
+            checkRarFile();
+        } catch (RarException e) {
+            throw new IOException(e);
+        }
+        for (FileHeader header : rarFile.getEntries()) {
+            ArchiveEntry entry = entriesByPath.get(createArchiveEntry(header).getPath());
+            if (entry != null && !header.isDirectory()) {
+                sortedEntries.add(entry);
+                entriesByRarPath.put(entry.getPath().replace('/', '\\'), entry);
+            }
+        }
+
+        final RarFile rarFile = this.rarFile;
+        return startBulkExtraction(sortedEntries, extraction -> rarFile.extractEntries(entriesByRarPath, extraction));
+    }
 }
@@ -21,9 +21,14 @@ import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.AbstractROArchiveFile;
+import com.mucommander.commons.file.ArchiveEntry;
+import com.mucommander.commons.file.BulkEntryExtraction;
+import com.mucommander.commons.io.SinkOutputStream;
 
 import java.io.*;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * 
@@ -63,24 +68,17 @@ public class RarFile {
             return null;
         }
         //return archive.getInputStream(header);
-        PipedInputStream in = new PipedInputStream('耀');
-        final PipedOutputStream out = new PipedOutputStream(in);
-        (new Thread(() -> {
+        // The entry is decoded in the background into a bounded pipe
+        final Archive archive = this.archive;
+        return AbstractROArchiveFile.getPipedEntryInputStream(out -> {
             try {
                 archive.extractFile(header, out);
             } catch (RarException e) {
-                e.printStackTrace();
+                throw new IOException(e);
             } finally {
-                try {
-                    out.close();
-                    archive.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                archive.close();
             }
-
-        })).start();
-        return in;
+        });
 
 
 
@@ -115,6 +113,51 @@ public class RarFile {
     }
 
 
+    /**
+     * Extracts the given entries in the order of the RAR file, using a new junrar <code>Archive</code> so that
+     * extraction doesn't interfere with this instance. If the archive is solid, the entries that precede an entry to
+     * extract are decoded and discarded, as the decoding of an entry depends on those before it.
+     *
+     * @param entries the entries to extract, keyed by their path within the RAR file
+     * @param extraction the extraction to write the entries to
+     * @throws IOException if an error occurred while reading the RAR file
+     */
+    void extractEntries(Map<String, ArchiveEntry> entries, BulkEntryExtraction extraction) throws IOException {
+        Archive archive;
+        try {
+            archive = new Archive(new FileInputStream(file.getPath()));
+        } catch (RarException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            boolean solid = archive.getMainHeader().isSolid();
+            int nbLeft = entries.size();
+            for (FileHeader header : archive.getFileHeaders()) {
+                if (nbLeft == 0) {
+                    break;
+                }
+                if (header.isDirectory()) {
+                    continue;
+                }
+
+                String fileName = header.getFileNameW().isEmpty() ? header.getFileNameString() : header.getFileNameW();
+                ArchiveEntry entry = entries.get(fileName);
+                if (entry != null) {
+                    archive.extractFile(header, extraction.openEntry(entry));
+                    nbLeft--;
+                } else if (solid) {
+                    archive.extractFile(header, new SinkOutputStream());
+                }
+            }
+        } catch (RarException e) {
+            throw new IOException(e);
+        } finally {
+            archive.close();
+        }
+    }
+
+
     private FileHeader findFileHeader(String path) {
         for (FileHeader h : archive.getFileHeaders()) {
             String fileName = h.getFileNameW().isEmpty() ? h.getFileNameString() : h.getFileNameW();
@@ -1,6 +1,7 @@
 package com.mucommander.commons.file.impl.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import com.mucommander.commons.runtime.JavaVersion;
 import org.jets3t.service.Constants;
@@ -10,7 +11,10 @@ import org.jets3t.service.S3ServiceException;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Super class of {@link S3Root}, {@link S3Bucket} and {@link S3Object}.
@@ -54,58 +58,71 @@ public abstract class S3File extends ProtocolFile {
     }
     
     protected AbstractFile[] listObjects(String bucketName, String prefix, S3File parent) throws IOException {
-        try {
-            S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
-            org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
-            String[] commonPrefixes = chunk.getCommonPrefixes();
+        List<AbstractFile> children = new ArrayList<>();
+        listObjects(bucketName, prefix, parent, null, files -> {
+            Collections.addAll(children, files);
+            return true;
+        });
 
-            if (objects.length == 0 && !prefix.isEmpty()) {
-                // This happens only when the directory does not exist
-                throw new IOException();
-            }
+        return children.toArray(new AbstractFile[children.size()]);
+    }
 
-            AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
-            int i = 0;
-            String objectKey;
+    /**
+     * Lists the objects and common prefixes that start with the given prefix, one chunk of
+     * {@link Constants#DEFAULT_OBJECT_LIST_CHUNK_SIZE} keys at a time, and passes them to the listener as the chunks
+     * are received.
+     */
+    protected void listObjects(String bucketName, String prefix, S3File parent, FileFilter filter, ListingListener listener) throws IOException {
+        try {
+            ListingBatcher batcher = new ListingBatcher(filter, listener);
+            String priorLastKey = null;
+            boolean firstChunk = true;
+            do {
+                S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, priorLastKey, false);
+                org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
+                String[] commonPrefixes = chunk.getCommonPrefixes();
+
+                if (firstChunk && objects.length == 0 && !prefix.isEmpty()) {
+                    // This happens only when the directory does not exist
+                    throw new IOException();
+                }
+                firstChunk = false;
 
-            for(org.jets3t.service.model.S3Object object : objects) {
-                // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
-                    continue;
+                FileURL childURL;
+                String objectKey;
 
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
+                for(org.jets3t.service.model.S3Object object : objects) {
+                    // Discard the object corresponding to the prefix itself
+                    objectKey = object.getKey();
+                    if(objectKey.equals(prefix))
+                        continue;
 
-                children[i] = FileFactory.getFile(childURL, parent, service, object);
-                i++;
-            }
+                    childURL = (FileURL)fileURL.clone();
+                    childURL.setPath(bucketName + "/" + objectKey);
 
-            org.jets3t.service.model.S3Object directoryObject;
-            for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
-                i++;
-            }
+                    if(!batcher.add(FileFactory.getFile(childURL, parent, service, object)))
+                        return;
+                }
 
-            // Trim the array if an object was discarded.
-            // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
-            // to know in advance whether the prefix will appear in the results or not.
-            if(i<children.length) {
-                AbstractFile[] childrenTrimmed = new AbstractFile[i];
-                System.arraycopy(children, 0, childrenTrimmed, 0, i);
+                org.jets3t.service.model.S3Object directoryObject;
+                for(String commonPrefix : commonPrefixes) {
+                    childURL = (FileURL)fileURL.clone();
+                    childURL.setPath(bucketName + "/" + commonPrefix);
+
+                    directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+                    // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+                    directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
+                    directoryObject.setContentLength(0);
+                    if(!batcher.add(FileFactory.getFile(childURL, parent, service, directoryObject)))
+                        return;
+                }
 
-                return childrenTrimmed;
+                // The key to resume listing from, null once the last chunk has been received
+                priorLastKey = chunk.getPriorLastKey();
             }
+            while(priorLastKey != null);
 
-            return children;
+            batcher.finish();
         }
         catch(S3ServiceException e) {
             throw getIOException(e);
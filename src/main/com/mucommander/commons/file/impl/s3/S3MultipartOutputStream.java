@@ -0,0 +1,386 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes an S3 object with a multipart upload, several parts being uploaded in parallel so that throughput isn't
+ * limited to what a single connection achieves.
+ *
+ * <p>Bytes are gathered in a part buffer, which is handed to an uploader thread as soon as it is full. Memory usage is
+ * bounded: at most one buffer more than there are uploader threads is allocated, writing waits for a buffer to be
+ * released when they are all in use. A part that fails to upload is retried a few times, after a delay that doubles
+ * with each attempt, before the whole upload fails.</p>
+ *
+ * <p>The upload is initiated when the first part is full, objects smaller than one part are uploaded with a single
+ * request when the stream is closed. The upload is completed by {@link #close()}, and aborted if any part, or any
+ * request, failed. {@link #abort()} aborts the upload, to be called instead of {@link #close()} when the data written
+ * to the stream is incomplete.</p>
+ *
+ * <p>This stream is not thread-safe: it must be written to by one thread at a time.</p>
+ */
+class S3MultipartOutputStream extends OutputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+    /** Maximum number of parts of a multipart upload */
+    final static int MAX_PARTS = 10000;
+
+    /** Minimum size of a part of a multipart upload, other than the last one */
+    final static int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /** When the length of the object is unknown, the part size doubles every this many parts */
+    final static int PARTS_PER_SIZE_STEP = 2000;
+
+    /** Delay before the first retry of a part, in milliseconds */
+    final static long RETRY_DELAY = 500;
+
+    private final S3MultipartService service;
+    private final String bucketName;
+    private final String objectKey;
+    private final int nbThreads;
+    private final int maxAttempts;
+
+    /** Size of the next parts */
+    private int partSize;
+
+    /** <code>true</code> if the part size grows, for objects of unknown length */
+    private final boolean growPartSize;
+
+    /** Part being written, <code>null</code> until a byte is written to it */
+    private byte buffer[];
+
+    /** Number of bytes in {@link #buffer} */
+    private int bufferLength;
+
+    /** Released part buffers, which are also the lock the writer waits on for a buffer */
+    private final Deque<byte[]> freeBuffers = new ArrayDeque<>();
+
+    /** Number of part buffers allocated */
+    private int nbBuffers;
+
+    /** Maximum number of part buffers allocated */
+    private final int maxBuffers;
+
+    /** Id of the multipart upload, <code>null</code> until it is initiated */
+    private String uploadId;
+
+    private ExecutorService executor;
+
+    /** ETags of the parts submitted so far, <code>null</code> for those not uploaded yet */
+    private final List<String> etags = new ArrayList<>();
+
+    /** The first error that occurred, <code>null</code> if none */
+    private volatile IOException failure;
+
+    /** Number of bytes written */
+    private long length;
+
+    private boolean closed;
+
+
+    /**
+     * Creates a new stream that uploads an object.
+     *
+     * @param service the service the requests are sent with
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param expectedLength length of the object if known in advance, <code>-1</code> otherwise
+     * @param partSize size of the parts, which is increased if needed so that the object fits in {@link #MAX_PARTS}
+     * parts
+     * @param nbThreads number of parts uploaded in parallel
+     * @param maxAttempts number of times a part is sent before the upload fails
+     */
+    S3MultipartOutputStream(S3MultipartService service, String bucketName, String objectKey, long expectedLength,
+                            int partSize, int nbThreads, int maxAttempts) {
+        this.service = service;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.nbThreads = Math.max(1, nbThreads);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxBuffers = this.nbThreads + 1;
+        this.growPartSize = expectedLength < 0;
+        this.partSize = growPartSize ? partSize : (int)Math.max(partSize, (expectedLength + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    /**
+     * Returns a part buffer of at least the given size, waiting for one to be released if the maximum number of buffers
+     * is in use.
+     */
+    private byte[] takeBuffer(int size) throws IOException {
+        synchronized (freeBuffers) {
+            while (true) {
+                checkFailure();
+
+                byte freeBuffer[] = freeBuffers.poll();
+                if (freeBuffer != null) {
+                    if (freeBuffer.length >= size) {
+                        return freeBuffer;
+                    }
+                    // The part size has grown, let the buffer be garbage collected
+                    nbBuffers--;
+                } else if (nbBuffers < maxBuffers) {
+                    nbBuffers++;
+                    return new byte[size];
+                } else {
+                    try {
+                        freeBuffers.wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+    }
+
+    private void releaseBuffer(byte buffer[]) {
+        synchronized (freeBuffers) {
+            freeBuffers.add(buffer);
+            freeBuffers.notifyAll();
+        }
+    }
+
+    private void setFailure(IOException e) {
+        synchronized (freeBuffers) {
+            if (failure == null) {
+                failure = e;
+            }
+            // Wake up the writer if it is waiting for a buffer
+            freeBuffers.notifyAll();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Hands the current part buffer to an uploader thread, after initiating the upload if this is the first part.
+     */
+    private void submitPart() throws IOException {
+        if (uploadId == null) {
+            uploadId = service.initiateUpload(bucketName, objectKey);
+            executor = Executors.newFixedThreadPool(nbThreads, r -> {
+                Thread thread = new Thread(r, "S3 part uploader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        int partNumber;
+        synchronized (etags) {
+            if (etags.size() == MAX_PARTS) {
+                throw new IOException("Object exceeds " + MAX_PARTS + " parts");
+            }
+            etags.add(null);
+            partNumber = etags.size();
+        }
+
+        byte data[] = buffer;
+        int dataLength = bufferLength;
+        buffer = null;
+        bufferLength = 0;
+        executor.execute(() -> uploadPart(partNumber, data, dataLength));
+
+        if (growPartSize && partNumber % PARTS_PER_SIZE_STEP == 0) {
+            partSize *= 2;
+        }
+    }
+
+    /**
+     * Uploads a part, retrying until it succeeds or {@link #maxAttempts} is reached, then releases its buffer.
+     * Runs on an uploader thread.
+     */
+    private void uploadPart(int partNumber, byte data[], int dataLength) {
+        try {
+            // Give up on the remaining parts as soon as the upload has failed
+            for (int attempt = 1; failure == null; attempt++) {
+                try {
+                    String etag = service.uploadPart(bucketName, objectKey, uploadId, partNumber, data, dataLength);
+                    synchronized (etags) {
+                        etags.set(partNumber - 1, etag);
+                    }
+                    return;
+                } catch (IOException e) {
+                    if (attempt >= maxAttempts) {
+                        setFailure(e);
+                        return;
+                    }
+                    LOGGER.info("Failed to upload part " + partNumber + " of " + objectKey + ", attempt " + attempt, e);
+                }
+
+                try {
+                    Thread.sleep(RETRY_DELAY << (attempt - 1));
+                } catch (InterruptedException e) {
+                    setFailure(new InterruptedIOException());
+                    return;
+                }
+            }
+        } finally {
+            releaseBuffer(data);
+        }
+    }
+
+    /**
+     * Waits for the uploader threads to finish the parts they have been handed.
+     */
+    private void awaitParts() throws IOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.debug("Waiting for the parts of {} to be uploaded", objectKey);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Aborts the upload: the parts being uploaded are interrupted and those already uploaded are discarded, so that
+     * the object isn't created or replaced. Errors are logged rather than thrown as this is usually called after
+     * another error. This method has no effect if the stream has already been closed.
+     */
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        setFailure(new IOException("Upload aborted"));
+        if (uploadId == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        try {
+            // Parts that are being uploaded when the upload is aborted may still be stored
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            service.abortUpload(bucketName, objectKey, uploadId);
+        } catch (IOException | InterruptedException e) {
+            LOGGER.info("Failed to abort the upload of " + objectKey, e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to this stream.
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of part buffers that have been allocated, and not garbage collected.
+     */
+    int getNbBuffers() {
+        synchronized (freeBuffers) {
+            return nbBuffers;
+        }
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        checkOpen();
+        try {
+            while (len > 0) {
+                if (buffer == null) {
+                    buffer = takeBuffer(partSize);
+                }
+                int nbBytes = Math.min(len, partSize - bufferLength);
+                System.arraycopy(b, off, buffer, bufferLength, nbBytes);
+                bufferLength += nbBytes;
+                length += nbBytes;
+                off += nbBytes;
+                len -= nbBytes;
+
+                if (bufferLength == partSize) {
+                    submitPart();
+                }
+            }
+        } catch (IOException e) {
+            // Make sure that the object isn't created with what has been written so far
+            setFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the remaining bytes, waits for all parts to be uploaded and completes the upload. If anything failed,
+     * the upload is aborted and the error thrown.
+     *
+     * @throws IOException if the object could not be uploaded
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            checkFailure();
+            if (uploadId == null) {
+                // The object fits in a single part
+                service.putObject(bucketName, objectKey, buffer == null ? new byte[0] : buffer, bufferLength);
+                closed = true;
+                return;
+            }
+
+            if (bufferLength > 0) {
+                submitPart();
+            }
+            awaitParts();
+            checkFailure();
+
+            service.completeUpload(bucketName, objectKey, uploadId, etags);
+            closed = true;
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+}
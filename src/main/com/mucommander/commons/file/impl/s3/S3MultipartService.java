@@ -0,0 +1,89 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The requests of the S3 multipart upload API used by {@link S3MultipartOutputStream}: an upload is initiated, its
+ * parts are uploaded independently of each other, in any order and possibly in parallel, and the upload is then
+ * either completed, which assembles the object from its parts, or aborted, which discards them.
+ *
+ * <p>Implementations must be safe for use by several threads at once.</p>
+ */
+interface S3MultipartService {
+
+    /**
+     * Uploads a whole object with a single request, for objects that are too small to be worth a multipart upload.
+     *
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param data buffer containing the object's data
+     * @param length number of bytes of <code>data</code> to upload
+     * @throws IOException if the object could not be uploaded
+     */
+    void putObject(String bucketName, String objectKey, byte data[], int length) throws IOException;
+
+    /**
+     * Initiates a multipart upload and returns its id.
+     *
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @return the id of the upload
+     * @throws IOException if the upload could not be initiated
+     */
+    String initiateUpload(String bucketName, String objectKey) throws IOException;
+
+    /**
+     * Uploads a part of a multipart upload and returns its ETag. Uploading a part with the number of a part that has
+     * already been uploaded replaces it.
+     *
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param uploadId id of the upload
+     * @param partNumber number of the part, from 1 to 10000
+     * @param data buffer containing the part's data
+     * @param length number of bytes of <code>data</code> to upload
+     * @return the ETag of the part
+     * @throws IOException if the part could not be uploaded
+     */
+    String uploadPart(String bucketName, String objectKey, String uploadId, int partNumber, byte data[], int length) throws IOException;
+
+    /**
+     * Completes a multipart upload, assembling the object from its parts in the order of their number.
+     *
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param uploadId id of the upload
+     * @param etags ETags of the parts, the ETag of part <code>n</code> at index <code>n-1</code>
+     * @throws IOException if the upload could not be completed
+     */
+    void completeUpload(String bucketName, String objectKey, String uploadId, List<String> etags) throws IOException;
+
+    /**
+     * Aborts a multipart upload, discarding the parts that have been uploaded.
+     *
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param uploadId id of the upload
+     * @throws IOException if the upload could not be aborted
+     */
+    void abortUpload(String bucketName, String objectKey, String uploadId) throws IOException;
+}
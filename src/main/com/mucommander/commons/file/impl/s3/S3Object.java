@@ -1,6 +1,7 @@
 package com.mucommander.commons.file.impl.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.RandomAccessInputStream;
@@ -29,6 +30,15 @@ public class S3Object extends S3File {
     /** Maximum size of an S3 object (5GB) */
     private final static long MAX_OBJECT_SIZE = 5368709120l;
 
+    /** Number of times a part of a multipart upload is sent before the upload fails */
+    private final static int MULTIPART_MAX_ATTEMPTS = 3;
+
+    /** Size of the parts of multipart uploads */
+    private static int multipartPartSize = 16 * 1024 * 1024;
+
+    /** Number of parts uploaded in parallel */
+    private static int multipartUploadThreads = 4;
+
     // TODO: add support for ACL ? (would cost an extra request per object)
     /** Default permissions for S3 objects */
     private final static FilePermissions DEFAULT_PERMISSIONS = new SimpleFilePermissions(384);   // rw-------
@@ -48,6 +58,26 @@ public class S3Object extends S3File {
         atts = new S3ObjectFileAttributes(object);
     }
 
+    /**
+     * Sets the size of the parts of the objects that are uploaded in parts. Objects whose length is known and not
+     * larger than this size are uploaded with a single request. The larger the parts, the fewer the requests but the
+     * more memory each upload uses: up to <code>size * (threads + 1)</code> bytes.
+     *
+     * @param size size of the parts in bytes, 16 MB by default and at least 5 MB
+     */
+    public static void setMultipartPartSize(int size) {
+        multipartPartSize = Math.max(S3MultipartOutputStream.MIN_PART_SIZE, size);
+    }
+
+    /**
+     * Sets the number of parts of an object that are uploaded in parallel.
+     *
+     * @param nbThreads number of parts uploaded in parallel, 4 by default
+     */
+    public static void setMultipartUploadThreads(int nbThreads) {
+        multipartUploadThreads = Math.max(1, nbThreads);
+    }
+
     private String getObjectKey() {
         String urlPath = fileURL.getPath();
         // Strip out the bucket name from the path
@@ -94,6 +124,31 @@ public class S3Object extends S3File {
     }
 
 
+    /**
+     * Returns a stream that uploads this object in parts, and updates the local file attributes once the upload has
+     * been completed.
+     *
+     * @param length length of the object if known, <code>-1</code> otherwise
+     * @return a stream that uploads this object in parts
+     */
+    private S3MultipartOutputStream getMultipartOutputStream(long length) {
+        return new S3MultipartOutputStream(new S3RestMultipartService(service), bucketName, getObjectKey(false), length,
+                multipartPartSize, multipartUploadThreads, MULTIPART_MAX_ATTEMPTS) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+
+                atts.setExists(true);
+                atts.setDirectory(false);
+                atts.setSize(getLength());
+                atts.setDate(System.currentTimeMillis());
+                atts.setPermissions(DEFAULT_PERMISSIONS);
+                atts.updateExpirationDate();
+            }
+        };
+    }
+
+
     ///////////////////////////
     // S3File implementation //
     ///////////////////////////
@@ -123,6 +178,11 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        listObjects(bucketName, getObjectKey(true), this, filter, listener);
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
@@ -317,53 +377,38 @@ public class S3Object extends S3File {
 
         // TODO: compute md5 ?
 
-        // If the length is known, we can upload the object directly without having to go through the tedious process
-        // of copying the stream to a temporary file.
-        if(length>=0) {
+        // If the object fits in a single part, upload it directly with a single PUT request
+        if(length>=0 && length<=multipartPartSize) {
             putObject(in, length);
+            return;
         }
-        else {
-            // Copy the stream to a temporary file so that we can know the object's length, which has to be declared
-            // in the PUT request's headers (that is before the transfer is started).
-            final AbstractFile tempFile;
-            final OutputStream tempOut;
+
+        // Upload larger objects and objects whose length is unknown in parts. The length, which has to be declared
+        // in the PUT request's headers, only needs to be known for each part.
+        S3MultipartOutputStream out = getMultipartOutputStream(length);
+        boolean completed = false;
+        try {
+            StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
             try {
-                tempFile = FileFactory.getTemporaryFile(false);
-                tempOut = tempFile.getOutputStream();
-            } catch (IOException e) {
-                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+                out.close();
+                completed = true;
+            } catch(IOException e) {
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+        }
+        finally {
+            // Do not create the object with the part of the stream that has been copied, and do not leave the
+            // parts uploaded so far stored (and billed), whatever the exception that interrupted the copy
+            if (!completed) {
+                out.abort();
             }
 
+            // Close the InputStream, no matter what
             try {
-                // Copy the stream to the temporary file
-                try {
-                    StreamUtils.copyStream(in, tempOut, IO_BUFFER_SIZE);
-                }
-                finally {
-                    // Close the stream even if copyStream() threw an IOException
-                    try {
-                        tempOut.close();
-                    } catch(IOException e) {
-                        // Do not re-throw the exception to prevent swallowing the exception thrown in the try block
-                    }
-                }
-
-                InputStream tempIn;
-                try {
-                    tempIn = tempFile.getInputStream();
-                } catch(IOException e) {
-                    throw new FileTransferException(FileTransferException.OPENING_SOURCE);
-                }
-
-                putObject(tempIn, tempFile.getSize());
+                in.close();
             }
-            finally {
-                // Delete the temporary file, no matter what.
-                try {
-                    tempFile.delete();
-                } catch(IOException e) {
-                    // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-                }
+            catch(IOException e) {
+                // Do not re-throw the exception to prevent the exception thrown by the copy from being replaced
             }
         }
     }
@@ -0,0 +1,261 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.security.AWSCredentials;
+import org.jets3t.service.utils.RestUtils;
+import org.jets3t.service.utils.ServiceUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link S3MultipartService} implementation that sends REST requests to the endpoint of a JetS3t {@link S3Service},
+ * with the service's credentials and properties.
+ *
+ * <p>The version of JetS3t that muCommander uses predates the multipart upload API: its request signer leaves out the
+ * <code>uploads</code>, <code>uploadId</code> and <code>partNumber</code> sub-resources, and it cannot send
+ * <code>POST</code> requests. The requests are therefore signed and sent by this class, using JetS3t for the
+ * signature algorithm only.</p>
+ */
+class S3RestMultipartService implements S3MultipartService {
+
+    private final static String DEFAULT_ENDPOINT = "s3.amazonaws.com";
+
+    private final static Pattern UPLOAD_ID_PATTERN = Pattern.compile("<UploadId>(.*?)</UploadId>", Pattern.DOTALL);
+    private final static Pattern ERROR_CODE_PATTERN = Pattern.compile("<Error>.*?<Code>(.*?)</Code>", Pattern.DOTALL);
+    private final static Pattern ERROR_MESSAGE_PATTERN = Pattern.compile("<Message>(.*?)</Message>", Pattern.DOTALL);
+
+    private final AWSCredentials credentials;
+    private final String endpoint;
+    private final int port;
+    private final boolean https;
+    /** <code>true</code> if buckets whose name is a valid DNS name are addressed with a virtual host */
+    private final boolean dnsBuckets;
+    /** Difference between the time of the S3 server and the local time, in milliseconds */
+    private final long timeOffset;
+    /** Connection and read timeout, in milliseconds */
+    private final int timeout;
+
+
+    /**
+     * Creates a new service that sends requests to the endpoint of the given JetS3t service.
+     *
+     * @param service the service whose credentials, properties and time offset are used
+     */
+    S3RestMultipartService(S3Service service) {
+        this(service.getAWSCredentials(), service.getJetS3tProperties(),
+                service.getCurrentTimeWithOffset().getTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a new service that sends requests to the endpoint defined by the given JetS3t properties.
+     *
+     * @param credentials credentials the requests are signed with
+     * @param properties JetS3t properties defining the endpoint
+     * @param timeOffset difference between the time of the S3 server and the local time, in milliseconds
+     */
+    S3RestMultipartService(AWSCredentials credentials, Jets3tProperties properties, long timeOffset) {
+        this.credentials = credentials;
+        this.timeOffset = timeOffset;
+        https = properties.getBoolProperty("s3service.https-only", true);
+        endpoint = properties.getStringProperty("s3service.s3-endpoint", DEFAULT_ENDPOINT);
+        port = properties.getIntProperty(https ? "s3service.s3-endpoint-https-port" : "s3service.s3-endpoint-http-port", https ? 443 : 80);
+        dnsBuckets = !properties.getBoolProperty("s3service.disable-dns-buckets", false);
+        timeout = properties.getIntProperty("httpclient.socket-timeout-ms", 60000);
+    }
+
+    /**
+     * Sends a signed request and returns the connection, once its response has been received.
+     *
+     * @param method HTTP method
+     * @param bucketName name of the bucket
+     * @param objectKey key of the object
+     * @param subresource sub-resource that the request addresses, as it is signed, <code>null</code> for none
+     * @param query URL-encoded query string, <code>null</code> for none
+     * @param contentType content type of the body, <code>null</code> if there is no body
+     * @param body buffer containing the body of the request, <code>null</code> for none
+     * @param length number of bytes of <code>body</code> to send
+     * @return the connection, whose response has a 2xx status code
+     * @throws IOException if the request could not be sent or if it failed
+     */
+    private HttpURLConnection request(String method, String bucketName, String objectKey, String subresource, String query,
+                                      String contentType, byte body[], int length) throws IOException {
+        String encodedKey;
+        String date = ServiceUtils.formatRfc822Date(new Date(System.currentTimeMillis() + timeOffset));
+        String contentMd5 = body == null ? "" : getContentMd5(body, length);
+        String signature;
+        try {
+            encodedKey = RestUtils.encodeUrlPath(objectKey, "/");
+            String resource = "/" + bucketName + "/" + encodedKey + (subresource == null ? "" : "?" + subresource);
+            signature = ServiceUtils.signWithHmacSha1(credentials.getSecretKey(),
+                    method + "\n" + contentMd5 + "\n" + (contentType == null ? "" : contentType) + "\n" + date + "\n" + resource);
+        } catch (S3ServiceException e) {
+            throw new IOException(e);
+        }
+
+        String path = "/" + encodedKey + (query == null ? "" : "?" + query);
+        String host = endpoint;
+        if (dnsBuckets && S3Service.isBucketNameValidDNSName(bucketName)) {
+            host = bucketName + "." + endpoint;
+        } else {
+            path = "/" + bucketName + path;
+        }
+
+        HttpURLConnection conn = (HttpURLConnection)new URL(https ? "https" : "http", host, port, path).openConnection();
+        conn.setRequestMethod(method);
+        conn.setUseCaches(false);
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        conn.setRequestProperty("Date", date);
+        conn.setRequestProperty("Authorization", "AWS " + credentials.getAccessKey() + ":" + signature);
+        if (body != null) {
+            conn.setRequestProperty("Content-Type", contentType);
+            conn.setRequestProperty("Content-MD5", contentMd5);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body, 0, length);
+            }
+        }
+
+        int status = conn.getResponseCode();
+        if (status / 100 != 2) {
+            String response = readResponse(conn.getErrorStream());
+            throw getException(method, status, response);
+        }
+        return conn;
+    }
+
+    private static String getContentMd5(byte data[], int length) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, 0, length);
+            return ServiceUtils.toBase64(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads a response body fully, so that the connection can be reused, and closes the stream.
+     *
+     * @param in the response body, may be <code>null</code>
+     * @return the response body, an empty string if <code>in</code> is <code>null</code>
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte buffer[] = new byte[4096];
+            int nbRead;
+            while ((nbRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, nbRead);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static IOException getException(String method, int status, String response) {
+        Matcher code = ERROR_CODE_PATTERN.matcher(response);
+        Matcher message = ERROR_MESSAGE_PATTERN.matcher(response);
+        return new IOException(method + " request failed with status " + status
+                + (code.find() ? ": " + code.group(1) : "")
+                + (message.find() ? " - " + message.group(1) : ""));
+    }
+
+    private static String encodeQueryValue(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+
+    ///////////////////////////////////////
+    // S3MultipartService implementation //
+    ///////////////////////////////////////
+
+    public void putObject(String bucketName, String objectKey, byte data[], int length) throws IOException {
+        readResponse(request("PUT", bucketName, objectKey, null, null, "application/octet-stream", data, length).getInputStream());
+    }
+
+    public String initiateUpload(String bucketName, String objectKey) throws IOException {
+        String response = readResponse(request("POST", bucketName, objectKey, "uploads", "uploads",
+                "application/octet-stream", new byte[0], 0).getInputStream());
+
+        Matcher matcher = UPLOAD_ID_PATTERN.matcher(response);
+        if (!matcher.find()) {
+            throw new IOException("No upload id in response: " + response);
+        }
+        return matcher.group(1);
+    }
+
+    public String uploadPart(String bucketName, String objectKey, String uploadId, int partNumber, byte data[], int length) throws IOException {
+        HttpURLConnection conn = request("PUT", bucketName, objectKey,
+                "partNumber=" + partNumber + "&uploadId=" + uploadId,
+                "partNumber=" + partNumber + "&uploadId=" + encodeQueryValue(uploadId),
+                "application/octet-stream", data, length);
+        readResponse(conn.getInputStream());
+
+        String etag = conn.getHeaderField("ETag");
+        if (etag == null) {
+            throw new IOException("No ETag for part " + partNumber);
+        }
+        return etag;
+    }
+
+    public void completeUpload(String bucketName, String objectKey, String uploadId, List<String> etags) throws IOException {
+        StringBuilder sb = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            sb.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>").append(etags.get(i)).append("</ETag></Part>");
+        }
+        sb.append("</CompleteMultipartUpload>");
+        byte body[] = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        String response = readResponse(request("POST", bucketName, objectKey, "uploadId=" + uploadId,
+                "uploadId=" + encodeQueryValue(uploadId), "application/xml", body, body.length).getInputStream());
+
+        // The server may report an error after having sent a 200 status, while it was assembling the object
+        if (ERROR_CODE_PATTERN.matcher(response).find()) {
+            throw getException("POST", 200, response);
+        }
+    }
+
+    public void abortUpload(String bucketName, String objectKey, String uploadId) throws IOException {
+        readResponse(request("DELETE", bucketName, objectKey, "uploadId=" + uploadId,
+                "uploadId=" + encodeQueryValue(uploadId), null, null, 0).getInputStream());
+    }
+}
@@ -39,12 +39,15 @@ import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.PropID;
 import net.sf.sevenzipjbinding.SevenZipException;
 import net.sf.sevenzipjbinding.impl.RandomAccessFileInStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Created on 23/05/14.
  * @author Oleg Trifonov
  */
 public class SevenZipArchiveFile extends SevenZipJBindingROArchiveFile {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SevenZipArchiveFile.class);
 
 
     public SevenZipArchiveFile(AbstractFile file, ArchiveFormat sevenZipJBindingFormat, byte[] formatSignature) {
@@ -162,12 +165,14 @@ public class SevenZipArchiveFile extends SevenZipJBindingROArchiveFile {
 //System.out.println("prepare  " + index);
         }
 
-        public void setOperationResult(ExtractOperationResult extractOperationResult) {
+        public void setOperationResult(ExtractOperationResult extractOperationResult) throws SevenZipException {
             if (skipExtraction) {
                 return;
             }
             if (extractOperationResult != ExtractOperationResult.OK) {
-                System.err.println("Extraction error  = " + extractOperationResult);
+                // Reported to the reader of the entry, which must not take the data decoded so far for the whole entry
+                LOGGER.info("Extraction error = " + extractOperationResult);
+                throw new SevenZipException("Extraction error: " + extractOperationResult);
             } else {
 //System.out.println(String.format("%9X | %10s | %s", hash, size, inArchive.getProperty(index, PropID.PATH)));
                 hash = 0;
@@ -20,6 +20,7 @@ package com.mucommander.commons.file.impl.sftp;
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.*;
 import com.sshtools.sftp.*;
 import com.sshtools.ssh.SshException;
@@ -31,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Vector;
 
 
 /**
@@ -78,6 +80,12 @@ public class SFTPFile extends ProtocolFile {
     /** Period of time during which file attributes are cached, before being fetched again from the server. */
     private static long attributeCachingPeriod = 60000;
 
+    /** Number of bytes read or written by each SFTP request */
+    private final static int BLOCK_SIZE = 32768;
+
+    /** Maximum number of read or write requests in flight for each stream */
+    private static int maxOutstandingRequests = 64;
+
     /** a SFTPConnectionHandlerFactory instance */
     private final static SFTPConnectionHandlerFactory CONN_HANDLER_FACTORY = new SFTPConnectionHandlerFactory();
 
@@ -124,6 +132,18 @@ public class SFTPFile extends ProtocolFile {
         attributeCachingPeriod = period;
     }
 
+    /**
+     * Sets the maximum number of read or write requests that a stream keeps in flight. The higher this value, the
+     * higher the throughput on links with a long round-trip time, up to <code>value * 32 KB</code> per round trip, but
+     * also the more data is requested ahead of what has been read. A value of <code>1</code> waits for each request
+     * to complete before sending the next one.
+     *
+     * @param value maximum number of requests in flight for each stream, 64 by default
+     */
+    public static void setMaxOutstandingRequests(int value) {
+        maxOutstandingRequests = Math.max(1, value);
+    }
+
     private OutputStream getOutputStream(boolean append) throws IOException {
         // Retrieve a ConnectionHandler and lock it
         final SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(CONN_HANDLER_FACTORY, fileURL, true);
@@ -153,17 +173,8 @@ public class SFTPFile extends ProtocolFile {
                 fileAttributes.setSize(0);
             }
 
-            // Custom SftpFileOutputStream constructor, not part of the official J2SSH API
-            OutputStream os = new SftpFileOutputStreamEx(sftpFile, append ? getSize() : 0L) {
-                @Override
-                public void close() throws IOException {
-                    // SftpFileOutputStream.close() closes the open SftpFile file handle
-                    super.close();
-
-                    // Release the lock on the ConnectionHandler
-                    connHandler.releaseLock();
-                }
-            };
+            OutputStream os = new SFTPPipelinedOutputStream(new SFTPFileRequestChannel(connHandler, sftpFile),
+                    append ? getSize() : 0L, BLOCK_SIZE, maxOutstandingRequests);
             ByteCounter byteCounter = new ByteCounter() {
                 @Override
                 public synchronized void add(long nbBytes) {
@@ -364,7 +375,7 @@ public class SFTPFile extends ProtocolFile {
 
     @Override
     public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
-        return new SFTPRandomAccessInputStream();
+        return getPipelinedInputStream(0);
     }
 
     @Override
@@ -466,6 +477,58 @@ public class SFTPFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Overridden to pass the children to the listener as the server returns them, which it does a few dozens at a
+     * time, rather than once the whole folder has been listed.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        // Retrieve a ConnectionHandler and lock it
+        SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(CONN_HANDLER_FACTORY, fileURL, true);
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            ListingBatcher batcher = new ListingBatcher(filter, listener);
+            String parentPath = fileURL.getPath();
+            if (!parentPath.endsWith(SEPARATOR)) {
+                parentPath += SEPARATOR;
+            }
+
+            SftpSubsystemChannel channel = connHandler.sftpClient.getSubsystemChannel();
+            SftpFile dir = channel.openDirectory(absPath);
+            try {
+                Vector<SftpFile> files = new Vector<>();
+                // Each call reads the next entries returned by the server, -1 is returned at the end of the folder
+                while (channel.listChildren(dir, files) > -1) {
+                    for (SftpFile file : files) {
+                        String filename = file.getFilename();
+                        // Discard '.' and '..' files
+                        if (filename.equals(".") || filename.equals("..")) {
+                            continue;
+                        }
+
+                        FileURL childURL = (FileURL) fileURL.clone();
+                        childURL.setPath(parentPath + filename);
+
+                        if (!batcher.add(FileFactory.getFile(childURL, this, new SFTPFileAttributes(childURL, file.getAttributes())))) {
+                            return;
+                        }
+                    }
+                    files.clear();
+                }
+            } finally {
+                dir.close();
+            }
+            batcher.finish();
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+    }
+
 	
     @Override
     public void mkdir() throws IOException {
@@ -647,6 +710,14 @@ public class SFTPFile extends ProtocolFile {
 
     @Override
     public InputStream getInputStream(long offset) throws IOException {
+        return getPipelinedInputStream(offset);
+    }
+
+    /**
+     * Opens this file for reading, starting at the given offset. The connection handler remains locked until the
+     * returned stream is closed.
+     */
+    private SFTPPipelinedInputStream getPipelinedInputStream(long offset) throws IOException {
         // Retrieve a ConnectionHandler and lock it
         final SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(CONN_HANDLER_FACTORY, fileURL, true);
         try {
@@ -654,19 +725,8 @@ public class SFTPFile extends ProtocolFile {
             connHandler.checkConnection();
 
             SftpFile sftpFile = connHandler.sftpSubsystem.openFile(absPath, SftpSubsystemChannel.OPEN_READ);
-
-            // Custom made constructor, not part of the official J2SSH API
-            return new SftpFileInputStream(sftpFile, offset) {
-
-                    @Override
-                    public void close() throws IOException {
-                        // SftpFileInputStream.close() closes the open SftpFile file handle
-                        super.close();
-                        // Release the lock on the ConnectionHandler
-                        connHandler.releaseLock();
-                }
-
-            };
+            return new SFTPPipelinedInputStream(new SFTPFileRequestChannel(connHandler, sftpFile), getSize(), offset,
+                    BLOCK_SIZE, maxOutstandingRequests);
         } catch(IOException e) {
             // Release the lock on the ConnectionHandler if the InputStream could not be created
             connHandler.releaseLock();
@@ -674,7 +734,8 @@ public class SFTPFile extends ProtocolFile {
             // Re-throw IOException
             throw e;
         } catch (SshException | SftpStatusException e) {
-            e.printStackTrace();
+            // Release the lock on the ConnectionHandler if the InputStream could not be created
+            connHandler.releaseLock();
             throw new IOException(e);
         }
     }
@@ -906,57 +967,6 @@ public class SFTPFile extends ProtocolFile {
     }
 
 
-    /**
-     * SFTPRandomAccessInputStream extends RandomAccessInputStream to provide random read access to an SFTPFile.
-     */
-    private class SFTPRandomAccessInputStream extends RandomAccessInputStream {
-
-        private SftpFileInputStreamEx in;
-
-        private SFTPRandomAccessInputStream() throws IOException {
-            try {
-                final SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(CONN_HANDLER_FACTORY, fileURL, true);
-                    // Makes sure the connection is started, if not starts it
-                    connHandler.checkConnection();
-                SftpFile sftpFile = connHandler.sftpSubsystem.openFile(absPath, SftpSubsystemChannel.OPEN_READ);
-                this.in = new SftpFileInputStreamEx(sftpFile);//SftpFileInputStreamEx)getInputStream();
-            } catch (SftpStatusException | SshException e) {
-                e.printStackTrace();
-                throw new IOException(e);
-            }
-        }
-
-        @Override
-        public int read(byte b[], int off, int len) throws IOException {
-            return in.read(b, off, len);
-        }
-
-        @Override
-        public int read() throws IOException {
-            return in.read();
-        }
-
-        public long getOffset() {
-            // Custom method, not part of the official J2SSH API
-            return in.getPosition();
-        }
-
-        public long getLength() {
-            return getSize();
-        }
-
-        public void seek(long offset) {
-            // Custom method, not part of the official J2SSH API
-            in.setPosition(offset);
-        }
-
-        @Override
-        public void close() throws IOException {
-            in.close();
-        }
-    }
-
-
 //    private class SFTPProcess extends AbstractProcess {
 //
 //        private boolean success;
@@ -0,0 +1,95 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.sftp;
+
+import com.sshtools.sftp.SftpDataResponseReader;
+import com.sshtools.sftp.SftpFile;
+import com.sshtools.sftp.SftpStatusException;
+import com.sshtools.sftp.SftpSubsystemChannel;
+import com.sshtools.ssh.SshException;
+import com.sshtools.util.UnsignedInteger32;
+
+import java.io.IOException;
+
+/**
+ * {@link SFTPRequestChannel} implementation for a file opened with J2SSH. The lock on the connection handler is
+ * released when the channel is closed.
+ */
+class SFTPFileRequestChannel implements SFTPRequestChannel {
+
+    private final SFTPConnectionHandler connHandler;
+    private final SftpSubsystemChannel sftp;
+    private final SftpFile sftpFile;
+    private final byte handle[];
+
+    /**
+     * Creates a new channel for the given file.
+     *
+     * @param connHandler the locked connection handler the file has been opened with
+     * @param sftpFile the open file
+     */
+    SFTPFileRequestChannel(SFTPConnectionHandler connHandler, SftpFile sftpFile) {
+        this.connHandler = connHandler;
+        this.sftp = connHandler.sftpSubsystem;
+        this.sftpFile = sftpFile;
+        this.handle = sftpFile.getHandle();
+    }
+
+    public UnsignedInteger32 postRead(long offset, int length) throws IOException {
+        try {
+            return sftp.postReadRequest(handle, offset, length);
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public int getReadResponse(UnsignedInteger32 requestId, byte buffer[]) throws IOException {
+        try {
+            return SftpDataResponseReader.readData(sftp, requestId, buffer);
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public UnsignedInteger32 postWrite(long offset, byte b[], int off, int len) throws IOException {
+        try {
+            return sftp.postWriteRequest(handle, offset, b, off, len);
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void getWriteResponse(UnsignedInteger32 requestId) throws IOException {
+        try {
+            sftp.getOKRequestStatus(requestId);
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            sftpFile.close();
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.sftp;
+
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.sshtools.util.UnsignedInteger32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Reads an SFTP file with several read requests in flight, so that throughput isn't limited to one block per
+ * round trip to the server.
+ *
+ * <p>The file is requested in blocks of consecutive offsets, and responses are consumed in the order of their offsets
+ * whatever the order they arrive in. The number of outstanding requests starts at {@link #INITIAL_REQUESTS} and
+ * doubles with each block that is read, up to the maximum given to the constructor, so that reading only the
+ * beginning of a file doesn't request much more than needed. After a seek outside of the requested blocks, the
+ * outstanding requests are discarded and the window starts over from the new offset. A block for which the server
+ * returns fewer bytes than requested is completed by requesting the missing bytes again, unless the file's length
+ * has been reached.</p>
+ */
+class SFTPPipelinedInputStream extends RandomAccessInputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SFTPPipelinedInputStream.class);
+
+    /** Number of requests in flight when reading starts or after a seek */
+    static final int INITIAL_REQUESTS = 2;
+
+    private final SFTPRequestChannel channel;
+
+    /** Size of each read request */
+    private final int blockSize;
+
+    /** Maximum number of requests in flight */
+    private final int maxRequests;
+
+    /** Length of the file, as known when the stream was opened */
+    private final long length;
+
+    /** Requests in flight, in the order of their offsets. The first one contains {@link #position} if any. */
+    private final Deque<ReadRequest> requests = new ArrayDeque<>();
+
+    /** Discarded requests whose responses remain to be read */
+    private final List<ReadRequest> discardedRequests = new ArrayList<>();
+
+    /** Number of requests that can be in flight at this time */
+    private int window = INITIAL_REQUESTS;
+
+    /** Offset of the next block to request */
+    private long nextRequestOffset;
+
+    /** Offset of the next byte to read */
+    private long position;
+
+    /** Offset at which the end of the file was reached, Long.MAX_VALUE if unknown */
+    private long eofOffset = Long.MAX_VALUE;
+
+    /** Contains the last block that was read */
+    private final byte buffer[];
+
+    /** File offset of the first byte of {@link #buffer} */
+    private long bufferOffset;
+
+    /** Number of bytes in {@link #buffer} */
+    private int bufferLength;
+
+    private boolean closed;
+
+
+    /**
+     * Creates a new stream that starts reading at the given offset.
+     *
+     * @param channel the channel of the file to read
+     * @param length length of the file
+     * @param offset offset of the first byte to read
+     * @param blockSize number of bytes requested by each read request
+     * @param maxRequests maximum number of requests in flight
+     */
+    SFTPPipelinedInputStream(SFTPRequestChannel channel, long length, long offset, int blockSize, int maxRequests) {
+        this.channel = channel;
+        this.length = length;
+        this.blockSize = blockSize;
+        this.maxRequests = Math.max(1, maxRequests);
+        this.buffer = new byte[blockSize];
+        this.position = offset;
+        this.nextRequestOffset = offset;
+    }
+
+    /**
+     * Reads the block that contains {@link #position}, returns <code>false</code> if the end of the file has been
+     * reached.
+     */
+    private boolean readBlock() throws IOException {
+        while (position < eofOffset) {
+            skipRequests();
+            postRequests();
+            discardResponses();
+
+            ReadRequest request = requests.poll();
+            if (request == null) {
+                break;
+            }
+            int nbRead = channel.getReadResponse(request.id, buffer);
+            if (nbRead <= 0) {
+                eofOffset = request.offset;
+                discardRequests();
+                break;
+            }
+            if (nbRead < request.length) {
+                // Servers return fewer bytes than requested at the end of the file, don't ask for more if the
+                // file's length is reached
+                if (request.offset + nbRead >= length) {
+                    eofOffset = request.offset + nbRead;
+                }
+                // The requests that follow don't start where this one has ended
+                discardRequests();
+                nextRequestOffset = Math.max(request.offset + nbRead, position);
+            } else {
+                window = Math.min(window * 2, maxRequests);
+            }
+
+            bufferOffset = request.offset;
+            bufferLength = nbRead;
+            if (position < bufferOffset + bufferLength) {
+                return true;
+            }
+        }
+        bufferLength = 0;
+        return false;
+    }
+
+    /**
+     * Discards the requests in flight that precede {@link #position}, or all of them if the position is not one of
+     * theirs, after a seek.
+     */
+    private void skipRequests() {
+        while (!requests.isEmpty() && position >= requests.peek().offset + requests.peek().length) {
+            discardedRequests.add(requests.poll());
+        }
+        ReadRequest first = requests.peek();
+        if (first == null ? nextRequestOffset != position : position < first.offset) {
+            discardRequests();
+        }
+    }
+
+    /**
+     * Posts read requests until {@link #window} requests are in flight. Blocks beyond the file's length are not
+     * requested, except one to find out whether the file has grown.
+     */
+    private void postRequests() throws IOException {
+        while (requests.size() < window && nextRequestOffset < eofOffset && (requests.isEmpty() || nextRequestOffset < length)) {
+            requests.add(new ReadRequest(channel.postRead(nextRequestOffset, blockSize), nextRequestOffset, blockSize));
+            nextRequestOffset += blockSize;
+        }
+    }
+
+    /**
+     * Discards the requests in flight, their responses will be read by {@link #discardResponses()}.
+     */
+    private void discardRequests() {
+        discardedRequests.addAll(requests);
+        requests.clear();
+        nextRequestOffset = position;
+        window = INITIAL_REQUESTS;
+    }
+
+    /**
+     * Reads the responses of the discarded requests, which the channel keeps until they are read.
+     */
+    private void discardResponses() {
+        for (ReadRequest request : discardedRequests) {
+            try {
+                channel.getReadResponse(request.id, buffer);
+            } catch (IOException e) {
+                LOGGER.debug("Caught exception while discarding a read response", e);
+            }
+        }
+        discardedRequests.clear();
+    }
+
+
+    ////////////////////////////////////////////
+    // RandomAccessInputStream implementation //
+    ////////////////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        byte b[] = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= bufferOffset + bufferLength || position < bufferOffset) {
+            if (!readBlock()) {
+                return -1;
+            }
+        }
+        int bufferPosition = (int)(position - bufferOffset);
+        int nbRead = Math.min(len, bufferLength - bufferPosition);
+        System.arraycopy(buffer, bufferPosition, b, off, nbRead);
+        position += nbRead;
+        return nbRead;
+    }
+
+    public long getOffset() {
+        return position;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void seek(long offset) {
+        // The requests in flight are kept if the new offset is one of theirs, see skipRequests()
+        position = offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        discardRequests();
+        discardResponses();
+        channel.close();
+    }
+
+
+    /**
+     * A read request in flight.
+     */
+    private static class ReadRequest {
+        private final UnsignedInteger32 id;
+        private final long offset;
+        private final int length;
+
+        private ReadRequest(UnsignedInteger32 id, long offset, int length) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.sftp;
+
+import com.sshtools.util.UnsignedInteger32;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes an SFTP file with several write requests in flight, so that throughput isn't limited to one block per
+ * round trip to the server.
+ *
+ * <p>Bytes are gathered in blocks, each block being sent as soon as it is full without waiting for the server to
+ * acknowledge it. Once the maximum number of requests is in flight, writing waits for the oldest request to be
+ * acknowledged. An error returned by the server for a block is therefore thrown by a later call to
+ * {@link #write(byte[], int, int)}, or by {@link #close()} which waits for all requests.</p>
+ */
+class SFTPPipelinedOutputStream extends OutputStream {
+
+    private final SFTPRequestChannel channel;
+
+    /** Maximum number of requests in flight */
+    private final int maxRequests;
+
+    /** Requests in flight, oldest first */
+    private final Deque<UnsignedInteger32> requests = new ArrayDeque<>();
+
+    /** Gathers bytes until a block is full */
+    private final byte buffer[];
+
+    /** Number of bytes in {@link #buffer} */
+    private int bufferLength;
+
+    /** Offset at which the next block is written */
+    private long position;
+
+    private boolean closed;
+
+
+    /**
+     * Creates a new stream that starts writing at the given offset.
+     *
+     * @param channel the channel of the file to write
+     * @param offset offset of the first byte to write
+     * @param blockSize number of bytes sent by each write request
+     * @param maxRequests maximum number of requests in flight
+     */
+    SFTPPipelinedOutputStream(SFTPRequestChannel channel, long offset, int blockSize, int maxRequests) {
+        this.channel = channel;
+        this.position = offset;
+        this.buffer = new byte[blockSize];
+        this.maxRequests = Math.max(1, maxRequests);
+    }
+
+    /**
+     * Sends the given bytes, after waiting for the oldest request if the maximum number of requests is in flight.
+     */
+    private void post(byte b[], int off, int len) throws IOException {
+        while (requests.size() >= maxRequests) {
+            channel.getWriteResponse(requests.poll());
+        }
+        requests.add(channel.postWrite(position, b, off, len));
+        position += len;
+    }
+
+    private void postBuffer() throws IOException {
+        if (bufferLength > 0) {
+            post(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        buffer[bufferLength++] = (byte)b;
+        if (bufferLength == buffer.length) {
+            postBuffer();
+        }
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            int nbBytes;
+            if (bufferLength == 0 && len >= buffer.length) {
+                // Send full blocks directly, the channel copies them
+                nbBytes = buffer.length;
+                post(b, off, nbBytes);
+            } else {
+                nbBytes = Math.min(len, buffer.length - bufferLength);
+                System.arraycopy(b, off, buffer, bufferLength, nbBytes);
+                bufferLength += nbBytes;
+                if (bufferLength == buffer.length) {
+                    postBuffer();
+                }
+            }
+            off += nbBytes;
+            len -= nbBytes;
+        }
+    }
+
+    /**
+     * Sends the bytes that have been written so far, without waiting for the server to acknowledge them.
+     *
+     * @throws IOException if the bytes could not be sent
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        postBuffer();
+    }
+
+    /**
+     * Sends the remaining bytes, waits for all requests to be acknowledged and closes the file handle.
+     *
+     * @throws IOException if some bytes could not be written or if the handle could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        IOException exception = null;
+        try {
+            postBuffer();
+        } catch (IOException e) {
+            exception = e;
+        }
+        // Read all responses, even after an error, so that the channel doesn't keep them
+        while (!requests.isEmpty()) {
+            try {
+                channel.getWriteResponse(requests.poll());
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (exception == null) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
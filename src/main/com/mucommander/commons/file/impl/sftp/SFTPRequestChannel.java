@@ -0,0 +1,78 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.sftp;
+
+import com.sshtools.util.UnsignedInteger32;
+
+import java.io.IOException;
+
+/**
+ * Sends read and write requests on an open SFTP file handle without waiting for their responses, so that several
+ * requests can be in flight at the same time. Responses may be waited for in any order, see
+ * {@link SFTPPipelinedInputStream} and {@link SFTPPipelinedOutputStream}.
+ */
+interface SFTPRequestChannel {
+
+    /**
+     * Posts a request to read <code>length</code> bytes at the given offset.
+     *
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     * @return the id of the request
+     * @throws IOException if the request could not be sent
+     */
+    UnsignedInteger32 postRead(long offset, int length) throws IOException;
+
+    /**
+     * Waits for the response to a read request and copies the data it contains to the given buffer. The server may
+     * return fewer bytes than requested.
+     *
+     * @param requestId the id returned by {@link #postRead(long, int)}
+     * @param buffer the buffer where data is copied, at least as large as the requested length
+     * @return the number of bytes that were read, <code>-1</code> if the requested offset is at the end of the file
+     * @throws IOException if the file could not be read
+     */
+    int getReadResponse(UnsignedInteger32 requestId, byte buffer[]) throws IOException;
+
+    /**
+     * Posts a request to write the given bytes at the given offset. The bytes are copied before this method returns.
+     *
+     * @param offset offset of the first byte to write
+     * @param b the bytes to write
+     * @param off offset of the first byte in <code>b</code>
+     * @param len number of bytes to write
+     * @return the id of the request
+     * @throws IOException if the request could not be sent
+     */
+    UnsignedInteger32 postWrite(long offset, byte b[], int off, int len) throws IOException;
+
+    /**
+     * Waits for the response to a write request.
+     *
+     * @param requestId the id returned by {@link #postWrite(long, byte[], int, int)}
+     * @throws IOException if the bytes could not be written
+     */
+    void getWriteResponse(UnsignedInteger32 requestId) throws IOException;
+
+    /**
+     * Closes the file handle. Responses to outstanding requests must have been read before.
+     *
+     * @throws IOException if the handle could not be closed
+     */
+    void close() throws IOException;
+}
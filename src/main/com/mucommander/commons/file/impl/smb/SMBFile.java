@@ -1,6 +1,7 @@
 package com.mucommander.commons.file.impl.smb;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
@@ -505,6 +506,26 @@ import java.net.MalformedURLException;
         }
     }
 
+    /**
+     * Overridden to pass the children to the listener as the server returns them, rather than once the whole folder
+     * has been listed: jCIFS calls the {@link SMBListingFilter} with each child as soon as it has been received.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        SMBListingFilter listingFilter = new SMBListingFilter(new ListingBatcher(filter, listener));
+        try {
+            file.listFiles(listingFilter);
+        }
+        catch(SmbAuthException e) {
+            throw new AuthException(fileURL, e.getMessage());
+        }
+
+        if(listingFilter.exception != null)
+            throw listingFilter.exception;
+
+        listingFilter.batcher.finish();
+    }
+
     @Override
     public boolean isHidden() {
         try {
@@ -682,4 +703,52 @@ import java.net.MalformedURLException;
             return filter.accept(name);
         }
     }
+
+
+    /**
+     * Creates the children of an SMBFile as jCIFS lists them, and hands them over to a {@link ListingBatcher}.
+     * Children are never accepted, as they are not collected by jCIFS.
+     */
+    private class SMBListingFilter implements jcifs.smb.SmbFileFilter {
+
+        private final ListingBatcher batcher;
+
+        /** The exception thrown while creating a child, <code>null</code> if there was none */
+        private IOException exception;
+
+        private SMBListingFilter(ListingBatcher batcher) {
+            this.batcher = batcher;
+        }
+
+
+        ////////////////////////////////////////////
+        // jicfs.smb.SmbFileFilter implementation //
+        ////////////////////////////////////////////
+
+        public boolean accept(SmbFile smbFile) throws SmbException {
+            // Once the listener has asked to stop or an error occurred, the remaining children are simply ignored
+            if(exception != null || batcher.isStopped())
+                return false;
+
+            // Exclude files that are not file shares / not browsable (printers, named pipes, comm ports)
+            int smbFileType = smbFile.getType();
+            if (smbFileType == SmbFile.TYPE_PRINTER || smbFileType == SmbFile.TYPE_NAMED_PIPE || smbFileType == SmbFile.TYPE_COMM)
+                return false;
+
+            // Note: properties and credentials are cloned for every children's url
+            FileURL childURL = (FileURL) fileURL.clone();
+            childURL.setHost(smbFile.getServer());
+            childURL.setPath(smbFile.getURL().getPath());
+
+            try {
+                // Use SMBFile private constructor to recycle the SmbFile instance
+                batcher.add(FileFactory.getFile(childURL, SMBFile.this, smbFile));
+            }
+            catch(IOException e) {
+                exception = e;
+            }
+
+            return false;
+        }
+    }
 }
@@ -23,12 +23,16 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.tar.provider.TarEntry;
 import com.mucommander.commons.file.impl.tar.provider.TarInputStream;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.gzip.GzipIndex;
+import com.mucommander.commons.io.gzip.IndexedGzipInputStream;
 import com.mucommander.commons.util.StringUtils;
 import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,12 +45,27 @@ import java.util.zip.GZIPInputStream;
  * <p>The actual decompression work is performed by the <code>Apache Ant</code> library under the terms of the
  * Apache Software License.
  *
+ * <p>Large Tgz archives are decompressed with an {@link IndexedGzipInputStream}, which builds a {@link GzipIndex}
+ * while the archive is listed. Entries can then be read by decompressing from the closest checkpoint rather than from
+ * the beginning of the archive. The index is kept for as long as the archive doesn't change, and is stored in the
+ * archive's catalog along with the entries.
+ *
  * @see com.mucommander.commons.file.impl.tar.TarFormatProvider
  * @author Maxence Bernard
  */
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Compressed size from which Tgz archives are indexed. Smaller archives are decompressed from the beginning with
+     * <code>java.util.zip.GZIPInputStream</code>, which is faster than indexing them. */
+    private static final long GZIP_INDEX_THRESHOLD = 8 * 1024 * 1024;
+
+    /** Index of the Tgz archive, <code>null</code> if it hasn't been created yet or if the archive isn't indexed */
+    private GzipIndex gzipIndex;
+
+    /** Date of the archive when {@link #gzipIndex} was created */
+    private long gzipIndexDate;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -68,17 +87,38 @@ public class TarArchiveFile extends AbstractROArchiveFile {
      * or is not implemented.
      */
     private TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
-        InputStream in = file.getInputStream();
-
         String name = getName();
-            // Gzip-compressed file
-        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+        InputStream in;
+        // Gzip-compressed file
+        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz")) {
+            GzipIndex index = getGzipIndex();
+            if (index == null) {
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
-            in = new GZIPInputStream(in);
+                return new TarInputStream(new GZIPInputStream(file.getInputStream()), entryOffset);
+            }
+
+            GzipIndex.Checkpoint checkpoint = entryOffset > 0 ? index.getCheckpoint(entryOffset) : null;
+            if (checkpoint == null) {
+                return new TarInputStream(new IndexedGzipInputStream(file.getInputStream(), index), entryOffset);
+            }
+
+            InputStream compressedIn = file.getInputStream(checkpoint.getCompressedOffset());
+            try {
+                in = new IndexedGzipInputStream(compressedIn, index, checkpoint);
+                // Checkpoints are located at deflate block boundaries, which aren't aligned on TAR records
+                StreamUtils.skipFully(in, entryOffset - checkpoint.getUncompressedOffset());
+            } catch (IOException e) {
+                compressedIn.close();
+                throw e;
+            }
+            return new TarInputStream(in, 0);
+        }
+
+        in = file.getInputStream();
 
         // Bzip2-compressed file
-        else if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+        if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
             try {
                 // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
                 // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
@@ -103,6 +143,25 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     }
 
 
+    /**
+     * Returns the index of this Tgz archive, creating an empty one if needed, or <code>null</code> if the archive is
+     * too small to be worth indexing. The index is discarded if the archive has changed since it was created.
+     *
+     * @return the index of this Tgz archive, <code>null</code> if the archive isn't indexed
+     */
+    private synchronized GzipIndex getGzipIndex() {
+        long date = file.getLastModifiedDate();
+        if (gzipIndex != null && gzipIndexDate != date) {
+            gzipIndex = null;
+        }
+        if (gzipIndex == null && file.getSize() >= GZIP_INDEX_THRESHOLD) {
+            gzipIndex = new GzipIndex();
+            gzipIndexDate = date;
+        }
+        return gzipIndex;
+    }
+
+
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
     ////////////////////////////////////////
@@ -149,4 +208,55 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
         throw new IOException("Unknown TAR entry: "+entry.getName());
     }
+
+
+    /**
+     * Overridden to return <code>true</code>: listing a TAR archive requires reading (and for tgz/tbz2,
+     * decompressing) the whole archive.
+     */
+    @Override
+    protected boolean isCatalogCacheable() {
+        return true;
+    }
+
+    /**
+     * Overridden to write the entry's offset, which is all {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}
+     * needs to locate the entry.
+     */
+    @Override
+    protected void writeCatalogEntryObject(ArchiveEntry entry, DataOutput out) throws IOException {
+        TarEntry tarEntry = (TarEntry)entry.getEntryObject();
+        out.writeLong(tarEntry == null ? -1 : tarEntry.getOffset());
+    }
+
+    @Override
+    protected void readCatalogEntryObject(ArchiveEntry entry, DataInput in) throws IOException {
+        long offset = in.readLong();
+        if (offset >= 0) {
+            TarEntry tarEntry = new TarEntry(entry.getPath());
+            tarEntry.setOffset(offset);
+            tarEntry.setSize(entry.getSize());
+            entry.setEntryObject(tarEntry);
+        }
+    }
+
+    /**
+     * Overridden to store the Tgz index built while listing the archive, if any.
+     */
+    @Override
+    protected synchronized void writeCatalogData(DataOutput out) throws IOException {
+        boolean hasIndex = gzipIndex != null && gzipIndex.size() > 0 && gzipIndexDate == file.getLastModifiedDate();
+        out.writeBoolean(hasIndex);
+        if (hasIndex) {
+            gzipIndex.write(out);
+        }
+    }
+
+    @Override
+    protected synchronized void readCatalogData(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            gzipIndex = GzipIndex.read(in);
+            gzipIndexDate = file.getLastModifiedDate();
+        }
+    }
 }
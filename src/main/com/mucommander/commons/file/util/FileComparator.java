@@ -4,7 +4,9 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.ui.quicksearch.QuickSearch;
 
 import java.util.Comparator;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 
 /**
@@ -24,6 +26,9 @@ import java.util.regex.Pattern;
  * <li>{@link #PERMISSIONS_CRITERION}: compares file permissions returned by {@link AbstractFile#getPermissions()}
  * </ul>
  *
+ * <p>Large arrays of files are best sorted with {@link #sort(AbstractFile[], int[])}, which retrieves the compared
+ * attributes only once per file rather than once per comparison.</p>
+ *
  * @author Maxence Bernard
  */
 public class FileComparator implements Comparator<AbstractFile> {
@@ -55,6 +60,12 @@ public class FileComparator implements Comparator<AbstractFile> {
     /** Matches filenames that contain a number, like "01 - Do the Joy.mp3" */
     private final static Pattern FILENAME_WITH_NUMBER_PATTERN = Pattern.compile("\\d+");
 
+    /** Number of files above which {@link #sort(AbstractFile[], int[])} uses several threads */
+    private final static int PARALLEL_SORT_THRESHOLD = 8192;
+
+    /** Number of files below which {@link #sort(AbstractFile[], int[])} uses an insertion sort */
+    private final static int INSERTION_SORT_THRESHOLD = 16;
+
     private final QuickSearch quickSearch;
 
 
@@ -325,6 +336,13 @@ public class FileComparator implements Comparator<AbstractFile> {
         if (criterion != NAME_CRITERION && diff==0)	// If both files have the same criterion's value, compare names
             diff = compareStrings(f1.getName(), f2.getName(), true, false);
 
+        return toResult(diff);
+    }
+
+    /**
+     * Casts the given difference to an int and applies the order.
+     */
+    private int toResult(long diff) {
         // Cast long value to int, without overflowing the int if the long value exceeds the min or max int value
         int intValue;
         
@@ -351,4 +369,336 @@ public class FileComparator implements Comparator<AbstractFile> {
         FileComparator fc = (FileComparator)o;
         return criterion ==fc.criterion && ascending==fc.ascending;
     }
+
+    /**
+     * Returns a hash code that is consistent with {@link #equals(Object)}.
+     */
+    public int hashCode() {
+        return 31 * criterion + (ascending ? 1 : 0);
+    }
+
+
+    ////////////////////
+    // Sorting arrays //
+    ////////////////////
+
+    /**
+     * Sorts the given indexes of the given files, in the order defined by {@link #compare(AbstractFile, AbstractFile)}.
+     * The compared attributes of each file are retrieved once before sorting, and the indexes are sorted by a merge
+     * sort, which is stable: files that compare equal keep their relative order. Above a few thousand files, the
+     * attributes are retrieved and the indexes sorted by several threads; the files must therefore support being
+     * accessed from other threads than the calling one, one thread at a time.
+     *
+     * @param files the files to sort
+     * @param indexes indexes of the files in the order to sort, sorted in place
+     */
+    public void sort(AbstractFile files[], int indexes[]) {
+        if (indexes.length < 2) {
+            return;
+        }
+        SortKeys keys = new SortKeys(files);
+        int aux[] = indexes.clone();
+        if (indexes.length >= PARALLEL_SORT_THRESHOLD) {
+            new SortTask(keys, aux, indexes, 0, indexes.length).invoke();
+        } else {
+            mergeSort(keys, aux, indexes, 0, indexes.length);
+        }
+    }
+
+    /**
+     * Sorts <code>dest</code> between <code>low</code> (inclusive) and <code>high</code> (exclusive). Between those
+     * bounds, <code>src</code> must be a copy of <code>dest</code>, it is modified too.
+     */
+    private static void mergeSort(SortKeys keys, int src[], int dest[], int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, dest, low, high);
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(keys, dest, src, low, mid);
+        mergeSort(keys, dest, src, mid, high);
+        merge(keys, src, dest, low, mid, high);
+    }
+
+    private static void insertionSort(SortKeys keys, int a[], int low, int high) {
+        for (int i = low + 1; i < high; i++) {
+            int index = a[i];
+            int j = i;
+            while (j > low && keys.compare(a[j - 1], index) > 0) {
+                a[j] = a[j - 1];
+                j--;
+            }
+            a[j] = index;
+        }
+    }
+
+    /**
+     * Merges the sorted halves of <code>src</code> into <code>dest</code>, favoring the first half when elements are
+     * equal so that the sort is stable.
+     */
+    private static void merge(SortKeys keys, int src[], int dest[], int low, int mid, int high) {
+        if (keys.compare(src[mid - 1], src[mid]) <= 0) {
+            // The halves are in order already
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || p < mid && keys.compare(src[p], src[q]) <= 0) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Sorts the two halves of a range in parallel as long as it is large enough, and merges them.
+     */
+    private static class SortTask extends RecursiveAction {
+        private final SortKeys keys;
+        private final int src[];
+        private final int dest[];
+        private final int low;
+        private final int high;
+
+        private SortTask(SortKeys keys, int src[], int dest[], int low, int high) {
+            this.keys = keys;
+            this.src = src;
+            this.dest = dest;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low < PARALLEL_SORT_THRESHOLD) {
+                mergeSort(keys, src, dest, low, high);
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            invokeAll(new SortTask(keys, dest, src, low, mid), new SortTask(keys, dest, src, mid, high));
+            merge(keys, src, dest, low, mid, high);
+        }
+    }
+
+    /**
+     * The attributes compared by this comparator, retrieved once for each file of an array, and compared the same way
+     * as {@link #compare(AbstractFile, AbstractFile)} does.
+     */
+    private class SortKeys {
+        /** True for the files matched by the quick search, null if matches are not compared */
+        private final boolean matches[];
+        private final boolean directories[];
+        private final StringKeys names;
+        /** Size, date or permissions, depending on the criterion */
+        private final long values[];
+        /** Extension, owner or group, depending on the criterion */
+        private final StringKeys strings;
+
+        private SortKeys(AbstractFile files[]) {
+            int nbFiles = files.length;
+            matches = quickSearch != null ? new boolean[nbFiles] : null;
+            directories = new boolean[nbFiles];
+            names = new StringKeys(nbFiles);
+            boolean numeric = criterion == SIZE_CRITERION || criterion == DATE_CRITERION || criterion == PERMISSIONS_CRITERION;
+            boolean textual = criterion == EXTENSION_CRITERION || criterion == OWNER_CRITERION || criterion == GROUP_CRITERION;
+            values = numeric ? new long[nbFiles] : null;
+            strings = textual ? new StringKeys(nbFiles) : null;
+
+            IntStream range = IntStream.range(0, nbFiles);
+            if (nbFiles >= PARALLEL_SORT_THRESHOLD) {
+                range = range.parallel();
+            }
+            range.forEach(i -> retrieve(i, files[i]));
+        }
+
+        private void retrieve(int i, AbstractFile file) {
+            boolean directory = file.isDirectory();
+            String name = file.getName();
+            if (matches != null) {
+                matches[i] = quickSearch.matches(name);
+            }
+            directories[i] = directory;
+            names.set(i, name);
+
+            if (criterion == SIZE_CRITERION) {
+                // Consider that directories have a size of 0, file size of -1 (unavailable) is considered as enormous
+                long size = directory ? 0 : file.getSize();
+                values[i] = size == -1 ? Long.MAX_VALUE : size;
+            } else if (criterion == DATE_CRITERION) {
+                values[i] = file.getLastModifiedDate();
+            } else if (criterion == PERMISSIONS_CRITERION) {
+                values[i] = file.getPermissions().getIntValue();
+            } else if (criterion == EXTENSION_CRITERION) {
+                strings.set(i, file.getExtension());
+            } else if (criterion == OWNER_CRITERION) {
+                strings.set(i, file.getOwner());
+            } else if (criterion == GROUP_CRITERION) {
+                strings.set(i, file.getGroup());
+            }
+        }
+
+        private int compare(int i1, int i2) {
+            if (i1 == i2) {
+                return 0;
+            }
+            if (matches != null) {
+                boolean m1 = matches[i1];
+                boolean m2 = matches[i2];
+                if (m1 && !m2) {
+                    return -1;
+                } else if (m2 && !m1) {
+                    return 1;
+                }
+            }
+
+            boolean is1Directory = directories[i1];
+            boolean is2Directory = directories[i2];
+            long diff;
+
+            if (directoriesFirst) {
+                if (is1Directory && !is2Directory) {
+                    return -1;
+                } else if (is2Directory && !is1Directory) {
+                    return 1;
+                }
+                if (foldersAlwaysAlphabetical && is1Directory && is2Directory) {
+                    return compareNames(i1, i2);
+                }
+            }
+
+            if (values != null) {
+                diff = values[i1] - values[i2];
+            } else if (strings != null) {
+                diff = strings.compare(i1, i2);
+            } else {
+                return toResult(compareNames(i1, i2));
+            }
+
+            // If both files have the same criterion's value, compare names
+            if (diff == 0) {
+                diff = names.compare(i1, i2);
+            }
+            return toResult(diff);
+        }
+
+        /**
+         * Compares names ignoring case first, taking it into account if they are equal.
+         */
+        private int compareNames(int i1, int i2) {
+            int diff = names.compare(i1, i2);
+            if (diff == 0) {
+                diff = compareStrings(names.strings[i1], names.strings[i2], false);
+            }
+            return diff;
+        }
+    }
+
+    /**
+     * Strings compared ignoring case as {@link #compareStrings(String, String, boolean, boolean)} does. Each string
+     * is turned into a key that holds, in a single array so that comparing two strings reads one array for each of
+     * them: the position of its first digit and the length of the number that starts there, its characters converted
+     * to the same case, and its original characters.
+     */
+    private static class StringKeys {
+        /** Number of chars that precede the characters in a key */
+        private static final int HEADER_LENGTH = 2;
+
+        private final String strings[];
+        private final char keys[][];
+
+        private StringKeys(int nbStrings) {
+            strings = new String[nbStrings];
+            keys = new char[nbStrings][];
+        }
+
+        private void set(int i, String s) {
+            if (s == null) {
+                return;
+            }
+            int len = s.length();
+            char key[] = new char[HEADER_LENGTH + len * 2];
+            s.getChars(0, len, key, HEADER_LENGTH + len);
+            for (int j = 0; j < len; j++) {
+                key[HEADER_LENGTH + j] = foldCase(key[HEADER_LENGTH + len + j]);
+            }
+            int digitIndex = firstDigitPos(s);
+            // Numbers located beyond what a char can hold, which no filename reaches, are compared as text
+            if (digitIndex >= 0 && digitIndex < Character.MAX_VALUE) {
+                int numberLength = 0;
+                while (digitIndex + numberLength < len && numberLength < Character.MAX_VALUE
+                        && isDigit(s.charAt(digitIndex + numberLength))) {
+                    numberLength++;
+                }
+                key[0] = (char)(digitIndex + 1);
+                key[1] = (char)numberLength;
+            }
+            strings[i] = s;
+            keys[i] = key;
+        }
+
+        /**
+         * Compares the given strings ignoring case, <code>null</code> values first.
+         */
+        private int compare(int i1, int i2) {
+            char k1[] = keys[i1];
+            char k2[] = keys[i2];
+            if (k1 == null || k2 == null) {
+                return k1 == null ? (k2 == null ? 0 : -1) : 1;
+            }
+            int n1 = (k1.length - HEADER_LENGTH) >> 1;
+            int n2 = (k2.length - HEADER_LENGTH) >> 1;
+
+            // Numbers are compared by value if both strings have the same prefix, see compareStrings()
+            int digitIndex = k1[0] - 1;
+            if (digitIndex >= 0 && k1[0] == k2[0] && originalRegionMatches(k1, n1, k2, n2, digitIndex)) {
+                if (k1[1] != k2[1]) {
+                    return k1[1] - k2[1];
+                }
+                for (int i = HEADER_LENGTH + digitIndex, end = i + k1[1]; i < end; i++) {
+                    if (k1[i] != k2[i]) {
+                        return k1[i] - k2[i];
+                    }
+                }
+            }
+
+            for (int i = HEADER_LENGTH, end = HEADER_LENGTH + Math.min(n1, n2); i < end; i++) {
+                char c1 = k1[i];
+                char c2 = k2[i];
+                if (c1 != c2) {
+                    return getCharacterValue(c1) - getCharacterValue(c2);
+                }
+            }
+            return n1 - n2;
+        }
+
+        /**
+         * Returns <code>true</code> if the first <code>len</code> original characters of the given keys are equal.
+         */
+        private static boolean originalRegionMatches(char k1[], int n1, char k2[], int n2, int len) {
+            int offset1 = HEADER_LENGTH + n1;
+            int offset2 = HEADER_LENGTH + n2;
+            for (int i = 0; i < len; i++) {
+                if (k1[offset1 + i] != k2[offset2 + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Converts the given character as {@link #compareStrings(String, String, boolean)} does when it ignores case,
+         * so that two characters are equal ignoring case if and only if their converted values are equal.
+         */
+        private static char foldCase(char c) {
+            if (c < 128) {
+                return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+            }
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
 }
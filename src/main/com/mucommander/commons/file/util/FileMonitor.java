@@ -31,6 +31,7 @@ import java.util.WeakHashMap;
  * to do detect file changes. If Java ever does provide a callback mechanism for detecting file changes, this class
  * will be modified to take advantage of it. Another possible improvement would be to add JNI hooks for platform-specific
  * filesystem events such as 'inotify' (Linux Kernel), 'kqueue' (BSD, Mac OS X), PAM (Solaris), ...
+ * Changes made to the contents of local folders are reported without polling by {@link FolderWatcher}.
  *
  * @see FileChangeListener
  * @author Maxence Bernard
@@ -0,0 +1,361 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.CounterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * FolderComparison finds the files that differ between two folders: files that exist in only one of the folders, and
+ * files that exist in both but differ according to a {@link Criterion}.
+ *
+ * <p>Files are matched by name with a hash join: the files of the second folder are indexed by name in a hash map,
+ * which is then probed with the names of the first folder, so that comparing folders of <i>n</i> and <i>m</i> files
+ * takes <i>O(n+m)</i> operations rather than <i>O(n.m)</i>.</p>
+ *
+ * <p>Folders are compared in two steps. {@link #compare(AbstractFile[], AbstractFile[])} matches the files, in
+ * subfolders too if the comparison is recursive, and compares them using their attributes only. When contents are
+ * compared, the files whose size is the same are then hashed by {@link #compareContents(int, ByteCounter)}, using
+ * several threads. Differences are reported on the top-level files that were passed to
+ * {@link #compare(AbstractFile[], AbstractFile[])}: a folder differs if any of the files it contains differs.
+ * Symbolic links to folders are not followed.</p>
+ */
+public class FolderComparison {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderComparison.class);
+
+    /** Algorithm used to hash the contents of files */
+    private static final String HASH_ALGORITHM = "MD5";
+
+    /**
+     * How files that exist in both folders are compared.
+     */
+    public enum Criterion {
+        /** A file differs if it is more recent than its counterpart, only the more recent file differs */
+        DATE,
+        /** Both files differ if their size or their contents differ */
+        CONTENT
+    }
+
+    /** How files that exist in both folders are compared */
+    private final Criterion criterion;
+
+    /** True if subfolders are compared */
+    private final boolean recursive;
+
+    /** Called with each folder that is compared and each file that is hashed, may be null */
+    private final Consumer<AbstractFile> progressListener;
+
+    /** Top-level files of the first folder that differ */
+    private final Set<AbstractFile> differences1 = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /** Top-level files of the second folder that differ */
+    private final Set<AbstractFile> differences2 = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /** Files of equal size whose contents remain to be compared */
+    private final List<FilePair> pairsToHash = new ArrayList<>();
+
+    /** Number of bytes to read to hash the files of {@link #pairsToHash} */
+    private long nbBytesToHash;
+
+    private volatile boolean interrupted;
+
+
+    /**
+     * Creates a new FolderComparison.
+     *
+     * @param criterion how files that exist in both folders are compared
+     * @param recursive <code>true</code> to compare the contents of subfolders, <code>false</code> to ignore folders
+     * @param progressListener called with each folder that is compared and each file that is hashed, may be
+     * <code>null</code>
+     */
+    public FolderComparison(Criterion criterion, boolean recursive, Consumer<AbstractFile> progressListener) {
+        this.criterion = criterion;
+        this.recursive = recursive;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Matches the files of the two folders and compares them using their attributes. The files whose contents must be
+     * compared are compared by {@link #compareContents(int, ByteCounter)}.
+     *
+     * @param files1 the files of the first folder
+     * @param files2 the files of the second folder
+     */
+    public void compare(AbstractFile files1[], AbstractFile files2[]) {
+        join(files1, files2, null, null);
+    }
+
+    /**
+     * Matches the given files by name, <code>top1</code> and <code>top2</code> being the top-level files that contain
+     * them, or <code>null</code> for the top-level files themselves.
+     */
+    private void join(AbstractFile files1[], AbstractFile files2[], AbstractFile top1, AbstractFile top2) {
+        // Build: index the files of the second folder by name
+        Map<String, Integer> indexes = new HashMap<>(Math.max(16, files2.length * 4 / 3 + 1));
+        for (int i = 0; i < files2.length; i++) {
+            indexes.put(files2[i].getName(), i);
+        }
+        boolean matched[] = new boolean[files2.length];
+
+        // Probe: look up the files of the first folder
+        for (AbstractFile file1 : files1) {
+            if (interrupted) {
+                return;
+            }
+            AbstractFile differingFile1 = top1 == null ? file1 : top1;
+            Integer index = indexes.get(file1.getName());
+            if (index == null) {
+                addDifference(file1, differences1, differingFile1);
+                continue;
+            }
+            matched[index] = true;
+            AbstractFile file2 = files2[index];
+            compareFiles(file1, file2, differingFile1, top2 == null ? file2 : top2);
+        }
+
+        for (int i = 0; i < files2.length; i++) {
+            if (!matched[i]) {
+                addDifference(files2[i], differences2, top2 == null ? files2[i] : top2);
+            }
+        }
+    }
+
+    /**
+     * Reports a file that exists in one folder only. Folders are ignored unless the comparison is recursive.
+     */
+    private void addDifference(AbstractFile file, Set<AbstractFile> differences, AbstractFile differingFile) {
+        if (recursive || !file.isDirectory()) {
+            differences.add(differingFile);
+        }
+    }
+
+    /**
+     * Compares files that have the same name.
+     */
+    private void compareFiles(AbstractFile file1, AbstractFile file2, AbstractFile differingFile1, AbstractFile differingFile2) {
+        boolean directory1 = file1.isDirectory();
+        boolean directory2 = file2.isDirectory();
+        if (directory1 || directory2) {
+            if (!recursive) {
+                return;
+            }
+            if (directory1 != directory2) {
+                differences1.add(differingFile1);
+                differences2.add(differingFile2);
+                return;
+            }
+            if (file1.isSymlink() || file2.isSymlink() || bothDiffer(differingFile1, differingFile2)) {
+                return;
+            }
+            if (progressListener != null) {
+                progressListener.accept(file1);
+            }
+            try {
+                join(file1.ls(), file2.ls(), differingFile1, differingFile2);
+            } catch (IOException e) {
+                LOGGER.info("Could not list folders " + file1 + " and " + file2 + ", considering them different", e);
+                differences1.add(differingFile1);
+                differences2.add(differingFile2);
+            }
+            return;
+        }
+
+        if (criterion == Criterion.DATE) {
+            long date1 = file1.getLastModifiedDate();
+            long date2 = file2.getLastModifiedDate();
+            if (date1 > date2) {
+                differences1.add(differingFile1);
+            } else if (date2 > date1) {
+                differences2.add(differingFile2);
+            }
+        } else {
+            long size = file1.getSize();
+            if (size != file2.getSize()) {
+                differences1.add(differingFile1);
+                differences2.add(differingFile2);
+            } else if (!bothDiffer(differingFile1, differingFile2)) {
+                pairsToHash.add(new FilePair(file1, file2, differingFile1, differingFile2));
+                nbBytesToHash += 2 * Math.max(size, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if both top-level files are known to differ already, in which case comparing more
+     * files they contain is useless.
+     */
+    private boolean bothDiffer(AbstractFile differingFile1, AbstractFile differingFile2) {
+        return differences1.contains(differingFile1) && differences2.contains(differingFile2);
+    }
+
+    /**
+     * Compares the contents of the files that have the same size, using the given number of threads. This method
+     * returns once all files have been compared, or when the comparison is interrupted.
+     *
+     * @param nbThreads number of files hashed at the same time
+     * @param counter counts the bytes that are read, see {@link #getNbBytesToHash()}
+     */
+    public void compareContents(int nbThreads, ByteCounter counter) {
+        if (pairsToHash.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread thread = new Thread(r, "Folder comparison");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(pairsToHash.size());
+            for (FilePair pair : pairsToHash) {
+                futures.add(executor.submit(() -> compareContents(pair, counter)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            interrupt();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.info("Caught exception while comparing files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        pairsToHash.clear();
+    }
+
+    private void compareContents(FilePair pair, ByteCounter counter) {
+        long size = 2 * Math.max(pair.file1.getSize(), 0);
+        if (interrupted || bothDiffer(pair.differingFile1, pair.differingFile2)) {
+            counter.add(size);
+            return;
+        }
+        if (progressListener != null) {
+            progressListener.accept(pair.file1);
+        }
+
+        ByteCounter pairCounter = new ByteCounter();
+        String checksum1 = getChecksum(pair.file1, pairCounter);
+        String checksum2 = checksum1 == null ? null : getChecksum(pair.file2, pairCounter);
+        if (interrupted) {
+            return;
+        }
+        // Account for the bytes that were not read if an error occurred or if the files have changed
+        counter.add(size);
+        if (checksum1 == null || !checksum1.equals(checksum2)) {
+            differences1.add(pair.differingFile1);
+            differences2.add(pair.differingFile2);
+        }
+    }
+
+    /**
+     * Returns the checksum of the given file, <code>null</code> if it could not be read.
+     */
+    private String getChecksum(AbstractFile file, ByteCounter counter) {
+        try (InputStream in = new CounterInputStream(file.getInputStream(), counter) {
+            @Override
+            public int read(byte b[], int off, int len) throws IOException {
+                if (interrupted) {
+                    throw new InterruptedIOException();
+                }
+                return super.read(b, off, len);
+            }
+        }) {
+            return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(HASH_ALGORITHM));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            if (!interrupted) {
+                LOGGER.info("Could not read " + file + ", considering it different", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stops the comparison as soon as possible. The differences that have been found so far are kept.
+     */
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * Returns the number of bytes that {@link #compareContents(int, ByteCounter)} reads, once
+     * {@link #compare(AbstractFile[], AbstractFile[])} has been called.
+     *
+     * @return the number of bytes that {@link #compareContents(int, ByteCounter)} reads
+     */
+    public long getNbBytesToHash() {
+        return nbBytesToHash;
+    }
+
+    /**
+     * Returns the top-level files of the first folder that differ.
+     *
+     * @return the top-level files of the first folder that differ
+     */
+    public Set<AbstractFile> getDifferences1() {
+        return differences1;
+    }
+
+    /**
+     * Returns the top-level files of the second folder that differ.
+     *
+     * @return the top-level files of the second folder that differ
+     */
+    public Set<AbstractFile> getDifferences2() {
+        return differences2;
+    }
+
+
+    /**
+     * Files of the same name and size whose contents must be compared, and the top-level files they belong to.
+     */
+    private static class FilePair {
+        private final AbstractFile file1;
+        private final AbstractFile file2;
+        private final AbstractFile differingFile1;
+        private final AbstractFile differingFile2;
+
+        private FilePair(AbstractFile file1, AbstractFile file2, AbstractFile differingFile1, AbstractFile differingFile2) {
+            this.file1 = file1;
+            this.file2 = file2;
+            this.differingFile1 = differingFile1;
+            this.differingFile2 = differingFile2;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>FolderWatcher</code> notifies registered {@link Listener listeners} of the files that are created, deleted or
+ * modified in local folders. Contrary to {@link FileMonitor} which polls the attributes of a file, it relies on the
+ * file system events delivered by a <code>java.nio.file.WatchService</code> (e.g. inotify on Linux), so watching a
+ * folder costs nothing as long as the folder doesn't change.
+ *
+ * <p>Events are coalesced: the names of the changed files are accumulated until no event has been received for
+ * {@link #COALESCE_DELAY} milliseconds, or for at most {@link #MAX_COALESCE_DELAY} milliseconds when a folder keeps
+ * changing, and are then reported at once. If too many files have changed or if events have been lost, listeners are
+ * asked to reload the whole folder.</p>
+ *
+ * <p>A single thread watches all the folders. Only local folders can be watched, see {@link #isWatchable(AbstractFile)},
+ * and only when the platform provides native file system events: the polling <code>WatchService</code> that the JRE
+ * falls back to elsewhere is not used, callers are expected to poll folders themselves in that case.</p>
+ */
+public class FolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderWatcher.class);
+
+    /** Number of milliseconds without event after which the changes of a folder are reported */
+    public static final long COALESCE_DELAY = 200;
+
+    /** Maximum number of milliseconds during which the changes of a folder are accumulated */
+    public static final long MAX_COALESCE_DELAY = 1000;
+
+    /** Number of changed files above which listeners are asked to reload the whole folder */
+    public static final int MAX_CHANGED_FILES = 1000;
+
+    /** The instance shared by all the watched folders, <code>null</code> if it hasn't been created yet */
+    private static FolderWatcher instance;
+
+    /** <code>true</code> once an attempt to create the instance has been made */
+    private static boolean initialized;
+
+    private final WatchService watchService;
+
+    /** Watched folders, by path */
+    private final Map<Path, WatchedFolder> folders = new HashMap<>();
+
+    /** Watched folders, by key */
+    private final Map<WatchKey, WatchedFolder> keys = new HashMap<>();
+
+    /** Folders that can't be watched anymore, and whose listeners have not been notified yet */
+    private final List<WatchedFolder> invalidFolders = new ArrayList<>();
+
+    /** Time at which the first of the changes that haven't been reported yet was received, 0 if there is none */
+    private long firstEventTime;
+
+
+    /**
+     * Interface to be implemented by classes that wish to be notified of changes in a watched folder. Notifications
+     * are made in the watcher's thread and should return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * Called when files of the watched folder have been created, deleted or modified.
+         *
+         * @param names the names of the files that have changed
+         */
+        void filesChanged(Set<String> names);
+
+        /**
+         * Called when the changes made to the watched folder are unknown, because too many files have changed, some
+         * events have been lost, or the folder can't be watched anymore (e.g. it has been deleted).
+         */
+        void folderChanged();
+    }
+
+
+    private FolderWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * Returns the shared instance, creating it and starting its thread the first time this method is called.
+     * Returns <code>null</code> if native file system events are not available on this platform.
+     */
+    private static synchronized FolderWatcher getInstance() {
+        if (!initialized) {
+            initialized = true;
+            try {
+                WatchService watchService = FileSystems.getDefault().newWatchService();
+                if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+                    LOGGER.info("No native file system events on this platform, folders will be polled");
+                    watchService.close();
+                } else {
+                    instance = new FolderWatcher(watchService);
+                    Thread thread = new Thread(instance, "Folder watcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.info("Could not create watch service, folders will be polled", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns <code>true</code> if the given folder is a local folder that can be watched, i.e. a local directory which
+     * is not an archive.
+     *
+     * @param folder a folder
+     * @return <code>true</code> if the given folder can be watched
+     */
+    public static boolean isWatchable(AbstractFile folder) {
+        return folder != null && !folder.isArchive() && folder.getTopAncestor() instanceof LocalFile;
+    }
+
+    /**
+     * Starts notifying the given listener of the changes made to the given folder. Returns <code>false</code> if the
+     * folder can't be watched, in which case the caller has to poll the folder for changes. Watching a folder that the
+     * listener watches already has no effect, and doesn't lose the changes that have not been reported yet.
+     *
+     * @param folder the folder to watch
+     * @param listener the listener to notify
+     * @return <code>true</code> if the folder is being watched
+     */
+    public static boolean watch(AbstractFile folder, Listener listener) {
+        if (!isWatchable(folder)) {
+            return false;
+        }
+        FolderWatcher watcher = getInstance();
+        return watcher != null && watcher.register(getPath(folder), listener);
+    }
+
+    /**
+     * Stops notifying the given listener of the changes made to the given folder. The folder stops being watched when
+     * it has no more listeners.
+     *
+     * @param folder the watched folder
+     * @param listener the listener to remove
+     */
+    public static void unwatch(AbstractFile folder, Listener listener) {
+        FolderWatcher watcher;
+        synchronized (FolderWatcher.class) {
+            watcher = instance;
+        }
+        if (watcher != null && isWatchable(folder)) {
+            watcher.unregister(getPath(folder), listener);
+        }
+    }
+
+    private static Path getPath(AbstractFile folder) {
+        return ((File)folder.getTopAncestor().getUnderlyingFileObject()).toPath().toAbsolutePath();
+    }
+
+    private synchronized boolean register(Path path, Listener listener) {
+        WatchedFolder folder = folders.get(path);
+        if (folder == null) {
+            try {
+                WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                // The same key is returned for a path that is registered already
+                folder = keys.get(key);
+                if (folder == null) {
+                    folder = new WatchedFolder(key);
+                    keys.put(key, folder);
+                }
+                folders.put(path, folder);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Could not watch " + path, e);
+                return false;
+            }
+        }
+        folder.listeners.addIfAbsent(listener);
+        return true;
+    }
+
+    private synchronized void unregister(Path path, Listener listener) {
+        WatchedFolder folder = folders.get(path);
+        if (folder == null) {
+            return;
+        }
+        folder.listeners.remove(listener);
+        if (folder.listeners.isEmpty()) {
+            folders.remove(path);
+            if (!folders.containsValue(folder)) {
+                keys.remove(folder.key);
+                folder.key.cancel();
+            }
+        }
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                long now = System.currentTimeMillis();
+                if (firstEventTime == 0) {
+                    key = watchService.take();
+                } else {
+                    long timeout = Math.min(COALESCE_DELAY, firstEventTime + MAX_COALESCE_DELAY - now);
+                    key = timeout > 0 ? watchService.poll(timeout, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key != null) {
+                    processEvents(key);
+                }
+                // Report the changes when the folders have been quiet for a while, or have been changing for too long
+                if (firstEventTime != 0 && (key == null || System.currentTimeMillis() - firstEventTime >= MAX_COALESCE_DELAY)) {
+                    firstEventTime = 0;
+                    fireChanges();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Folder watcher stopped", e);
+        }
+    }
+
+    /**
+     * Accumulates the names of the files that have changed in the folder of the given key.
+     */
+    private void processEvents(WatchKey key) {
+        List<WatchEvent<?>> events = key.pollEvents();
+        boolean valid = key.reset();
+        synchronized (this) {
+            WatchedFolder folder = keys.get(key);
+            if (folder == null) {
+                return;
+            }
+            for (WatchEvent<?> event : events) {
+                if (folder.overflow) {
+                    break;
+                }
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    folder.overflow = true;
+                } else {
+                    folder.changedNames.add(event.context().toString());
+                    folder.overflow = folder.changedNames.size() > MAX_CHANGED_FILES;
+                }
+            }
+            if (!valid) {
+                // The folder is not accessible anymore, its listeners will have to watch it again or find another one
+                folder.overflow = true;
+                keys.remove(key);
+                folders.values().removeIf(f -> f == folder);
+                invalidFolders.add(folder);
+            }
+            if (firstEventTime == 0) {
+                firstEventTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of all the folders that have changed since the last notification.
+     */
+    private void fireChanges() {
+        List<WatchedFolder> changedFolders = new ArrayList<>();
+        List<Set<String>> changedNames = new ArrayList<>();
+        synchronized (this) {
+            Set<WatchedFolder> candidates = new HashSet<>(keys.values());
+            candidates.addAll(invalidFolders);
+            invalidFolders.clear();
+            for (WatchedFolder folder : candidates) {
+                if (folder.overflow) {
+                    changedFolders.add(folder);
+                    changedNames.add(null);
+                } else if (!folder.changedNames.isEmpty()) {
+                    changedFolders.add(folder);
+                    changedNames.add(folder.changedNames);
+                } else {
+                    continue;
+                }
+                folder.changedNames = new HashSet<>();
+                folder.overflow = false;
+            }
+        }
+
+        for (int i = 0; i < changedFolders.size(); i++) {
+            Set<String> names = changedNames.get(i);
+            for (Listener listener : changedFolders.get(i).listeners) {
+                try {
+                    if (names == null) {
+                        listener.folderChanged();
+                    } else {
+                        listener.filesChanged(names);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Caught exception while notifying folder changes", e);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A watched folder, with its listeners and the changes that have not been reported yet.
+     */
+    private static class WatchedFolder {
+        private final WatchKey key;
+        private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+        private Set<String> changedNames = new HashSet<>();
+        private boolean overflow;
+
+        private WatchedFolder(WatchKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * <code>BoundedPipe</code> connects an <code>OutputStream</code> written by a thread to an <code>InputStream</code>
+ * read by another thread, through a fixed-size circular buffer. When the buffer is full, the writer blocks until the
+ * reader has consumed some data, so that the amount of memory used by the pipe never exceeds its capacity no matter
+ * how much data goes through it or how slow the reader is.
+ *
+ * <p>Unlike <code>java.io.PipedInputStream</code>, this class does not track the threads that use it, which makes it
+ * suitable for writers running in a thread pool, and it wakes up the other side as soon as data or space is available
+ * instead of polling. It also lets the writer report a failure to the reader with {@link #setFailure(IOException)},
+ * and closing the <code>InputStream</code> makes any pending or subsequent write fail, so that a writer whose data is
+ * not wanted anymore stops early.</p>
+ */
+public class BoundedPipe {
+
+    /** Circular buffer */
+    private final byte[] buffer;
+
+    /** Position of the next byte to read */
+    private int readPosition;
+
+    /** Number of bytes in the buffer */
+    private int count;
+
+    /** True once the writer has closed its stream or reported a failure */
+    private boolean writerClosed;
+
+    /** True once the reader has closed its stream */
+    private boolean readerClosed;
+
+    /** Failure reported by the writer, thrown to the reader once it has consumed the data written before it */
+    private IOException failure;
+
+    private final InputStream in = new PipeInputStream();
+    private final OutputStream out = new PipeOutputStream();
+
+
+    /**
+     * Creates a new pipe that buffers up to <code>capacity</code> bytes.
+     *
+     * @param capacity the size of the buffer, in bytes
+     */
+    public BoundedPipe(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Creates a pipe, has the given producer write to it using the given executor, and returns the stream to read
+     * the produced data from. The pipe's <code>OutputStream</code> is closed when the producer returns; if the
+     * producer throws an exception, it is reported to the reader with {@link #setFailure(IOException)}.
+     *
+     * <p>The producer occupies a thread of the executor for as long as its data has not been entirely read or the
+     * <code>InputStream</code> has not been closed, so the executor must not have a bounded number of threads:
+     * readers waiting for producers queued behind blocked ones would never be served.</p>
+     *
+     * @param executor the executor that runs the producer
+     * @param capacity the size of the pipe's buffer, in bytes
+     * @param producer writes the data to the pipe
+     * @return the stream to read the produced data from
+     */
+    public static InputStream start(Executor executor, int capacity, Producer producer) {
+        final BoundedPipe pipe = new BoundedPipe(capacity);
+        executor.execute(() -> {
+            try {
+                producer.produce(pipe.out);
+                pipe.out.close();
+            } catch (IOException e) {
+                pipe.setFailure(e);
+            } catch (RuntimeException e) {
+                pipe.setFailure(new IOException(e));
+            }
+        });
+        return pipe.in;
+    }
+
+    /**
+     * Returns the stream to read the data written to the pipe from.
+     *
+     * @return the stream to read the data written to the pipe from
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Returns the stream to write data to the pipe.
+     *
+     * @return the stream to write data to the pipe
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Reports a failure of the writer and closes the <code>OutputStream</code>. The reader receives the data written
+     * so far, and then the given exception instead of an end of stream.
+     *
+     * @param failure the exception to throw to the reader
+     */
+    public synchronized void setFailure(IOException failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+        writerClosed = true;
+        notifyAll();
+    }
+
+    private void waitForChange() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * The reading end of the pipe.
+     */
+    private class PipeInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (BoundedPipe.this) {
+                while (count == 0 && !writerClosed && !readerClosed) {
+                    waitForChange();
+                }
+                if (readerClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                if (count == 0) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+
+                int nbBytes = Math.min(len, count);
+                int firstLen = Math.min(nbBytes, buffer.length - readPosition);
+                System.arraycopy(buffer, readPosition, b, off, firstLen);
+                System.arraycopy(buffer, 0, b, off + firstLen, nbBytes - firstLen);
+                readPosition = (readPosition + nbBytes) % buffer.length;
+                count -= nbBytes;
+
+                // Wake up the writer
+                BoundedPipe.this.notifyAll();
+                return nbBytes;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            synchronized (BoundedPipe.this) {
+                if (readerClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                return count;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (BoundedPipe.this) {
+                readerClosed = true;
+                count = 0;
+                BoundedPipe.this.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * The writing end of the pipe.
+     */
+    private class PipeOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (BoundedPipe.this) {
+                while (len > 0) {
+                    while (count == buffer.length && !readerClosed && !writerClosed) {
+                        waitForChange();
+                    }
+                    if (readerClosed) {
+                        throw new IOException("Pipe closed by the reader");
+                    }
+                    if (writerClosed) {
+                        throw new IOException("Pipe closed");
+                    }
+
+                    int writePosition = (readPosition + count) % buffer.length;
+                    int nbBytes = Math.min(len, buffer.length - count);
+                    int firstLen = Math.min(nbBytes, buffer.length - writePosition);
+                    System.arraycopy(b, off, buffer, writePosition, firstLen);
+                    System.arraycopy(b, off + firstLen, buffer, 0, nbBytes - firstLen);
+                    count += nbBytes;
+                    off += nbBytes;
+                    len -= nbBytes;
+
+                    // Wake up the reader
+                    BoundedPipe.this.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (BoundedPipe.this) {
+                writerClosed = true;
+                BoundedPipe.this.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Writes data to a pipe, see {@link BoundedPipe#start(Executor, int, Producer)}.
+     */
+    public interface Producer {
+
+        /**
+         * Writes data to the given stream, which is closed after this method returns.
+         *
+         * @param out the stream to write to
+         * @throws IOException if an error occurred, reported to the reader
+         */
+        void produce(OutputStream out) throws IOException;
+    }
+}
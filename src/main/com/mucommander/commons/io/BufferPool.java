@@ -23,9 +23,13 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -47,7 +51,14 @@ import java.util.List;
  * used again and from being garbage-collected.</li>
  * </ul>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. It doesn't use a global lock:
+ * pooled buffers are grouped by size class, that is by buffer class and length, each size class being a lock-free
+ * stack. Buffers are only returned for requests of the exact same length, as callers rely on the length of the
+ * buffers they get.
+ *
+ * <p>The number of requests served from the pool (hits) or with a new buffer (misses), and the peak combined size of
+ * the pooled buffers, are recorded to help size the pool: see {@link #getHitCount()}, {@link #getMissCount()} and
+ * {@link #getPeakPoolSize()}.
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -56,23 +67,40 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static List<BufferContainer> bufferContainers = new ArrayList<>();
+    /** Available buffers, wrapped in BufferContainer instances, by size class. The most recently released buffer is first. */
+    private static final Map<SizeClass, Deque<BufferContainer>> sizeClasses = new ConcurrentHashMap<>();
+
+    /** All available buffers, to detect buffers that are released twice */
+    private static final Set<BufferContainer> bufferContainers = ConcurrentHashMap.newKeySet();
+
+    private static final ByteArrayFactory BYTE_ARRAY_FACTORY = new ByteArrayFactory();
+    private static final CharArrayFactory CHAR_ARRAY_FACTORY = new CharArrayFactory();
+    private static final ByteBufferFactory BYTE_BUFFER_FACTORY = new ByteBufferFactory();
+    private static final CharBufferFactory CHAR_BUFFER_FACTORY = new CharBufferFactory();
 
     /** The initial default buffer size */
     final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    private static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    private static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    private static long maxPoolSize = INITIAL_POOL_LIMIT;
+    private static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
 
     /** Current combined size of all pooled buffers, in bytes */
-    private static long poolSize;
+    private static final AtomicLong poolSize = new AtomicLong();
+
+    /** Highest combined size of all pooled buffers, in bytes */
+    private static final AtomicLong peakPoolSize = new AtomicLong();
+
+    /** Number of buffers returned from the pool */
+    private static final LongAdder hitCount = new LongAdder();
+
+    /** Number of buffers created because none was available in the pool */
+    private static final LongAdder missCount = new LongAdder();
 
 
     /**
@@ -81,7 +109,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -99,8 +127,8 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
-        return (byte[])getBuffer(new ByteArrayFactory(), length);
+    public static byte[] getByteArray(int length) {
+        return (byte[])getBuffer(BYTE_ARRAY_FACTORY, length);
     }
 
     /**
@@ -109,7 +137,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -127,8 +155,8 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
-        return (char[])getBuffer(new CharArrayFactory(), length);
+    public static char[] getCharArray(int length) {
+        return (char[])getBuffer(CHAR_ARRAY_FACTORY, length);
     }
 
     /**
@@ -137,7 +165,7 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
@@ -155,8 +183,8 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
-        return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
+    public static ByteBuffer getByteBuffer(int capacity) {
+        return (ByteBuffer)getBuffer(BYTE_BUFFER_FACTORY, capacity);
     }
 
 
@@ -166,7 +194,7 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
@@ -184,8 +212,8 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
-        return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
+    public static CharBuffer getCharBuffer(int capacity) {
+        return (CharBuffer)getBuffer(CHAR_BUFFER_FACTORY, capacity);
     }
 
 
@@ -196,7 +224,7 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
@@ -213,23 +241,21 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        Iterator<BufferContainer> it = bufferContainers.iterator();
-        while (it.hasNext()) {
-            BufferContainer bufferContainer = it.next();
-            Object buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if (bufferContainer.getLength() == size && (factory.matchesBufferClass(buffer.getClass()))) {
-                it.remove();
-                //bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
+    public static Object getBuffer(BufferFactory factory, int size) {
+        // Looks for a buffer container in the pool that matches the specified size and buffer class
+        Deque<BufferContainer> sizeClass = sizeClasses.get(new SizeClass(factory.getPooledClass(), size));
+        BufferContainer bufferContainer;
+        while (sizeClass != null && (bufferContainer = sizeClass.pollFirst()) != null) {
+            // The buffer may have been removed from the pool by releaseAll()
+            if (bufferContainers.remove(bufferContainer)) {
+                poolSize.addAndGet(-bufferContainer.getSize());
+                hitCount.increment();
+                return bufferContainer.getBuffer();
             }
         }
 
         LOGGER.trace("Creating new buffer with {} size=", factory, size);
+        missCount.increment();
 
         // No buffer with the same class and size found in the pool, create a new one and return it
         return factory.newBuffer(size);
@@ -248,8 +274,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
-        return releaseBuffer(buffer, new ByteArrayFactory());
+    public static boolean releaseByteArray(byte buffer[]) {
+        return releaseBuffer(buffer, BYTE_ARRAY_FACTORY);
     }
 
     /**
@@ -264,8 +290,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
-        return releaseBuffer(buffer, new CharArrayFactory());
+    public static boolean releaseCharArray(char buffer[]) {
+        return releaseBuffer(buffer, CHAR_ARRAY_FACTORY);
     }
 
     /**
@@ -280,8 +306,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
-        return releaseBuffer(buffer, new ByteBufferFactory());
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, BYTE_BUFFER_FACTORY);
     }
 
     /**
@@ -296,8 +322,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
-        return releaseBuffer(buffer, new CharBufferFactory());
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
+        return releaseBuffer(buffer, CHAR_BUFFER_FACTORY);
     }
 
     /**
@@ -314,27 +340,46 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
-        BufferContainer bufferContainer = factory.newBufferContainer(buffer);
-
-        if(bufferContainers.contains(bufferContainer)) {
-            LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
+        Class<?> pooledClass = factory.getPooledClass();
+        if(!pooledClass.isInstance(buffer)) {
+            LOGGER.info("Warning: specified buffer is not a {}, not added to the pool: {}", pooledClass, buffer.getClass());
             return false;
         }
 
+        BufferContainer bufferContainer = factory.newBufferContainer(buffer);
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
-            LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
-            LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
+        // Reserve room for the buffer in the pool
+        long size;
+        do {
+            size = poolSize.get();
+            long limit = maxPoolSize;
+            if(limit!=-1 && size+bufferSize>limit) {
+                if(bufferContainers.contains(bufferContainer)) {
+                    LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
+                }
+                else {
+                    LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
+                    LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
+                }
+                return false;
+            }
+        }
+        while(!poolSize.compareAndSet(size, size+bufferSize));
+
+        if(!bufferContainers.add(bufferContainer)) {
+            poolSize.addAndGet(-bufferSize);
+            LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        sizeClasses.computeIfAbsent(new SizeClass(pooledClass, bufferContainer.getLength()), key -> new ConcurrentLinkedDeque<>())
+                .addFirst(bufferContainer);
+        peakPoolSize.accumulateAndGet(size+bufferSize, Math::max);
 
         return true;
     }
@@ -374,7 +419,7 @@ public class BufferPool {
     public static int getBufferCount(BufferFactory factory) {
         int count = 0;
         for (BufferContainer bufferContainer : bufferContainers) {
-            if (factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
+            if (factory.getPooledClass().isInstance(bufferContainer.getBuffer())) {
                 count ++;
             }
 
@@ -399,7 +444,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +455,46 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
+    }
+
+    /**
+     * Returns the highest combined size in bytes that the buffers in the pool have reached, since the pool was
+     * created or since {@link #resetStatistics()} was last called.
+     *
+     * @return the highest combined size in bytes of the buffers in the pool
+     */
+    public static long getPeakPoolSize() {
+        return peakPoolSize.get();
+    }
+
+    /**
+     * Returns the number of <code>get*Buffer</code> calls that returned a buffer from the pool, since the pool was
+     * created or since {@link #resetStatistics()} was last called.
+     *
+     * @return the number of buffers returned from the pool
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of <code>get*Buffer</code> calls that created a new buffer because none was available in
+     * the pool, since the pool was created or since {@link #resetStatistics()} was last called.
+     *
+     * @return the number of buffers that have been created
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Resets the hit and miss counts, and sets the peak pool size to the current pool size.
+     */
+    public static void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        peakPoolSize.set(poolSize.get());
     }
 
     /**
@@ -433,7 +517,7 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
@@ -472,10 +556,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: this method is used by the set of pooled buffers
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistently with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -532,6 +623,17 @@ public class BufferPool {
          * @return the Class of buffer instances this factory creates
          */
         public abstract Class<?> getBufferClass();
+
+        /**
+         * Returns the Class that identifies the buffers this factory creates in the pool: buffers of a different
+         * pooled class are never returned for one another, even if they have the same buffer class. This method
+         * returns {@link #getBufferClass()} by default.
+         *
+         * @return the Class that identifies the buffers this factory creates in the pool
+         */
+        protected Class<?> getPooledClass() {
+            return getBufferClass();
+        }
     }
 
     /**
@@ -596,16 +698,47 @@ public class BufferPool {
 
     /**
      * This class is a {@link BufferFactory} implementation for <code>java.nio.ByteBuffer</code> buffers.
-     * ByteBuffer instances created by {@link #newBuffer(int)} are direct ; the actually Class of those instances may be actually
+     * ByteBuffer instances created by {@link #newBuffer(int)} are direct by default ; the actually Class of those instances may be actually
      * be <code>java.nio.DirectByteBuffer</code> and not <code>java.nio.ByteBuffer</code> as returned by
-     * {@link #getBufferClass()}.
+     * {@link #getBufferClass()}. Direct and heap buffers are pooled separately.
      */
     public static class ByteBufferFactory extends BufferFactory {
+
+        /** Class of direct ByteBuffer instances */
+        private final static Class<?> DIRECT_CLASS = ByteBuffer.allocateDirect(0).getClass();
+
+        /** Class of heap ByteBuffer instances */
+        private final static Class<?> HEAP_CLASS = ByteBuffer.allocate(0).getClass();
+
+        private final boolean direct;
+
+        /**
+         * Creates a factory of direct buffers, which are allocated outside of the Java heap and are the most efficient
+         * for I/O on channels.
+         */
+        public ByteBufferFactory() {
+            this(true);
+        }
+
+        /**
+         * Creates a factory of direct or heap buffers.
+         *
+         * @param direct <code>true</code> to create direct buffers, <code>false</code> for heap buffers
+         */
+        public ByteBufferFactory(boolean direct) {
+            this.direct = direct;
+        }
+
         @Override
         public Object newBuffer(int size) {
             // Note: the returned instance is actually a java.nio.DirectByteBuffer, this is why it's important to
             // compare classes using Class#isAssignableFrom(Class)
-            return ByteBuffer.allocateDirect(size);
+            return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+
+        @Override
+        protected Class<?> getPooledClass() {
+            return direct ? DIRECT_CLASS : HEAP_CLASS;
         }
 
         @Override
@@ -659,8 +792,32 @@ public class BufferPool {
         }
     }
 
-	public static synchronized void releaseAll() {
+    /**
+     * Identifies the buffers of a class and length in the pool.
+     */
+    private static class SizeClass {
+        private final Class<?> bufferClass;
+        private final int length;
+
+        private SizeClass(Class<?> bufferClass, int length) {
+            this.bufferClass = bufferClass;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof SizeClass) && bufferClass == ((SizeClass)o).bufferClass && length == ((SizeClass)o).length;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * bufferClass.hashCode() + length;
+        }
+    }
+
+	public static void releaseAll() {
 		bufferContainers.clear();
-		poolSize = 0;
+		sizeClasses.clear();
+		poolSize.set(0);
 	}
 }
@@ -0,0 +1,369 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <code>ReadAheadRandomInputStream</code> is a <code>RandomAccessInputStream</code> for resources that are read by
+ * ranges, each range costing a round trip, such as HTTP resources. It improves on {@link BlockRandomInputStream}
+ * in several ways:
+ * <ul>
+ *   <li>the resource is split into fixed-size blocks, and the most recently used blocks are kept in a small cache, so
+ *   that seeking back and forth within the same region (as archive readers do) doesn't fetch the same data again</li>
+ *   <li>when the resource is read sequentially, consecutive blocks are fetched by a single range request whose size
+ *   doubles every time, up to a maximum</li>
+ *   <li>when the resource is read sequentially, the next ranges are requested in the background before they are
+ *   needed, a few requests being in flight at the same time</li>
+ * </ul>
+ * Random accesses fetch a single block at a time.
+ *
+ * <p>{@link #readRange(long, byte[], int)} may be called by several threads at the same time and must therefore be
+ * thread-safe. As with any <code>InputStream</code>, the other methods of this class must not be called concurrently.</p>
+ */
+public abstract class ReadAheadRandomInputStream extends RandomAccessInputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadRandomInputStream.class);
+
+    /** Default size of a block */
+    public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+    /** Default maximum size of a range request */
+    public static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+
+    /** Default size of the block cache */
+    public static final int DEFAULT_CACHE_SIZE = 6 * 1024 * 1024;
+
+    /** Default maximum number of range requests made in the background */
+    public static final int DEFAULT_MAX_PREFETCHES = 2;
+
+    /** Threads that carry out background requests, shared by all streams */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Size of a block */
+    private final int blockSize;
+
+    /** Maximum number of blocks fetched by a single request */
+    private final int maxRequestBlocks;
+
+    /** Maximum number of background requests */
+    private final int maxPrefetches;
+
+    /** Cached blocks, indexed by block number, in access order. Guarded by itself. */
+    private final LinkedHashMap<Long, byte[]> cache;
+
+    /** Background requests in progress. Guarded by {@link #cache}. */
+    private final List<Prefetch> prefetches = new ArrayList<>();
+
+    /** Number of blocks fetched by the next request, grows while the resource is read sequentially */
+    private int requestBlocks = 1;
+
+    /** Block accessed last, -1 initially */
+    private long lastBlock = -1;
+
+    /** Index of the block that follows the last block requested while reading sequentially */
+    private long requestedEnd;
+
+    /** Global offset within the resource */
+    private long offset;
+
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a new stream using default values.
+     */
+    protected ReadAheadRandomInputStream() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_REQUEST_SIZE, DEFAULT_CACHE_SIZE, DEFAULT_MAX_PREFETCHES);
+    }
+
+    /**
+     * Creates a new stream.
+     *
+     * @param blockSize size of a block, i.e. amount of data fetched when reading at random
+     * @param maxRequestSize maximum amount of data fetched by a single request
+     * @param cacheSize maximum amount of data kept in the block cache, raised to twice the data that can be in flight
+     * @param maxPrefetches maximum number of requests made in the background, <code>0</code> to disable read-ahead
+     */
+    protected ReadAheadRandomInputStream(int blockSize, int maxRequestSize, int cacheSize, int maxPrefetches) {
+        this.blockSize = blockSize;
+        this.maxRequestBlocks = Math.max(1, maxRequestSize / blockSize);
+        this.maxPrefetches = maxPrefetches;
+        // Blocks that are read move ahead of the blocks that were prefetched but not read yet: the cache must be
+        // large enough for prefetched blocks not to be evicted before they are read
+        final int cacheBlocks = Math.max(cacheSize / blockSize, 2 * maxRequestBlocks * (maxPrefetches + 1));
+        this.cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+    }
+
+    /**
+     * Returns the given block, fetching it if necessary, and schedules background requests if the resource is
+     * read sequentially.
+     */
+    private byte[] getBlock(long index) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        boolean sequential = index == lastBlock + 1;
+        if (index != lastBlock) {
+            if (!sequential) {
+                // Random access, start small again
+                requestBlocks = 1;
+                requestedEnd = index + 1;
+            }
+            lastBlock = index;
+        }
+
+        byte[] block = waitForBlock(index);
+        if (block == null) {
+            // Fetch the block and, when reading sequentially, the ones that follow
+            int nbBlocks = sequential ? requestBlocks : 1;
+            block = fetch(index, nbBlocks);
+            requestedEnd = Math.max(requestedEnd, index + nbBlocks);
+            if (sequential) {
+                growRequests();
+            }
+        }
+
+        if (sequential) {
+            prefetch(index);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the given block if it is cached or being fetched in the background, <code>null</code> otherwise.
+     */
+    private byte[] waitForBlock(long index) throws IOException {
+        Prefetch prefetch = null;
+        synchronized (cache) {
+            byte[] block = cache.get(index);
+            if (block != null) {
+                return block;
+            }
+            for (Prefetch p : prefetches) {
+                if (index >= p.firstBlock && index < p.firstBlock + p.nbBlocks) {
+                    prefetch = p;
+                    break;
+                }
+            }
+        }
+        if (prefetch == null) {
+            return null;
+        }
+
+        try {
+            prefetch.future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            // The block will be fetched again, reporting the error if it persists
+            LOGGER.debug("Background request failed", e.getCause());
+        }
+        synchronized (cache) {
+            return cache.get(index);
+        }
+    }
+
+    /**
+     * Makes background requests for the blocks that follow the given one, keeping up to {@link #maxPrefetches}
+     * requests in flight.
+     */
+    private void prefetch(long index) throws IOException {
+        long nbBlocks = (getLength() + blockSize - 1) / blockSize;
+        synchronized (cache) {
+            // Request more only when the reader gets close enough to the end of what has been requested
+            while (prefetches.size() < maxPrefetches && requestedEnd < nbBlocks
+                    && requestedEnd - index <= (long)requestBlocks * maxPrefetches) {
+                long first = requestedEnd;
+                int count = (int)Math.min(requestBlocks, nbBlocks - first);
+                // Do not request blocks that are already cached
+                while (count > 0 && cache.containsKey(first)) {
+                    first++;
+                    count--;
+                }
+                requestedEnd = first + count;
+                if (count == 0) {
+                    continue;
+                }
+                Prefetch prefetch = new Prefetch(first, count);
+                prefetches.add(prefetch);
+                prefetch.future = PREFETCH_EXECUTOR.submit(() -> {
+                    try {
+                        if (!closed) {
+                            fetch(prefetch.firstBlock, prefetch.nbBlocks);
+                        }
+                        return null;
+                    } finally {
+                        synchronized (cache) {
+                            prefetches.remove(prefetch);
+                        }
+                    }
+                });
+                growRequests();
+            }
+        }
+    }
+
+    private void growRequests() {
+        requestBlocks = Math.min(requestBlocks * 2, maxRequestBlocks);
+    }
+
+    /**
+     * Fetches the given blocks with a single request, adds them to the cache and returns the first one.
+     */
+    private byte[] fetch(long firstBlock, int nbBlocks) throws IOException {
+        long start = firstBlock * blockSize;
+        int len = (int)Math.min((long)nbBlocks * blockSize, getLength() - start);
+        if (len <= 0) {
+            return new byte[0];
+        }
+
+        byte[] data = new byte[len];
+        int read = readRange(start, data, len);
+
+        byte[] first = null;
+        synchronized (cache) {
+            for (int off = 0, i = 0; off < read; off += blockSize, i++) {
+                int blockLen = Math.min(blockSize, read - off);
+                byte[] block = new byte[blockLen];
+                System.arraycopy(data, off, block, 0, blockLen);
+                cache.put(firstBlock + i, block);
+                if (i == 0) {
+                    first = block;
+                }
+            }
+        }
+        // The resource is shorter than expected
+        return first == null ? new byte[0] : first;
+    }
+
+
+    ////////////////////////////////////////////
+    // RandomAccessInputStream implementation //
+    ////////////////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if (offset >= getLength()) {
+            return -1;
+        }
+        byte[] block = getBlock(offset / blockSize);
+        int blockOff = (int)(offset % blockSize);
+        if (blockOff >= block.length) {
+            return -1;
+        }
+        offset++;
+        return block[blockOff] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (offset >= getLength()) {
+            return -1;
+        }
+        byte[] block = getBlock(offset / blockSize);
+        int blockOff = (int)(offset % blockSize);
+        if (blockOff >= block.length) {
+            return -1;
+        }
+        int nbBytes = Math.min(len, block.length - blockOff);
+        System.arraycopy(block, blockOff, b, off, nbBytes);
+        offset += nbBytes;
+        return nbBytes;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void seek(long newOffset) {
+        // Data is fetched lazily, when it is read
+        offset = newOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (cache) {
+            for (Prefetch prefetch : prefetches) {
+                prefetch.future.cancel(false);
+            }
+            cache.clear();
+        }
+    }
+
+
+    //////////////////////
+    // Abstract methods //
+    //////////////////////
+
+    /**
+     * Reads <code>len</code> bytes starting at <code>offset</code> into the given array, starting at 0, and returns
+     * the number of bytes that were actually read, which is less than <code>len</code> only if the end of the
+     * resource has been reached. This method may be called by several threads at the same time.
+     *
+     * @param offset offset of the first byte to read
+     * @param b the array to fill with data
+     * @param len number of bytes to read
+     * @return the number of bytes that were actually read
+     * @throws IOException if an I/O error occurred
+     */
+    protected abstract int readRange(long offset, byte b[], int len) throws IOException;
+
+
+    /**
+     * A range request made in the background.
+     */
+    private static class Prefetch {
+        private final long firstBlock;
+        private final int nbBlocks;
+        private Future<?> future;
+
+        private Prefetch(long firstBlock, int nbBlocks) {
+            this.firstBlock = firstBlock;
+            this.nbBlocks = nbBlocks;
+        }
+    }
+}
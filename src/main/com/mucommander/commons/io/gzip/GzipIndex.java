@@ -0,0 +1,324 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An index of access points into a GZIP stream, which allows to start decompressing the stream at (or shortly before)
+ * any uncompressed offset instead of from the beginning of the stream.
+ *
+ * <p>Each {@link Checkpoint} records a position at a deflate block boundary: the compressed offset down to the bit,
+ * the corresponding uncompressed offset and the last 32 KB of uncompressed data, which later blocks may refer to.
+ * Checkpoints are added by {@link IndexedGzipInputStream} every {@link #getSpan() span} bytes of uncompressed data,
+ * as the stream is read. The windows are kept deflated in memory.</p>
+ *
+ * <p>To keep the memory footprint bounded, the number of checkpoints is capped: when the cap is reached, every other
+ * checkpoint is dropped and the span is doubled.</p>
+ *
+ * <p>This class is thread-safe: an index can be shared by several streams reading the same GZIP file.</p>
+ *
+ * @see IndexedGzipInputStream
+ */
+public class GzipIndex {
+
+    /** Default distance between two checkpoints, in bytes of uncompressed data */
+    public static final long DEFAULT_SPAN = 4 * 1024 * 1024;
+
+    /** Default maximum number of checkpoints */
+    public static final int DEFAULT_MAX_CHECKPOINTS = 1024;
+
+    /** Version of the serialized form written by {@link #write(DataOutput)} */
+    private static final int SERIAL_VERSION = 1;
+
+    /** Current distance between two checkpoints */
+    private long span;
+
+    /** Maximum number of checkpoints */
+    private final int maxCheckpoints;
+
+    /** Checkpoints, sorted by increasing offsets */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * Creates an empty index using {@link #DEFAULT_SPAN} and {@link #DEFAULT_MAX_CHECKPOINTS}.
+     */
+    public GzipIndex() {
+        this(DEFAULT_SPAN, DEFAULT_MAX_CHECKPOINTS);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param span the initial distance between two checkpoints, in bytes of uncompressed data
+     * @param maxCheckpoints the maximum number of checkpoints, must be at least 2
+     */
+    public GzipIndex(long span, int maxCheckpoints) {
+        if (span <= 0 || maxCheckpoints < 2) {
+            throw new IllegalArgumentException();
+        }
+        this.span = span;
+        this.maxCheckpoints = maxCheckpoints;
+    }
+
+    /**
+     * Returns the current distance between two checkpoints, in bytes of uncompressed data.
+     *
+     * @return the current distance between two checkpoints
+     */
+    public synchronized long getSpan() {
+        return span;
+    }
+
+    /**
+     * Returns the number of checkpoints in this index.
+     *
+     * @return the number of checkpoints in this index
+     */
+    public synchronized int size() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the number of bytes used by the checkpoint windows.
+     *
+     * @return the number of bytes used by the checkpoint windows
+     */
+    public synchronized long getMemoryUsage() {
+        long total = 0;
+        for (Checkpoint checkpoint : checkpoints) {
+            total += checkpoint.window.length;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the checkpoint with the greatest uncompressed offset that is lower than or equal to the given offset,
+     * <code>null</code> if there is none.
+     *
+     * @param uncompressedOffset an offset in the uncompressed data
+     * @return the closest checkpoint located before the given offset, <code>null</code> if there is none
+     */
+    public synchronized Checkpoint getCheckpoint(long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint result = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Checkpoint checkpoint = checkpoints.get(mid);
+            if (checkpoint.uncompressedOffset <= uncompressedOffset) {
+                result = checkpoint;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if a checkpoint should be added at the given uncompressed offset, i.e. if it is
+     * located at least one span after the last checkpoint.
+     */
+    synchronized boolean needsCheckpoint(long uncompressedOffset) {
+        long last = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).uncompressedOffset;
+        return uncompressedOffset >= last + span;
+    }
+
+    /**
+     * Adds a checkpoint to this index. The checkpoint is ignored if it isn't located after the last checkpoint.
+     *
+     * @param compressedOffset offset of the byte that holds the first bit of the next deflate block
+     * @param bitOffset number of bits of that byte that belong to the previous block (0 to 7)
+     * @param uncompressedOffset the corresponding offset in the uncompressed data
+     * @param window the uncompressed data preceding the checkpoint, up to 32 KB
+     */
+    synchronized void addCheckpoint(long compressedOffset, int bitOffset, long uncompressedOffset, byte[] window) {
+        if (!needsCheckpoint(uncompressedOffset)) {
+            return;
+        }
+
+        checkpoints.add(new Checkpoint(compressedOffset, bitOffset, uncompressedOffset, deflate(window), window.length));
+
+        if (checkpoints.size() > maxCheckpoints) {
+            // Drop every other checkpoint, keeping the ones located at multiples of the new span
+            List<Checkpoint> kept = new ArrayList<>(checkpoints.size() / 2 + 1);
+            for (int i = 1; i < checkpoints.size(); i += 2) {
+                kept.add(checkpoints.get(i));
+            }
+            checkpoints.clear();
+            checkpoints.addAll(kept);
+            span *= 2;
+        }
+    }
+
+    /**
+     * Writes this index to the given output, in a form that can be read back with {@link #read(DataInput)}.
+     *
+     * @param out the output to write this index to
+     * @throws IOException if an I/O error occurred
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeInt(SERIAL_VERSION);
+        out.writeLong(span);
+        out.writeInt(maxCheckpoints);
+        out.writeInt(checkpoints.size());
+        for (Checkpoint checkpoint : checkpoints) {
+            out.writeLong(checkpoint.compressedOffset);
+            out.writeByte(checkpoint.bitOffset);
+            out.writeLong(checkpoint.uncompressedOffset);
+            out.writeInt(checkpoint.windowLength);
+            out.writeInt(checkpoint.window.length);
+            out.write(checkpoint.window);
+        }
+    }
+
+    /**
+     * Reads an index that was written with {@link #write(DataOutput)}.
+     *
+     * @param in the input to read the index from
+     * @return the index
+     * @throws IOException if an I/O error occurred or if the index is corrupt
+     */
+    public static GzipIndex read(DataInput in) throws IOException {
+        if (in.readInt() != SERIAL_VERSION) {
+            throw new IOException("Unsupported GZIP index version");
+        }
+        GzipIndex index = new GzipIndex(in.readLong(), in.readInt());
+        int nbCheckpoints = in.readInt();
+        for (int i = 0; i < nbCheckpoints; i++) {
+            long compressedOffset = in.readLong();
+            int bitOffset = in.readByte();
+            long uncompressedOffset = in.readLong();
+            int windowLength = in.readInt();
+            byte[] window = new byte[in.readInt()];
+            in.readFully(window);
+            index.checkpoints.add(new Checkpoint(compressedOffset, bitOffset, uncompressedOffset, window, windowLength));
+        }
+        return index;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * An access point into a GZIP stream, located at a deflate block boundary.
+     */
+    public static final class Checkpoint {
+        private final long compressedOffset;
+        private final int bitOffset;
+        private final long uncompressedOffset;
+        /** Deflated window */
+        private final byte[] window;
+        /** Length of the window once inflated */
+        private final int windowLength;
+
+        private Checkpoint(long compressedOffset, int bitOffset, long uncompressedOffset, byte[] window, int windowLength) {
+            this.compressedOffset = compressedOffset;
+            this.bitOffset = bitOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.window = window;
+            this.windowLength = windowLength;
+        }
+
+        /**
+         * Returns the offset in the compressed stream of the byte that holds the first bit of the block that starts
+         * at this checkpoint. This is where the compressed stream must be positioned before being passed to
+         * {@link IndexedGzipInputStream#IndexedGzipInputStream(java.io.InputStream, GzipIndex, Checkpoint)}.
+         *
+         * @return the offset in the compressed stream where this checkpoint is located
+         */
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        /**
+         * Returns the number of bits of the byte located at {@link #getCompressedOffset()} that belong to the
+         * previous block, from <code>0</code> to <code>7</code>.
+         *
+         * @return the number of bits to skip in the first byte
+         */
+        public int getBitOffset() {
+            return bitOffset;
+        }
+
+        /**
+         * Returns the offset in the uncompressed data that corresponds to this checkpoint.
+         *
+         * @return the offset in the uncompressed data that corresponds to this checkpoint
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * Returns the uncompressed data that precedes this checkpoint, up to 32 KB.
+         *
+         * @return the uncompressed data that precedes this checkpoint
+         * @throws ZipException if the window is corrupt
+         */
+        byte[] getWindow() throws ZipException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(window);
+                byte[] result = new byte[windowLength];
+                int n = 0;
+                while (n < windowLength) {
+                    int read = inflater.inflate(result, n, windowLength - n);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                        break;
+                    }
+                    n += read;
+                }
+                if (n != windowLength) {
+                    throw new ZipException("Corrupt GZIP index window");
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt GZIP index window: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
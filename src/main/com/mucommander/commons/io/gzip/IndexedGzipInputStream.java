@@ -0,0 +1,732 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.gzip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * An <code>InputStream</code> that decompresses GZIP data, and that can either build a {@link GzipIndex} while the
+ * stream is read, or start decompressing at one of the index's checkpoints.
+ *
+ * <p><code>java.util.zip.Inflater</code> can neither report deflate block boundaries nor be primed with the bits of a
+ * partially consumed byte, both of which are required to resume decompression in the middle of a stream. This class
+ * therefore implements the inflate algorithm (RFC 1951) itself, along with the GZIP member format (RFC 1952).
+ * Concatenated members are supported, like <code>java.util.zip.GZIPInputStream</code> does.</p>
+ *
+ * <p>When an index is specified, a checkpoint is added to it at the first block boundary located at least one span
+ * after the index's last checkpoint. Streams that start at a checkpoint therefore extend the index as they go past
+ * its end.</p>
+ *
+ * <p>The CRC and size found in a member's trailer are verified, except for the member in which the stream started
+ * when it started at a checkpoint.</p>
+ *
+ * @see GzipIndex
+ */
+public class IndexedGzipInputStream extends InputStream {
+
+    /** Maximum distance a deflate back-reference can go */
+    private static final int WINDOW_SIZE = 32768;
+    /** Size of the circular buffer that holds both the back-reference window and the bytes not read yet */
+    private static final int BUFFER_SIZE = 2 * WINDOW_SIZE;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    /** Maximum length of a back-reference */
+    private static final int MAX_MATCH = 258;
+    /** Maximum length of a Huffman code */
+    private static final int MAX_BITS = 15;
+    private static final int INPUT_BUFFER_SIZE = 65536;
+
+    private static final int STATE_MEMBER_HEADER = 0;
+    private static final int STATE_BLOCK_HEADER = 1;
+    private static final int STATE_STORED = 2;
+    private static final int STATE_CODES = 3;
+    private static final int STATE_TRAILER = 4;
+    private static final int STATE_EOF = 5;
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    /** Order in which code length code lengths are stored */
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERAL_LENGTH;
+    private static final Huffman FIXED_DISTANCE;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERAL_LENGTH = new Huffman(288);
+        FIXED_LITERAL_LENGTH.build(lengths, 0, 288);
+
+        Arrays.fill(lengths, 0, 30, 5);
+        FIXED_DISTANCE = new Huffman(30);
+        FIXED_DISTANCE.build(lengths, 0, 30);
+    }
+
+    /** The compressed stream */
+    private final InputStream in;
+    private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private int inputPos;
+    private int inputLength;
+    /** Offset of the compressed stream at which this stream started */
+    private final long compressedStart;
+    /** Number of compressed bytes consumed since {@link #compressedStart} */
+    private long compressedBytes;
+
+    /** Bits read from the compressed stream but not consumed yet, least significant bits first */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Circular buffer holding the uncompressed data */
+    private final byte[] window = new byte[BUFFER_SIZE];
+    /** Position in {@link #window} where the next uncompressed byte will be written */
+    private int writePos;
+    /** Number of uncompressed bytes that have not been read yet */
+    private int pending;
+    /** Number of uncompressed bytes produced, including the ones that precede the starting checkpoint */
+    private long totalOut;
+    /** Uncompressed offset before which back-references are invalid */
+    private long historyStart;
+
+    private int state;
+    private boolean firstMember = true;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private Huffman literalLengthCode;
+    private Huffman distanceCode;
+    private Huffman dynamicLiteralLength;
+    private Huffman dynamicDistance;
+    private Huffman codeLengthCode;
+    private int[] codeLengths;
+
+    private final CRC32 crc = new CRC32();
+    /** <code>true</code> if the CRC and size of the current member can be verified */
+    private boolean checkMember;
+    /** Uncompressed offset at which the current member started */
+    private long memberStart;
+
+    /** The index to add checkpoints to, may be <code>null</code> */
+    private final GzipIndex index;
+
+    private boolean closed;
+
+    /** Buffer used by {@link #read()} */
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * Creates a stream that decompresses the given GZIP stream from its beginning, adding checkpoints to the given
+     * index (if any) as the stream is read.
+     *
+     * @param in the GZIP stream, positioned at its beginning
+     * @param index the index to add checkpoints to, may be <code>null</code>
+     */
+    public IndexedGzipInputStream(InputStream in, GzipIndex index) {
+        this.in = in;
+        this.index = index;
+        this.compressedStart = 0;
+        this.state = STATE_MEMBER_HEADER;
+    }
+
+    /**
+     * Creates a stream that decompresses the given GZIP stream starting at the specified checkpoint. The first byte
+     * returned by this stream is the one located at {@link GzipIndex.Checkpoint#getUncompressedOffset()}.
+     *
+     * @param in the GZIP stream, positioned at {@link GzipIndex.Checkpoint#getCompressedOffset()}
+     * @param index the index the checkpoint belongs to, checkpoints will be added to it as the stream is read
+     * @param checkpoint the checkpoint to start decompressing at
+     * @throws IOException if an I/O error occurred or if the checkpoint is corrupt
+     */
+    public IndexedGzipInputStream(InputStream in, GzipIndex index, GzipIndex.Checkpoint checkpoint) throws IOException {
+        this.in = in;
+        this.index = index;
+        this.compressedStart = checkpoint.getCompressedOffset();
+
+        int bitOffset = checkpoint.getBitOffset();
+        if (bitOffset > 0) {
+            if (!fillBits(8)) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            dropBits(bitOffset);
+        }
+
+        byte[] checkpointWindow = checkpoint.getWindow();
+        System.arraycopy(checkpointWindow, 0, window, 0, checkpointWindow.length);
+        writePos = checkpointWindow.length & BUFFER_MASK;
+        totalOut = checkpoint.getUncompressedOffset();
+        historyStart = totalOut - checkpointWindow.length;
+        memberStart = totalOut;
+        firstMember = false;
+        state = STATE_BLOCK_HEADER;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes that have been read from this stream, including the ones that precede
+     * the checkpoint this stream started at, if any.
+     *
+     * @return the current offset in the uncompressed data
+     */
+    public long getPosition() {
+        return totalOut - pending;
+    }
+
+
+    ////////////////////
+    // Input handling //
+    ////////////////////
+
+    private boolean fillInput() throws IOException {
+        int n;
+        do {
+            n = in.read(inputBuffer, 0, inputBuffer.length);
+        } while (n == 0);
+
+        if (n < 0) {
+            inputLength = inputPos = 0;
+            return false;
+        }
+        inputLength = n;
+        inputPos = 0;
+        return true;
+    }
+
+    /**
+     * Tries to have at least <code>n</code> bits in the bit buffer, returns <code>false</code> if the end of the
+     * compressed stream was reached before.
+     */
+    private boolean fillBits(int n) throws IOException {
+        while (bitCount < n) {
+            if (inputPos == inputLength && !fillInput()) {
+                return false;
+            }
+            bitBuffer |= (long)(inputBuffer[inputPos++] & 0xFF) << bitCount;
+            bitCount += 8;
+            compressedBytes++;
+        }
+        return true;
+    }
+
+    private void dropBits(int n) {
+        bitBuffer >>>= n;
+        bitCount -= n;
+    }
+
+    private int bits(int n) throws IOException {
+        if (!fillBits(n)) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+        int value = (int)(bitBuffer & ((1L << n) - 1));
+        dropBits(n);
+        return value;
+    }
+
+    private void alignToByte() {
+        dropBits(bitCount & 7);
+    }
+
+    private int decodeSymbol(Huffman huffman) throws IOException {
+        fillBits(MAX_BITS);
+        if (bitCount > 0) {
+            int entry = huffman.fast[(int)bitBuffer & Huffman.FAST_MASK];
+            int length = entry & 15;
+            if (entry != 0 && length <= bitCount) {
+                dropBits(length);
+                return entry >>> 4;
+            }
+        }
+
+        // Slow path: codes longer than FAST_BITS, decoded one bit at a time
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int len = 1; len <= MAX_BITS; len++) {
+            code |= bits(1);
+            int count = huffman.count[len];
+            if (code - count < first) {
+                return huffman.symbol[index + (code - first)];
+            }
+            index += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+        throw new ZipException("Invalid Huffman code");
+    }
+
+
+    ///////////////////
+    // State machine //
+    ///////////////////
+
+    /**
+     * Advances the state machine by one step, producing zero or more uncompressed bytes.
+     */
+    private void step() throws IOException {
+        int start = writePos;
+        long startOut = totalOut;
+
+        switch (state) {
+        case STATE_MEMBER_HEADER:
+            readMemberHeader();
+            break;
+        case STATE_BLOCK_HEADER:
+            if (index != null && index.needsCheckpoint(totalOut)) {
+                addCheckpoint();
+            }
+            readBlockHeader();
+            break;
+        case STATE_STORED:
+            copyStored();
+            break;
+        case STATE_CODES:
+            decodeCodes();
+            break;
+        case STATE_TRAILER:
+            readTrailer();
+            break;
+        }
+
+        int produced = (int)(totalOut - startOut);
+        if (produced > 0 && checkMember) {
+            int first = Math.min(produced, BUFFER_SIZE - start);
+            crc.update(window, start, first);
+            if (first < produced) {
+                crc.update(window, 0, produced - first);
+            }
+        }
+    }
+
+    private void readMemberHeader() throws IOException {
+        if (!fillBits(8)) {
+            if (firstMember) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            state = STATE_EOF;
+            return;
+        }
+        int magic1 = bits(8);
+        int magic2 = fillBits(8) ? bits(8) : -1;
+        if (magic1 != GZIP_MAGIC_1 || magic2 != GZIP_MAGIC_2) {
+            if (firstMember) {
+                throw new ZipException("Not in GZIP format");
+            }
+            // Trailing garbage is ignored, as GZIPInputStream does
+            state = STATE_EOF;
+            return;
+        }
+        if (bits(8) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = bits(8);
+        // Modification time, extra flags and OS
+        for (int i = 0; i < 6; i++) {
+            bits(8);
+        }
+        if ((flags & FEXTRA) != 0) {
+            int length = bits(16);
+            for (int i = 0; i < length; i++) {
+                bits(8);
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            while (bits(8) != 0) {
+                // Skip the zero-terminated file name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (bits(8) != 0) {
+                // Skip the zero-terminated comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            bits(16);
+        }
+
+        firstMember = false;
+        crc.reset();
+        checkMember = true;
+        memberStart = totalOut;
+        historyStart = totalOut;
+        state = STATE_BLOCK_HEADER;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+        int type = bits(2);
+        switch (type) {
+        case 0:
+            alignToByte();
+            int length = bits(16);
+            int complement = bits(16);
+            if (length != (~complement & 0xFFFF)) {
+                throw new ZipException("Invalid stored block lengths");
+            }
+            storedRemaining = length;
+            state = STATE_STORED;
+            break;
+        case 1:
+            literalLengthCode = FIXED_LITERAL_LENGTH;
+            distanceCode = FIXED_DISTANCE;
+            state = STATE_CODES;
+            break;
+        case 2:
+            readDynamicCodes();
+            literalLengthCode = dynamicLiteralLength;
+            distanceCode = dynamicDistance;
+            state = STATE_CODES;
+            break;
+        default:
+            throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void readDynamicCodes() throws IOException {
+        if (codeLengths == null) {
+            codeLengths = new int[320];
+            codeLengthCode = new Huffman(19);
+            dynamicLiteralLength = new Huffman(288);
+            dynamicDistance = new Huffman(30);
+        }
+        int[] lengths = codeLengths;
+
+        int nbLengths = bits(5) + 257;
+        int nbDistances = bits(5) + 1;
+        int nbCodes = bits(4) + 4;
+        if (nbLengths > 286 || nbDistances > 30) {
+            throw new ZipException("Too many length or distance codes");
+        }
+
+        Arrays.fill(lengths, 0, 19, 0);
+        for (int i = 0; i < nbCodes; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        if (codeLengthCode.build(lengths, 0, 19) != 0) {
+            throw new ZipException("Invalid code lengths set");
+        }
+
+        int total = nbLengths + nbDistances;
+        int i = 0;
+        while (i < total) {
+            int symbol = decodeSymbol(codeLengthCode);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+            } else {
+                int length = 0;
+                int repeat;
+                if (symbol == 16) {
+                    if (i == 0) {
+                        throw new ZipException("Repeat with no first length");
+                    }
+                    length = lengths[i - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (i + repeat > total) {
+                    throw new ZipException("Too many code lengths");
+                }
+                while (repeat-- > 0) {
+                    lengths[i++] = length;
+                }
+            }
+        }
+
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code");
+        }
+
+        int left = dynamicLiteralLength.build(lengths, 0, nbLengths);
+        if (left < 0 || (left > 0 && nbLengths - dynamicLiteralLength.count[0] != 1)) {
+            throw new ZipException("Invalid literal/length code");
+        }
+        left = dynamicDistance.build(lengths, nbLengths, nbDistances);
+        if (left < 0 || (left > 0 && nbDistances - dynamicDistance.count[0] != 1)) {
+            throw new ZipException("Invalid distance code");
+        }
+    }
+
+    private void endBlock() {
+        state = lastBlock ? STATE_TRAILER : STATE_BLOCK_HEADER;
+    }
+
+    private void copyStored() throws IOException {
+        while (storedRemaining > 0 && pending < BUFFER_SIZE) {
+            if (bitCount >= 8) {
+                // Bytes already loaded in the bit buffer (which is byte-aligned at this point) come first
+                putByte(bits(8));
+                storedRemaining--;
+                continue;
+            }
+            if (inputPos == inputLength && !fillInput()) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            int n = Math.min(Math.min(storedRemaining, BUFFER_SIZE - pending),
+                    Math.min(inputLength - inputPos, BUFFER_SIZE - writePos));
+            System.arraycopy(inputBuffer, inputPos, window, writePos, n);
+            inputPos += n;
+            compressedBytes += n;
+            writePos = (writePos + n) & BUFFER_MASK;
+            pending += n;
+            totalOut += n;
+            storedRemaining -= n;
+        }
+        if (storedRemaining == 0) {
+            endBlock();
+        }
+    }
+
+    private void putByte(int b) {
+        window[writePos] = (byte)b;
+        writePos = (writePos + 1) & BUFFER_MASK;
+        pending++;
+        totalOut++;
+    }
+
+    private void decodeCodes() throws IOException {
+        // Stop before a back-reference could overwrite bytes that have not been read yet
+        while (pending <= BUFFER_SIZE - MAX_MATCH) {
+            int symbol = decodeSymbol(literalLengthCode);
+            if (symbol < 256) {
+                putByte(symbol);
+            } else if (symbol == 256) {
+                endBlock();
+                return;
+            } else {
+                symbol -= 257;
+                if (symbol >= 29) {
+                    throw new ZipException("Invalid literal/length code");
+                }
+                int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+
+                symbol = decodeSymbol(distanceCode);
+                if (symbol >= 30) {
+                    throw new ZipException("Invalid distance code");
+                }
+                int distance = DIST_BASE[symbol] + bits(DIST_EXTRA[symbol]);
+                if (distance > totalOut - historyStart) {
+                    throw new ZipException("Invalid distance too far back");
+                }
+
+                int from = (writePos - distance) & BUFFER_MASK;
+                for (int i = 0; i < length; i++) {
+                    window[writePos] = window[from];
+                    writePos = (writePos + 1) & BUFFER_MASK;
+                    from = (from + 1) & BUFFER_MASK;
+                }
+                pending += length;
+                totalOut += length;
+            }
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        alignToByte();
+        long expectedCrc = bits(16) | ((long)bits(16) << 16);
+        long expectedSize = bits(16) | ((long)bits(16) << 16);
+        if (checkMember) {
+            if (expectedCrc != crc.getValue() || expectedSize != ((totalOut - memberStart) & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+        checkMember = false;
+        state = STATE_MEMBER_HEADER;
+    }
+
+    private void addCheckpoint() {
+        long bitPosition = compressedBytes * 8 - bitCount;
+        int windowLength = (int)Math.min(WINDOW_SIZE, totalOut - historyStart);
+        byte[] checkpointWindow = new byte[windowLength];
+        int start = (writePos - windowLength) & BUFFER_MASK;
+        int first = Math.min(windowLength, BUFFER_SIZE - start);
+        System.arraycopy(window, start, checkpointWindow, 0, first);
+        if (first < windowLength) {
+            System.arraycopy(window, 0, checkpointWindow, first, windowLength - first);
+        }
+        index.addCheckpoint(compressedStart + bitPosition / 8, (int)(bitPosition % 8), totalOut, checkpointWindow);
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (pending == 0) {
+            if (state == STATE_EOF) {
+                return -1;
+            }
+            step();
+        }
+
+        int n = Math.min(len, pending);
+        int start = (writePos - pending) & BUFFER_MASK;
+        int first = Math.min(n, BUFFER_SIZE - start);
+        System.arraycopy(window, start, b, off, first);
+        if (first < n) {
+            System.arraycopy(window, 0, b, off + first, n - first);
+        }
+        pending -= n;
+        return n;
+    }
+
+    /**
+     * Overridden to decompress and discard bytes without copying them.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            if (pending == 0) {
+                if (state == STATE_EOF) {
+                    break;
+                }
+                step();
+                continue;
+            }
+            int count = (int)Math.min(n - skipped, pending);
+            pending -= count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pending;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            in.close();
+        }
+    }
+
+
+    /**
+     * A canonical Huffman code, decoded through a lookup table for codes of up to {@link #FAST_BITS} bits, and one
+     * bit at a time for longer codes.
+     */
+    private static final class Huffman {
+        private static final int FAST_BITS = 9;
+        private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+        /** Number of codes of each length */
+        private final int[] count = new int[MAX_BITS + 1];
+        /** Symbols ordered by code */
+        private final int[] symbol;
+        /** Lookup table indexed by the next FAST_BITS bits (in stream order): (symbol << 4) | code length, 0 if
+         * the code is longer than FAST_BITS */
+        private final int[] fast = new int[1 << FAST_BITS];
+
+        private Huffman(int maxSymbols) {
+            symbol = new int[maxSymbols];
+        }
+
+        /**
+         * Builds the code from the given code lengths. Returns <code>0</code> for a complete code, a negative value
+         * for an over-subscribed code and a positive value for an incomplete code.
+         */
+        private int build(int[] lengths, int offset, int n) {
+            Arrays.fill(count, 0);
+            Arrays.fill(fast, 0);
+            for (int i = 0; i < n; i++) {
+                count[lengths[offset + i]]++;
+            }
+            if (count[0] == n) {
+                return 0;   // No codes: complete, but decoding will fail
+            }
+
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left <<= 1;
+                left -= count[len];
+                if (left < 0) {
+                    return left;
+                }
+            }
+
+            int[] offsets = new int[MAX_BITS + 2];
+            int[] nextCode = new int[MAX_BITS + 2];
+            int code = 0;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                offsets[len + 1] = offsets[len] + count[len];
+                code = (code + (len == 1 ? 0 : count[len - 1])) << 1;
+                nextCode[len] = code;
+            }
+
+            for (int i = 0; i < n; i++) {
+                int len = lengths[offset + i];
+                if (len == 0) {
+                    continue;
+                }
+                symbol[offsets[len]++] = i;
+
+                int canonical = nextCode[len]++;
+                if (len <= FAST_BITS) {
+                    int reversed = Integer.reverse(canonical) >>> (32 - len);
+                    for (int j = reversed; j < fast.length; j += 1 << len) {
+                        fast[j] = (i << 4) | len;
+                    }
+                }
+            }
+            return left;
+        }
+    }
+}
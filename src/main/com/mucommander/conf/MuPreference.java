@@ -79,6 +79,8 @@ public enum MuPreference {
 	LIST_HIDDEN_FILES(MuPreferences.LIST_HIDDEN_FILES),
 	SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
 	SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
+	ARCHIVE_CATALOG_CACHE_SIZE(MuPreferences.ARCHIVE_CATALOG_CACHE_SIZE),
+	PARALLEL_TRANSFERS(MuPreferences.PARALLEL_TRANSFERS),
 	SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
 	CALCULATE_FOLDER_SIZE_ON_MARK(MuPreferences.CALCULATE_FOLDER_SIZE_ON_MARK),
     FILE_GROUP_1_MASK(MuPreferences.FILE_GROUP_1_MASK),
@@ -100,7 +102,8 @@ public enum MuPreference {
 	FIND_FILE_ARCHIVES(MuPreferences.FIND_FILE_ARCHIVES),
 	FIND_FILE_IGNORE_HIDDEN(MuPreferences.FIND_FILE_IGNORE_HIDDEN),
 	FIND_FILE_CASE_SENSITIVE(MuPreferences.FIND_FILE_CASE_SENSITIVE),
-	FIND_FILE_SEARCH_HEX(MuPreferences.FIND_FILE_SEARCH_HEX);
+	FIND_FILE_SEARCH_HEX(MuPreferences.FIND_FILE_SEARCH_HEX),
+	FIND_FILE_INDEXED_FOLDERS(MuPreferences.FIND_FILE_INDEXED_FOLDERS);
 
 
 
@@ -409,6 +409,26 @@ public class MuPreferences implements MuPreferencesAPI {
 	/** Default value for {@link #SMB_USE_EXTENDED_SECURITY}. */
 	public static final boolean DEFAULT_SMB_USE_EXTENDED_SECURITY = false;
 
+
+	// - Variables used for archives -----------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all archive variables. */
+	public static final String ARCHIVE_SECTION                    = "archive";
+	/** Maximum size in megabytes of the on-disk archive catalog cache, <code>0</code> to disable it. */
+	public static final String ARCHIVE_CATALOG_CACHE_SIZE         = ARCHIVE_SECTION + '.' + "catalog_cache_size";
+	/** Default value for {@link #ARCHIVE_CATALOG_CACHE_SIZE}. */
+	public static final int DEFAULT_ARCHIVE_CATALOG_CACHE_SIZE    = 32;
+
+
+	// - Variables used for file transfers -----------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all file transfer variables. */
+	public static final String FILE_TRANSFER_SECTION              = "file_transfer";
+	/** Maximum number of files copied at the same time by copy jobs. */
+	public static final String PARALLEL_TRANSFERS                 = FILE_TRANSFER_SECTION + '.' + "parallel_transfers";
+	/** Default value for {@link #PARALLEL_TRANSFERS}. */
+	public static final int DEFAULT_PARALLEL_TRANSFERS            = 4;
+
     // - File group masks ----------------------------------------------------
     // -----------------------------------------------------------------------
     static final String FILE_GROUP_SECTION                 = "file_groups";
@@ -432,6 +452,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	static final String FIND_FILE_IGNORE_HIDDEN            = FIND_FILE_SECTION + ".ignore_hidden";
 	static final String FIND_FILE_CASE_SENSITIVE           = FIND_FILE_SECTION + ".case_sensitive";
 	static final String FIND_FILE_SEARCH_HEX               = FIND_FILE_SECTION + ".search_hex";
+	/** Local folders that are indexed in the background so that files can be found in them without crawling the disk. */
+	public static final String FIND_FILE_INDEXED_FOLDERS          = FIND_FILE_SECTION + ".indexed_folders";
+	/** Separator of the folders in {@link #FIND_FILE_INDEXED_FOLDERS}. */
+	public static final String FIND_FILE_INDEXED_FOLDERS_SEPARATOR = ";";
 	
 	private static final String ROOT_ELEMENT = "preferences";
 
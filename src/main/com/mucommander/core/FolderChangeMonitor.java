@@ -20,8 +20,11 @@ package com.mucommander.core;
 
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -32,6 +35,7 @@ import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.filter.AbstractFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.OrFileFilter;
+import com.mucommander.commons.file.util.FolderWatcher;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -47,13 +51,17 @@ import com.mucommander.ui.main.FolderPanel;
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
  *
+ * <p>Local folders are not polled: they are watched by {@link FolderWatcher}, which reports the files that have
+ * changed, and only the rows of these files are updated. Other folders are polled, as well as local folders when the
+ * platform doesn't provide file system events.
+ *
  * <p>Implementation note: the monitoring is done in one single thread for all folders, each folder being monitored
  * one after another. Current folder refreshes are performed in a separate thread.
  *
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
-public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener {
+public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener, FolderWatcher.Listener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FolderChangeMonitor.class);
 	
     /** Folder panel we are monitoring */
@@ -83,6 +91,15 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Number of checks in current folder */
     private int nbSamples = 0;
 
+    /** True if the current folder is watched by {@link FolderWatcher} rather than polled */
+    private volatile boolean watched;
+
+    /** Names of the files that have changed in the watched folder and whose rows have not been updated yet */
+    private final Set<String> changedFiles = new HashSet<>();
+
+    /** True if the watched folder has changed in a way that requires to refresh it entirely */
+    private boolean refreshNeeded;
+
     /**
      * If not null then refresh folder that contains this files
      */
@@ -111,6 +128,12 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
+    /** Number of changed files above which the rows are not updated one by one, but the folder refreshed */
+    private final static int MAX_UPDATED_FILES = 500;
+
+    /** Lock on which the monitor thread waits between two loops, notified when a watched folder has changed */
+    private final static Object TICK_LOCK = new Object();
+
     static {
         instances = new Vector<>();
 
@@ -145,6 +168,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getLastModifiedDate();
+        this.watched = watch(currentFolder);
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -164,15 +188,16 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
 
     public void run() {
-        // TODO: it would be more efficient to use a wait/notify scheme rather than sleeping. 
-        // It would also allow folders to be checked immediately upon certain conditions such as a window becoming activated.
+        // TODO: folders could also be checked immediately upon other conditions such as a window becoming activated.
 
         int needToClearRefreshQueueCounter = 0;
         while (monitorThread != null) {
 			
-            // Sleep for a while
+            // Sleep for a while, or until a watched folder changes
             try {
-                Thread.sleep(TICK);
+                synchronized (TICK_LOCK) {
+                    TICK_LOCK.wait(TICK);
+                }
             } catch(InterruptedException ignore) {}
 			
             // Loop on instances
@@ -209,6 +234,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
             monitor.waitBeforeCheckTime = checkPeriod;
             return;
         }
+        // Watched folders don't need to be polled, changes are reported by the watcher
+        if (monitor.watched) {
+            monitor.updateChangedFiles();
+            return;
+        }
         // By checking FolderPanel.getLastFolderChangeTime(), we ensure that we don't check right after
         // the folder has been refreshed.
         if (System.currentTimeMillis() - Math.max(monitor.lastCheckTimestamp, monitor.folderPanel.getLastFolderChangeTime()) > monitor.waitBeforeCheckTime) {
@@ -264,6 +294,16 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      * @param folder the new current folder
      */
     private void updateFolderInfo(AbstractFile folder) {
+        if (!folder.equals(currentFolder)) {
+            FolderWatcher.unwatch(currentFolder, this);
+            synchronized (changedFiles) {
+                changedFiles.clear();
+                refreshNeeded = false;
+            }
+        }
+        // Watch the folder again in case it couldn't be watched anymore, this has no effect if it is watched already
+        this.watched = watch(folder);
+
         this.currentFolder = folder;
         this.currentFolderDate = currentFolder.getLastModifiedDate();
 
@@ -273,6 +313,22 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     }
 	
 	
+    /**
+     * Watches the given folder with {@link FolderWatcher}, unless auto-refresh is disabled for it.
+     *
+     * @param folder the new current folder
+     * @return <code>true</code> if the folder is watched, <code>false</code> if it has to be polled
+     */
+    private boolean watch(AbstractFile folder) {
+        if (disableAutoRefreshFilter.match(folder)) {
+            // The filter may have been added after the folder was watched
+            FolderWatcher.unwatch(folder, this);
+            return false;
+        }
+        return FolderWatcher.watch(folder, this);
+    }
+
+
     /**
      * Checks if current file table's folder has changed and if it hasn't, checks if current folder's date has changed
      * and if it has, refresh the file table.
@@ -323,6 +379,74 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     }
 
 
+    /**
+     * Updates the rows of the files that have changed in the watched folder, or refreshes the folder if it has changed
+     * too much. Files that still exist are added to or replaced in the table, provided that they are not filtered out,
+     * the other ones are removed from it.
+     */
+    private synchronized void updateChangedFiles() {
+        List<String> names;
+        boolean refresh;
+        synchronized (changedFiles) {
+            if (changedFiles.isEmpty() && !refreshNeeded) {
+                return;
+            }
+            names = new ArrayList<>(changedFiles);
+            refresh = refreshNeeded || changedFiles.size() > MAX_UPDATED_FILES;
+            changedFiles.clear();
+            refreshNeeded = false;
+        }
+
+        AbstractFile folder = currentFolder;
+        if (!refresh) {
+            FileFilter filter = folderPanel.getLocationManager().getFolderFilter();
+            List<AbstractFile> updatedFiles = new ArrayList<>();
+            List<String> removedNames = new ArrayList<>();
+            try {
+                for (String name : names) {
+                    AbstractFile file = folder.getDirectChild(name);
+                    if (file.exists() && filter.accept(file)) {
+                        updatedFiles.add(file);
+                    } else {
+                        removedNames.add(name);
+                    }
+                }
+                LOGGER.debug(this + " (" + folder.getName() + ") Detected changes in " + names.size() + " files, updating table");
+                folderPanel.getFileTable().updateFiles(folder, updatedFiles.toArray(new AbstractFile[updatedFiles.size()]), removedNames);
+                return;
+            } catch (IOException e) {
+                LOGGER.debug("Could not get changed files in " + folder.getAbsolutePath(), e);
+            }
+        }
+
+        LOGGER.debug(this + " (" + folder.getName() + ") Detected changes in current folder, refreshing table!");
+        folderPanel.tryRefreshCurrentFolder();
+    }
+
+
+    ///////////////////////////////////////////
+    // FolderWatcher.Listener implementation //
+    ///////////////////////////////////////////
+
+    public void filesChanged(Set<String> names) {
+        synchronized (changedFiles) {
+            changedFiles.addAll(names);
+        }
+        synchronized (TICK_LOCK) {
+            TICK_LOCK.notifyAll();
+        }
+    }
+
+    public void folderChanged() {
+        synchronized (changedFiles) {
+            refreshNeeded = true;
+        }
+        synchronized (TICK_LOCK) {
+            TICK_LOCK.notifyAll();
+        }
+    }
+
+
     /////////////////////////////////////
     // LocationListener implementation //
     /////////////////////////////////////
@@ -366,6 +490,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     public void windowClosed(WindowEvent e) {
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
+        FolderWatcher.unwatch(currentFolder, this);
         LOGGER.debug("nbInstances="+instances.size());
     }
 
@@ -0,0 +1,159 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.FolderComparison;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.FileTable;
+import com.mucommander.ui.main.table.views.BaseFileTableModel;
+
+/**
+ * This job compares the folders displayed by two file tables and marks the files that differ in each table, see
+ * {@link FolderComparison}. Folders are listed and compared in the job's thread, then the contents of the files
+ * that must be compared are hashed by several threads. Files are marked once the comparison has completed.
+ */
+public class CompareFoldersJob extends FileJob {
+
+    /** Maximum number of files hashed at the same time */
+    private static final int MAX_HASH_THREADS = 4;
+
+    private final FileTable table1;
+    private final FileTable table2;
+
+    /** Folders displayed by the tables when the job was created */
+    private final AbstractFile folder1;
+    private final AbstractFile folder2;
+
+    /** Files displayed by the tables when the job was created */
+    private final AbstractFile files1[];
+    private final AbstractFile files2[];
+
+    private final FolderComparison comparison;
+
+    /** Counts the bytes that have been hashed */
+    private final ByteCounter hashedBytes = new ByteCounter();
+
+    /** True once all files have been matched and the files to hash are known */
+    private volatile boolean hashing;
+
+
+    /**
+     * Creates a new CompareFoldersJob. This constructor must be called from the event dispatch thread.
+     *
+     * @param progressDialog dialog which shows this job's progress
+     * @param mainFrame mainFrame this job has been triggered by
+     * @param table1 the first table to compare
+     * @param table2 the second table to compare
+     * @param criterion how files that exist in both folders are compared
+     * @param recursive <code>true</code> to compare the contents of subfolders
+     */
+    public CompareFoldersJob(ProgressDialog progressDialog, MainFrame mainFrame, FileTable table1, FileTable table2,
+                             FolderComparison.Criterion criterion, boolean recursive) {
+        super(progressDialog, mainFrame, new FileSet(table1.getFileTableModel().getCurrentFolder(), table1.getFileTableModel().getCurrentFolder()));
+
+        this.table1 = table1;
+        this.table2 = table2;
+        this.folder1 = table1.getFileTableModel().getCurrentFolder();
+        this.folder2 = table2.getFileTableModel().getCurrentFolder();
+        this.files1 = table1.getFileTableModel().getFiles();
+        this.files2 = table2.getFileTableModel().getFiles();
+        this.comparison = new FolderComparison(criterion, recursive, this::nextFile);
+
+        setAutoUnmark(false);
+    }
+
+    private void markDifferences(FileTable table, AbstractFile folder, Set<AbstractFile> differences) {
+        BaseFileTableModel model = table.getFileTableModel();
+        // The table may display another folder by now
+        if (!folder.equals(model.getCurrentFolder())) {
+            return;
+        }
+        synchronized (differences) {
+            for (AbstractFile file : differences) {
+                model.setFileMarked(file, true);
+            }
+        }
+        table.repaint();
+
+        // Notify registered listeners that currently marked files have changed on the file table
+        table.fireMarkedFilesChangedEvent();
+    }
+
+
+    ////////////////////////////
+    // FileJob implementation //
+    ////////////////////////////
+
+    @Override
+    protected boolean processFile(AbstractFile file, Object recurseParams) {
+        comparison.compare(files1, files2);
+        if (getState() == State.INTERRUPTED) {
+            return false;
+        }
+
+        hashing = true;
+        int nbThreads = Math.max(2, Math.min(MAX_HASH_THREADS, Runtime.getRuntime().availableProcessors()));
+        comparison.compareContents(nbThreads, hashedBytes);
+        return getState() != State.INTERRUPTED;
+    }
+
+    // This job does not modify anything
+    @Override
+    protected boolean hasFolderChanged(AbstractFile folder) {
+        return false;
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    public void interrupt() {
+        comparison.interrupt();
+        super.interrupt();
+    }
+
+    @Override
+    protected void jobCompleted() {
+        super.jobCompleted();
+
+        SwingUtilities.invokeLater(() -> {
+            markDifferences(table1, folder1, comparison.getDifferences1());
+            markDifferences(table2, folder2, comparison.getDifferences2());
+        });
+    }
+
+    @Override
+    public float getTotalPercentDone() {
+        long nbBytesToHash = comparison.getNbBytesToHash();
+        if (!hashing || nbBytesToHash == 0) {
+            return hashing ? 1 : 0;
+        }
+        return Math.min(1, hashedBytes.getByteCount() / (float)nbBytesToHash);
+    }
+}
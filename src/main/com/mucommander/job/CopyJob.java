@@ -77,7 +77,8 @@ public class CopyJob extends AbstractCopyJob {
 
         this.mode = mode;
         this.errorDialogTitle = Translator.get(mode==Mode.DOWNLOAD ? "download_dialog.error_title" : "copy_dialog.error_title");
-        scanDirectoryThread = new ScanDirectoryThread(files);
+        // Folders are listed once, by whichever of the scan thread and this job gets to them first
+        scanDirectoryThread = new ScanDirectoryThread(files, true, true);
         scanDirectoryThread.start();
     }
 
@@ -179,7 +180,7 @@ public class CopyJob extends AbstractCopyJob {
             do {		// Loop for retry
                 try {
                     // for each file in folder...
-                    AbstractFile subFiles[] = file.ls();
+                    AbstractFile subFiles[] = scanDirectoryThread.ls(file);
 //filesDiscovered(subFiles);
                     for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
@@ -192,13 +193,17 @@ public class CopyJob extends AbstractCopyJob {
                     currentDestFile = destFile;
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
+                    // (files may still be copied by the transfer threads at this point)
                     if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.setLastModifiedDate(file.getLastModifiedDate());
-                        } catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
+                        final AbstractFile destFolderFile = destFile;
+                        runAfterTransfers(() -> {
+                            try {
+                                destFolderFile.setLastModifiedDate(file.getLastModifiedDate());
+                            } catch (IOException e) {
+                                LOGGER.debug("failed to change the date of "+destFolderFile, e);
+                                // Fail silently
+                            }
+                        });
                     }
 
                     return true;
@@ -216,7 +221,12 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
+            // Copy the file, in one of the transfer threads if files are copied in parallel. In that case, the file
+            // is unmarked once it has been copied rather than by the job thread.
+            if (isParallelTransferEnabled(file, destFile)) {
+                copyFileInParallel(file, destFile, append, errorDialogTitle, isFileInBaseFolder);
+                return false;
+            }
             return tryCopyFile(file, destFile, append, errorDialogTitle);
         }
     }
@@ -70,6 +70,9 @@ public abstract class FileJob implements Runnable {
     /** Lock used when job is being paused */
     private final Object pauseLock = new Object();
 
+    /** Lock held while waiting for a user response, so that only one question is asked at a time */
+    private final Object userResponseLock = new Object();
+
     /** Timestamp in milliseconds when job started */
     private long startDate;
 
@@ -109,6 +112,9 @@ public abstract class FileJob implements Runnable {
 
     /** If set to true, processed files will be unmarked from current table */
     private boolean autoUnmark = true;
+
+    /** Table that was active when this job started, where processed files are unmarked */
+    private FileTable activeTable;
 	
     /** File to be selected after job has finished (can be null if not set) */
     private AbstractFile fileToSelect;
@@ -484,7 +490,19 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+
+    /**
+     * Blocks the calling thread for as long as this job is paused. This method is called by {@link #nextFile(AbstractFile)}
+     * and should be called by any other thread that processes files on behalf of this job, before it starts
+     * processing a new file.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,8 +515,27 @@ public abstract class FileJob implements Runnable {
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
+    }
+
+    /**
+     * Unmarks the given file in the table that was active when this job started, if 'auto unmark' is enabled.
+     * This method is called by the job thread for each file in base folder that was processed successfully.
+     *
+     * @param file the file to unmark
+     */
+    protected void unmarkFile(AbstractFile file) {
+        if (autoUnmark && activeTable != null) {
+            // Do not repaint rows individually as it would be too expensive
+            activeTable.setFileMarked(file, false, false);
+        }
+    }
+
+    /**
+     * Waits until the files that this job processes asynchronously, if any, have been processed. This method is
+     * called by the job thread once it has gone through all the files, before the job is declared finished, and
+     * after it has been interrupted. This implementation does nothing as files are processed by the job thread.
+     */
+    protected void waitForPendingFiles() {
     }
 
 
@@ -688,15 +725,18 @@ public abstract class FileJob implements Runnable {
     }
     
     Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
-        setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
-        setPaused(false);
-        return userInput;
+        // Questions may come from several threads, ask them one at a time
+        synchronized (userResponseLock) {
+            // Put this job in pause mode while waiting for user response
+            setPaused(true);
+
+            UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
+            Object userInput = jobUserInput.getUserInput();
+
+            // Back to work
+            setPaused(false);
+            return userInput;
+        }
     }
     
 	
@@ -842,7 +882,7 @@ public abstract class FileJob implements Runnable {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        activeTable = getMainFrame().getActiveTable();
 
         // Notify that this job has started
         jobStarted();
@@ -865,21 +905,26 @@ public abstract class FileJob implements Runnable {
 
             // Unmark file in active table if 'auto unmark' is enabled
             // and file was processed successfully
-            if (autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
+            if (success) {
+                unmarkFile(currentFile);
             }
 
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
             if (currentFileIndex >= nbFiles-1 && getState() != FileJob.State.INTERRUPTED) {
-                currentFileIndex++;
-                stop();
-                jobCompleted();
-                setState(State.FINISHED);
+                waitForPendingFiles();
+                if (getState() != FileJob.State.INTERRUPTED) {
+                    currentFileIndex++;
+                    stop();
+                    jobCompleted();
+                    setState(State.FINISHED);
+                }
             }
         }
 
+        // Files may still be processed if the job was interrupted
+        waitForPendingFiles();
+
         // Refresh tables's current folders, based on the job's refresh policy.
         refreshTables();
     }
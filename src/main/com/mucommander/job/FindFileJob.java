@@ -18,38 +18,83 @@
 package com.mucommander.job;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.search.FileIndex;
+import com.mucommander.search.FileIndexer;
 import com.mucommander.ui.main.MainFrame;
 import org.apache.commons.io.IOCase;
 import org.apache.commons.io.filefilter.AbstractFileFilter;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.OrFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.utils.search.*;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 
 /**
  * Job for directory scanning
  */
 public class FindFileJob extends FileJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FindFileJob.class);
 
     private AbstractFile startDirectory;
     private String fileContent;
     private boolean searchSubdirectories;
     private boolean searchArchives;
     private boolean ignoreHidden;
-    private SearchPattern searchPattern;
+    private BlockSearcher searcher;
+    private boolean hexMode;
+    private String encoding;
+
+    /** File name masks, <code>null</code> if all names match */
+    private String[] nameMasks;
 
     private AbstractFileFilter fileFilter;
 
     private final List<AbstractFile> list = new ArrayList<>();
 
+    private final List<ResultListener> resultListeners = new CopyOnWriteArrayList<>();
+
+    /** Walks the folders and searches the files, created when the job starts */
+    private volatile ForkJoinPool pool;
+
+    /** Limits the number of concurrent listings and file reads, per scheme */
+    private final Map<String, Semaphore> ioPermits = new ConcurrentHashMap<>();
+
+    /** Number of threads that walk the folders and search the files */
+    private static final int PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Maximum number of concurrent listings and file reads on local files */
+    private static final int LOCAL_IO_CONCURRENCY = 8;
+
+    /** Maximum number of concurrent listings and file reads on files of any other scheme, each of them using a connection */
+    private static final int REMOTE_IO_CONCURRENCY = 2;
+
+
     public FindFileJob(MainFrame mainFrame) {
         super(mainFrame);
         setAutoUnmark(false);
@@ -64,58 +109,306 @@ public class FindFileJob extends FileJob {
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
         // Stop if interrupted
-        if (getState() == State.INTERRUPTED) {
+        if (isInterrupted()) {
             return false;
         }
-        // If file is a directory, recurs
-        if (file.isDirectory() && (!file.isSymlink() || file.equals(startDirectory))) {
-            searchInFile(file);
-            if (!searchSubdirectories && !file.equals(startDirectory)) {
-                return true;
+        searchInFile(file);
+        if (!file.isDirectory() && !(file.isArchive() && searchArchives)) {
+            return true;
+        }
+
+        pool = new ForkJoinPool(PARALLELISM, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("Find file " + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        try {
+            RecursiveAction task = createIndexedSearchTask(file);
+            pool.submit(task == null ? new FolderTask(file) : task).get();
+        } catch (InterruptedException | CancellationException e) {
+            // Interrupted
+        } catch (ExecutionException e) {
+            LOGGER.debug("Search failed", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return true;
+    }
+
+    /**
+     * Returns a task that searches the files that the file index returns for the given folder, and crawls the folders
+     * modified since the index was last updated, <code>null</code> if the folder is not indexed, in which case it
+     * has to be crawled.
+     */
+    private RecursiveAction createIndexedSearchTask(AbstractFile folder) {
+        FileIndex index = FileIndexer.getIndex();
+        // Archives contents are not indexed
+        if (index == null || searchArchives || !FileProtocols.FILE.equals(folder.getURL().getScheme())
+                || !folder.isDirectory() || !index.isIndexed(folder.getAbsolutePath())) {
+            return null;
+        }
+        try {
+            long updateTime = index.getUpdateTime(folder.getAbsolutePath());
+            List<String> paths = index.search(folder.getAbsolutePath(), searchSubdirectories, nameMasks,
+                    hexMode ? null : fileContent, encoding);
+            Set<String> folders = new HashSet<>();
+            folders.add(FileIndex.normalizePath(folder.getAbsolutePath()));
+            if (searchSubdirectories) {
+                folders.addAll(index.getFolders(folder.getAbsolutePath()));
             }
-            try {
-                AbstractFile subFiles[] = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
-                        continue;
-                    }
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
-                }
-            } catch(Throwable e) {
-                // Should we tell the user?
+            return new IndexedFilesTask(folder, paths, folders, updateTime);
+        } catch (IOException e) {
+            LOGGER.info("Could not search the file index", e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+        // Interrupts the reads and listings in progress
+        ForkJoinPool pool = this.pool;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean isInterrupted() {
+        return getState() == State.INTERRUPTED;
+    }
+
+    /**
+     * Searches the given file or folder name, and the contents of the file, adding it to the results if it matches.
+     */
+    private void searchInFile(AbstractFile file) {
+        File f = new File(file.toString());
+        if (fileFilter.accept(f) && fileContainsString(file)) {
+            synchronized (this) {
+                list.add(file);
             }
-        } else { // If not, increase file counter and bytes total
-            if (!ignoreHidden || !file.isHidden()) {
-                searchInFile(file);
+            for (ResultListener listener : resultListeners) {
+                listener.fileFound(file);
             }
         }
+    }
+
+    /**
+     * Returns <code>true</code> if the contents of the given file have to be read to know whether it matches.
+     */
+    private boolean needsContentSearch(AbstractFile file) {
+        return fileContent != null && !fileContent.isEmpty() && searcher != null && !file.isDirectory();
+    }
+
+    /**
+     * Acquires a permit to access a file of the given file's scheme, waiting for one to be available.
+     *
+     * @return the semaphore to release the permit to, <code>null</code> if the thread was interrupted
+     */
+    private Semaphore acquireIOPermit(AbstractFile file) {
+        String scheme = file.getURL().getScheme();
+        Semaphore semaphore = ioPermits.computeIfAbsent(scheme, s ->
+                new Semaphore(FileProtocols.FILE.equals(s) ? LOCAL_IO_CONCURRENCY : REMOTE_IO_CONCURRENCY));
+        try {
+            // Lets the pool start another thread while this one waits, so that remote listings that stall don't
+            // starve the local ones
+            ForkJoinPool.managedBlock(new PermitBlocker(semaphore));
+            return semaphore;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Acquires a permit of a semaphore from a thread of the pool.
+     */
+    private static class PermitBlocker implements ForkJoinPool.ManagedBlocker {
+        private final Semaphore semaphore;
+        private boolean acquired;
+
+        PermitBlocker(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
 
-        if (file.isArchive() && searchArchives) {
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!acquired) {
+                semaphore.acquire();
+                acquired = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!acquired) {
+                acquired = semaphore.tryAcquire();
+            }
+            return acquired;
+        }
+    }
+
+
+    /**
+     * Lists a folder or an archive, searches its files and forks the search of its subfolders.
+     */
+    private class FolderTask extends RecursiveAction {
+        private final AbstractFile folder;
+        /** Paths of the folders that are searched through the file index, and must not be crawled */
+        private final Set<String> indexedFolders;
+
+        FolderTask(AbstractFile folder) {
+            this(folder, Collections.emptySet());
+        }
+
+        FolderTask(AbstractFile folder, Set<String> indexedFolders) {
+            this.folder = folder;
+            this.indexedFolders = indexedFolders;
+        }
+
+        @Override
+        protected void compute() {
+            waitWhilePaused();
+            if (isInterrupted()) {
+                return;
+            }
+            AbstractFile subFiles[];
+            Semaphore permit = acquireIOPermit(folder);
+            if (permit == null) {
+                return;
+            }
             try {
-                AbstractFile subFiles[] = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
-                        continue;
+                subFiles = folder.ls();
+            } catch (Throwable e) {
+                // Should we tell the user?
+                return;
+            } finally {
+                permit.release();
+            }
+
+            List<RecursiveAction> subTasks = new ArrayList<>();
+            for (int i = 0; i < subFiles.length && !isInterrupted(); i++) {
+                AbstractFile file = subFiles[i];
+                if (ignoreHidden && file.isHidden()) {
+                    continue;
+                }
+                // Notify job that we're starting to process this file
+                nextFile(file);
+                if (file.isDirectory()) {
+                    searchInFile(file);
+                    if (searchSubdirectories && !file.isSymlink() && !isIndexed(file)) {
+                        subTasks.add(new FolderTask(file, indexedFolders));
                     }
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
+                } else if (needsContentSearch(file)) {
+                    subTasks.add(new FileTask(file));
+                } else {
+                    searchInFile(file);
+                }
+                if (file.isArchive() && searchArchives) {
+                    subTasks.add(new FolderTask(file));
                 }
-            } catch(Throwable e) {
-                // Should we tell the user?
             }
+            invokeAll(subTasks);
         }
 
-        return true;
+        private boolean isIndexed(AbstractFile subFolder) {
+            return !indexedFolders.isEmpty()
+                    && indexedFolders.contains(FileIndex.normalizePath(subFolder.getAbsolutePath()));
+        }
     }
 
-    private void searchInFile(AbstractFile file) {
-        File f = new File(file.toString());
-        if (fileFilter.accept(f) && fileContainsString(file)) {
-            synchronized (this) {
-                list.add(file);
+    /**
+     * Searches the files returned by the file index, forking the search of their contents. The folders that have been
+     * modified since the index was last updated may contain files that the index doesn't know of: they are crawled
+     * instead, as well as the new folders they contain.
+     */
+    private class IndexedFilesTask extends RecursiveAction {
+        private final AbstractFile folder;
+        private final List<String> paths;
+        /** Paths of the searched folder and of the indexed folders it contains */
+        private final Set<String> folders;
+        private final long updateTime;
+
+        IndexedFilesTask(AbstractFile folder, List<String> paths, Set<String> folders, long updateTime) {
+            this.folder = folder;
+            this.paths = paths;
+            this.folders = folders;
+            this.updateTime = updateTime;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> subTasks = new ArrayList<>();
+            Set<String> modifiedFolders = new HashSet<>();
+            for (String path : folders) {
+                if (isInterrupted()) {
+                    return;
+                }
+                AbstractFile subFolder = FileFactory.getFile(path);
+                if (subFolder == null || !subFolder.isDirectory() || subFolder.getLastModifiedDate() <= updateTime
+                        || ignoreHidden && isInHiddenFolder(subFolder)) {
+                    continue;
+                }
+                modifiedFolders.add(path);
+                subTasks.add(new FolderTask(subFolder, folders));
+            }
+
+            for (int i = 0; i < paths.size() && !isInterrupted(); i++) {
+                // The files of the modified folders are searched by crawling them
+                if (modifiedFolders.contains(new File(paths.get(i)).getParent())) {
+                    continue;
+                }
+                AbstractFile file = FileFactory.getFile(paths.get(i));
+                // The index may be out of date
+                if (file == null || !file.exists() || ignoreHidden && isInHiddenFolder(file)) {
+                    continue;
+                }
+                nextFile(file);
+                if (needsContentSearch(file)) {
+                    subTasks.add(new FileTask(file));
+                } else {
+                    searchInFile(file);
+                }
+            }
+            invokeAll(subTasks);
+        }
+
+        /**
+         * Returns <code>true</code> if the given file or one of its parents below the searched folder is hidden.
+         */
+        private boolean isInHiddenFolder(AbstractFile file) {
+            for (AbstractFile f = file; f != null && !f.equals(folder); f = f.getParent()) {
+                if (f.isHidden()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Searches the contents of a file.
+     */
+    private class FileTask extends RecursiveAction {
+        private final AbstractFile file;
+
+        FileTask(AbstractFile file) {
+            this.file = file;
+        }
+
+        @Override
+        protected void compute() {
+            waitWhilePaused();
+            if (isInterrupted()) {
+                return;
+            }
+            Semaphore permit = acquireIOPermit(file);
+            if (permit == null) {
+                return;
+            }
+            try {
+                searchInFile(file);
+            } finally {
+                permit.release();
             }
         }
     }
@@ -130,11 +423,17 @@ public class FindFileJob extends FileJob {
             return false;
         }
 
-        try (SearchSourceStream source = new InputStreamSource(f.getInputStream())) {
-            long pos = SearchUtils.indexOf(source, searchPattern);
+        if (searcher == null) {
+            return false;
+        }
+
+        try (InputStream in = new InterruptibleInputStream(f.getInputStream())) {
+            long pos = searcher.indexOf(in);
             //Profiler.stop("check_new");
             return pos >= 0;
-        } catch (IOException | SearchException e) {
+        } catch (InterruptedIOException e) {
+            return false;
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
@@ -147,6 +446,24 @@ public class FindFileJob extends FileJob {
         return list;
     }
 
+    /**
+     * Adds a listener that is notified of each file found, as soon as it is found.
+     *
+     * @param listener the listener to add
+     */
+    public void addResultListener(ResultListener listener) {
+        resultListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener previously added with {@link #addResultListener(ResultListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeResultListener(ResultListener listener) {
+        resultListeners.remove(listener);
+    }
+
     public void setStartDirectory(AbstractFile startDirectory) {
         this.startDirectory = startDirectory;
         FileSet fs = new FileSet();
@@ -163,6 +480,10 @@ public class FindFileJob extends FileJob {
         this.ignoreHidden = ignoreHidden;
         IOCase filterCase = OsFamily.MAC_OS_X.isCurrent() || OsFamily.WINDOWS.isCurrent() ? IOCase.INSENSITIVE : IOCase.SENSITIVE;
 
+        this.hexMode = hexMode;
+        this.encoding = encoding;
+        this.nameMasks = "*".equals(fileMask) ? null : fileMask.split("\\s*,\\s*");
+
         if (fileMask.contains(",")) {
             String masks[] = fileMask.split(",");
             List<IOFileFilter> fileFilters = new ArrayList<>();
@@ -177,6 +498,7 @@ public class FindFileJob extends FileJob {
             fileFilter = new WildcardFileFilter(fileMask, filterCase);
         }
 
+        SearchPattern searchPattern = null;
         if (hexMode) {
             searchPattern = new BytesSearchPattern(bytes);
         } else {
@@ -188,7 +510,51 @@ public class FindFileJob extends FileJob {
                 e.printStackTrace();
             }
         }
+        searcher = searchPattern == null || searchPattern.length() == 0 ? null : new BlockSearcher(searchPattern);
 
     }
 
+
+
+    /**
+     * Notified of the files found by a {@link FindFileJob}.
+     */
+    public interface ResultListener {
+
+        /**
+         * Called, by one of the threads of the job, when a file matching the search criteria has been found.
+         *
+         * @param file the file found
+         */
+        void fileFound(AbstractFile file);
+    }
+
+    /**
+     * Stops reading the file when the job is interrupted.
+     */
+    private class InterruptibleInputStream extends FilterInputStream {
+
+        InterruptibleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkInterrupted();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkInterrupted();
+            return super.read(b, off, len);
+        }
+
+        private void checkInterrupted() throws InterruptedIOException {
+            if (isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
 }
@@ -26,6 +26,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
@@ -58,11 +67,11 @@ import com.mucommander.ui.main.MainFrame;
 public abstract class TransferFileJob extends FileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TransferFileJob.class);
 	
-    /** Contains the number of bytes processed in the current file so far, see {@link #getCurrentFileByteCounter()} ()} */
-    private ByteCounter currentFileByteCounter;
+    /** Transfer of the current file, carried out by the job thread */
+    private final Transfer currentTransfer;
 
-    /** Contains the number of bytes skipped in the current file so far, see {@link #getCurrentFileSkippedByteCounter()} ()} */
-    private ByteCounter currentFileSkippedByteCounter;
+    /** Transfers carried out by the transfer threads, see {@link #copyFileInParallel(AbstractFile, AbstractFile, boolean, String, boolean)} */
+    private final Set<Transfer> parallelTransfers = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     /** Contains the number of bytes processed so far, see {@link #getTotalByteCounter()} */
     private ByteCounter totalByteCounter;
@@ -70,22 +79,28 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
-
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
-    /** Has the file currently being processed been skipped ? */
-    private boolean currentFileSkipped;
+    /** Maximum number of files transferred at the same time, see {@link #setParallelTransfers(int)} */
+    private int nbParallelTransfers = 1;
+
+    /** Threads that carry out parallel transfers, created when the first one is started */
+    private ExecutorService transferExecutor;
+
+    /** Limits the number of parallel transfers that are running or waiting for a thread */
+    private Semaphore transferPermits;
+
+    /** Number of permits of {@link #transferPermits} */
+    private int nbTransferPermits;
+
+    /** Actions to be performed once all parallel transfers have completed, in the order they were scheduled */
+    private final List<Runnable> deferredActions = new ArrayList<>();
 
     /** If true, all transfers will be checked for integrity: the checksum of the source and destination file will
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
-
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
@@ -111,18 +126,21 @@ public abstract class TransferFileJob extends FileJob {
     public TransferFileJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files) {
         super(progressDialog, mainFrame, files);
 
-        this.currentFileByteCounter = new ByteCounter();
-        this.currentFileSkippedByteCounter = new ByteCounter();
+        this.currentTransfer = new Transfer(null);
 
-        // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+        // Account the current file's and parallel transfers' byte counters in the total byte counters
+        this.totalByteCounter = new TotalByteCounter(false);
+        this.totalSkippedByteCounter = new TotalByteCounter(true);
     }
 
     void copyToReadonlyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        copyToReadonlyFile(currentTransfer, sourceFile, destFile, append);
+    }
+
+    private void copyToReadonlyFile(Transfer transfer, AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
         try {
             destFile.changePermission(PermissionAccesses.USER_ACCESS, PermissionTypes.WRITE_PERMISSION, true);
-            copyFile(sourceFile, destFile, append);
+            copyFile(transfer, sourceFile, destFile, append);
             destFile.changePermission(PermissionAccesses.USER_ACCESS, PermissionTypes.WRITE_PERMISSION, false);
         } catch (IOException e) {
             e.printStackTrace();
@@ -135,14 +153,15 @@ public abstract class TransferFileJob extends FileJob {
      * Copies the given source file to the specified destination file, optionally resuming the operation.
      * As much as the source and destination protocols allow, the source file's date and permissions will be preserved.
      *
+     * @param transfer the transfer that holds the source stream and byte counters
      * @param sourceFile source file
      * @param destFile destination file
      * @param append append or overwrite
      * @throws FileTransferException on transfer error
      */
-    private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+    private void copyFile(Transfer transfer, AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        transfer.checkingIntegrity = false;
 
         // Throw a specific FileTransferException if source and destination files are identical
         if (sourceFile.equalsCanonical(destFile)) {
@@ -153,8 +172,17 @@ public abstract class TransferFileJob extends FileJob {
         // Some file protocols do not provide a getOutputStream() method and require the use of copyRemotelyTo(). Some other
         // may also offer server to server copy which is more efficient than stream copy.
 
+        // Local files are copied by the kernel (see LocalFile#transferTo), the source stream being only used to
+        // throttle, count and interrupt the transfer. When the integrity check is enabled, the file is copied through
+        // the stream instead, so that its checksum is calculated on the fly rather than by reading the source again.
+        LocalFile localSourceFile = sourceFile.getAncestor(LocalFile.class);
+        LocalFile localDestFile = destFile.getAncestor(LocalFile.class);
+        boolean isLocalCopy = localSourceFile != null && localDestFile != null;
+        boolean useKernelCopy = isLocalCopy && !integrityCheckEnabled;
+
         boolean copied = false;
-        if (sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)) {
+        // LocalFile#copyRemotelyTo() ignores the throughput limit and byte counters
+        if (!isLocalCopy && sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)) {
             try {
                 sourceFile.copyRemotelyTo(destFile);
                 copied = true;
@@ -179,9 +207,9 @@ public abstract class TransferFileJob extends FileJob {
 
                         inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        transfer.byteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        transfer.skippedByteCounter.add(destFileSize);
                     } else {
                         in = sourceFile.getInputStream();
                         if (integrityCheckEnabled) {
@@ -189,7 +217,7 @@ public abstract class TransferFileJob extends FileJob {
                         }
                     }
 
-                    setCurrentInputStream(in);
+                    setInputStream(transfer, in);
                 } catch(Exception e) {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
                     throw new FileTransferException(FileTransferException.OPENING_SOURCE);
@@ -207,13 +235,17 @@ public abstract class TransferFileJob extends FileJob {
                     return;
                 }
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                if (useKernelCopy) {
+                    localSourceFile.transferTo(localDestFile, append, transfer.tlin);
+                } else {
+                    destFile.copyStream(transfer.tlin, append, inLength);
+                }
             } finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
 
                 // Tries to close the streams no matter what happened before
-                closeCurrentInputStream();
+                closeInputStream(transfer);
             }
         }
 
@@ -253,7 +285,7 @@ public abstract class TransferFileJob extends FileJob {
         // This block is executed only if integrity check has been enabled (disabled by default)
         if (integrityCheckEnabled) {
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            transfer.checkingIntegrity = true;
 
             String sourceChecksum;
             if (in != null && (in instanceof ChecksumInputStream)) {
@@ -264,7 +296,7 @@ public abstract class TransferFileJob extends FileJob {
                 // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
                 // we have to calculate the source file's checksum from scratch.
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    sourceChecksum = calculateChecksum(transfer, sourceFile);
                 } catch (Exception e) {
                     throw new FileTransferException(FileTransferException.READING_SOURCE);
                 }
@@ -275,7 +307,7 @@ public abstract class TransferFileJob extends FileJob {
             // Calculate the destination file's checksum
             String destinationChecksum;
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                destinationChecksum = calculateChecksum(transfer, destFile);
             } catch(Exception e) {
                 throw new FileTransferException(FileTransferException.READING_DESTINATION);
             }
@@ -289,13 +321,13 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
-    private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
-        InputStream in = setCurrentInputStream(file.getInputStream());
+    private String calculateChecksum(Transfer transfer, AbstractFile file) throws IOException, NoSuchAlgorithmException {
+        transfer.byteCounter.reset();
+        InputStream in = setInputStream(transfer, file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
         } finally {
-            closeCurrentInputStream();
+            closeInputStream(transfer);
         }
     }
 
@@ -308,14 +340,18 @@ public abstract class TransferFileJob extends FileJob {
      *
      */
     boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+        return tryCopyFile(currentTransfer, sourceFile, destFile, append, errorDialogTitle);
+    }
+
+    private boolean tryCopyFile(Transfer transfer, AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
         boolean overwriteReadonly = false;
         // Copy file to destination
         do {				// Loop for retry
             try {
                 if (overwriteReadonly) {
-                    copyToReadonlyFile(sourceFile, destFile, append);
+                    copyToReadonlyFile(transfer, sourceFile, destFile, append);
                 } else {
-                    copyFile(sourceFile, destFile, append);
+                    copyFile(transfer, sourceFile, destFile, append);
                 }
                 return true;
             } catch(FileTransferException e) {
@@ -324,7 +360,7 @@ public abstract class TransferFileJob extends FileJob {
                 // the IOException was caused by the stream being closed as a result of the user interruption.
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
-                if (getState() == State.INTERRUPTED || wasCurrentFileSkipped()) {
+                if (getState() == State.INTERRUPTED || transfer.skipped) {
                     return false;
                 }
 
@@ -380,8 +416,8 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if (choice == RETRY_ACTION || choice == APPEND_ACTION || choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    transfer.byteCounter.reset();
+                    transfer.skippedByteCounter.reset();
                     // Append resumes transfer
                     append = choice == APPEND_ACTION;
                     overwriteReadonly = choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION;
@@ -412,23 +448,38 @@ public abstract class TransferFileJob extends FileJob {
      * @param in the InputStream to be used
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
-    synchronized InputStream setCurrentInputStream(InputStream in) {
-        if (tlin == null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+    InputStream setCurrentInputStream(InputStream in) {
+        return setInputStream(currentTransfer, in);
+    }
+
+    private synchronized InputStream setInputStream(Transfer transfer, InputStream in) {
+        if (transfer.tlin == null) {
+            // Streams opened while the job is paused block until it is resumed
+            transfer.tlin = new ThroughputLimitInputStream(new CounterInputStream(in, transfer.byteCounter),
+                    getState() == State.PAUSED ? 0 : throughputLimit);
         } else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
+            transfer.tlin.setUnderlyingInputStream(new CounterInputStream(in, transfer.byteCounter));
+        }
+
+        if (transfer != currentTransfer && getState() == State.INTERRUPTED) {
+            // The job was stopped before this parallel transfer registered its stream
+            closeInputStream(transfer);
         }
 
-        return tlin;
+        return transfer.tlin;
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
-    synchronized void closeCurrentInputStream() {
-        if (tlin != null) {
+    void closeCurrentInputStream() {
+        closeInputStream(currentTransfer);
+    }
+
+    private synchronized void closeInputStream(Transfer transfer) {
+        if (transfer.tlin != null) {
             try {
-                tlin.close();
+                transfer.tlin.close();
             } catch(IOException e) {
                 e.printStackTrace();
             }
@@ -436,6 +487,124 @@ public abstract class TransferFileJob extends FileJob {
     }
 
 
+    /**
+     * Sets the maximum number of files that can be transferred at the same time by
+     * {@link #copyFileInParallel(AbstractFile, AbstractFile, boolean, String, boolean)}. A value of <code>1</code>
+     * (the default) has files transferred one after the other by the job thread. This method must be called before
+     * the job is started.
+     *
+     * @param nbTransfers the maximum number of files transferred at the same time
+     */
+    public void setParallelTransfers(int nbTransfers) {
+        this.nbParallelTransfers = Math.max(1, nbTransfers);
+    }
+
+    /**
+     * Returns the maximum number of files that can be transferred at the same time.
+     *
+     * @return the maximum number of files that can be transferred at the same time
+     */
+    public int getParallelTransfers() {
+        return nbParallelTransfers;
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is to be transferred in parallel, i.e. if more than one parallel
+     * transfer is allowed and no throughput limit is set: the limit applies to each stream separately, so files are
+     * transferred one at a time to honour it.
+     *
+     * <p>Files read from or written to an archive are always transferred one at a time: archive implementations
+     * share a single stream or file handle between their entries, so concurrent reads or writes would interfere
+     * with each other (and corrupt a Zip file being written).</p>
+     *
+     * @param sourceFile the file to transfer
+     * @param destFile the destination file
+     * @return true if the file is to be transferred in parallel
+     */
+    boolean isParallelTransferEnabled(AbstractFile sourceFile, AbstractFile destFile) {
+        return nbParallelTransfers > 1 && throughputLimit <= 0
+                && sourceFile.getParentArchive() == null && destFile.getParentArchive() == null;
+    }
+
+    /**
+     * Copies the given source file to the specified destination file like
+     * {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)}, but in one of the transfer threads when
+     * {@link #isParallelTransferEnabled(AbstractFile, AbstractFile) parallel transfers} are enabled. In that case, this method returns as soon
+     * as the copy has been scheduled, blocking only while the maximum number of transfers is reached. Errors are
+     * reported by the transfer thread, the job being paused while the user is asked what to do.
+     *
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @param append append or overwrite
+     * @param errorDialogTitle title of the dialog that reports errors
+     * @param unmark if <code>true</code>, the source file is unmarked once it has been copied
+     */
+    void copyFileInParallel(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, boolean unmark) {
+        if (!isParallelTransferEnabled(sourceFile, destFile)) {
+            if (tryCopyFile(sourceFile, destFile, append, errorDialogTitle) && unmark) {
+                unmarkFile(sourceFile);
+            }
+            return;
+        }
+
+        synchronized(this) {
+            if (transferExecutor == null) {
+                transferExecutor = Executors.newFixedThreadPool(nbParallelTransfers, r -> {
+                    Thread thread = new Thread(r, "File transfer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                // Allow a few transfers to wait for a thread so that threads don't starve while the job thread
+                // resolves the next file
+                nbTransferPermits = nbParallelTransfers * 2;
+                transferPermits = new Semaphore(nbTransferPermits);
+            }
+        }
+
+        transferPermits.acquireUninterruptibly();
+        Transfer transfer = new Transfer(sourceFile);
+        try {
+            transferExecutor.execute(() -> {
+                try {
+                    waitWhilePaused();
+                    if (getState() == State.INTERRUPTED) {
+                        return;
+                    }
+                    parallelTransfers.add(transfer);
+                    if (tryCopyFile(transfer, sourceFile, destFile, append, errorDialogTitle) && unmark) {
+                        unmarkFile(sourceFile);
+                    }
+                } finally {
+                    // Move the transfer's bytes to the totals before the transfer stops being accounted for
+                    totalByteCounter.add(transfer.byteCounter, true);
+                    totalSkippedByteCounter.add(transfer.skippedByteCounter, true);
+                    parallelTransfers.remove(transfer);
+                    transferPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            transferPermits.release();
+            LOGGER.debug("Transfer of " + sourceFile + " rejected", e);
+        }
+    }
+
+    /**
+     * Runs the given action once all parallel transfers have completed, or immediately if files are transferred
+     * by the job thread. This allows for example to set a folder's date once the files it contains have been copied.
+     *
+     * @param action the action to run
+     */
+    void runAfterTransfers(Runnable action) {
+        if (nbParallelTransfers > 1) {
+            synchronized(deferredActions) {
+                deferredActions.add(action);
+            }
+        } else {
+            action.run();
+        }
+    }
+
+
     /**
      * Returns <code>true</code> if file transfers need to be checked for data integrity. In this case, the checksum of
      * the source and destination files are both calculated and compared to verify they match.
@@ -462,7 +631,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the integrity of the current file is being verified
      */
     boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return currentTransfer.checkingIntegrity;
     }
 
 
@@ -470,14 +639,14 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if (tlin != null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        skip(currentTransfer);
 
-            // Prevents an error from being reported when the current InputStream is closed
-            currentFileSkipped = true;
-
-            // Close the current input stream to interrupt the transfer
-            closeCurrentInputStream();
+        // The current file may be transferred by a transfer thread
+        AbstractFile currentFile = getCurrentFile();
+        for (Transfer transfer : parallelTransfers) {
+            if (transfer.sourceFile == currentFile) {
+                skip(transfer);
+            }
         }
 
         // Resume job if currently paused 
@@ -492,7 +661,19 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the file that is currently being processed has been skipped
      */
     synchronized boolean wasCurrentFileSkipped() {
-        return currentFileSkipped;
+        return currentTransfer.skipped;
+    }
+
+    private synchronized void skip(Transfer transfer) {
+        if (transfer.tlin != null) {
+            LOGGER.debug("skipping current file, closing "+ transfer.tlin);
+
+            // Prevents an error from being reported when the current InputStream is closed
+            transfer.skipped = true;
+
+            // Close the current input stream to interrupt the transfer
+            closeInputStream(transfer);
+        }
     }
 
     /**
@@ -512,7 +693,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been processed in the current file
      */
     public ByteCounter getCurrentFileByteCounter() {
-        return currentFileByteCounter;
+        return currentTransfer.byteCounter;
     }
 
     /**
@@ -522,7 +703,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been skipped in the current file
      */
     private ByteCounter getCurrentFileSkippedByteCounter() {
-        return currentFileSkippedByteCounter;
+        return currentTransfer.skippedByteCounter;
     }
 
     /**
@@ -572,8 +753,11 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond <= 0 ? -1 : bytesPerSecond;
 
         synchronized(this) {
-            if (getState() != State.PAUSED && tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
+            if (getState() != State.PAUSED) {
+                setThroughputLimit(currentTransfer, throughputLimit);
+                for (Transfer transfer : parallelTransfers) {
+                    setThroughputLimit(transfer, throughputLimit);
+                }
             }
         }
     }
@@ -587,6 +771,12 @@ public abstract class TransferFileJob extends FileJob {
     public long getThroughputLimit() {
         return throughputLimit;
     }
+
+    private static void setThroughputLimit(Transfer transfer, long bytesPerSecond) {
+        if (transfer.tlin != null) {
+            transfer.tlin.setThroughputLimit(bytesPerSecond);
+        }
+    }
     
 
     ////////////////////////
@@ -601,11 +791,14 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if (tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            if (currentTransfer.tlin != null) {
+                LOGGER.debug("closing current InputStream "+ currentTransfer.tlin);
 
                 closeCurrentInputStream();
             }
+            for (Transfer transfer : parallelTransfers) {
+                closeInputStream(transfer);
+            }
         }
     }
 
@@ -619,8 +812,10 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if (tlin != null)
-                tlin.setThroughputLimit(0);
+            setThroughputLimit(currentTransfer, 0);
+            for (Transfer transfer : parallelTransfers) {
+                setThroughputLimit(transfer, 0);
+            }
         }
     }
 
@@ -635,8 +830,9 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if (tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
+            setThroughputLimit(currentTransfer, throughputLimit);
+            for (Transfer transfer : parallelTransfers) {
+                setThroughputLimit(transfer, throughputLimit);
             }
         }
     }
@@ -648,15 +844,43 @@ public abstract class TransferFileJob extends FileJob {
      */
     @Override
     protected void nextFile(AbstractFile file) {
-        totalByteCounter.add(currentFileByteCounter, true);
-        totalSkippedByteCounter.add(currentFileSkippedByteCounter, true);
+        totalByteCounter.add(currentTransfer.byteCounter, true);
+        totalSkippedByteCounter.add(currentTransfer.skippedByteCounter, true);
 
         // Reset some fields that need it
-        currentFileSkipped = false;
+        currentTransfer.skipped = false;
 
         super.nextFile(file);
     }
 
+    /**
+     * Overrides {@link FileJob#waitForPendingFiles()} to wait for parallel transfers to complete, and then run the
+     * actions that were deferred until then.
+     */
+    @Override
+    protected void waitForPendingFiles() {
+        ExecutorService executor;
+        synchronized(this) {
+            executor = transferExecutor;
+            transferExecutor = null;
+        }
+        if (executor != null) {
+            // All permits are available once no transfer is running or waiting for a thread
+            transferPermits.acquireUninterruptibly(nbTransferPermits);
+            transferPermits.release(nbTransferPermits);
+            executor.shutdown();
+        }
+
+        List<Runnable> actions;
+        synchronized(deferredActions) {
+            actions = new ArrayList<>(deferredActions);
+            deferredActions.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
     /**
      * Method overridden to return a more accurate percentage of job processed so far by taking into account the current
      * file's percentage of completion.
@@ -745,6 +969,49 @@ public abstract class TransferFileJob extends FileJob {
     }
 
 
+
+    /**
+     * State of a file transfer: the source stream being read and the number of bytes read and skipped so far.
+     * The stream is guarded by the job's lock.
+     */
+    private static class Transfer {
+        /** The file being transferred, <code>null</code> for the transfer of the current file */
+        private final AbstractFile sourceFile;
+        private final ByteCounter byteCounter = new ByteCounter();
+        private final ByteCounter skippedByteCounter = new ByteCounter();
+        private ThroughputLimitInputStream tlin;
+        private volatile boolean skipped;
+        private volatile boolean checkingIntegrity;
+
+        private Transfer(AbstractFile sourceFile) {
+            this.sourceFile = sourceFile;
+        }
+    }
+
+    /**
+     * Total byte counter that accounts for the bytes of the current file and of the parallel transfers in progress.
+     * Completed transfers are added with {@link ByteCounter#add(ByteCounter, boolean)}, which resets their counter
+     * while this counter is locked, so that their bytes are never counted twice.
+     */
+    private class TotalByteCounter extends ByteCounter {
+        private final boolean skipped;
+
+        private TotalByteCounter(boolean skipped) {
+            super(skipped ? currentTransfer.skippedByteCounter : currentTransfer.byteCounter);
+            this.skipped = skipped;
+        }
+
+        @Override
+        public synchronized long getByteCount() {
+            long count = super.getByteCount();
+            for (Transfer transfer : parallelTransfers) {
+                count += (skipped ? transfer.skippedByteCounter : transfer.byteCounter).getByteCount();
+            }
+            return count;
+        }
+    }
+
+
 //    /**
 //     * Method overridden to return a more accurate percentage of job processed so far by taking
 //     * into account the current file's processed percentage.
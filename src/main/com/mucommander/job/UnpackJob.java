@@ -28,6 +28,8 @@ import com.mucommander.ui.action.ActionManager;
 import com.mucommander.ui.action.impl.UnmarkAllAction;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +45,7 @@ import java.util.List;
  * @author Maxence Bernard
  */
 public class UnpackJob extends AbstractCopyJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnpackJob.class);
 
     /** Archive entries to be unpacked */
     private List<ArchiveEntry> selectedEntries;
@@ -182,10 +185,22 @@ public class UnpackJob extends AbstractCopyJob {
         // 'Cast' the file as an archive file
         AbstractArchiveFile archiveFile = file.getAncestor(AbstractArchiveFile.class);
         ArchiveEntryIterator iterator = null;
+        BulkEntryExtraction bulkExtraction = null;
 
 
         // calculate total size and files count
-        calculateTotalSize(archiveFile);
+        List<ArchiveEntry> fileEntries = calculateTotalSize(archiveFile);
+
+        // Extract all the regular files with a single pass of the decoder if the archive supports it, which is much
+        // faster than extracting them one by one for solid archives
+        if (archiveFile instanceof AbstractROArchiveFile && !fileEntries.isEmpty()) {
+            try {
+                bulkExtraction = ((AbstractROArchiveFile)archiveFile).extractEntries(fileEntries);
+            } catch (IOException e) {
+                // Entries will be extracted one by one
+                LOGGER.info("Could not start bulk extraction of " + archiveFile, e);
+            }
+        }
 
         ArchiveEntry entry;
         String entryPath;
@@ -311,7 +326,7 @@ public class UnpackJob extends AbstractCopyJob {
                     // The entry is wrapped in a ProxyFile to override #getInputStream() and delegate it to
                     // ArchiveFile#getEntryInputStream in order to take advantage of the ArchiveEntryIterator, which for
                     // some archive file implementations (such as TAR) can speed things by an order of magnitude.
-                    if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator), destFile, append, errorDialogTitle)) {
+                    if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator, bulkExtraction), destFile, append, errorDialogTitle)) {
                         // !!! we don't need to break the process in this case
 //                        return false;
                     }
@@ -322,6 +337,9 @@ public class UnpackJob extends AbstractCopyJob {
         } catch (IOException e) {
             showErrorDialog(errorDialogTitle, Translator.get("cannot_read_file", archiveFile.getName()));
         } finally {
+            if (bulkExtraction != null) {
+                bulkExtraction.close();
+            }
             // The ArchiveEntryIterator must be closed when finished
             if (iterator != null) {
                 try {
@@ -375,12 +393,16 @@ public class UnpackJob extends AbstractCopyJob {
     }
 
 
-    private void calculateTotalSize(AbstractArchiveFile archiveFile) {
+    /**
+     * Calculates the total size and number of the entries to unpack, and returns the regular file entries among them.
+     */
+    private List<ArchiveEntry> calculateTotalSize(AbstractArchiveFile archiveFile) {
         totalFilesSize = 0;
         totalFilesCount = 0;
         // get all directoires
         List<String> selectedDirectories = new ArrayList<>();
         List<ArchiveEntry> fileEntries = new ArrayList<>();
+        List<ArchiveEntry> unpackedFileEntries = new ArrayList<>();
 
         if (selectedEntries != null) {
             for (ArchiveEntry entry : selectedEntries) {
@@ -409,8 +431,8 @@ public class UnpackJob extends AbstractCopyJob {
                         }
                     } // directories
                     if (!addThisEntry && !selectedEntries.isEmpty()) {
-                        for (ArchiveEntry selEntry : selectedEntries) {
-                            if (entry == selEntry) {
+                        for (ArchiveEntry selEntry : fileEntries) {
+                            if (entry.getPath().equals(selEntry.getPath())) {
                                 addThisEntry = true;
                                 break;
                             }
@@ -423,12 +445,16 @@ public class UnpackJob extends AbstractCopyJob {
                 if (addThisEntry) {
                     totalFilesSize += entry.getSize();
                     totalFilesCount++;
+                    if (!entry.isDirectory()) {
+                        unpackedFileEntries.add(entry);
+                    }
                 }
             } // while
         } catch (IOException e) {
             e.printStackTrace();
         }
         preparingFinished = true;
+        return unpackedFileEntries;
     }
 
 
@@ -460,17 +486,27 @@ public class UnpackJob extends AbstractCopyJob {
         private ArchiveEntry entry;
         private AbstractArchiveFile archiveFile;
         private ArchiveEntryIterator iterator;
+        private BulkEntryExtraction bulkExtraction;
 
-        ProxiedEntryFile(AbstractFile entryFile, ArchiveEntry entry, AbstractArchiveFile archiveFile, ArchiveEntryIterator iterator) {
+        ProxiedEntryFile(AbstractFile entryFile, ArchiveEntry entry, AbstractArchiveFile archiveFile, ArchiveEntryIterator iterator,
+                         BulkEntryExtraction bulkExtraction) {
             super(entryFile);
 
             this.entry = entry;
             this.archiveFile = archiveFile;
             this.iterator = iterator;
+            this.bulkExtraction = bulkExtraction;
         }
 
         @Override
         public InputStream getInputStream() throws IOException {
+            // The bulk extraction can't provide the entry if it is read again, when retrying after an error
+            if (bulkExtraction != null) {
+                InputStream in = bulkExtraction.getEntryInputStream(entry);
+                if (in != null) {
+                    return in;
+                }
+            }
             return archiveFile.getEntryInputStream(entry, iterator);
         }
     }
@@ -21,29 +21,64 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread to calculating the total size of files
+ *
+ * <p>If listings are shared (see {@link #ScanDirectoryThread(FileSet, boolean, boolean)}), the folders listed by this
+ * thread are kept until the job retrieves them with {@link #ls(AbstractFile)}, so that each folder is listed only
+ * once even though it is both scanned and processed. This matters on remote file systems, where each listing is a
+ * round trip. A folder that is requested by the job before this thread has reached it is listed by the job and
+ * handed over to this thread.</p>
  */
 public class ScanDirectoryThread extends Thread {
 
+    /** Maximum number of files held by shared listings, beyond which folders are listed twice */
+    private static final int MAX_SHARED_FILES = 100000;
+
     private final FileSet files;
-    private long totalBytes;
-    private boolean completed;
+    private volatile long totalBytes;
+    private volatile boolean completed;
     private long executionTime;
-    private long filesCount;
-    private boolean interrupted;
+    private volatile long filesCount;
+    private volatile boolean interrupted;
     private final boolean calcSize;
 
+    /** Listings of the folders that have not been retrieved by both this thread and the job yet, null if listings are not shared */
+    private final Map<AbstractFile, SharedListing> listings;
+
+    /** True while listings are shared, false if they are not or if too many files are held */
+    private volatile boolean sharing;
+
+    /** Number of files held by {@link #listings} */
+    private final AtomicInteger nbSharedFiles = new AtomicInteger();
+
     public ScanDirectoryThread(FileSet files) {
-        this.files = files;
-        this.calcSize = true;
-        setName("ScanDirectoryThread " + files.getBaseFolder());
+        this(files, true);
     }
 
     public ScanDirectoryThread(FileSet files, boolean calcSize) {
+        this(files, calcSize, false);
+    }
+
+    /**
+     * Creates a new scan thread.
+     *
+     * @param files files to scan
+     * @param calcSize if <code>true</code>, the total size of files is calculated
+     * @param shareListings if <code>true</code>, folder listings are kept for the job, which must then list folders
+     * with {@link #ls(AbstractFile)}
+     */
+    public ScanDirectoryThread(FileSet files, boolean calcSize, boolean shareListings) {
         this.files = files;
         this.calcSize = calcSize;
+        this.listings = shareListings ? new ConcurrentHashMap<>() : null;
+        this.sharing = shareListings;
         setName("ScanDirectoryThread " + files.getBaseFolder());
     }
 
@@ -73,7 +108,7 @@ public class ScanDirectoryThread extends Thread {
         }
         if (file.isDirectory()) {
             try {
-                AbstractFile[] subfiles = file.ls();
+                AbstractFile[] subfiles = sharing ? ls(file) : file.ls();
                 for (AbstractFile subfile : subfiles ) {
                     if (interrupted) {
                         return;
@@ -90,6 +125,59 @@ public class ScanDirectoryThread extends Thread {
         }
     }
 
+    /**
+     * Returns the children of the given folder, listing it only if it has not been listed by the other party yet
+     * (this thread or the job). If the folder is being listed by the other party, waits for the listing to complete.
+     * This method must be called at most once per folder by the job.
+     *
+     * @param folder the folder to list
+     * @return the children of the folder
+     * @throws IOException if the folder could not be listed
+     */
+    public AbstractFile[] ls(AbstractFile folder) throws IOException {
+        if (listings == null) {
+            return folder.ls();
+        }
+        SharedListing listing;
+        boolean shared = sharing && !completed;
+        if (shared) {
+            listing = listings.computeIfAbsent(folder, SharedListing::new);
+        } else {
+            // The other party won't need this listing, use it if it's there
+            listing = listings.remove(folder);
+            if (listing == null) {
+                return folder.ls();
+            }
+        }
+
+        listing.task.run();     // does nothing if the folder has already been listed
+        AbstractFile[] children;
+        try {
+            children = listing.task.get();
+        } catch (ExecutionException e) {
+            // Forget the failed listing so that the folder is listed again if the job retries
+            listings.remove(folder, listing);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        if (shared) {
+            if (listing.nbUses.incrementAndGet() == 1) {
+                // The listing is kept for the other party, stop sharing listings once too many files are held
+                if (nbSharedFiles.addAndGet(children.length) > MAX_SHARED_FILES) {
+                    sharing = false;
+                }
+            } else if (listings.remove(folder, listing)) {
+                nbSharedFiles.addAndGet(-children.length);
+            }
+        }
+        return children;
+    }
+
     public long getTotalBytes() {
         return totalBytes;
     }
@@ -104,5 +192,22 @@ public class ScanDirectoryThread extends Thread {
 
     public void interrupt() {
         interrupted = true;
+        sharing = false;
+        if (listings != null) {
+            listings.clear();
+        }
+    }
+
+
+    /**
+     * Listing of a folder, shared between the scan thread and the job.
+     */
+    private static class SharedListing {
+        private final FutureTask<AbstractFile[]> task;
+        private final AtomicInteger nbUses = new AtomicInteger();
+
+        private SharedListing(AbstractFile folder) {
+            this.task = new FutureTask<>(folder::ls);
+        }
     }
 }
@@ -0,0 +1,571 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.EncodingDetector;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <code>FileIndex</code> is a Lucene index of the files located under a set of local folders, the <i>roots</i>. It
+ * stores the path, name, size and date of each file and folder, and the contents of text files, and is used by the
+ * find file job to find candidate files without crawling the disk. The index is kept up to date by a
+ * {@link FileIndexer}.
+ *
+ * <p>Contents are indexed as lower case trigrams, so that any string of three characters or more can be looked up,
+ * not only whole words: a file contains a string only if it contains all of the string's trigrams. This gives a set
+ * of candidates that is a superset of the actual matches (trigrams may be in a different order, the case may differ),
+ * which has to be confirmed by searching the files themselves. Files whose contents are not indexed (binary files,
+ * large files, or text files whose encoding differs from the searched one) are always candidates.</p>
+ *
+ * <p>The index may be stale: files created since the last update are not found, and files deleted since then are
+ * returned. Callers must check that the returned files still exist, and list the folders whose modification date is
+ * more recent than the {@link #getUpdateTime(String) update time} of the index to find the new files. Files modified
+ * in place since the last update are returned whatever their indexed contents, as their modification date is checked
+ * before ruling them out.</p>
+ */
+public class FileIndex implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIndex.class);
+
+    /** Absolute path of the file, identifies the document */
+    static final String PATH = "path";
+    /** Absolute path of the parent folder */
+    static final String PARENT = "parent";
+    /** Lower case file name */
+    static final String NAME = "name";
+    static final String SIZE = "size";
+    static final String MODIFIED = "modified";
+    /** "1" for folders, "0" for files */
+    static final String DIRECTORY = "directory";
+    /** Canonical name of the encoding the contents were decoded with, only for files whose contents are indexed */
+    static final String ENCODING = "encoding";
+    /** Lower case contents, as trigrams */
+    static final String CONTENT = "content";
+
+    /** Encoding of the files whose contents are made of ASCII characters only */
+    private static final String ASCII = StandardCharsets.US_ASCII.name();
+
+    /** Key of the commit data that lists the roots that have been indexed completely */
+    private static final String ROOTS_COMMIT_KEY = "roots";
+    /** Key of the commit data that lists the update times of the roots, in the same order */
+    private static final String UPDATE_TIMES_COMMIT_KEY = "updateTimes";
+
+    /** Files larger than this have their names indexed but not their contents */
+    static final int MAX_CONTENT_SIZE = 1024 * 1024;
+
+    /** Length of the character n-grams that contents are indexed as */
+    private static final int GRAM_SIZE = 3;
+
+    private final FSDirectory directory;
+    private final Analyzer analyzer;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    /**
+     * Roots that have been indexed completely at least once, and can be searched, mapped to the time their last
+     * complete update started at
+     */
+    private final Map<String, Long> indexedRoots = Collections.synchronizedMap(new LinkedHashMap<>());
+
+
+    /**
+     * Opens the index located in the given folder, creating it if it doesn't exist.
+     *
+     * @param folder the folder that contains the index
+     * @throws IOException if the index could not be opened
+     */
+    public FileIndex(File folder) throws IOException {
+        directory = FSDirectory.open(folder.toPath());
+        analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(new NGramTokenizer(GRAM_SIZE, GRAM_SIZE));
+            }
+        };
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        String[] roots = new String[0];
+        String[] updateTimes = new String[0];
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                if (ROOTS_COMMIT_KEY.equals(entry.getKey())) {
+                    roots = entry.getValue().split(File.pathSeparator);
+                } else if (UPDATE_TIMES_COMMIT_KEY.equals(entry.getKey())) {
+                    updateTimes = entry.getValue().split(",");
+                }
+            }
+        }
+        for (int i = 0; i < roots.length; i++) {
+            // Without an update time, all the folders are considered as modified until the next update
+            indexedRoots.put(roots[i], i < updateTimes.length ? Long.parseLong(updateTimes[i]) : 0);
+        }
+    }
+
+    /**
+     * Returns the normalized form of the given absolute path, the one stored in the index.
+     *
+     * @param path an absolute path
+     * @return the path without trailing separator (unless it is a file system root)
+     */
+    public static String normalizePath(String path) {
+        return new File(path).getAbsolutePath();
+    }
+
+    /**
+     * Returns <code>true</code> if the given folder is located under a root that has been indexed completely, i.e. if
+     * its contents can be looked up with {@link #search(String, boolean, String[], String, String)}.
+     *
+     * @param folder absolute path of a local folder
+     * @return <code>true</code> if the contents of the folder are indexed
+     */
+    public boolean isIndexed(String folder) {
+        return getUpdateTime(folder) >= 0;
+    }
+
+    /**
+     * Returns the time the last complete update of the given folder started at. Files and folders whose
+     * modification date is more recent may not be indexed, or indexed with their former contents.
+     *
+     * @param folder absolute path of a local folder
+     * @return the time the last update of the folder started at, in milliseconds since the epoch, <code>-1</code>
+     * if the folder is not {@link #isIndexed(String) indexed}
+     */
+    public long getUpdateTime(String folder) {
+        folder = normalizePath(folder);
+        synchronized (indexedRoots) {
+            for (Map.Entry<String, Long> entry : indexedRoots.entrySet()) {
+                String root = entry.getKey();
+                if (folder.equals(root) || folder.startsWith(getPrefix(root))) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the paths of the folders located under the given folder, at any depth.
+     *
+     * @param folder absolute path of the folder, which must be {@link #isIndexed(String) indexed}
+     * @return the paths of the indexed folders located under the folder
+     * @throws IOException if the index could not be read
+     */
+    public List<String> getFolders(String folder) throws IOException {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(new PrefixQuery(new Term(PATH, getPrefix(normalizePath(folder)))), BooleanClause.Occur.MUST);
+        query.add(new TermQuery(new Term(DIRECTORY, "1")), BooleanClause.Occur.MUST);
+        return getPaths(query.build());
+    }
+
+    /**
+     * Returns the paths of the files located in the given folder that may match the given criteria. Files whose
+     * indexed contents don't contain the text are returned anyway if their modification date differs from the
+     * indexed one, as their contents may have changed since they were indexed.
+     *
+     * @param folder absolute path of the folder to search, which must be {@link #isIndexed(String) indexed}
+     * @param subfolders <code>true</code> to search the subfolders as well
+     * @param nameMasks wildcard masks (<code>*</code> and <code>?</code>) that the file names must match,
+     *                  case-insensitively, <code>null</code> to match all names
+     * @param text text that the files must contain, <code>null</code> to ignore contents
+     * @param encoding the encoding the text is searched in
+     * @return the paths of the candidate files
+     * @throws IOException if the index could not be read
+     */
+    public List<String> search(String folder, boolean subfolders, String[] nameMasks, String text, String encoding) throws IOException {
+        folder = normalizePath(folder);
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        if (subfolders) {
+            query.add(new PrefixQuery(new Term(PATH, getPrefix(folder))), BooleanClause.Occur.MUST);
+        } else {
+            query.add(new TermQuery(new Term(PARENT, folder)), BooleanClause.Occur.MUST);
+        }
+
+        if (nameMasks != null && nameMasks.length > 0) {
+            BooleanQuery.Builder names = new BooleanQuery.Builder();
+            for (String mask : nameMasks) {
+                names.add(new WildcardQuery(new Term(NAME, mask.toLowerCase(Locale.ROOT))), BooleanClause.Occur.SHOULD);
+            }
+            query.add(names.build(), BooleanClause.Occur.MUST);
+        }
+
+        Query contentQuery = text == null ? null : getContentQuery(text, encoding);
+        if (contentQuery == null) {
+            return getPaths(query.build());
+        }
+
+        // The indexed contents only rule out the files that have not been modified since they were indexed
+        query.add(new TermQuery(new Term(DIRECTORY, "0")), BooleanClause.Occur.MUST);
+        Map<String, Long> dates = getModifiedDates(query.build());
+        query.add(contentQuery, BooleanClause.Occur.MUST);
+        Set<String> matches = new HashSet<>(getPaths(query.build()));
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : dates.entrySet()) {
+            String path = entry.getKey();
+            if (matches.contains(path) || isModified(path, entry.getValue())) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns <code>true</code> if the modification date of the given file differs from the given indexed date,
+     * <code>false</code> if it is the same or if the file doesn't exist anymore.
+     */
+    private static boolean isModified(String path, long indexedDate) {
+        try {
+            return Files.getLastModifiedTime(Paths.get(path)).toMillis() != indexedDate;
+        } catch (IOException | InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the paths of the files that match the given query.
+     */
+    private List<String> getPaths(Query query) throws IOException {
+        List<String> paths = new ArrayList<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Query constantScoreQuery = new ConstantScoreQuery(query);
+            int count = searcher.count(constantScoreQuery);
+            if (count == 0) {
+                return paths;
+            }
+            Set<String> fields = Collections.singleton(PATH);
+            for (ScoreDoc scoreDoc : searcher.search(constantScoreQuery, count).scoreDocs) {
+                paths.add(searcher.doc(scoreDoc.doc, fields).get(PATH));
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns a query that matches the files that may contain the given text, <code>null</code> if the index can't
+     * narrow them down.
+     */
+    private Query getContentQuery(String text, String encoding) throws IOException {
+        String charset = getCanonicalName(encoding);
+        if (charset == null || text.length() < GRAM_SIZE) {
+            return null;
+        }
+
+        BooleanQuery.Builder grams = new BooleanQuery.Builder();
+        Set<String> uniqueGrams = new HashSet<>();
+        try (TokenStream tokens = analyzer.tokenStream(CONTENT, text.toLowerCase(Locale.ROOT))) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                String gram = term.toString();
+                if (uniqueGrams.add(gram)) {
+                    grams.add(new TermQuery(new Term(CONTENT, gram)), BooleanClause.Occur.MUST);
+                }
+            }
+            tokens.end();
+        }
+
+        // Files whose contents have not been indexed in this encoding can't be ruled out
+        BooleanQuery.Builder notIndexed = new BooleanQuery.Builder();
+        notIndexed.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        notIndexed.add(new TermQuery(new Term(ENCODING, charset)), BooleanClause.Occur.MUST_NOT);
+        if (isAsciiCompatible(charset)) {
+            notIndexed.add(new TermQuery(new Term(ENCODING, ASCII)), BooleanClause.Occur.MUST_NOT);
+        }
+        notIndexed.add(new TermQuery(new Term(DIRECTORY, "1")), BooleanClause.Occur.MUST_NOT);
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(grams.build(), BooleanClause.Occur.SHOULD);
+        query.add(notIndexed.build(), BooleanClause.Occur.SHOULD);
+        query.setMinimumNumberShouldMatch(1);
+        return query.build();
+    }
+
+    /**
+     * Returns the modification date of the files indexed under the given root, keyed by path.
+     *
+     * @param root absolute path of an indexed root
+     * @return the modification date of the indexed files, keyed by path
+     * @throws IOException if the index could not be read
+     */
+    Map<String, Long> getModifiedDates(String root) throws IOException {
+        return getModifiedDates(new PrefixQuery(new Term(PATH, getPrefix(root))));
+    }
+
+    /**
+     * Returns the modification date of the files that match the given query, keyed by path.
+     */
+    private Map<String, Long> getModifiedDates(Query query) throws IOException {
+        Map<String, Long> dates = new HashMap<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Query constantScoreQuery = new ConstantScoreQuery(query);
+            int count = searcher.count(constantScoreQuery);
+            if (count == 0) {
+                return dates;
+            }
+            Set<String> fields = new HashSet<>();
+            fields.add(PATH);
+            fields.add(MODIFIED);
+            for (ScoreDoc scoreDoc : searcher.search(constantScoreQuery, count).scoreDocs) {
+                Document document = searcher.doc(scoreDoc.doc, fields);
+                dates.put(document.get(PATH), document.getField(MODIFIED).numericValue().longValue());
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        return dates;
+    }
+
+    /**
+     * Adds the given file to the index, or replaces it if it is indexed already. The contents of the file are indexed
+     * if it is a text file that is not too large.
+     *
+     * @param file the file to index
+     * @param attributes the attributes of the file
+     * @throws IOException if the index could not be written
+     */
+    void update(Path file, BasicFileAttributes attributes) throws IOException {
+        String path = file.toString();
+        Path parent = file.getParent();
+        Path fileName = file.getFileName();
+
+        Document document = new Document();
+        document.add(new StringField(PATH, path, Field.Store.YES));
+        document.add(new StringField(PARENT, parent == null ? "" : parent.toString(), Field.Store.NO));
+        document.add(new StringField(NAME, fileName == null ? "" : fileName.toString().toLowerCase(Locale.ROOT), Field.Store.NO));
+        document.add(new LongPoint(SIZE, attributes.size()));
+        document.add(new StoredField(SIZE, attributes.size()));
+        long modified = attributes.lastModifiedTime().toMillis();
+        document.add(new LongPoint(MODIFIED, modified));
+        document.add(new StoredField(MODIFIED, modified));
+        document.add(new StringField(DIRECTORY, attributes.isDirectory() ? "1" : "0", Field.Store.YES));
+
+        if (attributes.isRegularFile() && attributes.size() <= MAX_CONTENT_SIZE) {
+            addContent(document, file, (int)attributes.size());
+        }
+
+        writer.updateDocument(new Term(PATH, path), document);
+    }
+
+    /**
+     * Adds the contents of the given file to the document if it is a text file whose encoding can be detected.
+     */
+    private void addContent(Document document, Path file, int size) {
+        byte[] bytes = new byte[size];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (length < size && (n = in.read(bytes, length, size - length)) != -1) {
+                length += n;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read " + file, e);
+            return;
+        }
+
+        try {
+            if (BinaryDetector.guessBinary(new ByteArrayInputStream(bytes, 0, length))) {
+                return;
+            }
+        } catch (IOException e) {
+            // Can't happen with an array
+            return;
+        }
+        // ASCII text reads the same in all ASCII-compatible encodings, whichever the detector picks
+        String charset = isAscii(bytes, length) ?
+                ASCII : getCanonicalName(EncodingDetector.detectEncoding(bytes, 0, length));
+        if (charset == null) {
+            return;
+        }
+        document.add(new StringField(ENCODING, charset, Field.Store.NO));
+        String text = new String(bytes, 0, length, Charset.forName(charset));
+        document.add(new TextField(CONTENT, text.toLowerCase(Locale.ROOT), Field.Store.NO));
+    }
+
+    /**
+     * Removes the given file from the index.
+     *
+     * @param path absolute path of the file
+     * @throws IOException if the index could not be written
+     */
+    void delete(String path) throws IOException {
+        writer.deleteDocuments(new Term(PATH, path));
+    }
+
+    /**
+     * Removes all the files located under the given root from the index.
+     *
+     * @param root absolute path of a root that is not indexed anymore
+     * @throws IOException if the index could not be written
+     */
+    void deleteRoot(String root) throws IOException {
+        writer.deleteDocuments(new PrefixQuery(new Term(PATH, getPrefix(root))));
+        indexedRoots.remove(root);
+    }
+
+    /**
+     * Marks the given root as indexed completely.
+     *
+     * @param root absolute path of the root
+     * @param updateTime the time the update of the root started at, in milliseconds since the epoch
+     */
+    void setIndexed(String root, long updateTime) {
+        indexedRoots.put(root, updateTime);
+    }
+
+    /**
+     * Returns the roots that have been indexed completely.
+     *
+     * @return the roots that have been indexed completely
+     */
+    Set<String> getIndexedRoots() {
+        synchronized (indexedRoots) {
+            return new LinkedHashSet<>(indexedRoots.keySet());
+        }
+    }
+
+    /**
+     * Commits the changes made to the index, and makes them visible to searches.
+     *
+     * @throws IOException if the index could not be written
+     */
+    void commit() throws IOException {
+        List<String> roots = new ArrayList<>();
+        List<String> updateTimes = new ArrayList<>();
+        synchronized (indexedRoots) {
+            for (Map.Entry<String, Long> entry : indexedRoots.entrySet()) {
+                roots.add(entry.getKey());
+                updateTimes.add(String.valueOf(entry.getValue()));
+            }
+        }
+        writer.setLiveCommitData(Arrays.asList(
+                new AbstractMap.SimpleEntry<>(ROOTS_COMMIT_KEY, String.join(File.pathSeparator, roots)),
+                new AbstractMap.SimpleEntry<>(UPDATE_TIMES_COMMIT_KEY, String.join(",", updateTimes))));
+        writer.commit();
+        searcherManager.maybeRefresh();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            searcherManager.close();
+            writer.close();
+        } finally {
+            directory.close();
+        }
+    }
+
+    /**
+     * Returns the prefix of the paths of the files located under the given folder.
+     */
+    private static String getPrefix(String folder) {
+        return folder.endsWith(File.separator) ? folder : folder + File.separator;
+    }
+
+    private static boolean isAscii(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if ASCII characters are encoded as in ASCII in the given encoding.
+     */
+    private static boolean isAsciiCompatible(String charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte)i;
+        }
+        return Arrays.equals(new String(ascii, StandardCharsets.US_ASCII).getBytes(Charset.forName(charset)), ascii);
+    }
+
+    private static String getCanonicalName(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        try {
+            return Charset.forName(encoding).name();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>FileIndexer</code> keeps a {@link FileIndex} of a set of local folders up to date. It runs in the background,
+ * on a single low priority thread, shortly after it is started and then periodically. Each update walks the folders
+ * and re-indexes only the files whose modification date has changed since the previous update, and removes the files
+ * that don't exist anymore.
+ *
+ * <p>There is a single indexer per application, started by {@link #start(File, List)} with the folders chosen by the
+ * user, and whose index is returned by {@link #getIndex()}.</p>
+ */
+public class FileIndexer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIndexer.class);
+
+    /** Delay before the first update, in seconds, so as not to compete with the application's startup */
+    private static final long INITIAL_DELAY = 60;
+
+    /** Delay between the end of an update and the start of the next one, in seconds */
+    private static final long UPDATE_PERIOD = 30 * 60;
+
+    private static FileIndexer instance;
+
+    private final FileIndex index;
+    private final List<String> roots = new ArrayList<>();
+    private final ScheduledExecutorService executor;
+    private volatile boolean stopped;
+    /** <code>true</code> once the index has been closed */
+    private boolean closed;
+
+
+    /**
+     * Creates an indexer of the given folders. Roots that are indexed but are not in the list anymore are removed
+     * from the index.
+     *
+     * @param index the index to keep up to date
+     * @param roots absolute paths of the folders to index
+     * @throws IOException if the index could not be written
+     */
+    FileIndexer(FileIndex index, List<String> roots) throws IOException {
+        this.index = index;
+        for (String root : roots) {
+            this.roots.add(FileIndex.normalizePath(root));
+        }
+        for (String root : index.getIndexedRoots()) {
+            if (!this.roots.contains(root)) {
+                index.deleteRoot(root);
+            }
+        }
+        index.commit();
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "File indexer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the index located in the given folder and starts indexing the given folders in the background. Does
+     * nothing if the indexer has been started already.
+     *
+     * @param indexFolder the folder that contains the index
+     * @param roots absolute paths of the folders to index
+     */
+    public static synchronized void start(File indexFolder, List<String> roots) {
+        if (instance != null) {
+            return;
+        }
+        try {
+            instance = new FileIndexer(new FileIndex(indexFolder), roots);
+            instance.executor.scheduleWithFixedDelay(instance::update, INITIAL_DELAY, UPDATE_PERIOD, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            LOGGER.warn("Could not open file index in " + indexFolder, e);
+        }
+    }
+
+    /**
+     * Stops the indexer and closes its index. Does nothing if the indexer has not been started. If an update is
+     * running, this method does not wait for it to stop: the index is closed by the update once it has stopped.
+     */
+    public static synchronized void stop() {
+        if (instance == null) {
+            return;
+        }
+        instance.stopped = true;
+        // Not interrupted: interrupting a thread that is writing the index closes the channels of the index files.
+        // The crawl stops at the next file instead, and the periodic update is cancelled by shutdown().
+        instance.executor.shutdown();
+        try {
+            if (instance.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                instance.closeIndex();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("Interrupted while waiting for the file indexer to stop", e);
+        }
+        instance = null;
+    }
+
+    /**
+     * Closes the index, unless it has been closed already.
+     */
+    private synchronized void closeIndex() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            index.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close file index", e);
+        }
+    }
+
+    /**
+     * Returns the index maintained by the indexer, <code>null</code> if the indexer has not been started.
+     *
+     * @return the index maintained by the indexer, <code>null</code> if the indexer has not been started
+     */
+    public static synchronized FileIndex getIndex() {
+        return instance == null ? null : instance.index;
+    }
+
+    /**
+     * Updates the index of all the roots.
+     */
+    void update() {
+        try {
+            for (String root : roots) {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    updateRoot(root);
+                } catch (IOException e) {
+                    LOGGER.info("Could not index " + root, e);
+                }
+            }
+        } finally {
+            // The indexer may have been stopped while this update was running, see stop()
+            if (stopped) {
+                closeIndex();
+            }
+        }
+    }
+
+    /**
+     * Walks the given root, indexing the files that are not indexed or have been modified, and removing the files
+     * that have been deleted. The changes are committed once the whole root has been walked.
+     */
+    private void updateRoot(String root) throws IOException {
+        Path rootPath = Paths.get(root);
+        if (!Files.isDirectory(rootPath)) {
+            LOGGER.info("Indexed folder " + root + " doesn't exist");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        final Map<String, Long> indexedDates = index.getModifiedDates(root);
+        final int[] nbUpdated = {0};
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(rootPath)) {
+                    visit(dir, attrs);
+                }
+                return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                visit(file, attrs);
+                return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Keep what was indexed, the file may be temporarily inaccessible
+                indexedDates.remove(file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void visit(Path file, BasicFileAttributes attrs) throws IOException {
+                Long indexedDate = indexedDates.remove(file.toString());
+                if (indexedDate == null || indexedDate != attrs.lastModifiedTime().toMillis()) {
+                    index.update(file, attrs);
+                    nbUpdated[0]++;
+                }
+            }
+        });
+        if (stopped) {
+            return;
+        }
+
+        // Files that have not been visited don't exist anymore
+        for (String path : indexedDates.keySet()) {
+            index.delete(path);
+        }
+        // Files modified during the walk may have been visited before their modification
+        index.setIndexed(root, start);
+        index.commit();
+        LOGGER.debug("Indexed " + root + " in " + (System.currentTimeMillis() - start) + " ms, " + nbUpdated[0]
+                + " files updated, " + indexedDates.size() + " removed");
+    }
+}
@@ -18,26 +18,35 @@
 
 package com.mucommander.ui.action.impl;
 
-import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparison;
+import com.mucommander.job.CompareFoldersJob;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionDescriptor;
 import com.mucommander.ui.action.MuAction;
+import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.main.table.FileTable;
-import com.mucommander.ui.main.table.views.BaseFileTableModel;
+import com.mucommander.utils.text.Translator;
 
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.util.Map;
 
 /**
- * This action compares the content of the 2 MainFrame's file tables and marks the files that are different.
+ * This action compares the content of the 2 MainFrame's file tables and marks the files that are different:
+ * files that exist in one folder only, and files that are more recent than their counterpart.
+ *
+ * <p>Folders are ignored unless the <code>recursive</code> property is set to <code>true</code>, in which case a
+ * folder is marked if any of the files it contains differs. The comparison runs in a {@link CompareFoldersJob}.</p>
  *
  * @author Maxence Bernard
  */
 public class CompareFoldersAction extends MuAction {
 
+    /** Key that controls whether the contents of subfolders are compared (defaults to false) */
+    static final String RECURSIVE_PROPERTY_KEY = "recursive";
+
     private CompareFoldersAction(MainFrame mainFrame, Map<String, Object> properties) {
         super(mainFrame, properties);
     }
@@ -47,45 +56,22 @@ public class CompareFoldersAction extends MuAction {
         FileTable leftTable = mainFrame.getLeftPanel().getFileTable();
         FileTable rightTable = mainFrame.getRightPanel().getFileTable();
 
-        BaseFileTableModel leftTableModel = leftTable.getFileTableModel();
-        BaseFileTableModel rightTableModel = rightTable.getFileTableModel();
-        if (compare(leftTableModel, rightTableModel)) {
-            leftTable.repaint();
-        }
-        if (compare(rightTableModel, leftTableModel)) {
-            rightTable.repaint();
-        }
-
-        // Notify registered listeners that currently marked files have changed on the file tables
-        leftTable.fireMarkedFilesChangedEvent();
-        rightTable.fireMarkedFilesChangedEvent();
+        ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get(Descriptor.ACTION_ID + ".label"));
+        CompareFoldersJob job = new CompareFoldersJob(progressDialog, mainFrame, leftTable, rightTable,
+                FolderComparison.Criterion.DATE, isRecursive(this));
+        progressDialog.start(job);
     }
 
-    private boolean compare(BaseFileTableModel firstTableModel, BaseFileTableModel secondTableModel) {
-        boolean result = false;
-        int nbFilesFirst = firstTableModel.getFileCount();
-        int nbFilesSecond = secondTableModel.getFileCount();
-
-        for (int i = 0; i < nbFilesFirst; i++) {
-            AbstractFile tempFile = firstTableModel.getFileAt(i);
-            if (tempFile.isDirectory()) {
-                continue;
-            }
-
-            String tempFileName = tempFile.getName();
-            int fileIndex = -1;
-            for (int j = 0; j < nbFilesSecond; j++) {
-                if (secondTableModel.getFileAt(j).getName().equals(tempFileName)) {
-                    fileIndex = j;
-                    break;
-                }
-            }
-            if (fileIndex < 0 || secondTableModel.getFileAt(fileIndex).getLastModifiedDate() < tempFile.getLastModifiedDate()) {
-                firstTableModel.setFileMarked(tempFile, true);
-                result = true;
-            }
-        }
-        return result;
+    /**
+     * Returns <code>true</code> if the given action must compare the contents of subfolders.
+     * @param action the action whose <code>recursive</code> property is read.
+     * @return <code>true</code> if the action must compare the contents of subfolders, <code>false</code> otherwise.
+     */
+    static boolean isRecursive(MuAction action) {
+        Object o = action.getValue(RECURSIVE_PROPERTY_KEY);
+
+        // Returns the configured value if it's a string, false otherwise.
+        return o instanceof String && o.equals("true");
     }
 
 	@Override
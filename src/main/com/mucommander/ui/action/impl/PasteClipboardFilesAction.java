@@ -18,6 +18,9 @@
 
 package com.mucommander.ui.action.impl;
 
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
@@ -68,6 +71,8 @@ public class PasteClipboardFilesAction extends MuAction {
         ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("copy_dialog.copying"));
         AbstractFile destFolder = mainFrame.getActivePanel().getCurrentFolder();
         CopyJob job = new CopyJob(progressDialog, mainFrame, clipboardFiles, destFolder, null, CopyJob.Mode.COPY, FileCollisionDialog.ASK_ACTION);
+        job.setParallelTransfers(MuConfigurations.getPreferences().getVariable(MuPreference.PARALLEL_TRANSFERS,
+                MuPreferences.DEFAULT_PARALLEL_TRANSFERS));
         progressDialog.start(job);
     }
 
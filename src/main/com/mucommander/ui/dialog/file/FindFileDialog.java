@@ -99,22 +99,31 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
     private ListDataIntelliHints textHints, hexHints;
     private UpdateRunner updateRunner;
 
-    private class UpdateRunner extends SwingWorker<List<AbstractFile>, AbstractFile> {
+    /**
+     * Adds the files found by the job to the list as they are found, and waits for the job to finish.
+     */
+    private class UpdateRunner extends SwingWorker<List<AbstractFile>, AbstractFile> implements FindFileJob.ResultListener {
 
         @Override
         protected List<AbstractFile> doInBackground() {
             btnNewSearch.setEnabled(false);
-            while (job != null && job.getState() != FileJob.State.FINISHED) {
-                checkUpdates();
+            FindFileJob job;
+            while ((job = FindFileDialog.this.job) != null && job.getState() != FileJob.State.FINISHED
+                    && job.getState() != FileJob.State.INTERRUPTED) {
                 try {
                     Thread.sleep(REFRESH_RATE);
                 } catch(InterruptedException ignore) {}
             }
-            checkUpdates();
-            job = null;
+            FindFileDialog.this.job = null;
             return null;
         }
 
+        @Override
+        public void fileFound(AbstractFile file) {
+            // Results are delivered to process() in batches, on the event dispatch thread
+            publish(file);
+        }
+
         @Override
         protected void done() {
             showProgress(false);
@@ -125,24 +134,13 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
         @Override
         protected void process(List<AbstractFile> chunks) {
             for (AbstractFile f : chunks) {
-                if (isCancelled()) {
+                if (isCancelled() || listModel == null) {
                     break;
                 }
                 listModel.addElement(f);
-                updateResultLabel();
-            }
-        }
-
-        private void checkUpdates() {
-            if (job == null) {
-                return;
             }
-            final List<AbstractFile> jobResults = job.getResults();
-            synchronized (job) {
-                for (int i = listModel.size(); i < jobResults.size(); i++) {
-                    AbstractFile f = jobResults.get(i);
-                    publish(f);
-                }
+            if (listModel != null) {
+                updateResultLabel();
             }
         }
 
@@ -386,9 +384,10 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
                 cbCaseSensitive.isSelected(), cbIgnoreHidden.isSelected(), cbEncoding.getSelectedItem().toString(),
                 cbSearchHex.isSelected(), cbSearchHex.isSelected() ? edtText.getBytes() : null);
         updateResultLabel();
+        updateRunner = new UpdateRunner();
+        job.addResultListener(updateRunner);
         job.start();
         updateButtons();
-        updateRunner = new UpdateRunner();
         updateRunner.execute();
     }
 
@@ -35,6 +35,9 @@ import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.ui.combobox.MuComboBox;
 import com.mucommander.ui.main.statusbar.TaskWidget;
 import org.slf4j.Logger;
@@ -323,6 +326,8 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
         if (job != null) {
             job.setAutoSkipErrors(skipErrors);
             job.setIntegrityCheckEnabled(verifyIntegrity);
+            job.setParallelTransfers(MuConfigurations.getPreferences().getVariable(MuPreference.PARALLEL_TRANSFERS,
+                    MuPreferences.DEFAULT_PARALLEL_TRANSFERS));
             progressDialog.start(job);
         }
     }
@@ -31,6 +31,9 @@ import java.awt.event.InputEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
@@ -286,6 +289,8 @@ public class FileDropTargetListener implements DropTargetListener {
                 // Start copying files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("copy_dialog.copying"));
                 CopyJob job = new CopyJob(progressDialog, mainFrame, droppedFiles, destFolder, null, CopyJob.Mode.COPY, FileCollisionDialog.ASK_ACTION);
+                job.setParallelTransfers(MuConfigurations.getPreferences().getVariable(MuPreference.PARALLEL_TRANSFERS,
+                        MuPreferences.DEFAULT_PARALLEL_TRANSFERS));
                 progressDialog.start(job);
             }
         }
@@ -18,6 +18,8 @@
 
 package com.mucommander.ui.event;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -27,6 +29,9 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.ListingListener;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
@@ -67,12 +72,37 @@ public class LocationManager {
      * Set the given {@link AbstractFile} as the folder presented in the {@link FolderPanel}.
      * This method saves the given {@link AbstractFile}, and notify the {@link LocationListener}s that
      * the location was changed to it.
+     *
+     * <p>When a new folder is presented, it is listed with {@link AbstractFile#ls(FileFilter, ListingListener)}: the
+     * folder is presented as soon as its first children have been listed, and the remaining children are added to the
+     * {@link FolderPanel} as they are listed. This method returns once the folder has been entirely listed. When the
+     * current folder is refreshed, it is listed entirely before being presented, so that the changes can be merged.</p>
      * 
      * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
      */
     public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
-        AbstractFile[] children = safeLs(folder, configurableFolderFilter);
+        if (currentFolder != null && folder.equalsCanonical(currentFolder)) {
+            AbstractFile[] children = safeLs(folder, configurableFolderFilter);
+            folderListed(folder, children, fileToSelect, changeLockedTab);
+            return;
+        }
+
+        FolderListing listing = new FolderListing(folder, fileToSelect, changeLockedTab);
+        LOGGER.trace("calling ls()");
+        try {
+            ls(folder, configurableFolderFilter, listing);
+        } catch (Exception e) {
+            LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+        }
+        if (!listing.folderSet) {
+            folderListed(folder, new AbstractFile[0], fileToSelect, changeLockedTab);
+        }
+    }
 
+    /**
+     * Presents the given folder and its children (or the first of its children) in the {@link FolderPanel}.
+     */
+    private void folderListed(AbstractFile folder, AbstractFile[] children, AbstractFile fileToSelect, boolean changeLockedTab) {
         folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
 
     	this.currentFolder = folder;
@@ -89,13 +119,36 @@ public class LocationManager {
     private static AbstractFile[] safeLs(AbstractFile folder, FileFilter filter) {
         LOGGER.trace("calling ls()");
         try {
-            return folder.ls(filter);
+            LocalFile localFolder = getLocalFolder(folder);
+            return localFolder != null ? localFolder.lsWithAttributes(filter) : folder.ls(filter);
         } catch (Exception e) {
             LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
             return new AbstractFile[0];
         }
     }
 
+    /**
+     * Lists the given folder. The children of local folders are listed with their attributes, which are going to be
+     * displayed, see {@link LocalFile#lsWithAttributes(FileFilter, ListingListener)}.
+     */
+    private static void ls(AbstractFile folder, FileFilter filter, ListingListener listener) throws IOException {
+        LocalFile localFolder = getLocalFolder(folder);
+        if (localFolder != null) {
+            localFolder.lsWithAttributes(filter, listener);
+        } else {
+            folder.ls(filter, listener);
+        }
+    }
+
+    /**
+     * Returns the {@link LocalFile} of the given folder if it is one, or a {@link CachedFile} around one,
+     * <code>null</code> otherwise.
+     */
+    private static LocalFile getLocalFolder(AbstractFile folder) {
+        AbstractFile file = folder instanceof CachedFile ? ((CachedFile)folder).getProxiedFile() : folder;
+        return file instanceof LocalFile ? (LocalFile)file : null;
+    }
+
     /**
      * Return the folder presented in the {@link FolderPanel}
      * 
@@ -109,6 +162,15 @@ public class LocationManager {
         return folderChangeMonitor;
     }
 
+    /**
+     * Returns the filter that the children of the current folder must match to be presented in the {@link FolderPanel}.
+     *
+     * @return the filter of the presented children
+     */
+    public FileFilter getFolderFilter() {
+        return configurableFolderFilter;
+    }
+
     /**
      * Registers a LocationListener to receive notifications whenever the current folder of the associated FolderPanel
      * has or is being changed.
@@ -177,4 +239,39 @@ public class LocationManager {
             listener.locationFailed(new LocationEvent(folderPanel, folderURL));
         }
     }
+
+
+    /**
+     * Presents a folder with its first batch of children, then adds the next batches to the {@link FolderPanel} as
+     * long as the folder remains the current one.
+     */
+    private class FolderListing implements ListingListener {
+        private final AbstractFile folder;
+        private final AbstractFile fileToSelect;
+        private final boolean changeLockedTab;
+
+        /** <code>true</code> once the folder has been presented */
+        private boolean folderSet;
+
+        private FolderListing(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
+            this.folder = folder;
+            this.fileToSelect = fileToSelect;
+            this.changeLockedTab = changeLockedTab;
+        }
+
+        public boolean filesListed(AbstractFile[] files) {
+            if (!folderSet) {
+                folderSet = true;
+                folderListed(folder, files, fileToSelect, changeLockedTab);
+                return true;
+            }
+            // Stop listing the folder if another one has been presented in the meantime
+            if (!folder.equals(currentFolder)) {
+                return false;
+            }
+            // The files are inserted in sort order, without sorting the whole table again
+            folderPanel.getFileTable().updateFiles(folder, files, Collections.<String>emptyList());
+            return true;
+        }
+    }
 }
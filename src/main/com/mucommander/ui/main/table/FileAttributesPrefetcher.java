@@ -0,0 +1,153 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table;
+
+import com.mucommander.ui.main.table.views.BaseFileTableModel;
+import com.mucommander.ui.main.table.views.BaseFileTableModel.PendingFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingUtilities;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the attributes of the files displayed by a {@link FileTable} in the background, so that painting the table
+ * never waits for the filesystem. The files of the visible rows are fetched first, followed by those of the next
+ * page so that scrolling down finds them ready. Until the attributes of a file have been fetched, its row displays
+ * placeholders (see {@link BaseFileTableModel#isPending(com.mucommander.commons.file.AbstractFile)}); rows are
+ * repainted as their files become ready.
+ *
+ * <p>Each call to {@link #prefetchVisibleRows()} cancels the files that remain to be fetched for the previous visible
+ * rows, so that scrolling quickly or changing folder doesn't pile up requests for rows that aren't visible anymore.
+ * All methods of this class must be called from the event dispatch thread.</p>
+ */
+public class FileAttributesPrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileAttributesPrefetcher.class);
+
+    /** Number of threads that fetch attributes, shared by all tables */
+    private static final int NB_THREADS = 2;
+
+    /** Number of pages after the visible rows whose files are fetched too */
+    private static final int LOOK_AHEAD_PAGES = 1;
+
+    /** Minimum number of milliseconds between two updates of the table while fetching */
+    private static final long UPDATE_DELAY = 50;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(NB_THREADS, r -> {
+        Thread thread = new Thread(r, "File attributes prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FileTable table;
+
+    /** Incremented each time the files to fetch change, so that the previous task stops */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** The task that fetches the files of the visible rows, null if there is none */
+    private Future<?> task;
+
+
+    public FileAttributesPrefetcher(FileTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Fetches the attributes of the pending files of the visible rows and of the next page, cancelling the previous
+     * request.
+     */
+    public void prefetchVisibleRows() {
+        cancel();
+        BaseFileTableModel model = table.getFileTableModel();
+        int nbRows = table.getRowCount();
+        int nbColumns = table.getColumnCount();
+        if (nbRows == 0 || nbColumns == 0) {
+            return;
+        }
+
+        Rectangle visibleRect = table.getVisibleRect();
+        int firstRow = table.rowAtPoint(visibleRect.getLocation());
+        int lastRow = table.rowAtPoint(new Point(visibleRect.x, visibleRect.y + visibleRect.height - 1));
+        if (firstRow < 0) {
+            firstRow = 0;
+        }
+        if (lastRow < 0) {
+            lastRow = nbRows - 1;
+        }
+        int firstIndex = model.getFileIndexAt(firstRow, 0);
+        int lastIndex = model.getFileIndexAt(lastRow, nbColumns - 1);
+        lastIndex += (lastIndex - firstIndex + 1) * LOOK_AHEAD_PAGES;
+
+        List<PendingFile> files = model.getPendingFiles(firstIndex, lastIndex);
+        if (files.isEmpty()) {
+            return;
+        }
+        int taskGeneration = generation.get();
+        task = EXECUTOR.submit(() -> prefetch(model, files, taskGeneration));
+    }
+
+    /**
+     * Stops fetching the files requested by the last call to {@link #prefetchVisibleRows()}. The files that have been
+     * fetched already are still displayed.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void prefetch(BaseFileTableModel model, List<PendingFile> files, int taskGeneration) {
+        List<PendingFile> prefetchedFiles = new ArrayList<>();
+        long lastUpdateTime = System.currentTimeMillis();
+        for (PendingFile file : files) {
+            if (generation.get() != taskGeneration) {
+                break;
+            }
+            try {
+                file.prefetch();
+            } catch (Exception e) {
+                // The attributes that could not be fetched will be fetched when the row is painted
+                LOGGER.debug("Caught exception while fetching file attributes", e);
+            }
+            prefetchedFiles.add(file);
+
+            long now = System.currentTimeMillis();
+            if (now - lastUpdateTime >= UPDATE_DELAY) {
+                update(model, prefetchedFiles);
+                prefetchedFiles = new ArrayList<>();
+                lastUpdateTime = now;
+            }
+        }
+        if (!prefetchedFiles.isEmpty()) {
+            update(model, prefetchedFiles);
+        }
+    }
+
+    private static void update(BaseFileTableModel model, List<PendingFile> files) {
+        SwingUtilities.invokeLater(() -> model.setPrefetchedFiles(files));
+    }
+}
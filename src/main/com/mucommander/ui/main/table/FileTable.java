@@ -20,7 +20,9 @@ package com.mucommander.ui.main.table;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.WeakHashMap;
 
 import javax.swing.*;
@@ -143,6 +145,14 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Timestamp of last row selection change */
     private long selectionChangedTimestamp;
 
+    /**
+     * File to select once it has been listed, when the current folder is listed progressively and the file was not
+     * among the first files listed. <code>null</code> if there is none.
+     */
+    private AbstractFile pendingFileToSelect;
+    /** File selected when the current folder was set, the pending file is not selected if the selection has moved */
+    private AbstractFile initiallySelectedFile;
+
     /** Timestamp of last double click */
     private long lastDoubleClickTimestamp;
 
@@ -177,6 +187,9 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Wrapper of presentation adjustments for the file-table */
     private final FileTableWrapperForDisplay scrollpaneWrapper;
 
+    /** Fetches the attributes of the visible files in the background */
+    private final FileAttributesPrefetcher attributesPrefetcher = new FileAttributesPrefetcher(this);
+
     /** Table that shows the user to refresh if the location doesn't exist */
     private final DefaultOverlayable overlayTable;
 
@@ -241,6 +254,8 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         
         // Initialize a wrapper of presentation adjustments for the file-table
         scrollpaneWrapper = new FileTableWrapperForDisplay(this, folderPanel, mainFrame);
+        // Fetch the attributes of the files that become visible when scrolling or resizing
+        scrollpaneWrapper.getViewport().addChangeListener(e -> attributesPrefetcher.prefetchVisibleRows());
 
         overlayTable = createOverlayableTable();
 
@@ -307,6 +322,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            attributesPrefetcher.prefetchVisibleRows();
         }
         invalidate();
 
@@ -615,11 +631,19 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // If we're refreshing the current folder, save the current selection and marked files
         // in order to restore them properly.
         FileSet markedFiles  = null;
+        AbstractFile[] updatedFiles = null;
+        List<String> removedNames = null;
         if (currentFolder != null && folder.equalsCanonical(currentFolder)) {
             markedFiles = tableModel.getMarkedFiles();
             if (fileToSelect == null) {
                 fileToSelect = getSelectedFile();
             }
+            // Find the files that have changed here rather than in the event dispatch thread, as it may involve I/O,
+            // in order to update only their rows
+            if (folder.equals(tableModel.getCurrentFolder())) {
+                removedNames = new ArrayList<>();
+                updatedFiles = tableModel.getChangedFiles(children, removedNames);
+            }
         }
 
         // If we're navigating to the current folder's parent, we select the current folder.
@@ -632,7 +656,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // Changes the current folder in the swing thread to make sure that repaints cannot
         // happen in the middle of the operation - this is used to prevent flickering, badly
         // refreshed frames and such unpleasant graphical artifacts.
-        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect);
+        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect, updatedFiles, removedNames);
 
         // Wait for the getTask to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
@@ -652,6 +676,58 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         }
     }
 
+    /**
+     * Updates the rows of the files that have been created, modified or deleted in the current folder, without
+     * listing it again. The selected file and the marked files remain the same, provided they still exist.
+     * The update is ignored if the current folder has changed in the meantime. This method is also used to add the
+     * files of a folder that is being listed progressively, in which case the file to select passed to
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)} is selected once it has been listed,
+     * unless the selection has been moved.
+     *
+     * <p>This method returns immediately, the table is updated in the event dispatch thread.
+     *
+     * @param folder the folder that contains the files
+     * @param updatedFiles the files that have been created or modified
+     * @param removedNames the names of the files that have been deleted
+     * @see BaseFileTableModel#updateFiles(AbstractFile[], java.util.Collection)
+     */
+    public void updateFiles(AbstractFile folder, AbstractFile[] updatedFiles, java.util.Collection<String> removedNames) {
+        SwingUtilities.invokeLater(() -> {
+            try {
+                if (!folder.equals(folderPanel.getCurrentFolder())) {
+                    return;
+                }
+                AbstractFile selectedFile = getSelectedFile(true);
+                int selectedIndex = getSelectedFileIndex();
+                int nbMarkedFiles = tableModel.getNbMarkedFiles();
+
+                tableModel.updateFiles(updatedFiles, removedNames);
+
+                // Select the file that was to be selected when the folder was set, if it has just been listed
+                if (pendingFileToSelect != null && tableModel.getFileIndex(pendingFileToSelect) >= 0) {
+                    if (initiallySelectedFile == null || initiallySelectedFile.equals(selectedFile)) {
+                        selectedFile = pendingFileToSelect;
+                    }
+                    pendingFileToSelect = null;
+                }
+
+                int indexToSelect = selectedFile == null ? -1 : tableModel.getFileIndex(selectedFile);
+                if (indexToSelect < 0) {
+                    indexToSelect = Math.min(selectedIndex, tableModel.getFilesCount() - 1);
+                }
+                selectFile(indexToSelect);
+                fireSelectedFileChangedEvent();
+                if (tableModel.getNbMarkedFiles() != nbMarkedFiles) {
+                    fireMarkedFilesChangedEvent();
+                }
+                attributesPrefetcher.prefetchVisibleRows();
+            } catch (Throwable e) {
+                // Make sure that no exception is propagated to the AWT event dispatch thread
+                getLogger().warn("Caught exception while updating files", e);
+            }
+        });
+    }
+
     /**
      * Sets row height based on current cell's font and border, revalidates and repaints this JTable.
      */
@@ -759,6 +835,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             CompactFileTableModel compactModel = (CompactFileTableModel)getModel();
             final int cols = compactModel.getColumnCount();
             final int rows = compactModel.getRowCount();
+            int offset = compactModel.getOffset();
             if (index < rows*cols) {
                 compactModel.setOffset(0);
                 changeSelection(index % rows, index / rows, false, false);
@@ -767,6 +844,10 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 int index0 = index % (rows*cols);
                 changeSelection(index0 % rows, index0 / rows, false, false);
             }
+            // Files are paged rather than scrolled in compact mode
+            if (compactModel.getOffset() != offset) {
+                attributesPrefetcher.prefetchVisibleRows();
+            }
         }
     }
 
@@ -2277,17 +2358,31 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         private final AbstractFile[] children;
         private final FileSet        markedFiles;
         private final AbstractFile   selectedFile;
+        private final AbstractFile[] updatedFiles;
+        private final List<String>   removedNames;
 
-        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile) {
+        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile,
+                                   AbstractFile[] updatedFiles, List<String> removedNames) {
             this.folder       = folder;
             this.children     = children;
             this.markedFiles  = markedFiles;
             this.selectedFile = selectedFile;
+            this.updatedFiles = updatedFiles;
+            this.removedNames = removedNames;
             setName(getClass().getName());
         }
 
         public void run() {
             try {
+                pendingFileToSelect = null;
+                // The files of the previous folder don't need to be fetched anymore
+                attributesPrefetcher.cancel();
+                // When the current folder is refreshed, only update the rows that have changed
+                if (updatedFiles != null && folder.equals(tableModel.getCurrentFolder())) {
+                    refreshCurrentFolder();
+                    return;
+                }
+
                 // Set the new current folder.
                 tableModel.setCurrentFolder(folder, children, FileTable.this);
                 // Update the visibility state of conditional columns
@@ -2316,6 +2411,12 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 selectFile(indexToSelect);
                 fireSelectedFileChangedEvent();
 
+                // The file to select may not have been listed yet if the folder is listed progressively
+                if (selectedFile != null && tableModel.getFileIndex(selectedFile) < 0) {
+                    pendingFileToSelect = selectedFile;
+                    initiallySelectedFile = getSelectedFile(true);
+                }
+
                 // Restore previously marked files (if any / current folder hasn't changed)
                 if (markedFiles != null) {
                     // Restore previously marked files
@@ -2330,6 +2431,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                     fireMarkedFilesChangedEvent();
                 }
                 resizeAndRepaint();
+                attributesPrefetcher.prefetchVisibleRows();
             } catch (Throwable e) {
                 // While no such thing should happen, we want to make absolutely sure no exception
                 // is propagated to the AWT event dispatch thread.
@@ -2346,6 +2448,21 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             }
         }
 
+        /**
+         * Updates the rows of the files that have changed, marked files and calculated directory sizes are kept.
+         */
+        private void refreshCurrentFolder() {
+            tableModel.mergeFiles(folder, updatedFiles, removedNames);
+
+            selectFile(getIndexToSelect());
+            fireSelectedFileChangedEvent();
+
+            if (tableModel.getNbMarkedFiles() != markedFiles.size()) {
+                fireMarkedFilesChangedEvent();
+            }
+            attributesPrefetcher.prefetchVisibleRows();
+        }
+
         private int getIndexToSelect() {
             int currentIndex = tableModel.getFileIndexAt(currentRow, currentColumn);
             if (selectedFile == null) {
@@ -18,13 +18,18 @@
 package com.mucommander.ui.main.table.views;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.icon.CustomFileIconProvider;
+import com.mucommander.ui.icon.FileIcons;
+import com.mucommander.ui.icon.IconManager;
 import com.mucommander.ui.main.table.CellLabel;
 import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.Column;
 import com.mucommander.ui.theme.*;
+import com.mucommander.utils.FileIconsCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.swing.Icon;
 import javax.swing.table.TableCellRenderer;
 import java.awt.Font;
 
@@ -48,7 +53,7 @@ public abstract class BaseCellRenderer implements TableCellRenderer, ThemeListen
         this.tableModel = table.getFileTableModel();
     }
 
-    protected static int getFileColorIndex(int fileIndex, AbstractFile file, BaseFileTableModel tableModel) {
+    protected static int getFileColorIndex(int fileIndex, AbstractFile file, boolean pending, BaseFileTableModel tableModel) {
         // Parent directory.
         if (fileIndex == 0 && tableModel.hasParentFolder()) {
             return ThemeCache.FOLDER;
@@ -57,6 +62,10 @@ public abstract class BaseCellRenderer implements TableCellRenderer, ThemeListen
         if (tableModel.isFileMarked(fileIndex)) {
             return ThemeCache.MARKED;
         }
+        // File whose attributes are being fetched
+        if (pending) {
+            return ThemeCache.PLAIN_FILE;
+        }
         // Symlink
         if (file.isSymlink()) {
             return ThemeCache.SYMLINK;
@@ -82,6 +91,17 @@ public abstract class BaseCellRenderer implements TableCellRenderer, ThemeListen
     }
 
 
+    /**
+     * Returns the icon of the given file, or the generic file icon if its attributes are being fetched.
+     */
+    protected static Icon getFileIcon(AbstractFile file, boolean pending) {
+        if (pending) {
+            return IconManager.getIcon(IconManager.IconSet.FILE, CustomFileIconProvider.FILE_ICON_NAME, FileIcons.getScaleFactor());
+        }
+        return FileIconsCache.getInstance().getIcon(file);
+    }
+
+
     /**
      * Returns the font used to render all table cells.
      */
@@ -28,6 +28,7 @@ import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.SizeFormat;
 import com.mucommander.ui.main.table.CalculateDirectorySizeWorker;
+import com.mucommander.ui.main.table.Column;
 import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.SortInfo;
 import com.mucommander.ui.quicksearch.QuickSearch;
@@ -50,6 +51,9 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** String used as size information for directories that queued to size calculation */
     protected static final String QUEUED_DIRECTORY_SIZE_STRING = "<...>";
 
+    /** String displayed in place of the attributes of a file until they have been fetched */
+    protected static final String PENDING_ATTRIBUTE_STRING = "...";
+
 
     /** True if the name column is temporarily editable */
     protected boolean nameColumnEditable;
@@ -107,6 +111,15 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
     private FileComparator fileComparator;
 
+    /** Files whose attributes may require I/O and have not been fetched yet, their rows show placeholders */
+    private Set<AbstractFile> pendingFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** True if the owner or group column is displayed, those attributes are not read when local files are listed */
+    private boolean ownerDisplayed;
+
+    /** Number of changed rows above which the whole table is notified rather than each row */
+    private static final int MAX_ROW_EVENTS = 100;
+
     /*
      * First visible row
      */
@@ -164,6 +177,8 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         this.markedTotalSize = model.markedTotalSize;
         this.nbFilesMarked = model.nbFilesMarked;
         this.fileMarked = model.fileMarked;
+        this.pendingFiles = model.pendingFiles;
+        this.ownerDisplayed = model.ownerDisplayed;
         stopSizeCalculation();
     }
 
@@ -292,9 +307,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     public synchronized void sortRows() {
-        this.fileComparator = createFileComparator(sortInfo);
-        sort(0, fileArrayIndex.length - 1);
-        this.fileComparator = null;
+        createFileComparator(sortInfo).sort(cachedFiles, fileArrayIndex);
     }
 
 
@@ -309,65 +322,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
-    /**
-     * Quick sort implementation, based on James Gosling's implementation.
-     */
-    protected void sort(int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        if (lo >= hi) {
-            return;
-        } else if (lo == hi - 1) {
-            // sort a two element list by swapping if necessary
-            int loIndex = fileArrayIndex[lo];
-            int hiIndex = fileArrayIndex[hi];
-            if (compare(loIndex, hiIndex) > 0) {
-                fileArrayIndex[lo] = hiIndex;
-                fileArrayIndex[hi] = loIndex;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        while (lo < hi) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            //while (compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-            while (compare(fileArrayIndex[lo], pivotIndex) <= 0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            //while (compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-            while (compare(pivotIndex, fileArrayIndex[hi]) <= 0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if (lo < hi) {
-                int temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than pivot.
-        sort(lo0, lo-1);
-        sort(hi+1, hi0);
-    }
-
-
     private int compare(int index1, int index2) {
         if (index1 == index2) {
             return 0;
@@ -422,21 +376,11 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         // Initialize file indexes and create CachedFile instances to speed up table display and navigation
         this.cachedFiles = children;
         this.fileArrayIndex = new int[nbFiles];
-
-        // we needn't prefetch local files for performance optimization purposes
-        // in the case of local files the lazy initialization will be enough
-        boolean needPrefetch = nbFiles > 0 && !(children[0] instanceof LocalFile);
+        this.pendingFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.ownerDisplayed = table != null && (table.isColumnVisible(Column.OWNER) || table.isColumnVisible(Column.GROUP));
 
         for (int i = 0; i < nbFiles; i++) {
-            AbstractFile child = children[i];
-            AbstractFile file = child instanceof CachedFile ? child : new CachedFile(child, true);
-
-            // Pre-fetch the attributes that are used by the table renderer and some actions.
-            if (needPrefetch) {
-                prefetchCachedFileAttributes(file);
-            }
-
-            cachedFiles[i] = file;
+            cachedFiles[i] = createCachedFile(children[i]);
             fileArrayIndex[i] = i;
         }
 
@@ -452,6 +396,386 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         fillCellCache(table);
     }
 
+    /**
+     * Compares a new listing of the current folder with the files of the table, and returns the files that have been
+     * created or whose date, size or type has changed. The names of the files that don't exist anymore are added to
+     * <code>removedNames</code>. Other attributes, such as permissions, are not compared as fetching them would be too
+     * expensive.
+     *
+     * <p>This method may fetch file attributes, it should not be called from the event dispatch thread.
+     *
+     * @param children the current folder's children
+     * @param removedNames the collection to which the names of the files that don't exist anymore are added
+     * @return the files that have been created or modified
+     */
+    public AbstractFile[] getChangedFiles(AbstractFile children[], Collection<String> removedNames) {
+        AbstractFile[] files;
+        synchronized (this) {
+            files = cachedFiles;
+        }
+        Map<String, AbstractFile> newFiles = new HashMap<>(children.length * 4 / 3 + 1);
+        for (AbstractFile child : children) {
+            // Wrap the children right away so that the attributes fetched for the comparison remain cached
+            if (!(child instanceof CachedFile)) {
+                child = new CachedFile(child, true);
+            }
+            newFiles.put(child.getName(), child);
+        }
+        List<AbstractFile> updatedFiles = new ArrayList<>();
+        for (AbstractFile file : files) {
+            AbstractFile child = newFiles.remove(file.getName());
+            if (child == null) {
+                removedNames.add(file.getName());
+            } else if (hasChanged(file, child)) {
+                updatedFiles.add(child);
+            }
+        }
+        updatedFiles.addAll(newFiles.values());
+        return updatedFiles.toArray(new AbstractFile[updatedFiles.size()]);
+    }
+
+    /**
+     * Updates the current folder after it has been listed again, without rebuilding the table: the files that don't
+     * exist anymore are removed, the new ones are inserted at their position in the sort order, and the modified ones
+     * are updated. Files that have not changed keep their cached attributes and cell values, marked files remain
+     * marked and calculated directory sizes are kept. Only the rows that have changed are notified to the table.
+     *
+     * @param folder the current folder
+     * @param updatedFiles the files that have been created or modified, see {@link #getChangedFiles(AbstractFile[], Collection)}
+     * @param removedNames the names of the files that have been deleted
+     */
+    public synchronized void mergeFiles(AbstractFile folder, AbstractFile[] updatedFiles, Collection<String> removedNames) {
+        this.currentFolder = (folder instanceof CachedFile) ? folder : new CachedFile(folder, true);
+        this.currentFolderDateSnapshot = currentFolder.getLastModifiedDate();
+        updateFiles(updatedFiles, removedNames);
+    }
+
+    /**
+     * Updates some files of the current folder, without listing it again: each of the updated files replaces the file
+     * of the same name, or is added if there is none, and the files whose name is in <code>removedNames</code> are
+     * removed. Marked files remain marked, even if they have been replaced. Only the rows that have changed are
+     * notified to the table.
+     *
+     * @param updatedFiles the files that have been created or modified
+     * @param removedNames the names of the files that have been deleted
+     */
+    public synchronized void updateFiles(AbstractFile[] updatedFiles, Collection<String> removedNames) {
+        applyChanges(Arrays.asList(updatedFiles), new HashSet<>(removedNames));
+    }
+
+    /**
+     * Returns <code>true</code> if the date, size or type of the given child differs from the ones of the file of the
+     * table.
+     */
+    private static boolean hasChanged(AbstractFile file, AbstractFile child) {
+        if (file.isDirectory() != child.isDirectory() || file.getLastModifiedDate() != child.getLastModifiedDate()) {
+            return true;
+        }
+        return !file.isDirectory() && file.getSize() != child.getSize();
+    }
+
+    /**
+     * Applies the given changes to the current folder's files. A file that is updated stays in place if its position
+     * in the sort order is unchanged, otherwise it is removed and inserted again. The inserted files are sorted and
+     * merged with the other files, which are sorted already.
+     *
+     * @param updatedFiles the files that replace the file with the same name, or that are added if there is none
+     * @param removedNames the names of the files to remove
+     */
+    private void applyChanges(List<AbstractFile> updatedFiles, Set<String> removedNames) {
+        final int rowOffset = parent == null ? 0 : 1;
+        int nbFiles = cachedFiles.length;
+        int[] positions = new int[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            positions[fileArrayIndex[i]] = i;
+        }
+        Map<String, AbstractFile> updatedByName = new HashMap<>();
+        for (AbstractFile file : updatedFiles) {
+            updatedByName.put(file.getName(), file);
+        }
+
+        this.fileComparator = createFileComparator(sortInfo);
+        int[] newIndexes = new int[nbFiles];
+        List<Integer> deletedRows = new ArrayList<>();
+        List<Integer> updatedIndexes = new ArrayList<>();
+        List<AbstractFile> insertedFiles = new ArrayList<>();
+        Set<String> markedNames = new HashSet<>();
+        int nbKept = 0;
+        for (int i = 0; i < nbFiles; i++) {
+            AbstractFile file = cachedFiles[i];
+            String name = file.getName();
+            AbstractFile updatedFile = updatedByName.remove(name);
+            if (updatedFile == null && !removedNames.contains(name)) {
+                newIndexes[i] = nbKept++;
+                continue;
+            }
+            boolean marked = fileMarked[i];
+            if (marked) {
+                updateMarkedSize(file, false);
+            }
+            markedDirectories.remove(file);
+            pendingFiles.remove(file);
+            if (updatedFile != null) {
+                AbstractFile cachedFile = createCachedFile(updatedFile);
+                if (isSorted(cachedFile, positions[i])) {
+                    // Replace the file in place
+                    cachedFiles[i] = cachedFile;
+                    if (marked) {
+                        updateMarkedSize(cachedFile, true);
+                    }
+                    updatedIndexes.add(i);
+                    newIndexes[i] = nbKept++;
+                    continue;
+                }
+                insertedFiles.add(cachedFile);
+                if (marked) {
+                    markedNames.add(name);
+                }
+            } else {
+                forgetDirectorySize(file);
+            }
+            newIndexes[i] = -1;
+            deletedRows.add(positions[i] + rowOffset);
+        }
+        for (AbstractFile file : updatedByName.values()) {
+            insertedFiles.add(createCachedFile(file));
+        }
+        if (deletedRows.isEmpty() && insertedFiles.isEmpty() && updatedIndexes.isEmpty()) {
+            this.fileComparator = null;
+            return;
+        }
+
+        // Build the new arrays, inserted files come after the kept ones
+        int newNbFiles = nbKept + insertedFiles.size();
+        AbstractFile[] newCachedFiles = new AbstractFile[newNbFiles];
+        boolean[] newFileMarked = new boolean[newNbFiles + rowOffset];
+        int[] oldIndexes = new int[newNbFiles];
+        Arrays.fill(oldIndexes, -1);
+        for (int i = 0; i < nbFiles; i++) {
+            int newIndex = newIndexes[i];
+            if (newIndex >= 0) {
+                newCachedFiles[newIndex] = cachedFiles[i];
+                newFileMarked[newIndex] = fileMarked[i];
+                oldIndexes[newIndex] = i;
+            }
+        }
+        for (int i : updatedIndexes) {
+            // The cell values of the updated files have to be computed again
+            oldIndexes[newIndexes[i]] = -1;
+        }
+        for (int i = 0; i < insertedFiles.size(); i++) {
+            AbstractFile file = insertedFiles.get(i);
+            newCachedFiles[nbKept + i] = file;
+            if (markedNames.contains(file.getName())) {
+                newFileMarked[nbKept + i] = true;
+                updateMarkedSize(file, true);
+            }
+        }
+
+        // Merge the sorted inserted files into the kept files, which are sorted already
+        int[] kept = new int[nbKept];
+        int nbSorted = 0;
+        for (int index : fileArrayIndex) {
+            if (newIndexes[index] >= 0) {
+                kept[nbSorted++] = newIndexes[index];
+            }
+        }
+        this.cachedFiles = newCachedFiles;
+        this.fileMarked = newFileMarked;
+        Integer[] inserted = new Integer[insertedFiles.size()];
+        for (int i = 0; i < inserted.length; i++) {
+            inserted[i] = nbKept + i;
+        }
+        Arrays.sort(inserted, this::compare);
+        int[] newFileArrayIndex = new int[newNbFiles];
+        int k = 0;
+        int n = 0;
+        for (int i = 0; i < newNbFiles; i++) {
+            if (n >= inserted.length || (k < nbKept && compare(kept[k], inserted[n]) <= 0)) {
+                newFileArrayIndex[i] = kept[k++];
+            } else {
+                newFileArrayIndex[i] = inserted[n++];
+            }
+        }
+        this.fileArrayIndex = newFileArrayIndex;
+        this.fileComparator = null;
+
+        updateCellValuesCache(oldIndexes);
+
+        // Notify the table of the deleted rows, then of the inserted and updated ones
+        int[] newPositions = new int[newNbFiles];
+        for (int i = 0; i < newNbFiles; i++) {
+            newPositions[newFileArrayIndex[i]] = i;
+        }
+        int[] insertedRows = new int[inserted.length];
+        for (int i = 0; i < inserted.length; i++) {
+            insertedRows[i] = newPositions[nbKept + i] + rowOffset;
+        }
+        int[] updatedRows = new int[updatedIndexes.size()];
+        for (int i = 0; i < updatedRows.length; i++) {
+            updatedRows[i] = newPositions[newIndexes[updatedIndexes.get(i)]] + rowOffset;
+        }
+        int[] deleted = new int[deletedRows.size()];
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = deletedRows.get(i);
+        }
+        Arrays.sort(deleted);
+        Arrays.sort(insertedRows);
+        fireRowsChanged(deleted, insertedRows, updatedRows);
+    }
+
+    /**
+     * Returns <code>true</code> if the given file can replace the file located at the given position without breaking
+     * the sort order, i.e. if it is between the files that precede and follow it.
+     */
+    private boolean isSorted(AbstractFile file, int position) {
+        if (position > 0 && fileComparator.compare(cachedFiles[fileArrayIndex[position - 1]], file) > 0) {
+            return false;
+        }
+        return position >= fileArrayIndex.length - 1 || fileComparator.compare(file, cachedFiles[fileArrayIndex[position + 1]]) <= 0;
+    }
+
+    /**
+     * Wraps the given child into a CachedFile, unless it is one already. The attributes of remote files are known once
+     * they have been listed, they are pre-fetched right away. Local files whose attributes have not been read while
+     * listing them are marked as pending: they are pre-fetched in the background by
+     * {@link com.mucommander.ui.main.table.FileAttributesPrefetcher} rather than in the event dispatch thread, as
+     * local I/O can be slow too (e.g. network mounts).
+     */
+    private AbstractFile createCachedFile(AbstractFile child) {
+        CachedFile file = child instanceof CachedFile ? (CachedFile)child : new CachedFile(child, true);
+        if (!(file.getTopAncestor() instanceof LocalFile)) {
+            // Pre-fetch the attributes that are used by the table renderer and some actions.
+            prefetchCachedFileAttributes(file);
+        } else if (ownerDisplayed || !file.hasListingAttributes()) {
+            pendingFiles.add(file);
+        }
+        return file;
+    }
+
+    /**
+     * Returns <code>true</code> if the attributes of the given file, as returned by {@link #getCachedFileAt(int)},
+     * have not been fetched yet. The attributes of such a file must not be retrieved in the event dispatch thread:
+     * placeholders should be displayed instead until
+     * {@link com.mucommander.ui.main.table.FileAttributesPrefetcher} has fetched them.
+     *
+     * @param cachedFile a file of the table
+     * @return <code>true</code> if the attributes of the file have not been fetched yet
+     */
+    public synchronized boolean isPending(AbstractFile cachedFile) {
+        return pendingFiles.contains(cachedFile);
+    }
+
+    /**
+     * Returns the pending files located between the given indexes, see {@link #isPending(AbstractFile)}. The
+     * attributes of the returned files can be fetched in any thread, and then passed to
+     * {@link #setPrefetchedFiles(List)}.
+     *
+     * @param fromIndex index of the first file, as for {@link #getCachedFileAt(int)}
+     * @param toIndex index of the last file, inclusive
+     * @return the pending files located between the given indexes, in the order of their index
+     */
+    public synchronized List<PendingFile> getPendingFiles(int fromIndex, int toIndex) {
+        List<PendingFile> files = new ArrayList<>();
+        if (pendingFiles.isEmpty()) {
+            return files;
+        }
+        int rowOffset = parent == null ? 0 : 1;
+        int from = Math.max(fromIndex - rowOffset, 0);
+        int to = Math.min(toIndex - rowOffset, fileArrayIndex.length - 1);
+        for (int i = from; i <= to; i++) {
+            AbstractFile file = cachedFiles[fileArrayIndex[i]];
+            if (pendingFiles.contains(file)) {
+                files.add(new PendingFile(file, fileArrayIndex[i], ownerDisplayed));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Replaces the pending files of the table with their pre-fetched copies, and notifies the table of the rows that
+     * have changed. Files that have been replaced or removed since {@link #getPendingFiles(int, int)} was called are
+     * ignored.
+     *
+     * @param files the files whose attributes have been fetched
+     */
+    public synchronized void setPrefetchedFiles(List<PendingFile> files) {
+        int nbFiles = cachedFiles.length;
+        List<Integer> indexes = new ArrayList<>();
+        for (PendingFile file : files) {
+            if (!pendingFiles.remove(file.file)) {
+                continue;
+            }
+            int index = file.index;
+            if (index >= nbFiles || cachedFiles[index] != file.file) {
+                // The files have been updated in the meantime
+                index = indexOf(file.file);
+            }
+            cachedFiles[index] = file.prefetchedFile;
+            indexes.add(index);
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        int rowOffset = parent == null ? 0 : 1;
+        int[] positions = new int[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            positions[fileArrayIndex[i]] = i;
+        }
+        int[] updatedRows = new int[indexes.size()];
+        for (int i = 0; i < updatedRows.length; i++) {
+            updatedRows[i] = positions[indexes.get(i)] + rowOffset;
+        }
+        Arrays.sort(updatedRows);
+        fireRowsChanged(new int[0], new int[0], updatedRows);
+    }
+
+    /**
+     * Moves the cached cell values of the files to their new index after the files have been updated.
+     *
+     * @param oldIndexes for each file, the index that it had before the update, <code>-1</code> if its cell values have
+     * to be computed
+     */
+    protected abstract void updateCellValuesCache(int[] oldIndexes);
+
+    /**
+     * Notifies the table of the rows that have changed. Rows are deleted first, in the order of the given array, then
+     * inserted and updated. Only the rows of the full view are notified, if there are too many of them the whole table
+     * is notified instead.
+     *
+     * @param deletedRows the rows that have been deleted, before the update and in ascending order
+     * @param insertedRows the rows that have been inserted, after the update and in ascending order
+     * @param updatedRows the rows that have been updated, after the update
+     */
+    protected void fireRowsChanged(int[] deletedRows, int[] insertedRows, int[] updatedRows) {
+        if (deletedRows.length + insertedRows.length + updatedRows.length > MAX_ROW_EVENTS) {
+            fireTableDataChanged();
+            return;
+        }
+        for (int i = deletedRows.length - 1; i >= 0; i--) {
+            fireTableRowsDeleted(deletedRows[i], deletedRows[i]);
+        }
+        for (int row : insertedRows) {
+            fireTableRowsInserted(row, row);
+        }
+        for (int row : updatedRows) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * Forgets the calculated size of the given directory, which doesn't exist anymore.
+     */
+    private void forgetDirectorySize(AbstractFile file) {
+        synchronized (directorySizes) {
+            directorySizes.remove(file);
+        }
+        synchronized (calculateSizeQueue) {
+            calculateSizeQueue.remove(file);
+        }
+    }
+
     /**
      * Returns the date of the current folder, when it was set using
      * {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[], FileTable table)}.
@@ -758,8 +1082,17 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
             return;
         }
 
-        AbstractFile file = getCachedFileAt(index);
+        updateMarkedSize(getCachedFileAt(index), marked);
+        fileMarked[fileIndex] = marked;
+    }
 
+    /**
+     * Updates the number and combined size of marked files when the given file is marked or unmarked.
+     *
+     * @param file the file that is marked or unmarked
+     * @param marked <code>true</code> if the file is marked, <code>false</code> if it is unmarked
+     */
+    private void updateMarkedSize(AbstractFile file, boolean marked) {
         // Do not call getSize() on directories, it's unnecessary and the value is most likely not cached by CachedFile yet
         long fileSize;
 
@@ -787,8 +1120,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
             nbFilesMarked--;
         }
-
-        fileMarked[fileIndex] = marked;
     }
 
 
@@ -948,4 +1279,60 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
+    /**
+     * Returns the index of the given instance in the cached files.
+     */
+    private int indexOf(AbstractFile file) {
+        for (int i = 0; i < cachedFiles.length; i++) {
+            if (cachedFiles[i] == file) {
+                return i;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+
+    /**
+     * A file of the table whose attributes have not been fetched yet. Its attributes are fetched into a copy of its
+     * CachedFile, as CachedFile is not thread-safe, and the copy replaces it in the table.
+     */
+    public static class PendingFile {
+        /** The file of the table */
+        private final AbstractFile file;
+        /** Index of the file in the cached files */
+        private final int index;
+        /** True if the owner and group of the file must be fetched too */
+        private final boolean fetchOwner;
+        /** The copy of the file whose attributes are fetched */
+        private final AbstractFile prefetchedFile;
+
+        private PendingFile(AbstractFile file, int index, boolean fetchOwner) {
+            this.file = file;
+            this.index = index;
+            this.fetchOwner = fetchOwner;
+            this.prefetchedFile = new CachedFile((CachedFile)file);
+        }
+
+        /**
+         * Fetches the attributes that are displayed by the table. This method is I/O bound, it should not be called
+         * from the event dispatch thread.
+         */
+        public void prefetch() {
+            prefetchCachedFileAttributes(prefetchedFile);
+            prefetchedFile.getName();
+            prefetchedFile.getExtension();
+            prefetchedFile.getSize();
+            prefetchedFile.getLastModifiedDate();
+            prefetchedFile.getPermissionsString();
+            prefetchedFile.isExecutable();
+            if (fetchOwner) {
+                if (prefetchedFile.canGetOwner()) {
+                    prefetchedFile.getOwner();
+                }
+                if (prefetchedFile.canGetGroup()) {
+                    prefetchedFile.getGroup();
+                }
+            }
+        }
+    }
 }
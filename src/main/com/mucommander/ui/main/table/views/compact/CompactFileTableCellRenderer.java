@@ -27,7 +27,6 @@ import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.views.BaseCellRenderer;
 import com.mucommander.ui.quicksearch.QuickSearch;
 import com.mucommander.ui.theme.ThemeCache;
-import com.mucommander.utils.FileIconsCache;
 
 import javax.swing.JTable;
 import javax.swing.table.TableColumn;
@@ -89,13 +88,15 @@ public class CompactFileTableCellRenderer extends BaseCellRenderer {
         final int selectedIndex = (isSelected && ((FileTable)table).isActiveTable()) ? ThemeCache.SELECTED : ThemeCache.NORMAL;
         final int focusedIndex = table.hasFocus() ? ThemeCache.ACTIVE : ThemeCache.INACTIVE;
         final int fileIndex = model.getFileIndexAt(row, column);
-        final int colorIndex = getFileColorIndex(fileIndex, file, tableModel);
+        // The attributes of a pending file must not be retrieved here, see BaseFileTableModel#isPending
+        final boolean pending = tableModel.isPending(model.getCachedFileAt(row, column));
+        final int colorIndex = getFileColorIndex(fileIndex, file, pending, tableModel);
 
         final CellLabel label = cellLabels[column];
 
         label.setIcon(fileIndex == 0 && tableModel.hasParentFolder()
                 ? IconManager.getIcon(IconManager.IconSet.FILE, CustomFileIconProvider.PARENT_FOLDER_ICON_NAME, FileIcons.getScaleFactor())
-                : FileIconsCache.getInstance().getIcon(file));
+                : getFileIcon(file, pending));
 
 
         String text = (String)value;
@@ -106,7 +107,7 @@ public class CompactFileTableCellRenderer extends BaseCellRenderer {
         // Set foreground color
         Color foregroundColor;
         if (matches || isSelected) {
-            int group = (selectedIndex == ThemeCache.SELECTED) ? -1 : FileGroupResolver.getInstance().resolve(file);
+            int group = (selectedIndex == ThemeCache.SELECTED || pending) ? -1 : FileGroupResolver.getInstance().resolve(file);
             if (group >= 0 && colorIndex != ThemeCache.MARKED) {
                 foregroundColor = ThemeCache.groupColors[group];
             } else {
@@ -107,6 +107,28 @@ public class CompactFileTableModel extends BaseFileTableModel {
         this.cellValuesCache = new String[getFileCount()];
     }
 
+    @Override
+    protected void updateCellValuesCache(int[] oldIndexes) {
+        String[] newCellValuesCache = new String[oldIndexes.length + (parent == null ? 0 : 1)];
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if (oldIndexes[i] >= 0) {
+                newCellValuesCache[i] = cellValuesCache[oldIndexes[i]];
+            }
+        }
+        this.cellValuesCache = newCellValuesCache;
+    }
+
+    /**
+     * Files are laid out in columns, so any change moves the following files to other cells: all the visible cells
+     * are notified.
+     */
+    @Override
+    protected void fireRowsChanged(int[] deletedRows, int[] insertedRows, int[] updatedRows) {
+        if (visibleRows > 0) {
+            fireTableRowsUpdated(0, visibleRows - 1);
+        }
+    }
+
     @Override
     public int getRowCount() {
         return visibleRows;
@@ -27,7 +27,6 @@ import com.mucommander.ui.main.table.*;
 import com.mucommander.ui.main.table.views.BaseCellRenderer;
 import com.mucommander.ui.quicksearch.QuickSearch;
 import com.mucommander.ui.theme.*;
-import com.mucommander.utils.FileIconsCache;
 import ru.trolsoft.macosx.FileLabelCache;
 
 import javax.swing.*;
@@ -107,7 +106,9 @@ public class FileTableCellRenderer extends BaseCellRenderer {
             debug("tableModel.getCachedFileAtRow( " + row + ") RETURNED NULL !");
             return null;
         }
-        boolean isCalculatedSizeDir = file.isDirectory() && tableModel.getCurrentCalculatedSizeDirectory() == file;
+        // The attributes of a pending file must not be retrieved here, see BaseFileTableModel#isPending
+        final boolean pending = tableModel.isPending(file);
+        boolean isCalculatedSizeDir = !pending && file.isDirectory() && tableModel.getCurrentCalculatedSizeDirectory() == file;
 
         final QuickSearch search = this.table.getQuickSearch();
 
@@ -120,7 +121,7 @@ public class FileTableCellRenderer extends BaseCellRenderer {
         // Selection only applies when the table is the active one
         final int selectedIndex =  (isSelected && ((FileTable)table).isActiveTable()) ? ThemeCache.SELECTED : ThemeCache.NORMAL;
         final int focusedIndex = table.hasFocus() ? ThemeCache.ACTIVE : ThemeCache.INACTIVE;
-        final int colorIndex = getFileColorIndex(row, file, tableModel);
+        final int colorIndex = getFileColorIndex(row, file, pending, tableModel);
 
         final Column column = Column.valueOf(table.convertColumnIndexToModel(col));
         CellLabel label = cellLabels[column.ordinal()];
@@ -140,12 +141,12 @@ public class FileTableCellRenderer extends BaseCellRenderer {
             label.setIcon(row == 0 && tableModel.hasParentFolder()
                     ? IconManager.getIcon(IconManager.IconSet.FILE, CustomFileIconProvider.PARENT_FOLDER_ICON_NAME, FileIcons.getScaleFactor())
                     // : FileIcons.getFileIcon(file));
-                    : FileIconsCache.getInstance().getIcon(file));
+                    : getFileIcon(file, pending));
         } else {    // Any other column (name, date or size)
             String text = (String)value;
             Color foregroundColor;
             if (matches || isSelected) {
-                int group = (selectedIndex == ThemeCache.SELECTED) ? -1 : FileGroupResolver.getInstance().resolve(file);
+                int group = (selectedIndex == ThemeCache.SELECTED || pending) ? -1 : FileGroupResolver.getInstance().resolve(file);
                 if (group >= 0 && colorIndex != ThemeCache.MARKED) {
                     foregroundColor = ThemeCache.groupColors[group];
                 } else {
@@ -215,7 +216,7 @@ public class FileTableCellRenderer extends BaseCellRenderer {
             label.setOutline(null);
         }
 
-        if (column == Column.NAME) {
+        if (column == Column.NAME && !pending) {
             label.setMarkerColor(FileLabelCache.getInstance().getLabelColor(file));
         } else {
             label.setMarkerColor(null);
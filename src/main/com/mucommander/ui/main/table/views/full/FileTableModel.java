@@ -65,6 +65,21 @@ public class FileTableModel extends BaseFileTableModel {
     }
 
 
+    @Override
+    protected synchronized void updateCellValuesCache(int[] oldIndexes) {
+        final int indexOffset = parent == null ? 0 : 1;
+        Object[][] newCellValuesCache = new Object[oldIndexes.length + indexOffset][];
+        if (parent != null) {
+            newCellValuesCache[0] = cellValuesCache[0];
+            newCellValuesCache[0][Column.DATE.ordinal()-1] = CustomDateFormat.format(currentFolderDateSnapshot);
+        }
+        for (int i = 0; i < oldIndexes.length; i++) {
+            int oldIndex = oldIndexes[i];
+            newCellValuesCache[i + indexOffset] = oldIndex >= 0 ? cellValuesCache[oldIndex + indexOffset] : new Object[Column.values().length-1];
+        }
+        this.cellValuesCache = newCellValuesCache;
+    }
+
     /**
      * Retrieves all cell values and stores them in an array for fast access.
      */
@@ -227,7 +242,13 @@ public class FileTableModel extends BaseFileTableModel {
         }
         Object result = cellValuesCache[index][columnIndex];
         if (result == null) {
-            result = fillOneCellCache(index, parent != null ? fileIndex + 1 : fileIndex)[columnIndex];
+            int cachedFileIndex = parent != null ? fileIndex + 1 : fileIndex;
+            // Display placeholders until the attributes of the file have been fetched in the background
+            AbstractFile file = getCachedFileAt(cachedFileIndex);
+            if (isPending(file)) {
+                return column == Column.NAME ? file.getName() : PENDING_ATTRIBUTE_STRING;
+            }
+            result = fillOneCellCache(index, cachedFileIndex)[columnIndex];
         }
         return result;
     }
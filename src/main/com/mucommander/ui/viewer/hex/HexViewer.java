@@ -24,10 +24,13 @@ import com.mucommander.ui.helper.MenuToolkit;
 import com.mucommander.ui.helper.MnemonicHelper;
 import com.mucommander.ui.theme.ThemeId;
 import com.mucommander.ui.viewer.FileViewer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.calculator.CalculatorDialog;
 import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
 import ru.trolsoft.hexeditor.data.MuCommanderByteBuffer;
 import ru.trolsoft.hexeditor.events.OnOffsetChangeListener;
+import ru.trolsoft.hexeditor.events.OnSearchProgressListener;
 import ru.trolsoft.hexeditor.search.ByteBufferSearchUtils;
 import ru.trolsoft.hexeditor.ui.HexTable;
 import ru.trolsoft.hexeditor.ui.ViewerHexTableModel;
@@ -38,6 +41,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ExecutionException;
 import static com.mucommander.ui.theme.ThemeManager.getCurrentColor;
 import static com.mucommander.ui.theme.ThemeManager.getCurrentFont;
 
@@ -46,6 +50,7 @@ import static com.mucommander.ui.theme.ThemeManager.getCurrentFont;
  * @author Oleg Trifonov
  */
 public class HexViewer extends FileViewer implements ThemeId {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HexViewer.class);
 
     private static final String DEFAULT_ENCODING = "windows-1252";
 
@@ -55,6 +60,7 @@ public class HexViewer extends FileViewer implements ThemeId {
     private StatusBar statusBar;
     private String encoding = DEFAULT_ENCODING;
     private byte[] lastSearchBytes;
+    private SearchWorker searchWorker;
 
     private JMenu menuView;
     private JMenuItem gotoItem;
@@ -156,6 +162,7 @@ public class HexViewer extends FileViewer implements ThemeId {
 
     @Override
     protected void saveStateOnClose() {
+        cancelSearch();
         try {
             byteBuffer.close();
         } catch (IOException e) {
@@ -209,24 +216,28 @@ public class HexViewer extends FileViewer implements ThemeId {
 
     private void doSearchFromPos(byte[] bytes, long pos, boolean next) {
         lastSearchBytes = bytes;
-        try {
-            long lastSearchResult;
-            if (next) {
-                lastSearchResult = ByteBufferSearchUtils.indexOf(byteBuffer, bytes, pos);
-            } else {
-                lastSearchResult = ByteBufferSearchUtils.indexOfBackward(byteBuffer, bytes, pos);
-            }
-            if (lastSearchResult >= 0) {
-                hexTable.gotoOffset(lastSearchResult);
-                clearStatusMessage();
-            } else {
+        if (bytes == null || bytes.length == 0) {
+            return;
+        }
+        // The new search is set before the previous one is cancelled, so that the cancellation is not reported
+        SearchWorker previousWorker = searchWorker;
+        searchWorker = new SearchWorker(getCurrentFile(), bytes, pos, next);
+        if (previousWorker != null) {
+            previousWorker.cancel(false);
+        }
+        searchWorker.execute();
+    }
 
-                if (statusBar != null) {
-                    statusBar.setStatusMessage(i18n("hex_viewer.search_not_found"));
-                }
-            }
-        } catch (IOException e1) {
-            e1.printStackTrace();
+    private void cancelSearch() {
+        // SwingWorker#cancel() calls done() right away when it is called from the event dispatch thread, the worker
+        // must not be the current search anymore by then
+        SearchWorker worker = searchWorker;
+        searchWorker = null;
+        if (worker != null) {
+            worker.cancel(false);
+        }
+        if (statusBar != null) {
+            statusBar.hideSearchProgress();
         }
     }
 
@@ -281,4 +292,78 @@ public class HexViewer extends FileViewer implements ThemeId {
     private void clearStatusMessage() {
         setStatusMessage("");
     }
+
+
+    /**
+     * Searches the file in the background. The search reads the file with its own buffer, so that the viewer can
+     * keep reading it meanwhile. Its progress is shown in the status bar once the first block has been searched.
+     */
+    private class SearchWorker extends SwingWorker<Long, Void> {
+        private final AbstractFile file;
+        private final byte[] bytes;
+        private final long pos;
+        private final boolean next;
+
+        SearchWorker(AbstractFile file, byte[] bytes, long pos, boolean next) {
+            this.file = file;
+            this.bytes = bytes;
+            this.pos = pos;
+            this.next = next;
+            addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName()) && searchWorker == this && statusBar != null) {
+                    statusBar.showSearchProgress(getProgress(), e -> cancelSearch());
+                }
+            });
+        }
+
+        @Override
+        protected Long doInBackground() throws IOException {
+            AbstractByteBuffer searchBuffer = new MuCommanderByteBuffer(file, false);
+            OnSearchProgressListener listener = (searched, total) -> {
+                setProgress((int)(100 * searched / total));
+                return !isCancelled();
+            };
+            try {
+                if (next) {
+                    return ByteBufferSearchUtils.indexOf(searchBuffer, bytes, pos, listener);
+                } else {
+                    return ByteBufferSearchUtils.indexOfBackward(searchBuffer, bytes, pos, listener);
+                }
+            } finally {
+                searchBuffer.close();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                // Not reported if the search was replaced by another one
+                if (searchWorker == null) {
+                    setStatusMessage(i18n("hex_viewer.search_cancelled"));
+                }
+                return;
+            }
+            if (searchWorker != this) {
+                return;
+            }
+            searchWorker = null;
+            if (statusBar != null) {
+                statusBar.hideSearchProgress();
+            }
+            try {
+                long lastSearchResult = get();
+                if (lastSearchResult >= 0) {
+                    hexTable.gotoOffset(lastSearchResult);
+                    clearStatusMessage();
+                } else {
+                    setStatusMessage(i18n("hex_viewer.search_not_found"));
+                }
+            } catch (ExecutionException e) {
+                LOGGER.info("Could not search " + file.getAbsolutePath(), e.getCause());
+                setStatusMessage(i18n("cannot_read_file", file.getName()));
+            } catch (InterruptedException e) {
+                // Cannot happen as the search is done
+            }
+        }
+    }
 }
\ No newline at end of file
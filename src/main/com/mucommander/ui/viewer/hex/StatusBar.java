@@ -19,13 +19,17 @@
 package com.mucommander.ui.viewer.hex;
 
 import com.mucommander.ui.main.statusbar.FileWindowsListButton;
+import com.mucommander.utils.text.Translator;
 import org.fife.ui.StatusBarPanel;
+import ru.trolsoft.ui.TProgressBar;
 import ru.trolsoft.utils.StrUtils;
 
+import javax.swing.JButton;
 import javax.swing.JLabel;
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.awt.GridBagConstraints;
+import java.awt.event.ActionListener;
 
 /**
  *
@@ -37,6 +41,10 @@ public class StatusBar extends org.fife.ui.StatusBar {
     private JLabel lblEncoding;
     private JLabel lblValue;
 
+    private StatusBarPanel panelSearch;
+    private TProgressBar pbSearch;
+    private ActionListener onCancelSearch;
+
     private long maxOffset = -1;
 
 
@@ -56,11 +64,26 @@ public class StatusBar extends org.fife.ui.StatusBar {
         lblValue = createLabel();
         StatusBarPanel panelValue = new StatusBarPanel(new BorderLayout(), lblValue);
 
+        pbSearch = new TProgressBar();
+        pbSearch.setStringPainted(true);
+        pbSearch.setString(Translator.get("hex_viewer.searching"));
+        JButton btnCancelSearch = new JButton(Translator.get("cancel"));
+        btnCancelSearch.addActionListener(e -> {
+            if (onCancelSearch != null) {
+                onCancelSearch.actionPerformed(e);
+            }
+        });
+        panelSearch = new StatusBarPanel(new BorderLayout());
+        panelSearch.add(pbSearch, BorderLayout.CENTER);
+        panelSearch.add(btnCancelSearch, BorderLayout.EAST);
+        panelSearch.setVisible(false);
+
         // Make the layout such that different items can be different sizes.
         GridBagConstraints c = new GridBagConstraints();
         c.fill = GridBagConstraints.BOTH;
 
         c.weightx = 0.0;
+        addStatusBarComponent(panelSearch, c);
         addStatusBarComponent(panelWindows, c);
         addStatusBarComponent(panelOffset, c);
         addStatusBarComponent(panelValue, c);
@@ -90,6 +113,29 @@ public class StatusBar extends org.fife.ui.StatusBar {
         lblEncoding.setText(encoding);
     }
 
+    /**
+     * Shows the progress of a search, which can be cancelled with the button next to the progress bar.
+     *
+     * @param progress progress of the search, from 0 to 100
+     * @param onCancel called when the search is cancelled
+     */
+    public void showSearchProgress(int progress, ActionListener onCancel) {
+        this.onCancelSearch = onCancel;
+        pbSearch.setValue(progress);
+        if (!panelSearch.isVisible()) {
+            panelSearch.setVisible(true);
+            revalidate();
+        }
+    }
+
+    public void hideSearchProgress() {
+        onCancelSearch = null;
+        if (panelSearch.isVisible()) {
+            panelSearch.setVisible(false);
+            revalidate();
+        }
+    }
+
     public void setByteValue(byte val) {
         String s = StrUtils.byteToBinaryStr(val)  + " - " + StrUtils.byteToOctalStr(val);
         lblValue.setText(s);
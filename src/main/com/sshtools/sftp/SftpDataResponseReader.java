@@ -0,0 +1,78 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sshtools.sftp;
+
+import com.sshtools.ssh.SshException;
+import com.sshtools.util.UnsignedInteger32;
+
+import java.io.IOException;
+
+/**
+ * Reads the response to a read request posted with {@link SftpSubsystemChannel#postReadRequest(byte[], long, int)},
+ * which J2SSH only allows from its own package.
+ */
+public class SftpDataResponseReader {
+
+    /** SSH_FXP_STATUS message type */
+    private static final int SSH_FXP_STATUS = 101;
+
+    /** SSH_FXP_DATA message type */
+    private static final int SSH_FXP_DATA = 103;
+
+    private SftpDataResponseReader() {
+    }
+
+    /**
+     * Waits for the response to the given read request and copies the data it contains to the given buffer.
+     * Responses to other requests that arrive in the meantime are kept by the channel, so requests can be answered
+     * in any order.
+     *
+     * @param sftp the channel the request was posted to
+     * @param requestId the id of the request
+     * @param buffer the buffer where data is copied, must be at least as large as the requested length
+     * @return the number of bytes that were read, <code>-1</code> if the requested offset is at the end of the file
+     * @throws SftpStatusException if the server failed to read the file
+     * @throws SshException if the connection failed
+     * @throws IOException if the response is invalid
+     */
+    public static int readData(SftpSubsystemChannel sftp, UnsignedInteger32 requestId, byte buffer[])
+            throws SftpStatusException, SshException, IOException {
+        SftpMessage message = sftp.getResponse(requestId);
+        try {
+            if (message.getType() == SSH_FXP_DATA) {
+                int length = (int)message.readInt();
+                if (length > buffer.length) {
+                    throw new IOException("Server returned more data than requested");
+                }
+                message.readFully(buffer, 0, length);
+                return length;
+            }
+            if (message.getType() == SSH_FXP_STATUS) {
+                int status = (int)message.readInt();
+                if (status == SftpStatusException.SSH_FX_EOF) {
+                    return -1;
+                }
+                String description = sftp.getVersion() >= 3 ? message.readString().trim() : "Unexpected status " + status;
+                throw new SftpStatusException(status, description);
+            }
+            throw new IOException("Unexpected message type " + message.getType());
+        } finally {
+            message.dispose();
+        }
+    }
+}
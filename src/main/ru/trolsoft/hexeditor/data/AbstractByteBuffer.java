@@ -17,15 +17,31 @@
  */
 package ru.trolsoft.hexeditor.data;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Buffered file reader
+ * Buffered file reader.
+ *
+ * <p>The file is read in pages of {@link #capacity} bytes, aligned on their size, the most recently used of which are
+ * kept in memory so that moving back and forth in the file doesn't read it again. Local files are memory-mapped in
+ * pages of {@link #MAPPED_PAGE_SIZE} bytes instead. For files that can only be read sequentially, the pages evicted
+ * from memory are spilled to a sparse temporary file, where they are read back from rather than from the start of
+ * the file.</p>
  */
 public abstract class AbstractByteBuffer {
 
     /**
-     * Стратегия кеширования при чтении
+     * Стратегия кеширования при чтении.
+     * Pages read with the FORWARD strategy, used by sequential scans such as searches, are not kept, so that the
+     * pages being viewed are not evicted.
      */
     public enum CacheStrategy {
         FORWARD,
@@ -38,6 +54,16 @@ public abstract class AbstractByteBuffer {
      */
     static final int DEFAULT_CAPACITY = 1024*256;
 
+    /**
+     * Default number of pages kept in memory
+     */
+    static final int DEFAULT_MAX_PAGES = 16;
+
+    /**
+     * Size of the pages of local files, which are memory-mapped
+     */
+    static final int MAPPED_PAGE_SIZE = 16*1024*1024;
+
 
     /**
      * Size of buffer
@@ -59,8 +85,54 @@ public abstract class AbstractByteBuffer {
 
     private CacheStrategy cacheStrategy = CacheStrategy.CENTER;
 
+    /**
+     * Maximum number of pages kept in memory
+     */
+    private final int maxPages;
+
+    /**
+     * Pages kept in memory by offset, the least recently used first
+     */
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The page that pages read with the FORWARD strategy are loaded in
+     */
+    private Page scanPage;
+
+    /**
+     * Region of the file the current page is mapped to, <code>null</code> if the file is not mapped
+     */
+    private ByteBuffer mappedBuffer;
+
+    /**
+     * <code>null</code> until the file has been checked for memory-mapping
+     */
+    private Boolean mapped;
+
+    /**
+     * Temporary file the evicted pages of files that can only be read sequentially are written to, at their offset
+     */
+    private File spillFile;
+    private RandomAccessFile spill;
+
+    /**
+     * Size of the pages written to the spill file, by offset
+     */
+    private final Map<Long, Integer> spilledPages = new HashMap<>();
+
+
     public AbstractByteBuffer(int capacity) {
+        this(capacity, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param capacity size of the pages the file is read in
+     * @param maxPages maximum number of pages kept in memory
+     */
+    public AbstractByteBuffer(int capacity, int maxPages) {
         this.capacity = capacity;
+        this.maxPages = Math.max(maxPages, 1);
         buffer = new byte[capacity];
         this.offset = 0;
         this.size = 0;
@@ -86,41 +158,152 @@ public abstract class AbstractByteBuffer {
             if (fileOffset < 0 || fileOffset >= getFileSize()) {
                 throw new IndexOutOfBoundsException("Position: " + fileOffset + ", file size = " + getFileSize());
             }
-            offset = calcOffset(fileOffset, supportRandomAccess());
-            // FIXME if offset > size
-            if (offset < 0) {
-                offset = 0;
-            }
-            loadBuffer();
+            loadPage(fileOffset);
             index = fileOffset - offset;
         }
-        return buffer[(int)index];
+        return mappedBuffer != null ? mappedBuffer.get((int)index) : buffer[(int)index];
     }
 
 
-    private long calcOffset(long fileOffset, boolean randomAccessStream) {
-        if (randomAccessStream) {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset - buffer.length / 2;
+    /**
+     * Copies up to <code>len</code> bytes starting at the given file offset, loading the buffer as needed.
+     *
+     * @param fileOffset offset of the first byte to copy
+     * @param dest destination array
+     * @param destOffset offset in the destination array
+     * @param len maximum number of bytes to copy
+     * @return the number of bytes copied, less than <code>len</code> only at the end of the file
+     * @throws IOException
+     * @throws IndexOutOfBoundsException if the offset is outside the file
+     */
+    public int getBytes(long fileOffset, byte[] dest, int destOffset, int len) throws IOException {
+        len = (int)Math.min(len, getFileSize() - fileOffset);
+        int copied = 0;
+        while (copied < len) {
+            // Loads the buffer if the byte is not in it
+            getByte(fileOffset + copied);
+            int index = (int)(fileOffset + copied - offset);
+            int n = Math.min(len - copied, size - index);
+            if (n <= 0) {
+                throw new IOException("Could not read at offset " + (fileOffset + copied));
             }
-        } else {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset;
+            if (mappedBuffer != null) {
+                ByteBuffer src = mappedBuffer.duplicate();
+                src.position(index);
+                src.get(dest, destOffset + copied, n);
+            } else {
+                System.arraycopy(buffer, index, dest, destOffset + copied, n);
             }
+            copied += n;
         }
-        return fileOffset;
+        return copied;
     }
 
+
+    /**
+     * Makes the page that contains the given offset the current one, reading it if it is not in memory.
+     */
+    private void loadPage(long fileOffset) throws IOException {
+        if (mapped == null) {
+            mapped = getFileChannel() != null;
+        }
+        int pageSize = mapped ? MAPPED_PAGE_SIZE : capacity;
+        long pageOffset = fileOffset - fileOffset % pageSize;
+        Page page = pages.get(pageOffset);
+        if (page == null) {
+            boolean keep = cacheStrategy != CacheStrategy.FORWARD;
+            if (mapped) {
+                if (keep && pages.size() >= maxPages) {
+                    // The region is unmapped once the evicted buffer has been garbage collected
+                    evictPage();
+                }
+                page = new Page();
+                page.size = (int)Math.min(pageSize, getFileSize() - pageOffset);
+                page.mapped = getFileChannel().map(FileChannel.MapMode.READ_ONLY, pageOffset, page.size);
+            } else {
+                page = keep ? newPage() : getScanPage();
+                readPage(page, pageOffset);
+            }
+            if (keep) {
+                pages.put(pageOffset, page);
+            }
+        }
+        offset = pageOffset;
+        size = page.size;
+        mappedBuffer = page.mapped;
+        if (page.data != null) {
+            buffer = page.data;
+        }
+    }
+
+    /**
+     * Reads a page from the spill file if it was written to it, from the file otherwise.
+     */
+    private void readPage(Page page, long pageOffset) throws IOException {
+        Integer spilledSize = spilledPages.get(pageOffset);
+        if (spilledSize != null) {
+            spill.seek(pageOffset);
+            spill.readFully(page.data, 0, spilledSize);
+            page.size = spilledSize;
+        } else {
+            buffer = page.data;
+            offset = pageOffset;
+            size = 0;
+            loadBuffer();
+            page.size = size;
+        }
+    }
+
+    /**
+     * Returns a page to read a page into, evicting the least recently used page if there are too many of them.
+     */
+    private Page newPage() throws IOException {
+        if (pages.size() < maxPages) {
+            Page page = new Page();
+            page.data = new byte[capacity];
+            return page;
+        }
+        return evictPage();
+    }
+
+    /**
+     * Removes the least recently used page from memory, spilling it if the file can only be read sequentially.
+     *
+     * @return the evicted page, whose array can be reused
+     */
+    private Page evictPage() throws IOException {
+        Iterator<Map.Entry<Long, Page>> iterator = pages.entrySet().iterator();
+        Map.Entry<Long, Page> eldest = iterator.next();
+        iterator.remove();
+        Page page = eldest.getValue();
+        if (!supportRandomAccess() && page.size > 0 && !spilledPages.containsKey(eldest.getKey())) {
+            spillPage(page, eldest.getKey());
+        }
+        return page;
+    }
+
+    private Page getScanPage() {
+        if (scanPage == null) {
+            scanPage = new Page();
+            scanPage.data = new byte[capacity];
+        }
+        return scanPage;
+    }
+
+    /**
+     * Writes a page evicted from memory to the spill file, at its offset in the file.
+     */
+    private void spillPage(Page page, long pageOffset) throws IOException {
+        if (spill == null) {
+            spillFile = File.createTempFile("hexviewer", ".tmp");
+            spill = new RandomAccessFile(spillFile, "rw");
+        }
+        spill.seek(pageOffset);
+        spill.write(page.data, 0, page.size);
+        spilledPages.put(pageOffset, page.size);
+    }
+
+
     /**
      *
      * @return
@@ -141,7 +324,19 @@ public abstract class AbstractByteBuffer {
     public void close() throws IOException {
         size = 0;
         buffer = null;
-        closeStream();
+        mappedBuffer = null;
+        pages.clear();
+        scanPage = null;
+        spilledPages.clear();
+        try {
+            if (spill != null) {
+                spill.close();
+                spillFile.delete();
+                spill = null;
+            }
+        } finally {
+            closeStream();
+        }
     }
 
 
@@ -154,6 +349,28 @@ public abstract class AbstractByteBuffer {
     }
 
 
+    /**
+     * Returns the number of pages kept in memory.
+     *
+     * @return the number of pages kept in memory
+     */
+    int getPageCount() {
+        return pages.size();
+    }
+
+
+    /**
+     * Returns a channel on the file if it is a local file whose regions can be memory-mapped, <code>null</code>
+     * otherwise. The channel is closed with this buffer.
+     *
+     * @return the channel, or <code>null</code> if the file cannot be mapped
+     * @throws IOException if the file could not be opened
+     */
+    public FileChannel getFileChannel() throws IOException {
+        return null;
+    }
+
+
     abstract protected void closeStream() throws IOException;
 
     abstract protected long getStreamSize() throws IOException;
@@ -185,4 +402,13 @@ public abstract class AbstractByteBuffer {
     }
 
 
+    /**
+     * A page of the file, read in an array or memory-mapped
+     */
+    private static class Page {
+        byte[] data;
+        ByteBuffer mapped;
+        int size;
+    }
+
 }
@@ -18,6 +18,7 @@
 package ru.trolsoft.hexeditor.data;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 
 public class FileByteBuffer extends AbstractByteBuffer {
@@ -68,5 +69,10 @@ public class FileByteBuffer extends AbstractByteBuffer {
         return true;
     }
 
+    @Override
+    public FileChannel getFileChannel() throws IOException {
+        return getFile().getChannel();
+    }
+
 
 }
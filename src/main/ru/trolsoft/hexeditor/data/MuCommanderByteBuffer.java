@@ -21,8 +21,11 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.io.RandomAccessInputStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 
 public class MuCommanderByteBuffer extends AbstractByteBuffer {
@@ -30,11 +33,31 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
     private AbstractFile file;
     private InputStream is;
     private long lastOffset;
+    private RandomAccessFile mappedFile;
+
+    /**
+     * If <code>true</code>, files that don't support random access are read from the pushback stream of the file,
+     * which is shared with the other readers of the file
+     */
+    private final boolean sharePushbackStream;
 
 
     public MuCommanderByteBuffer(AbstractFile file) {
+        this(file, true);
+    }
+
+    /**
+     * Creates a buffer that reads the given file. A buffer that doesn't share the pushback stream of the file opens
+     * its own streams, and can be read from another thread while the file is being read by the viewer.
+     *
+     * @param file the file to read
+     * @param sharePushbackStream <code>true</code> to read files that don't support random access from the pushback
+     *                            stream of the file
+     */
+    public MuCommanderByteBuffer(AbstractFile file, boolean sharePushbackStream) {
         super(DEFAULT_CAPACITY);
         this.file = file;
+        this.sharePushbackStream = sharePushbackStream;
     }
 
     @Override
@@ -42,6 +65,9 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
         if (is != null) {
             is.close();
         }
+        if (mappedFile != null) {
+            mappedFile.close();
+        }
     }
 
     @Override
@@ -90,6 +116,19 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
         return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
     }
 
+    @Override
+    public FileChannel getFileChannel() throws IOException {
+        if (mappedFile == null) {
+            // Archive entries have a local ancestor, but no underlying java.io.File
+            Object underlyingFile = file.getUnderlyingFileObject();
+            if (!file.isLocalFile() || !(underlyingFile instanceof File)) {
+                return null;
+            }
+            mappedFile = new RandomAccessFile((File)underlyingFile, "r");
+        }
+        return mappedFile.getChannel();
+    }
+
 
     protected InputStream getInputStream() throws IOException {
         if (is == null) {
@@ -101,7 +140,7 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
                 }
             }
             if (is == null) {
-                is = file.getPushBackInputStream(1024);
+                is = sharePushbackStream ? file.getPushBackInputStream(1024) : file.getInputStream();
             }
             lastOffset = 0;
         }
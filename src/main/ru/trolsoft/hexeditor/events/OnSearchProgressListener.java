@@ -0,0 +1,32 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.events;
+
+/**
+ * Notified by the searches of {@link ru.trolsoft.hexeditor.search.ByteBufferSearchUtils} each time a block has been
+ * searched, so that their progress can be shown and they can be cancelled.
+ */
+public interface OnSearchProgressListener {
+
+    /**
+     * @param searched number of bytes searched so far
+     * @param total number of bytes to search
+     * @return <code>false</code> to cancel the search
+     */
+    boolean onProgress(long searched, long total);
+}
@@ -18,14 +18,33 @@
 package ru.trolsoft.hexeditor.search;
 
 import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
+import ru.trolsoft.hexeditor.events.OnSearchProgressListener;
+import ru.trolsoft.utils.search.BlockSearcher;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Search in AbstractByteBuffer
+ * Search in AbstractByteBuffer.
+ *
+ * <p>Data is searched a block at a time rather than a byte at a time: blocks of the buffer capacity are copied from
+ * the buffer, or regions of {@link #MAP_SIZE} bytes are memory-mapped if the buffer is backed by a local file. Long
+ * searches can be followed and cancelled with an {@link OnSearchProgressListener}, which is notified after each block,
+ * and are cancelled if the searching thread is interrupted. A cancelled search throws an
+ * {@link InterruptedIOException}.</p>
  */
 public class ByteBufferSearchUtils {
 
+    /**
+     * Size of the regions of local files that are memory-mapped by forward searches
+     */
+    static final int MAP_SIZE = 16*1024*1024;
+
+
     /**
      * Returns the offset within the ByteBuffer of the first occurrence of the specified data, starting at the specified offset.
      *
@@ -35,139 +54,190 @@ public class ByteBufferSearchUtils {
      * @return the offset of the first occurrence of the specified data, at the specified offset, or -1 if there is no such occurrence
      */
     public static long indexOf(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
-        long fileSize = data.getFileSize();
-        if (fileSize <= 0 || pattern.length == 0) {
-            return -1;
-        }
-        int[] failure = computeFailure(pattern);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
+        return indexOf(data, pattern, fromOffset, null);
+    }
 
-        int j = 0;
-        for (long i = fromOffset; i < fileSize; i++) {
-            while (j > 0 && pattern[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
-            }
-        }
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
+    /**
+     * Returns the offset within the ByteBuffer of the first occurrence of the specified data, starting at the specified offset.
+     *
+     * @param data buffer for search
+     * @param pattern the data to search for
+     * @param fromOffset the offset from which to start the search
+     * @param listener notified after each block, may be <code>null</code>
+     * @return the offset of the first occurrence of the specified data, at the specified offset, or -1 if there is no such occurrence
+     * @throws InterruptedIOException if the search was cancelled
+     */
+    public static long indexOf(AbstractByteBuffer data, byte[] pattern, long fromOffset, OnSearchProgressListener listener) throws IOException {
+        return indexOf(data, new byte[][] {pattern}, fromOffset, listener);
     }
 
+    /**
+     * Returns the offset within the ByteBuffer of the first occurrence of any of the specified patterns, starting at the specified offset.
+     *
+     * @param data buffer for search
+     * @param patterns the data to search for, empty patterns are ignored
+     * @param fromOffset the offset from which to start the search
+     * @return the offset of the first occurrence of any of the patterns, at the specified offset, or -1 if there is no such occurrence
+     */
     public static long indexOf(AbstractByteBuffer data, byte[][] patterns, long fromOffset) throws IOException {
+        return indexOf(data, patterns, fromOffset, null);
+    }
+
+    /**
+     * Returns the offset within the ByteBuffer of the first occurrence of any of the specified patterns, starting at the specified offset.
+     *
+     * @param data buffer for search
+     * @param patterns the data to search for, empty patterns are ignored
+     * @param fromOffset the offset from which to start the search
+     * @param listener notified after each block, may be <code>null</code>
+     * @return the offset of the first occurrence of any of the patterns, at the specified offset, or -1 if there is no such occurrence
+     * @throws InterruptedIOException if the search was cancelled
+     */
+    public static long indexOf(AbstractByteBuffer data, byte[][] patterns, long fromOffset, OnSearchProgressListener listener) throws IOException {
         long fileSize = data.getFileSize();
-        if (fileSize <= 0 || patterns.length == 0) {
-            return -1;
+        List<BlockSearcher> searcherList = new ArrayList<>(patterns.length);
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (byte[] pattern : patterns) {
+            if (pattern.length > 0) {
+                searcherList.add(new BlockSearcher(pattern));
+                minLength = Math.min(minLength, pattern.length);
+                maxLength = Math.max(maxLength, pattern.length);
+            }
         }
-        int[][] failures = new int[patterns.length][];
-        for (int i = 0; i < patterns.length; i++) {
-            failures[i] = computeFailure(patterns[i]);
+        long from = Math.max(fromOffset, 0);
+        if (fileSize <= 0 || searcherList.isEmpty() || from + minLength > fileSize) {
+            return -1;
         }
+        BlockSearcher[] searchers = searcherList.toArray(new BlockSearcher[searcherList.size()]);
+        FileChannel channel = data.getFileChannel();
         AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
         data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
-
-        int[] j = new int[patterns.length];
-        for (int i = 0; i < j.length; i++) {
-            j[i] = 0;
-        }
-/*
-        for (long i = fromOffset; i < fileSize; i++) {
-            while (j > 0 && pattern[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
+        try {
+            byte[] block = channel == null ? new byte[Math.max(data.getCapacity(), 2 * maxLength)] : null;
+            int regionSize = channel == null ? block.length : Math.max(MAP_SIZE, 2 * maxLength);
+            long regionOffset = from;
+            while (true) {
+                ByteBuffer region;
+                int size;
+                if (channel != null) {
+                    size = (int)Math.min(regionSize, fileSize - regionOffset);
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, regionOffset, size);
+                } else {
+                    size = data.getBytes(regionOffset, block, 0, block.length);
+                    region = ByteBuffer.wrap(block);
+                }
+                boolean lastRegion = regionOffset + size >= fileSize;
+                // Occurrences that start after the limit may not fit in this region, the next one overlaps it to find them
+                int limit = lastRegion ? size : size - maxLength + 1;
+                int index = indexOf(searchers, region, size, limit);
+                if (index >= 0) {
+                    return regionOffset + index;
+                }
+                if (lastRegion) {
+                    return -1;
+                }
+                regionOffset += limit;
+                checkCancelled(listener, regionOffset - from, fileSize - from);
             }
+        } finally {
+            data.setCacheStrategy(cacheStrategy);
         }
-        */
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
     }
 
-
-    public static long indexOfBackward(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
-        byte[] patternInvert = new byte[pattern.length];
-        for (int i = 0; i < pattern.length; i++) {
-            patternInvert[i] = pattern[pattern.length-i-1];
-        }
-        int[] failure = computeFailure(patternInvert);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.BACKWARD);
-
-        int j = 0;
-        for (long i = fromOffset; i >= 0; i--) {
-            while (j > 0 && patternInvert[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
+    /**
+     * Returns the index of the first occurrence in the region of any of the patterns that starts before the limit.
+     */
+    private static int indexOf(BlockSearcher[] searchers, ByteBuffer region, int size, int limit) {
+        int result = -1;
+        for (BlockSearcher searcher : searchers) {
+            // Only the occurrences that start before the first one found so far are of interest
+            int bound = result >= 0 ? result : limit;
+            region.limit(Math.min(size, bound - 1 + searcher.length()));
+            region.position(0);
+            int index = searcher.indexOf(region);
+            if (index >= 0) {
+                result = index;
             }
         }
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
+        return result;
     }
 
 
-
     /**
-     * Knuth-Morris-Pratt Algorithm for Pattern Matching
-     * Finds the first occurrence of the pattern in the text.
+     * Returns the offset within the ByteBuffer of the last occurrence of the specified data that starts at or before the specified offset.
+     *
+     * @param data buffer for search
+     * @param pattern the data to search for
+     * @param fromOffset the offset from which to start the backward search
+     * @return the offset of the last occurrence of the specified data, at or before the specified offset, or -1 if there is no such occurrence
      */
-    public static int indexOf(byte[] data, byte[] pattern) {
-        int[] failure = computeFailure(pattern);
+    public static long indexOfBackward(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
+        return indexOfBackward(data, pattern, fromOffset, null);
+    }
 
-        int j = 0;
-        if (data.length == 0) {
+    /**
+     * Returns the offset within the ByteBuffer of the last occurrence of the specified data that starts at or before the specified offset.
+     *
+     * @param data buffer for search
+     * @param pattern the data to search for
+     * @param fromOffset the offset from which to start the backward search
+     * @param listener notified after each block, may be <code>null</code>
+     * @return the offset of the last occurrence of the specified data, at or before the specified offset, or -1 if there is no such occurrence
+     * @throws InterruptedIOException if the search was cancelled
+     */
+    public static long indexOfBackward(AbstractByteBuffer data, byte[] pattern, long fromOffset, OnSearchProgressListener listener) throws IOException {
+        long fileSize = data.getFileSize();
+        if (fileSize <= 0 || pattern.length == 0) {
             return -1;
         }
-
-        for (int i = 0; i < data.length; i++) {
-            while (j > 0 && pattern[j] != data[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data[i]) {
-                j++;
-            }
-            if (j == pattern.length) {
-                return i - pattern.length + 1;
+        BlockSearcher searcher = new BlockSearcher(pattern);
+        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
+        // Blocks are read backward, but each of them is copied forward
+        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
+        try {
+            byte[] block = new byte[Math.max(data.getCapacity(), 2 * pattern.length)];
+            long searchEnd = Math.min(fileSize, fromOffset + pattern.length);
+            long blockEnd = searchEnd;
+            while (blockEnd >= pattern.length) {
+                long blockOffset = Math.max(0, blockEnd - block.length);
+                int size = data.getBytes(blockOffset, block, 0, (int)(blockEnd - blockOffset));
+                int index = searcher.lastIndexOf(block, 0, size);
+                if (index >= 0) {
+                    return blockOffset + index;
+                }
+                if (blockOffset == 0) {
+                    break;
+                }
+                blockEnd = blockOffset + pattern.length - 1;
+                checkCancelled(listener, searchEnd - blockEnd, searchEnd);
             }
+            return -1;
+        } finally {
+            data.setCacheStrategy(cacheStrategy);
         }
-        return -1;
     }
 
+
     /**
-     * Computes the failure function using a boot-strapping process,
-     * where the pattern is matched against itself.
+     * Notifies the listener of the progress of a search, and stops the search if it was cancelled by the listener or
+     * if the current thread was interrupted.
      */
-    private static int[] computeFailure(byte[] pattern) {
-        int[] failure = new int[pattern.length];
-
-        int j = 0;
-        for (int i = 1; i < pattern.length; i++) {
-            while (j > 0 && pattern[j] != pattern[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == pattern[i]) {
-                j++;
-            }
-            failure[i] = j;
+    private static void checkCancelled(OnSearchProgressListener listener, long searched, long total) throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted() || (listener != null && !listener.onProgress(searched, total))) {
+            throw new InterruptedIOException("Search cancelled");
         }
-        return failure;
     }
 
 
+    /**
+     * Finds the first occurrence of the pattern in the data.
+     */
+    public static int indexOf(byte[] data, byte[] pattern) {
+        if (pattern.length == 0) {
+            return -1;
+        }
+        return new BlockSearcher(pattern).indexOf(data, 0, data.length);
+    }
+
 }
@@ -0,0 +1,248 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Block-oriented search of a {@link SearchPattern} with the Boyer-Moore-Horspool algorithm. Unlike
+ * {@link SearchUtils#indexOf(SearchSourceStream, SearchPattern)}, which pulls the data byte by byte, this class scans
+ * whole blocks (arrays, <code>ByteBuffer</code>s or blocks read from a stream) and skips up to the length of the
+ * pattern at each step.
+ *
+ * <p>The pattern is turned into two tables when the searcher is created: the bytes that match each position of the
+ * pattern (at most two, e.g. the lower and upper case forms of a character), and the Horspool shift of each byte
+ * value. Matching a position is then a couple of array reads, with no call to the pattern. A searcher is immutable
+ * and may be shared between threads.</p>
+ */
+public class BlockSearcher {
+
+    /** Size of the blocks read from streams */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Byte that matches each position of the pattern */
+    private final byte[] bytes;
+
+    /** Other byte that matches each position of the pattern, same as in {@link #bytes} if there is only one */
+    private final byte[] altBytes;
+
+    /** Shift of the forward search for each byte value, when it is the last byte of the window */
+    private final int[] shift = new int[256];
+
+    /** Shift of the backward search for each byte value, when it is the first byte of the window */
+    private final int[] backwardShift = new int[256];
+
+
+    /**
+     * Creates a searcher for the given bytes.
+     *
+     * @param pattern the bytes to search for
+     */
+    public BlockSearcher(byte[] pattern) {
+        this(new BytesSearchPattern(pattern));
+    }
+
+    /**
+     * Creates a searcher for the given pattern.
+     *
+     * @param pattern the pattern to search for
+     * @throws IllegalArgumentException if the pattern is empty, or if more than two byte values match one of its
+     * positions
+     */
+    public BlockSearcher(SearchPattern pattern) {
+        int length = pattern.length();
+        if (length == 0) {
+            throw new IllegalArgumentException("empty pattern");
+        }
+        bytes = new byte[length];
+        altBytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int nbValues = 0;
+            for (int val = 0; val < 256; val++) {
+                if (!pattern.checkByte(i, val)) {
+                    continue;
+                }
+                if (nbValues == 0) {
+                    bytes[i] = (byte)val;
+                    altBytes[i] = (byte)val;
+                } else if (nbValues == 1) {
+                    altBytes[i] = (byte)val;
+                } else {
+                    throw new IllegalArgumentException("more than two values match position " + i);
+                }
+                nbValues++;
+            }
+            if (nbValues == 0) {
+                throw new IllegalArgumentException("no value matches position " + i);
+            }
+        }
+
+        for (int val = 0; val < 256; val++) {
+            shift[val] = length;
+            backwardShift[val] = length;
+        }
+        for (int i = 0; i < length - 1; i++) {
+            shift[bytes[i] & 0xff] = length - 1 - i;
+            shift[altBytes[i] & 0xff] = length - 1 - i;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            backwardShift[bytes[i] & 0xff] = i;
+            backwardShift[altBytes[i] & 0xff] = i;
+        }
+    }
+
+    /**
+     *
+     * @return length of the search pattern
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern that lies entirely within <code>data[from..to)</code>.
+     *
+     * @param data the data to search
+     * @param from index of the first byte to search
+     * @param to index following the last byte to search
+     * @return the index of the first occurrence, or -1 if there is none
+     */
+    public int indexOf(byte[] data, int from, int to) {
+        final int last = bytes.length - 1;
+        final byte lastByte = bytes[last];
+        final byte lastAltByte = altBytes[last];
+        int pos = from;
+        while (pos + last < to) {
+            byte b = data[pos + last];
+            if ((b == lastByte || b == lastAltByte) && matches(data, pos)) {
+                return pos;
+            }
+            pos += shift[b & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the pattern that lies entirely within <code>data[from..to)</code>.
+     *
+     * @param data the data to search
+     * @param from index of the first byte to search
+     * @param to index following the last byte to search
+     * @return the index of the last occurrence, or -1 if there is none
+     */
+    public int lastIndexOf(byte[] data, int from, int to) {
+        final byte firstByte = bytes[0];
+        final byte firstAltByte = altBytes[0];
+        int pos = to - bytes.length;
+        while (pos >= from) {
+            byte b = data[pos];
+            if ((b == firstByte || b == firstAltByte) && matches(data, pos)) {
+                return pos;
+            }
+            pos -= backwardShift[b & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern between the position and the limit of the given
+     * buffer, which may be a direct or a memory-mapped one. The position of the buffer is not changed.
+     *
+     * @param data the buffer to search
+     * @return the index of the first occurrence within the buffer, or -1 if there is none
+     */
+    public int indexOf(ByteBuffer data) {
+        if (data.hasArray()) {
+            int offset = data.arrayOffset();
+            int index = indexOf(data.array(), offset + data.position(), offset + data.limit());
+            return index < 0 ? -1 : index - offset;
+        }
+        final int last = bytes.length - 1;
+        final byte lastByte = bytes[last];
+        final byte lastAltByte = altBytes[last];
+        final int to = data.limit();
+        int pos = data.position();
+        while (pos + last < to) {
+            byte b = data.get(pos + last);
+            if ((b == lastByte || b == lastAltByte) && matches(data, pos)) {
+                return pos;
+            }
+            pos += shift[b & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the given stream in blocks of {@link #BLOCK_SIZE} bytes until the pattern is found, and returns its
+     * offset. The last <code>length() - 1</code> bytes of each block are carried over to the next one, so that
+     * occurrences that straddle two blocks are found. The stream is not closed.
+     *
+     * @param in the stream to search
+     * @return the offset of the first occurrence in the stream, or -1 if there is none
+     * @throws IOException if an error occurred while reading the stream
+     */
+    public long indexOf(InputStream in) throws IOException {
+        final int carry = bytes.length - 1;
+        byte[] block = new byte[Math.max(BLOCK_SIZE, 2 * bytes.length)];
+        long blockOffset = 0;
+        int size = 0;
+        while (true) {
+            boolean eof = false;
+            while (size < block.length) {
+                int n = in.read(block, size, block.length - size);
+                if (n < 0) {
+                    eof = true;
+                    break;
+                }
+                size += n;
+            }
+            int index = indexOf(block, 0, size);
+            if (index >= 0) {
+                return blockOffset + index;
+            }
+            if (eof) {
+                return -1;
+            }
+            System.arraycopy(block, size - carry, block, 0, carry);
+            blockOffset += size - carry;
+            size = carry;
+        }
+    }
+
+    private boolean matches(byte[] data, int pos) {
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = data[pos + i];
+            if (b != bytes[i] && b != altBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(ByteBuffer data, int pos) {
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = data.get(pos + i);
+            if (b != bytes[i] && b != altBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
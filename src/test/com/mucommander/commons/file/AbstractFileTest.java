@@ -18,6 +18,7 @@
 
 package com.mucommander.commons.file;
 
+import com.mucommander.commons.file.impl.zip.ZipFormatProvider;
 import com.mucommander.commons.file.util.PathUtilsTest;
 import com.mucommander.commons.io.*;
 import com.mucommander.commons.io.security.MuProvider;
@@ -35,6 +36,8 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * A generic JUnit test case for the {@link AbstractFile} class. This class is abstract and must be extended by
@@ -1116,6 +1119,12 @@ public abstract class AbstractFileTest {
         assert children != null;
         assert 0 == children.length;
 
+        // Assert that ls(FileFilter, ListingListener) passes an empty batch
+        List<AbstractFile[]> batches = new ArrayList<>();
+        tempFile.ls(null, batches::add);
+        assert 1 == batches.size();
+        assert 0 == batches.get(0).length;
+
         // create a child file and assert that this child (and only this child) is returned by ls(), and that the file exists
         AbstractFile child = tempFile.getChild("child");
         child.mkfile();
@@ -1125,6 +1134,15 @@ public abstract class AbstractFileTest {
         assert 1 == children.length;
         assert child.equals(children[0]);
         assert children[0].exists();
+
+        // Assert that ls(FileFilter, ListingListener) passes the same children
+        List<AbstractFile> listedChildren = new ArrayList<>();
+        tempFile.ls(null, files -> {
+            Collections.addAll(listedChildren, files);
+            return true;
+        });
+        assert 1 == listedChildren.size();
+        assert child.equals(listedChildren.get(0));
     }
 
     /**
@@ -2225,6 +2243,40 @@ public abstract class AbstractFileTest {
         new PathUtilsTest().testResolveDestination(folder);
     }
 
+    /**
+     * Tests {@link AbstractFile#ls(com.mucommander.commons.file.filter.FileFilter, ListingListener)} on a Zip archive
+     * located in a temporary folder, and asserts that the archive's entries are passed to the listener.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLsArchive() throws IOException {
+        if (!tempFile.isFileOperationSupported(FileOperation.WRITE_FILE)) {
+            return;
+        }
+
+        AbstractFile folder = deleteWhenFinished(getTemporaryFile());
+        folder.mkdir();
+        AbstractFile zipFile = folder.getDirectChild("archive.zip");
+        try (ZipOutputStream out = new ZipOutputStream(zipFile.getOutputStream())) {
+            out.putNextEntry(new ZipEntry("entry.txt"));
+            out.write("entry".getBytes("UTF-8"));
+            out.closeEntry();
+        }
+
+        // Archive formats are not registered with FileFactory outside of the application
+        AbstractFile archive = new ZipFormatProvider().getFile(zipFile);
+        assert archive.isArchive();
+
+        List<AbstractFile> listedEntries = new ArrayList<>();
+        archive.ls(null, files -> {
+            Collections.addAll(listedEntries, files);
+            return true;
+        });
+        assert 1 == listedEntries.size();
+        assert "entry.txt".equals(listedEntries.get(0).getName());
+    }
+
     /**
      * Tests the absence of {@link UnsupportedFileOperation} annotations in all methods corresponding to
      * {@link #getSupportedOperations() supported operations}, and the absence thereof for unsupported operations.
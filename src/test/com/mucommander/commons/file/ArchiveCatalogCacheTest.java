@@ -0,0 +1,153 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This class is a TestNG test case for {@link ArchiveCatalogCache}.
+ */
+public class ArchiveCatalogCacheTest {
+
+    private File cacheFolder;
+    private AbstractFile archiveFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        AbstractFile tempFolder = FileFactory.getTemporaryFile("catalogs", true);
+        tempFolder.mkdir();
+        cacheFolder = new File(tempFolder.getAbsolutePath());
+        ArchiveCatalogCache.setCacheFolder(cacheFolder);
+        ArchiveCatalogCache.setMaxSize(ArchiveCatalogCache.DEFAULT_MAX_SIZE);
+
+        archiveFile = FileFactory.getTemporaryFile("archive.test", true);
+        try (OutputStream out = archiveFile.getOutputStream()) {
+            out.write(new byte[] {1, 2, 3});
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        ArchiveCatalogCache.clear();
+        ArchiveCatalogCache.setCacheFolder(null);
+        archiveFile.delete();
+        new File(cacheFolder.getPath()).delete();
+    }
+
+    /**
+     * Lists the same unchanged archive twice and asserts that the second listing comes from the cache, with the
+     * entry objects restored.
+     */
+    @Test
+    public void testCatalogIsReused() throws IOException {
+        TestArchiveFile archive = new TestArchiveFile(archiveFile);
+        Assert.assertEquals(archive.ls().length, 2);
+        Assert.assertEquals(archive.nbIterations, 1);
+
+        TestArchiveFile reopened = new TestArchiveFile(archiveFile);
+        AbstractFile[] files = reopened.ls();
+        Assert.assertEquals(reopened.nbIterations, 0);
+        Assert.assertEquals(files.length, 2);
+
+        ArchiveEntry entry = ((AbstractArchiveEntryFile)reopened.getArchiveEntryFile("dir/file")).getEntry();
+        Assert.assertEquals(entry.getSize(), 42);
+        Assert.assertEquals(entry.getEntryObject(), 7L);
+    }
+
+    /**
+     * Asserts that the catalog is ignored once the archive has changed.
+     */
+    @Test
+    public void testModifiedArchiveIsReread() throws IOException {
+        new TestArchiveFile(archiveFile).ls();
+
+        archiveFile.setLastModifiedDate(archiveFile.getLastModifiedDate() - 10000);
+        TestArchiveFile reopened = new TestArchiveFile(archiveFile);
+        reopened.ls();
+        Assert.assertEquals(reopened.nbIterations, 1);
+    }
+
+    /**
+     * Asserts that catalogs are evicted when the cache exceeds its maximum size.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        new TestArchiveFile(archiveFile).ls();
+        Assert.assertEquals(cacheFolder.listFiles().length, 1);
+
+        ArchiveCatalogCache.setMaxSize(1);
+        Assert.assertEquals(cacheFolder.listFiles().length, 0);
+    }
+
+    /**
+     * A read-only archive with fixed entries, which counts the number of times its entries are iterated.
+     */
+    private static class TestArchiveFile extends AbstractROArchiveFile {
+        private int nbIterations;
+
+        TestArchiveFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public ArchiveEntryIterator getEntryIterator() {
+            nbIterations++;
+            ArchiveEntry dir = new ArchiveEntry("dir/", true, 1000, 0, true);
+            ArchiveEntry file = new ArchiveEntry("dir/file", false, 2000, 42, true);
+            file.setEntryObject(7L);
+            ArchiveEntry top = new ArchiveEntry("top", false, 3000, 1, true);
+            return new WrapperArchiveEntryIterator(Arrays.asList(dir, file, top).iterator());
+        }
+
+        @Override
+        public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException {
+            throw new IOException();
+        }
+
+        @Override
+        protected boolean isCatalogCacheable() {
+            return true;
+        }
+
+        @Override
+        protected void writeCatalogEntryObject(ArchiveEntry entry, DataOutput out) throws IOException {
+            Object entryObject = entry.getEntryObject();
+            out.writeLong(entryObject == null ? -1 : (Long)entryObject);
+        }
+
+        @Override
+        protected void readCatalogEntryObject(ArchiveEntry entry, DataInput in) throws IOException {
+            long value = in.readLong();
+            if (value >= 0) {
+                entry.setEntryObject(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a TestNG test case for {@link ArchiveEntryTree}.
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry file(String path) {
+        return new ArchiveEntry(path, false, 0, 0, true);
+    }
+
+    private static ArchiveEntry dir(String path) {
+        return new ArchiveEntry(path, true, 0, 0, true);
+    }
+
+    private static List<String> childPaths(ArchiveEntryTree.Node node) {
+        List<String> paths = new ArrayList<>();
+        for (ArchiveEntryTree.Node child : node.getChildren()) {
+            paths.add(child.getEntry().getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Tests that missing parent directories are created and that lookups are trailing slash-insensitive.
+     */
+    @Test
+    public void testImplicitDirectories() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(file("a/b/c.txt"));
+
+        ArchiveEntryTree.Node a = tree.findEntryNode("a");
+        Assert.assertNotNull(a);
+        Assert.assertEquals(a.getEntry().getPath(), "a/");
+        Assert.assertTrue(a.getEntry().isDirectory());
+        Assert.assertSame(tree.findEntryNode("a/"), a);
+        Assert.assertSame(a.getParent(), tree.getRoot());
+
+        ArchiveEntryTree.Node c = tree.findEntryNode("a/b/c.txt");
+        Assert.assertNotNull(c);
+        Assert.assertSame(c.getParent(), tree.findEntryNode("a/b"));
+        Assert.assertNull(tree.findEntryNode("a/b/d.txt"));
+        Assert.assertNull(tree.findEntryNode("b"));
+        Assert.assertEquals(tree.getNodeCount(), 3);
+    }
+
+    /**
+     * Tests that an explicit directory entry replaces an implicit one and keeps its children.
+     */
+    @Test
+    public void testReplaceDirectoryEntry() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(file("a/x"));
+        ArchiveEntry explicitDir = dir("a/");
+        tree.addArchiveEntry(explicitDir);
+
+        ArchiveEntryTree.Node a = tree.findEntryNode("a");
+        Assert.assertSame(a.getEntry(), explicitDir);
+        Assert.assertEquals(a.getChildCount(), 1);
+        Assert.assertEquals(tree.getNodeCount(), 2);
+    }
+
+    /**
+     * Tests that children are kept in the order they were added, and that removing a node removes its whole subtree.
+     */
+    @Test
+    public void testOrderAndRemoval() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(file("z"));
+        tree.addArchiveEntry(file("d/1"));
+        tree.addArchiveEntry(file("d/2"));
+        tree.addArchiveEntry(file("a"));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("z");
+        expected.add("d/");
+        expected.add("a");
+        Assert.assertEquals(childPaths(tree.getRoot()), expected);
+
+        Assert.assertNotNull(tree.removeEntryNode("d/"));
+        Assert.assertNull(tree.findEntryNode("d/1"));
+        Assert.assertEquals(tree.getRoot().getChildCount(), 2);
+        Assert.assertEquals(tree.getNodeCount(), 2);
+        Assert.assertNull(tree.removeEntryNode("d"));
+    }
+
+    /**
+     * Adds a large flat directory to make sure that the tree does not degrade to a linear scan per entry.
+     */
+    @Test(timeOut = 10000)
+    public void testLargeFlatDirectory() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = 200000;
+        for (int i = 0; i < nbEntries; i++) {
+            tree.addArchiveEntry(file("dir/file" + i));
+        }
+        tree.trimToSize();
+
+        Assert.assertEquals(tree.findEntryNode("dir").getChildCount(), nbEntries);
+        Assert.assertNotNull(tree.findEntryNode("dir/file" + (nbEntries - 1)));
+        Assert.assertTrue(tree.getEstimatedMemoryUsage() > 0);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a TestNG test case for {@link BulkEntryExtraction}.
+ */
+public class BulkEntryExtractionTest {
+
+    /** Size of the entries, larger than the pipe of an entry */
+    private static final int ENTRY_SIZE = AbstractROArchiveFile.ENTRY_PIPE_SIZE * 2 + 17;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads some of the entries, skipping others, and asserts that their contents are correct and that the archive
+     * is decoded once.
+     */
+    @Test
+    public void testExtraction() throws IOException {
+        List<ArchiveEntry> entries = createEntries(6);
+        final AtomicInteger nbPasses = new AtomicInteger();
+        BulkEntryExtraction extraction = new BulkEntryExtraction(entries, e -> {
+            nbPasses.incrementAndGet();
+            decode(entries, e);
+        }, executor);
+
+        try {
+            Assert.assertEquals(read(extraction.getEntryInputStream(entries.get(0))), content(0));
+            // Entries 1 and 2 are skipped, entry 4 is closed without being read
+            Assert.assertEquals(read(extraction.getEntryInputStream(entries.get(3))), content(3));
+            extraction.getEntryInputStream(entries.get(4)).close();
+            Assert.assertEquals(read(extraction.getEntryInputStream(entries.get(5))), content(5));
+
+            // Entries that have been passed or that are not part of the extraction
+            Assert.assertNull(extraction.getEntryInputStream(entries.get(1)));
+            Assert.assertNull(extraction.getEntryInputStream(new ArchiveEntry("other", false, 0, 0, true)));
+        } finally {
+            extraction.close();
+        }
+        Assert.assertEquals(nbPasses.get(), 1);
+    }
+
+    /**
+     * Asserts that a decoding error is thrown to the reader of the entry being decoded.
+     */
+    @Test
+    public void testFailure() throws IOException {
+        List<ArchiveEntry> entries = createEntries(3);
+        BulkEntryExtraction extraction = new BulkEntryExtraction(entries, e -> {
+            e.openEntry(entries.get(0)).write(content(0));
+            e.openEntry(entries.get(1)).write(new byte[10]);
+            throw new IOException("data error");
+        }, executor);
+
+        try {
+            Assert.assertEquals(read(extraction.getEntryInputStream(entries.get(0))), content(0));
+            try {
+                read(extraction.getEntryInputStream(entries.get(1)));
+                Assert.fail("the failure was not reported");
+            } catch (IOException e) {
+                Assert.assertEquals(e.getMessage(), "data error");
+            }
+            try {
+                extraction.getEntryInputStream(entries.get(2));
+                Assert.fail("the failure was not reported");
+            } catch (IOException e) {
+                Assert.assertEquals(e.getMessage(), "data error");
+            }
+        } finally {
+            extraction.close();
+        }
+    }
+
+    /**
+     * Asserts that closing the extraction stops the decoder.
+     */
+    @Test
+    public void testClose() throws Exception {
+        List<ArchiveEntry> entries = createEntries(10);
+        final CountDownLatch done = new CountDownLatch(1);
+        BulkEntryExtraction extraction = new BulkEntryExtraction(entries, e -> {
+            try {
+                decode(entries, e);
+            } finally {
+                done.countDown();
+            }
+        }, executor);
+
+        InputStream in = extraction.getEntryInputStream(entries.get(0));
+        Assert.assertTrue(in.read(new byte[100]) > 0);
+        in.close();
+        extraction.close();
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+
+    private static List<ArchiveEntry> createEntries(int nbEntries) {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        for (int i = 0; i < nbEntries; i++) {
+            entries.add(new ArchiveEntry("folder/entry" + i, false, 0, ENTRY_SIZE, true));
+        }
+        return entries;
+    }
+
+    private static void decode(List<ArchiveEntry> entries, BulkEntryExtraction extraction) throws IOException {
+        for (int i = 0; i < entries.size(); i++) {
+            OutputStream out = extraction.openEntry(entries.get(i));
+            byte[] content = content(i);
+            // Write in small chunks, like decoders do
+            for (int off = 0; off < content.length; off += 1000) {
+                out.write(content, off, Math.min(1000, content.length - off));
+            }
+        }
+    }
+
+    private static byte[] content(int i) {
+        byte[] content = new byte[ENTRY_SIZE];
+        for (int j = 0; j < content.length; j++) {
+            content[j] = (byte)(i * 31 + j);
+        }
+        return content;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                out.write(b, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a TestNG test case for {@link ListingBatcher}.
+ */
+public class ListingBatcherTest {
+
+    /** Batches received by the current test */
+    private List<AbstractFile[]> batches;
+
+    /** Number of batches after which the listener asks to stop listing, -1 for never */
+    private int maxBatches;
+
+    private ListingListener listener = files -> {
+        batches.add(files);
+        return batches.size() != maxBatches;
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        batches = new ArrayList<>();
+        maxBatches = -1;
+    }
+
+    /**
+     * Asserts that a folder listed quickly is delivered in a single batch, an empty one if it has no children.
+     */
+    @Test
+    public void testSingleBatch() throws IOException {
+        ListingBatcher batcher = new ListingBatcher(null, listener);
+        batcher.finish();
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0).length, 0);
+
+        // Create the files beforehand, the first call to FileFactory can take longer than the first batch delay
+        AbstractFile files[] = new AbstractFile[100];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = getFile("file" + i);
+        }
+        batches.clear();
+        batcher = new ListingBatcher(null, listener);
+        for (AbstractFile file : files) {
+            Assert.assertTrue(batcher.add(file));
+        }
+        batcher.finish();
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0).length, 100);
+    }
+
+    /**
+     * Asserts that files are delivered in several batches when the listing is slow, and that the filter is applied.
+     */
+    @Test
+    public void testSlowListing() throws Exception {
+        ListingBatcher batcher = new ListingBatcher(new ExtensionFilenameFilter(".txt"), listener);
+        batcher.add(getFile("a.txt"));
+        batcher.add(getFile("b.bin"));
+        Thread.sleep(ListingBatcher.FIRST_BATCH_DELAY + 10);
+        batcher.add(getFile("c.txt"));
+        Assert.assertEquals(batches.size(), 1);
+        batcher.add(getFile("d.txt"));
+        batcher.finish();
+
+        Assert.assertEquals(batches.size(), 2);
+        Assert.assertEquals(names(batches.get(0)), "a.txt c.txt");
+        Assert.assertEquals(names(batches.get(1)), "d.txt");
+    }
+
+    /**
+     * Asserts that no more files are delivered once the listener has asked to stop.
+     */
+    @Test
+    public void testStop() throws Exception {
+        maxBatches = 1;
+        ListingBatcher batcher = new ListingBatcher(null, listener);
+        batcher.add(getFile("a"));
+        Thread.sleep(ListingBatcher.FIRST_BATCH_DELAY + 10);
+        Assert.assertFalse(batcher.add(getFile("b")));
+        Assert.assertTrue(batcher.isStopped());
+        Assert.assertFalse(batcher.add(getFile("c")));
+        batcher.finish();
+
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(names(batches.get(0)), "a b");
+    }
+
+    private static AbstractFile getFile(String name) throws IOException {
+        return FileFactory.getFile(System.getProperty("java.io.tmpdir")).getChild(name);
+    }
+
+    private static String names(AbstractFile[] files) {
+        StringBuilder sb = new StringBuilder();
+        for (AbstractFile file : files) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(file.getName());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.http;
+
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.io.BlockRandomInputStream;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the number of HTTP requests and connections per MB read by {@link HTTPFile}'s random access stream,
+ * against an embedded HTTP server that serves an in-memory resource and honours the 'Range' header. The same
+ * access patterns are replayed with a stream that reads 1 KB blocks with a new connection each time, as the
+ * previous implementation did.
+ *
+ * <p>Two access patterns are measured: a sequential read of the whole resource, and the pattern of a Zip reader,
+ * that reads the end of the file and then small ranges at random offsets.</p>
+ *
+ * <p>Usage: <code>HTTPRandomAccessBenchmark [resource size in MB] [number of random reads]</code></p>
+ */
+public class HTTPRandomAccessBenchmark {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private static byte[] data;
+    private static final AtomicInteger nbRequests = new AtomicInteger();
+    private static final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int nbReads = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        data = new byte[sizeMb * 1024 * 1024];
+        new Random(0).nextBytes(data);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data.bin", HTTPRandomAccessBenchmark::handle);
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/data.bin";
+        try {
+            FileFactory.registerProtocol(FileProtocols.HTTP, new HTTPProtocolProvider());
+            HTTPFile file = (HTTPFile)FileFactory.getFile(url, true);
+
+            run("Sequential, 1 KB blocks", new LegacyStream(new URL(url), data.length), nbReads, true);
+            run("Sequential, read-ahead", file.getRandomAccessInputStream(), nbReads, true);
+            run("Zip-like, 1 KB blocks", new LegacyStream(new URL(url), data.length), nbReads, false);
+            run("Zip-like, read-ahead", file.getRandomAccessInputStream(), nbReads, false);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void run(String name, RandomAccessInputStream in, int nbReads, boolean sequential) throws IOException {
+        nbRequests.set(0);
+        connections.clear();
+        long bytesRead = 0;
+        long start = System.nanoTime();
+        try {
+            byte[] buffer = new byte[8192];
+            if (sequential) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    bytesRead += n;
+                }
+            } else {
+                // Central directory, then local headers and a bit of data of some entries
+                in.seek(data.length - 64 * 1024);
+                in.readFully(buffer);
+                bytesRead += buffer.length;
+                Random random = new Random(1);
+                for (int i = 0; i < nbReads; i++) {
+                    in.seek(random.nextInt(data.length - buffer.length));
+                    in.readFully(buffer, 0, 512);
+                    bytesRead += 512;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double mb = bytesRead / (1024d * 1024d);
+        System.out.println(String.format("%-26s %8d requests %6d connections %10.1f requests/MB %8d ms",
+                name, nbRequests.get(), connections.size(), nbRequests.get() / mb, elapsed / 1000000));
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        nbRequests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress());
+
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        int from = 0;
+        int to = data.length - 1;
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            Matcher matcher = RANGE_PATTERN.matcher(range);
+            if (matcher.matches()) {
+                from = Integer.parseInt(matcher.group(1));
+                to = Math.min(Integer.parseInt(matcher.group(2)), data.length - 1);
+                code = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+            }
+        }
+        exchange.sendResponseHeaders(code, to - from + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data, from, to - from + 1);
+        }
+    }
+
+    /**
+     * Reads 1 KB blocks, each with a new request, like HTTPFile's random access stream used to.
+     */
+    private static class LegacyStream extends BlockRandomInputStream {
+        private final URL url;
+        private final long length;
+
+        LegacyStream(URL url, long length) {
+            super(1024);
+            this.url = url;
+            this.length = length;
+        }
+
+        @Override
+        protected int readBlock(long fileOffset, byte[] block, int blockLen) throws IOException {
+            HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+            conn.setRequestProperty("Range", "bytes=" + fileOffset + "-" + Math.min(fileOffset + blockLen, length - 1));
+            try (InputStream in = conn.getInputStream()) {
+                int totalRead = 0;
+                int read;
+                while (totalRead < blockLen && (read = in.read(block, totalRead, blockLen - totalRead)) != -1) {
+                    totalRead += read;
+                }
+                return totalRead;
+            }
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.local;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.impl.CachedFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the time it takes to list a local folder and to retrieve the attributes displayed by the file table for
+ * each of its children: type, size, date, symlink and hidden flags, and permissions. The attributes are retrieved
+ * through the {@link CachedFile}s returned by {@link LocalFile#lsWithAttributes(FileFilter)}, which reads them with a
+ * single call per child, and with the <code>java.io.File</code> calls that the {@link LocalFile} getters make, which is
+ * what the listing used to cost.
+ *
+ * <p>The number of system calls can be compared by running each mode separately under
+ * <code>strace -f -c -e trace=%file,getdents64</code>.</p>
+ *
+ * <p>Usage: <code>LocalFileListingBenchmark [number of files] [number of runs] [legacy|listing|both]</code></p>
+ */
+public class LocalFileListingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String mode = args.length > 2 ? args[2] : "both";
+
+        Path folder = Files.createTempDirectory("listing-benchmark");
+        try {
+            for (int i = 0; i < nbFiles; i++) {
+                Files.write(folder.resolve("file" + i + ".txt"), new byte[i % 100]);
+            }
+
+            LocalFile localFolder = (LocalFile)FileFactory.getFile(folder.toString());
+            for (int run = 0; run < nbRuns; run++) {
+                if (!"listing".equals(mode)) {
+                    long start = System.nanoTime();
+                    long checksum = listLegacy(folder.toFile());
+                    report("java.io.File getters", nbFiles, checksum, System.nanoTime() - start);
+                }
+                if (!"legacy".equals(mode)) {
+                    long start = System.nanoTime();
+                    long checksum = listCached(localFolder);
+                    report("Listing attributes", nbFiles, checksum, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            File files[] = folder.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * Lists the folder and retrieves the attributes with the calls made by the {@link LocalFile} getters.
+     */
+    private static long listLegacy(File folder) {
+        long checksum = 0;
+        for (File file : folder.listFiles()) {
+            boolean directory = file.isDirectory();
+            long size = file.length();
+            long date = file.lastModified();
+            // Same calls as LocalFile#isSymlink()
+            boolean symlink = !file.isFile() && Files.isSymbolicLink(file.toPath()) || Files.isSymbolicLink(file.toPath());
+            boolean hidden = file.isHidden();
+            int permissions = (file.canRead() ? 4 : 0) | (file.canWrite() ? 2 : 0) | (file.canExecute() ? 1 : 0);
+            boolean executable = !directory && file.canExecute();
+            checksum += checksum(directory, size, date, symlink, hidden, permissions, executable);
+        }
+        return checksum;
+    }
+
+    /**
+     * Lists the folder with {@link LocalFile#lsWithAttributes(FileFilter)} and retrieves the attributes from the
+     * returned {@link CachedFile}s.
+     */
+    private static long listCached(LocalFile folder) throws IOException {
+        long checksum = 0;
+        for (AbstractFile file : folder.lsWithAttributes(null)) {
+            boolean directory = file.isDirectory();
+            checksum += checksum(directory, file.getSize(), file.getLastModifiedDate(), file.isSymlink(),
+                    file.isHidden(), file.getPermissions().getIntValue() >> 6, file.isExecutable());
+        }
+        return checksum;
+    }
+
+    private static long checksum(boolean directory, long size, long date, boolean symlink, boolean hidden,
+                                 int permissions, boolean executable) {
+        return size + date / 1000 + permissions + (directory ? 1 : 0) + (symlink ? 2 : 0) + (hidden ? 4 : 0)
+                + (executable ? 8 : 0);
+    }
+
+    private static void report(String name, int nbFiles, long checksum, long elapsed) {
+        System.out.println(String.format("%-22s %8d files %8d ms %8.2f us/file  checksum %d",
+                name, nbFiles, elapsed / 1000000, elapsed / 1000d / nbFiles, checksum));
+    }
+}
@@ -4,9 +4,19 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.CounterInputStream;
+import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.runtime.OsFamily;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
 
@@ -42,6 +52,7 @@ public class LocalFileTest extends AbstractFileTest {
             FileOperation.RENAME,
             FileOperation.CHANGE_DATE,
             FileOperation.CHANGE_PERMISSION,
+            FileOperation.COPY_REMOTELY,
             FileOperation.GET_FREE_SPACE,
             FileOperation.GET_TOTAL_SPACE
         };
@@ -158,4 +169,88 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Tests {@link LocalFile#transferTo(LocalFile, boolean, java.io.InputStream)} paced by a stream that counts the
+     * bytes it reads, first overwriting and then appending to the destination.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testPacedTransfer() throws IOException, NoSuchAlgorithmException {
+        createFile(tempFile, 100000);
+        AbstractFile destFile = getTemporaryFile();
+        deleteWhenFinished(destFile);
+
+        LocalFile source = tempFile.getAncestor(LocalFile.class);
+        LocalFile dest = destFile.getAncestor(LocalFile.class);
+
+        ByteCounter counter = new ByteCounter();
+        try (InputStream in = new CounterInputStream(tempFile.getInputStream(), counter)) {
+            source.transferTo(dest, false, in);
+        }
+        assert counter.getByteCount() == 100000;
+        assertContentsEquals(tempFile, destFile);
+
+        // Resume a partial transfer
+        byte[] head = new byte[40000];
+        try (InputStream in = tempFile.getInputStream(); OutputStream out = destFile.getOutputStream()) {
+            StreamUtils.readFully(in, head);
+            out.write(head);
+        }
+        counter.reset();
+        try (InputStream in = new CounterInputStream(tempFile.getInputStream(40000), counter)) {
+            source.transferTo(dest, true, in);
+        }
+        assert counter.getByteCount() == 60000;
+        assertContentsEquals(tempFile, destFile);
+    }
+
+    /**
+     * Asserts that the attributes read by {@link LocalFile#lsWithAttributes(FileFilter)} and cached by the returned
+     * {@link CachedFile}s are the same as those returned by the getters of a {@link LocalFile} that has not been
+     * listed, for a regular file, a hidden file, a folder and, if supported, a symbolic link and a broken one.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testListingAttributes() throws IOException, NoSuchAlgorithmException {
+        tempFile.mkdir();
+        AbstractFile regularFile = tempFile.getDirectChild("file");
+        createFile(regularFile, 1000);
+        createFile(tempFile.getDirectChild(".hidden"), 10);
+        tempFile.getDirectChild("folder").mkdir();
+        if (!OsFamily.WINDOWS.isCurrent()) {
+            Files.createSymbolicLink(Paths.get(tempFile.getAbsolutePath(), "link"), Paths.get(regularFile.getAbsolutePath()));
+            Files.createSymbolicLink(Paths.get(tempFile.getAbsolutePath(), "broken"), Paths.get(tempFile.getAbsolutePath(), "missing"));
+        }
+        // java.io.File#lastModified() only has a precision of one second under some platforms
+        for (AbstractFile child : tempFile.ls()) {
+            if (!child.isSymlink()) {
+                child.setLastModifiedDate(1262300400000L);
+            }
+        }
+
+        AbstractFile children[] = ((LocalFile)tempFile).lsWithAttributes(null);
+        assert children.length == (OsFamily.WINDOWS.isCurrent() ? 3 : 5);
+        for (AbstractFile child : children) {
+            CachedFile cachedFile = (CachedFile)child;
+            assert cachedFile.hasListingAttributes();
+            AbstractFile file = FileFactory.getFile(child.getAbsolutePath());
+
+            assert file.exists() == cachedFile.exists();
+            assert file.isDirectory() == cachedFile.isDirectory();
+            assert file.isSymlink() == cachedFile.isSymlink();
+            assert file.isHidden() == cachedFile.isHidden();
+            if (file.exists()) {
+                assert file.getSize() == cachedFile.getSize();
+                assert file.getLastModifiedDate() == cachedFile.getLastModifiedDate();
+                assert file.isExecutable() == cachedFile.isExecutable();
+                assert file.getPermissions().getIntValue() == cachedFile.getPermissions().getIntValue();
+                assert file.getPermissionsString().equals(cachedFile.getPermissionsString());
+            }
+        }
+    }
 }
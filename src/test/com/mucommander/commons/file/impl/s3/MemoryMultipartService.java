@@ -0,0 +1,153 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory {@link S3MultipartService} that stores a single object. Each part takes a fixed time to upload, as it
+ * would over a connection of a given bandwidth, and parts can be made to fail a given number of times.
+ */
+class MemoryMultipartService implements S3MultipartService {
+
+    /** Time it takes to upload a part, in milliseconds */
+    private final long partLatency;
+
+    /** Uploaded parts, by part number */
+    private final Map<Integer, byte[]> parts = new HashMap<>();
+
+    /** Number of times each part fails before it is stored, by part number */
+    private final Map<Integer, Integer> failures = new HashMap<>();
+
+    private byte content[];
+    private String uploadId;
+    private int nbUploads;
+    private int nbPartsInFlight;
+    private int maxPartsInFlight;
+    private int nbPartRequests;
+    private int nbPutRequests;
+    private boolean aborted;
+
+
+    /**
+     * @param partLatency time it takes to upload a part, in milliseconds
+     */
+    MemoryMultipartService(long partLatency) {
+        this.partLatency = partLatency;
+    }
+
+    public synchronized void putObject(String bucketName, String objectKey, byte data[], int length) {
+        nbPutRequests++;
+        content = Arrays.copyOf(data, length);
+    }
+
+    public synchronized String initiateUpload(String bucketName, String objectKey) {
+        uploadId = "upload" + (++nbUploads);
+        parts.clear();
+        return uploadId;
+    }
+
+    public String uploadPart(String bucketName, String objectKey, String uploadId, int partNumber, byte data[], int length) throws IOException {
+        synchronized (this) {
+            checkUploadId(uploadId);
+            nbPartRequests++;
+            maxPartsInFlight = Math.max(maxPartsInFlight, ++nbPartsInFlight);
+        }
+        try {
+            Thread.sleep(partLatency);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        synchronized (this) {
+            nbPartsInFlight--;
+            Integer nbFailures = failures.get(partNumber);
+            if (nbFailures != null && nbFailures > 0) {
+                failures.put(partNumber, nbFailures - 1);
+                throw new IOException("Part " + partNumber + " failed");
+            }
+            parts.put(partNumber, Arrays.copyOf(data, length));
+            return "etag" + partNumber;
+        }
+    }
+
+    public synchronized void completeUpload(String bucketName, String objectKey, String uploadId, List<String> etags) throws IOException {
+        checkUploadId(uploadId);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 1; i <= etags.size(); i++) {
+            if (!("etag" + i).equals(etags.get(i - 1)) || !parts.containsKey(i)) {
+                throw new IOException("Invalid part " + i);
+            }
+            out.write(parts.get(i));
+        }
+        content = out.toByteArray();
+        this.uploadId = null;
+    }
+
+    public synchronized void abortUpload(String bucketName, String objectKey, String uploadId) throws IOException {
+        checkUploadId(uploadId);
+        aborted = true;
+        parts.clear();
+        this.uploadId = null;
+    }
+
+    private void checkUploadId(String uploadId) throws IOException {
+        if (!uploadId.equals(this.uploadId)) {
+            throw new IOException("No such upload " + uploadId);
+        }
+    }
+
+    /**
+     * Makes the given part fail the given number of times before it is stored.
+     */
+    synchronized void setFailures(int partNumber, int nbFailures) {
+        failures.put(partNumber, nbFailures);
+    }
+
+    /**
+     * Returns the content of the object, <code>null</code> if it hasn't been created.
+     */
+    synchronized byte[] getContent() {
+        return content;
+    }
+
+    synchronized int getSize(int partNumber) {
+        return parts.get(partNumber).length;
+    }
+
+    synchronized int getMaxPartsInFlight() {
+        return maxPartsInFlight;
+    }
+
+    synchronized int getNbPartRequests() {
+        return nbPartRequests;
+    }
+
+    synchronized int getNbPutRequests() {
+        return nbPutRequests;
+    }
+
+    synchronized boolean isAborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import java.io.IOException;
+
+/**
+ * Measures the throughput of {@link S3MultipartOutputStream} for several numbers of parts uploaded in parallel, over a
+ * {@link MemoryMultipartService} that takes a fixed time to upload each part, as a connection whose bandwidth is
+ * limited by its round-trip time would. With a single thread, throughput is limited to that of one connection.
+ *
+ * <p>Usage: <code>S3MultipartBenchmark [time to upload a part in ms] [object size in MB]</code></p>
+ */
+public class S3MultipartBenchmark {
+
+    private static final int PART_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        long partLatency = args.length > 0 ? Long.parseLong(args[0]) : 50;
+        int size = (args.length > 1 ? Integer.parseInt(args[1]) : 64) * 1024 * 1024;
+        byte buffer[] = new byte[65536];
+
+        for (int nbThreads : new int[] {1, 2, 4, 8, 16}) {
+            MemoryMultipartService service = new MemoryMultipartService(partLatency);
+            S3MultipartOutputStream out = new S3MultipartOutputStream(service, "bucket", "key", size, PART_SIZE, nbThreads, 3);
+            long start = System.nanoTime();
+            for (int offset = 0; offset < size; offset += buffer.length) {
+                out.write(buffer, 0, Math.min(buffer.length, size - offset));
+            }
+            out.close();
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("%2d threads %8d ms %8.2f MB/s %3d buffers", nbThreads, elapsed / 1000000,
+                    size / (elapsed / 1e9) / (1024 * 1024), out.getNbBuffers()));
+        }
+    }
+}
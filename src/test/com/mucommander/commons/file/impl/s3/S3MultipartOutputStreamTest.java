@@ -0,0 +1,180 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A test case for {@link S3MultipartOutputStream}, using a {@link MemoryMultipartService}.
+ */
+public class S3MultipartOutputStreamTest {
+
+    private static final int PART_SIZE = 1024;
+
+    private static byte[] createContent(int length) {
+        byte content[] = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static S3MultipartOutputStream createStream(MemoryMultipartService service, long expectedLength, int nbThreads) {
+        return new S3MultipartOutputStream(service, "bucket", "key", expectedLength, PART_SIZE, nbThreads, 3);
+    }
+
+    /**
+     * Writes the given content with writes of random sizes.
+     */
+    private static void write(S3MultipartOutputStream out, byte content[]) throws IOException {
+        Random random = new Random(0);
+        int offset = 0;
+        while (offset < content.length) {
+            if (random.nextInt(10) == 0) {
+                out.write(content[offset++]);
+                continue;
+            }
+            int length = Math.min(random.nextInt(3 * PART_SIZE), content.length - offset);
+            out.write(content, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Asserts that an object smaller than a part is uploaded with a single request.
+     */
+    @Test
+    public void testSmallObject() throws IOException {
+        byte content[] = createContent(PART_SIZE - 1);
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        try (S3MultipartOutputStream out = createStream(service, -1, 4)) {
+            write(out, content);
+        }
+        Assert.assertEquals(service.getContent(), content);
+        Assert.assertEquals(service.getNbPutRequests(), 1);
+        Assert.assertEquals(service.getNbPartRequests(), 0);
+    }
+
+    /**
+     * Asserts that an empty object is created when nothing is written.
+     */
+    @Test
+    public void testEmptyObject() throws IOException {
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        createStream(service, -1, 4).close();
+        Assert.assertEquals(service.getContent(), new byte[0]);
+    }
+
+    /**
+     * Asserts that parts are uploaded in parallel, with as many parts in flight as there are threads, and that no
+     * more buffers than needed to keep the threads busy are allocated.
+     */
+    @Test
+    public void testParallelUpload() throws IOException {
+        byte content[] = createContent(50 * PART_SIZE + 123);
+        MemoryMultipartService service = new MemoryMultipartService(20);
+        S3MultipartOutputStream out = createStream(service, content.length, 4);
+        write(out, content);
+        out.close();
+
+        Assert.assertEquals(service.getContent(), content);
+        Assert.assertEquals(service.getNbPartRequests(), 51);
+        Assert.assertEquals(service.getMaxPartsInFlight(), 4);
+        Assert.assertTrue(out.getNbBuffers() <= 5);
+        Assert.assertEquals(out.getLength(), content.length);
+    }
+
+    /**
+     * Asserts that a part that fails fewer times than the maximum number of attempts is retried.
+     */
+    @Test
+    public void testRetry() throws IOException {
+        byte content[] = createContent(10 * PART_SIZE);
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        service.setFailures(3, 2);
+        try (S3MultipartOutputStream out = createStream(service, -1, 4)) {
+            write(out, content);
+        }
+        Assert.assertEquals(service.getContent(), content);
+        Assert.assertEquals(service.getNbPartRequests(), 12);
+        Assert.assertFalse(service.isAborted());
+    }
+
+    /**
+     * Asserts that a part that keeps failing fails the upload, which is aborted.
+     */
+    @Test
+    public void testFailure() throws IOException {
+        byte content[] = createContent(10 * PART_SIZE);
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        service.setFailures(3, 3);
+        S3MultipartOutputStream out = createStream(service, -1, 4);
+        try {
+            write(out, content);
+        } catch (IOException e) {
+            // The error may be reported by a write, if the part failed before the last write
+        }
+        try {
+            out.close();
+            Assert.fail("Upload error not reported");
+        } catch (IOException e) {
+            // Expected
+        }
+        Assert.assertTrue(service.isAborted());
+        Assert.assertNull(service.getContent());
+    }
+
+    /**
+     * Asserts that aborting a stream doesn't create the object.
+     */
+    @Test
+    public void testAbort() throws IOException {
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        S3MultipartOutputStream out = createStream(service, -1, 4);
+        write(out, createContent(10 * PART_SIZE + 1));
+        out.abort();
+        out.close();
+        Assert.assertTrue(service.isAborted());
+        Assert.assertNull(service.getContent());
+    }
+
+    /**
+     * Asserts that the part size is increased so that an object of known length fits in the maximum number of parts,
+     * and that it grows for an object of unknown length.
+     */
+    @Test
+    public void testPartSize() throws IOException {
+        MemoryMultipartService service = new MemoryMultipartService(0);
+        try (S3MultipartOutputStream out = createStream(service, 3L * PART_SIZE * S3MultipartOutputStream.MAX_PARTS, 4)) {
+            out.write(new byte[4 * PART_SIZE]);
+        }
+        Assert.assertEquals(service.getSize(1), 3 * PART_SIZE);
+
+        byte content[] = createContent(S3MultipartOutputStream.PARTS_PER_SIZE_STEP * PART_SIZE + 5 * PART_SIZE);
+        service = new MemoryMultipartService(0);
+        try (S3MultipartOutputStream out = createStream(service, -1, 4)) {
+            write(out, content);
+        }
+        Assert.assertEquals(service.getContent(), content);
+        Assert.assertEquals(service.getSize(S3MultipartOutputStream.PARTS_PER_SIZE_STEP), PART_SIZE);
+        Assert.assertEquals(service.getSize(S3MultipartOutputStream.PARTS_PER_SIZE_STEP + 1), 2 * PART_SIZE);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.security.AWSCredentials;
+import org.jets3t.service.utils.ServiceUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A test case for {@link S3RestMultipartService}, which uploads objects to a minimal S3-compatible server that checks
+ * the signature and the Content-MD5 of each request.
+ */
+public class S3RestMultipartServiceTest {
+
+    private static final String ACCESS_KEY = "access";
+    private static final String SECRET_KEY = "secret";
+    private static final String UPLOAD_ID = "upload/1+2";
+
+    private static final Pattern PART_PATTERN = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>(.*?)</ETag>");
+
+    private HttpServer server;
+
+    /** Objects created on the server, by path */
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    /** Parts of the current upload, by part number */
+    private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+    private volatile boolean aborted;
+
+    /** Number of part requests that fail with an internal error before parts are accepted */
+    private volatile int nbPartFailures;
+
+    private S3RestMultipartService service;
+
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        objects.clear();
+        parts.clear();
+        aborted = false;
+        nbPartFailures = 0;
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("s3service.https-only", "false");
+        properties.setProperty("s3service.s3-endpoint", "localhost");
+        properties.setProperty("s3service.s3-endpoint-http-port", Integer.toString(server.getAddress().getPort()));
+        properties.setProperty("s3service.disable-dns-buckets", "true");
+        service = new S3RestMultipartService(new AWSCredentials(ACCESS_KEY, SECRET_KEY), properties, 0);
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        Map<String, String> query = new TreeMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                int index = param.indexOf('=');
+                query.put(index == -1 ? param : param.substring(0, index), index == -1 ? null : URLDecoder.decode(param.substring(index + 1), "UTF-8"));
+            }
+        }
+        byte body[] = readFully(exchange.getRequestBody());
+
+        try {
+            // Check the signature, the sub-resources being sorted by name
+            StringBuilder resource = new StringBuilder(path);
+            char separator = '?';
+            for (Map.Entry<String, String> param : query.entrySet()) {
+                resource.append(separator).append(param.getKey()).append(param.getValue() == null ? "" : "=" + param.getValue());
+                separator = '&';
+            }
+            String contentMd5 = exchange.getRequestHeaders().getFirst("Content-MD5");
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            String stringToSign = method + "\n" + (contentMd5 == null ? "" : contentMd5) + "\n" + (contentType == null ? "" : contentType)
+                    + "\n" + exchange.getRequestHeaders().getFirst("Date") + "\n" + resource;
+            if (!("AWS " + ACCESS_KEY + ":" + ServiceUtils.signWithHmacSha1(SECRET_KEY, stringToSign)).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 403, "<Error><Code>SignatureDoesNotMatch</Code></Error>");
+                return;
+            }
+            if (contentMd5 != null && !contentMd5.equals(ServiceUtils.toBase64(MessageDigest.getInstance("MD5").digest(body)))) {
+                respond(exchange, 400, "<Error><Code>BadDigest</Code></Error>");
+                return;
+            }
+
+            if (method.equals("POST") && query.containsKey("uploads")) {
+                parts.clear();
+                respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + UPLOAD_ID + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (method.equals("PUT") && query.containsKey("partNumber")) {
+                if (nbPartFailures > 0) {
+                    nbPartFailures--;
+                    respond(exchange, 500, "<Error><Code>InternalError</Code><Message>Try again</Message></Error>");
+                    return;
+                }
+                Assert.assertEquals(query.get("uploadId"), UPLOAD_ID);
+                parts.put(Integer.parseInt(query.get("partNumber")), body);
+                exchange.getResponseHeaders().set("ETag", "\"" + ServiceUtils.toHex(MessageDigest.getInstance("MD5").digest(body)) + "\"");
+                respond(exchange, 200, "");
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                Matcher matcher = PART_PATTERN.matcher(new String(body, StandardCharsets.UTF_8));
+                int partNumber = 1;
+                while (matcher.find()) {
+                    Assert.assertEquals(Integer.parseInt(matcher.group(1)), partNumber);
+                    byte part[] = parts.get(partNumber++);
+                    Assert.assertEquals(matcher.group(2), "\"" + ServiceUtils.toHex(MessageDigest.getInstance("MD5").digest(part)) + "\"");
+                    object.write(part);
+                }
+                objects.put(path, object.toByteArray());
+                respond(exchange, 200, "<CompleteMultipartUploadResult><Key>key</Key></CompleteMultipartUploadResult>");
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                aborted = true;
+                respond(exchange, 204, null);
+            } else if (method.equals("PUT") && query.isEmpty()) {
+                objects.put(path, body);
+                respond(exchange, 200, "");
+            } else {
+                respond(exchange, 400, "<Error><Code>InvalidRequest</Code></Error>");
+            }
+        } catch (Exception | AssertionError e) {
+            respond(exchange, 400, "<Error><Code>InvalidRequest</Code><Message>" + e + "</Message></Error>");
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte buffer[] = new byte[8192];
+        int nbRead;
+        while ((nbRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, nbRead);
+        }
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte bytes[] = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body == null ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] createContent(int length) {
+        byte content[] = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Asserts that an object uploaded in parts, some of which fail once, is assembled from its parts.
+     */
+    @Test
+    public void testMultipartUpload() throws IOException {
+        byte content[] = createContent(20 * 1024 + 7);
+        nbPartFailures = 2;
+        try (S3MultipartOutputStream out = new S3MultipartOutputStream(service, "bucket", "dir/file name+1", -1, 1024, 4, 3)) {
+            out.write(content);
+        }
+        Assert.assertEquals(objects.get("/bucket/dir/file%20name%2B1"), content);
+        Assert.assertFalse(aborted);
+    }
+
+    /**
+     * Asserts that an object is uploaded with a single signed request.
+     */
+    @Test
+    public void testPutObject() throws IOException {
+        byte content[] = createContent(100);
+        service.putObject("bucket", "key", content, content.length);
+        Assert.assertEquals(objects.get("/bucket/key"), content);
+    }
+
+    /**
+     * Asserts that the error returned by the server is reported, and that an upload can be aborted.
+     */
+    @Test
+    public void testError() throws IOException {
+        String uploadId = service.initiateUpload("bucket", "key");
+        Assert.assertEquals(uploadId, UPLOAD_ID);
+
+        nbPartFailures = 1;
+        try {
+            service.uploadPart("bucket", "key", uploadId, 1, new byte[10], 10);
+            Assert.fail("Error not reported");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("InternalError"), e.getMessage());
+        }
+
+        service.abortUpload("bucket", "key", uploadId);
+        Assert.assertTrue(aborted);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.sevenzip;
+
+import com.mucommander.commons.file.AbstractROArchiveFile;
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IInArchive;
+import net.sf.sevenzipjbinding.SevenZipException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+
+/**
+ * This class is a TestNG test case for {@link SevenZipArchiveFile.ExtractCallback}, which writes an entry decoded by
+ * 7-Zip-JBinding to the pipe read by the entry's <code>InputStream</code>. The decoding is simulated, so that the
+ * native library is not needed.
+ */
+public class SevenZipArchiveFileTest {
+
+    /** An archive whose entries are all files */
+    private static final IInArchive ARCHIVE = (IInArchive)Proxy.newProxyInstance(IInArchive.class.getClassLoader(),
+            new Class[] {IInArchive.class}, (proxy, method, args) -> "getProperty".equals(method.getName()) ? Boolean.FALSE : null);
+
+    /**
+     * Asserts that an entry that has been decoded without error is read entirely.
+     */
+    @Test
+    public void testExtraction() throws IOException {
+        InputStream in = extract(ExtractOperationResult.OK);
+        Assert.assertEquals(readFully(in), 1000);
+        in.close();
+    }
+
+    /**
+     * Asserts that a CRC or data error reported at the end of an entry is thrown to the reader after the data decoded
+     * before it, instead of an end of stream.
+     */
+    @Test
+    public void testCorruptEntry() throws IOException {
+        for (ExtractOperationResult result : new ExtractOperationResult[] {ExtractOperationResult.CRCERROR, ExtractOperationResult.DATAERROR}) {
+            InputStream in = extract(result);
+            byte[] b = new byte[1000];
+            int read = 0;
+            int n;
+            while (read < b.length && (n = in.read(b, read, b.length - read)) != -1) {
+                read += n;
+            }
+            Assert.assertEquals(read, 1000);
+            try {
+                in.read();
+                Assert.fail("The extraction error was not reported: " + result);
+            } catch (IOException e) {
+                // Expected
+            }
+            in.close();
+        }
+    }
+
+    /**
+     * Simulates the extraction of an entry of 1000 bytes that ends with the given result, the same way as
+     * {@link com.mucommander.commons.file.impl.SevenZipJBindingROArchiveFile} does.
+     */
+    private static InputStream extract(final ExtractOperationResult result) {
+        return AbstractROArchiveFile.getPipedEntryInputStream(out -> {
+            SevenZipArchiveFile.ExtractCallback callback = new SevenZipArchiveFile.ExtractCallback(ARCHIVE, out);
+            try {
+                callback.getStream(0, ExtractAskMode.EXTRACT).write(new byte[1000]);
+                callback.setOperationResult(result);
+            } catch (SevenZipException e) {
+                throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e);
+            }
+        });
+    }
+
+    private static int readFully(InputStream in) throws IOException {
+        int read = 0;
+        byte[] b = new byte[300];
+        int n;
+        while ((n = in.read(b)) != -1) {
+            read += n;
+        }
+        return read;
+    }
+}
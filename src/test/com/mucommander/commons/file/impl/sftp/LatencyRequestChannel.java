@@ -0,0 +1,165 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.sftp;
+
+import com.sshtools.util.UnsignedInteger32;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory {@link SFTPRequestChannel} that answers each request a fixed time after it was posted, as a server at
+ * the other end of a link with that round-trip time would.
+ */
+class LatencyRequestChannel implements SFTPRequestChannel {
+
+    private final long latency;
+
+    /** Maximum number of bytes returned by a read request, to simulate servers that return fewer bytes than requested */
+    private final int maxReadLength;
+
+    private byte content[];
+
+    /** Requests in flight, by id */
+    private final Map<Long, Request> requests = new HashMap<>();
+
+    private long nextRequestId;
+    private int maxRequestsInFlight;
+    private int nbRequests;
+    private boolean closed;
+
+    /** Offset at which a write fails, -1 if none */
+    private long failingWriteOffset = -1;
+
+
+    /**
+     * @param content the content of the file
+     * @param latency time it takes to answer a request, in milliseconds
+     * @param maxReadLength maximum number of bytes returned by a read request
+     */
+    LatencyRequestChannel(byte content[], long latency, int maxReadLength) {
+        this.content = content;
+        this.latency = latency;
+        this.maxReadLength = maxReadLength;
+    }
+
+    private synchronized UnsignedInteger32 post(Request request) {
+        long id = nextRequestId++;
+        requests.put(id, request);
+        nbRequests++;
+        maxRequestsInFlight = Math.max(maxRequestsInFlight, requests.size());
+        return new UnsignedInteger32(id);
+    }
+
+    private Request waitForResponse(UnsignedInteger32 requestId) throws IOException {
+        Request request;
+        synchronized (this) {
+            request = requests.remove(requestId.longValue());
+        }
+        if (request == null) {
+            throw new IOException("No such request " + requestId);
+        }
+        long delay = request.dueTime - System.currentTimeMillis();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        return request;
+    }
+
+    public UnsignedInteger32 postRead(long offset, int length) {
+        return post(new Request(offset, length, null));
+    }
+
+    public int getReadResponse(UnsignedInteger32 requestId, byte buffer[]) throws IOException {
+        Request request = waitForResponse(requestId);
+        if (request.offset >= content.length) {
+            return -1;
+        }
+        int length = (int)Math.min(Math.min(request.length, maxReadLength), content.length - request.offset);
+        System.arraycopy(content, (int)request.offset, buffer, 0, length);
+        return length;
+    }
+
+    public UnsignedInteger32 postWrite(long offset, byte b[], int off, int len) {
+        return post(new Request(offset, len, Arrays.copyOfRange(b, off, off + len)));
+    }
+
+    public void getWriteResponse(UnsignedInteger32 requestId) throws IOException {
+        Request request = waitForResponse(requestId);
+        if (failingWriteOffset >= request.offset && failingWriteOffset < request.offset + request.length) {
+            throw new IOException("Write failed");
+        }
+        int end = (int)request.offset + request.length;
+        if (end > content.length) {
+            content = Arrays.copyOf(content, end);
+        }
+        System.arraycopy(request.data, 0, content, (int)request.offset, request.length);
+    }
+
+    public synchronized void close() {
+        closed = true;
+    }
+
+    void setFailingWriteOffset(long offset) {
+        failingWriteOffset = offset;
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    synchronized int getMaxRequestsInFlight() {
+        return maxRequestsInFlight;
+    }
+
+    synchronized int getNbRequests() {
+        return nbRequests;
+    }
+
+    /**
+     * Returns the number of requests whose response hasn't been read.
+     */
+    synchronized int getNbRequestsInFlight() {
+        return requests.size();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    private class Request {
+        private final long offset;
+        private final int length;
+        private final byte data[];
+        private final long dueTime = System.currentTimeMillis() + latency;
+
+        private Request(long offset, int length, byte data[]) {
+            this.offset = offset;
+            this.length = length;
+            this.data = data;
+        }
+    }
+}
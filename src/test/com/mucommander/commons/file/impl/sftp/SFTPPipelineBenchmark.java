@@ -0,0 +1,65 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.sftp;
+
+import java.io.IOException;
+
+/**
+ * Measures the throughput of {@link SFTPPipelinedInputStream} and {@link SFTPPipelinedOutputStream} for several
+ * numbers of requests in flight, over a {@link LatencyRequestChannel} that simulates the round-trip time of a link
+ * to an SFTP server. With a single request in flight, throughput is limited to one 32 KB block per round trip.
+ *
+ * <p>Usage: <code>SFTPPipelineBenchmark [round-trip time in ms] [file size in MB]</code></p>
+ */
+public class SFTPPipelineBenchmark {
+
+    private static final int BLOCK_SIZE = 32768;
+
+    public static void main(String[] args) throws IOException {
+        long latency = args.length > 0 ? Long.parseLong(args[0]) : 50;
+        int size = (args.length > 1 ? Integer.parseInt(args[1]) : 8) * 1024 * 1024;
+        byte content[] = new byte[size];
+        byte buffer[] = new byte[65536];
+
+        for (int maxRequests : new int[] {1, 4, 16, 64}) {
+            LatencyRequestChannel channel = new LatencyRequestChannel(content, latency, BLOCK_SIZE);
+            long start = System.nanoTime();
+            try (SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, size, 0, BLOCK_SIZE, maxRequests)) {
+                while (in.read(buffer, 0, buffer.length) != -1) {
+                    // Only the time it takes to read matters
+                }
+            }
+            report("read", maxRequests, size, System.nanoTime() - start);
+
+            channel = new LatencyRequestChannel(new byte[0], latency, BLOCK_SIZE);
+            start = System.nanoTime();
+            try (SFTPPipelinedOutputStream out = new SFTPPipelinedOutputStream(channel, 0, BLOCK_SIZE, maxRequests)) {
+                for (int offset = 0; offset < size; offset += buffer.length) {
+                    out.write(buffer, 0, Math.min(buffer.length, size - offset));
+                }
+            }
+            report("write", maxRequests, size, System.nanoTime() - start);
+        }
+    }
+
+    private static void report(String name, int maxRequests, int size, long elapsed) {
+        System.out.println(String.format("%-5s %3d requests in flight %8d ms %8.2f MB/s", name, maxRequests,
+                elapsed / 1000000, size / (elapsed / 1e9) / (1024 * 1024)));
+    }
+}
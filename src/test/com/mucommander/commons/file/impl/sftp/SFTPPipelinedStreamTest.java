@@ -0,0 +1,185 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.sftp;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A test case for {@link SFTPPipelinedInputStream} and {@link SFTPPipelinedOutputStream}, using a
+ * {@link LatencyRequestChannel}.
+ */
+public class SFTPPipelinedStreamTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static byte[] createContent(int length) {
+        byte content[] = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readFully(SFTPPipelinedInputStream in, int bufferSize) throws IOException {
+        byte result[] = new byte[0];
+        byte buffer[] = new byte[bufferSize];
+        int nbRead;
+        while ((nbRead = in.read(buffer, 0, buffer.length)) != -1) {
+            int length = result.length;
+            result = Arrays.copyOf(result, length + nbRead);
+            System.arraycopy(buffer, 0, result, length, nbRead);
+        }
+        return result;
+    }
+
+    /**
+     * Asserts that reading sequentially returns the file's content, with as many requests in flight as allowed,
+     * and that all responses are read before the channel is closed.
+     */
+    @Test
+    public void testSequentialRead() throws IOException {
+        byte content[] = createContent(100 * BLOCK_SIZE + 123);
+        LatencyRequestChannel channel = new LatencyRequestChannel(content, 1, BLOCK_SIZE);
+        SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, content.length, 0, BLOCK_SIZE, 16);
+
+        Assert.assertEquals(readFully(in, 1000), content);
+        Assert.assertEquals(in.read(), -1);
+        Assert.assertEquals(channel.getMaxRequestsInFlight(), 16);
+
+        in.close();
+        Assert.assertEquals(channel.getNbRequestsInFlight(), 0);
+        Assert.assertTrue(channel.isClosed());
+    }
+
+    /**
+     * Asserts that reading from an offset starts at that offset.
+     */
+    @Test
+    public void testReadFromOffset() throws IOException {
+        byte content[] = createContent(10 * BLOCK_SIZE);
+        LatencyRequestChannel channel = new LatencyRequestChannel(content, 0, BLOCK_SIZE);
+        try (SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, content.length, 5000, BLOCK_SIZE, 4)) {
+            Assert.assertEquals(readFully(in, 777), Arrays.copyOfRange(content, 5000, content.length));
+        }
+    }
+
+    /**
+     * Asserts that the data of blocks for which the server returns fewer bytes than requested is completed.
+     */
+    @Test
+    public void testShortReads() throws IOException {
+        byte content[] = createContent(20 * BLOCK_SIZE + 1);
+        LatencyRequestChannel channel = new LatencyRequestChannel(content, 0, BLOCK_SIZE / 3);
+        try (SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, content.length, 0, BLOCK_SIZE, 8)) {
+            Assert.assertEquals(readFully(in, 4096), content);
+        }
+        Assert.assertEquals(channel.getNbRequestsInFlight(), 0);
+    }
+
+    /**
+     * Asserts that reads after random seeks, within and outside the requested blocks, return the data at the new
+     * offset.
+     */
+    @Test
+    public void testSeek() throws IOException {
+        byte content[] = createContent(50 * BLOCK_SIZE + 17);
+        LatencyRequestChannel channel = new LatencyRequestChannel(content, 0, BLOCK_SIZE);
+        Random random = new Random(0);
+        try (SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, content.length, 0, BLOCK_SIZE, 8)) {
+            byte buffer[] = new byte[3000];
+            for (int i = 0; i < 500; i++) {
+                long offset = random.nextInt(3) == 0 ? in.getOffset() + random.nextInt(4 * BLOCK_SIZE) : random.nextInt(content.length + 10);
+                in.seek(offset);
+                Assert.assertEquals(in.getOffset(), offset);
+
+                int nbRead = in.read(buffer, 0, random.nextInt(buffer.length) + 1);
+                if (offset >= content.length) {
+                    Assert.assertEquals(nbRead, -1);
+                    continue;
+                }
+                Assert.assertTrue(nbRead > 0);
+                Assert.assertEquals(Arrays.copyOf(buffer, nbRead), Arrays.copyOfRange(content, (int)offset, (int)offset + nbRead));
+                Assert.assertEquals(in.getOffset(), offset + nbRead);
+            }
+        }
+        Assert.assertEquals(channel.getNbRequestsInFlight(), 0);
+    }
+
+    /**
+     * Asserts that reading only the beginning of a file requests a few blocks only.
+     */
+    @Test
+    public void testReadBeginning() throws IOException {
+        byte content[] = createContent(100 * BLOCK_SIZE);
+        LatencyRequestChannel channel = new LatencyRequestChannel(content, 0, BLOCK_SIZE);
+        try (SFTPPipelinedInputStream in = new SFTPPipelinedInputStream(channel, content.length, 0, BLOCK_SIZE, 64)) {
+            in.read(new byte[100], 0, 100);
+        }
+        Assert.assertEquals(channel.getNbRequests(), SFTPPipelinedInputStream.INITIAL_REQUESTS);
+    }
+
+    /**
+     * Asserts that writes of any size are written at the right offsets, with as many requests in flight as allowed.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        byte content[] = createContent(100 * BLOCK_SIZE + 5);
+        LatencyRequestChannel channel = new LatencyRequestChannel(new byte[0], 1, BLOCK_SIZE);
+        Random random = new Random(0);
+        try (SFTPPipelinedOutputStream out = new SFTPPipelinedOutputStream(channel, 0, BLOCK_SIZE, 16)) {
+            int offset = 0;
+            while (offset < content.length) {
+                if (random.nextInt(10) == 0) {
+                    out.write(content[offset++]);
+                    continue;
+                }
+                int length = Math.min(random.nextInt(3 * BLOCK_SIZE), content.length - offset);
+                out.write(content, offset, length);
+                offset += length;
+            }
+        }
+        Assert.assertEquals(channel.getContent(), content);
+        Assert.assertEquals(channel.getMaxRequestsInFlight(), 16);
+        Assert.assertEquals(channel.getNbRequestsInFlight(), 0);
+        Assert.assertTrue(channel.isClosed());
+    }
+
+    /**
+     * Asserts that a write error is reported, and that the channel is closed nonetheless.
+     */
+    @Test
+    public void testWriteError() throws IOException {
+        byte content[] = createContent(10 * BLOCK_SIZE);
+        LatencyRequestChannel channel = new LatencyRequestChannel(new byte[0], 0, BLOCK_SIZE);
+        channel.setFailingWriteOffset(9 * BLOCK_SIZE + 10);
+        SFTPPipelinedOutputStream out = new SFTPPipelinedOutputStream(channel, 0, BLOCK_SIZE, 4);
+        out.write(content, 0, content.length);
+        try {
+            out.close();
+            Assert.fail("Write error not reported");
+        } catch (IOException e) {
+            // Expected
+        }
+        Assert.assertTrue(channel.isClosed());
+        Assert.assertEquals(channel.getNbRequestsInFlight(), 0);
+    }
+}
@@ -3,10 +3,13 @@ package com.mucommander.commons.file.util;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.impl.TestFile;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.net.MalformedURLException;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * A test case for {@link FileComparator}.
@@ -178,5 +181,65 @@ public class FileComparatorTest {
         assert B.equals(files[2]);
         assert A.equals(files[3]);
     }
-    
+
+
+    /**
+     * Asserts that {@link FileComparator#sort(AbstractFile[], int[])} sorts files in the same order as a stable sort
+     * using the comparator, below and above the number of files that are sorted in parallel.
+     */
+    @Test
+    public void testSortIndexes() throws MalformedURLException {
+        int criteria[] = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION,
+                FileComparator.EXTENSION_CRITERION, FileComparator.OWNER_CRITERION};
+        for (int nbFiles : new int[] {100, 20000}) {
+            AbstractFile randomFiles[] = createRandomFiles(nbFiles);
+            for (int criterion : criteria) {
+                for (int flags = 0; flags < 4; flags++) {
+                    FileComparator comparator = new FileComparator(criterion, (flags & 1) != 0, (flags & 2) != 0, true);
+                    Integer expected[] = new Integer[nbFiles];
+                    int indexes[] = new int[nbFiles];
+                    for (int i = 0; i < nbFiles; i++) {
+                        expected[i] = i;
+                        indexes[i] = i;
+                    }
+                    Arrays.sort(expected, (i1, i2) -> comparator.compare(randomFiles[i1], randomFiles[i2]));
+                    comparator.sort(randomFiles, indexes);
+                    for (int i = 0; i < nbFiles; i++) {
+                        Assert.assertEquals(indexes[i], (int)expected[i], "criterion " + criterion + ", flags " + flags);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates files with names that contain numbers, names that differ only by case, and sizes and dates that are
+     * often equal. Names that contain numbers are lower case: numbers are compared only if the names have the same
+     * case-sensitive prefix, which doesn't give a consistent order if they differ by case.
+     */
+    private static AbstractFile[] createRandomFiles(int nbFiles) throws MalformedURLException {
+        String words[] = {"readme", "notes", "makefile", "build", "src"};
+        String numberExtensions[] = {"", ".txt", ".e2", ".e10", ".java"};
+        String extensions[] = {"", ".txt", ".TXT", ".java"};
+        Random random = new Random(42);
+        AbstractFile randomFiles[] = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            String name;
+            if (random.nextBoolean()) {
+                name = "file" + random.nextInt(1000) + numberExtensions[random.nextInt(numberExtensions.length)];
+            } else {
+                StringBuilder sb = new StringBuilder(words[random.nextInt(words.length)]);
+                for (int j = 0; j < sb.length(); j++) {
+                    if (random.nextBoolean()) {
+                        sb.setCharAt(j, Character.toUpperCase(sb.charAt(j)));
+                    }
+                }
+                name = sb + extensions[random.nextInt(extensions.length)];
+            }
+            randomFiles[i] = new TestFile(FileFactory.getTemporaryFolder() + name, random.nextInt(5) == 0,
+                    random.nextInt(10), random.nextInt(10), null);
+        }
+        return randomFiles;
+    }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.file.impl.TestFile;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the time it takes to sort a large number of files, as the file table does, with
+ * {@link FileComparator#sort(AbstractFile[], int[])} and with a sort that calls
+ * {@link FileComparator#compare(AbstractFile, AbstractFile)} for each comparison. Files are wrapped in
+ * {@link CachedFile}s, so that only the cost of comparing them is measured.
+ *
+ * <p>Usage: <code>FileSortBenchmark [number of files] [number of runs]</code></p>
+ */
+public class FileSortBenchmark {
+
+    public static void main(String[] args) throws MalformedURLException {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(42);
+        AbstractFile folder = FileFactory.getTemporaryFolder();
+        AbstractFile files[] = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            String name = "File " + random.nextInt(nbFiles) + " - " + Long.toString(random.nextLong(), 36) + ".txt";
+            files[i] = new CachedFile(new TestFile(folder + name, random.nextInt(10) == 0, random.nextInt(1000000),
+                    random.nextInt(Integer.MAX_VALUE) * 1000L, null), true);
+        }
+
+        int criteria[] = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION,
+                FileComparator.EXTENSION_CRITERION};
+        for (int run = 0; run < nbRuns; run++) {
+            for (int criterion : criteria) {
+                FileComparator comparator = new FileComparator(criterion, true, true, false);
+
+                Integer boxedIndexes[] = new Integer[nbFiles];
+                for (int i = 0; i < nbFiles; i++) {
+                    boxedIndexes[i] = i;
+                }
+                long start = System.nanoTime();
+                Arrays.sort(boxedIndexes, (i1, i2) -> comparator.compare(files[i1], files[i2]));
+                report("compare()", criterion, nbFiles, System.nanoTime() - start);
+
+                int indexes[] = new int[nbFiles];
+                for (int i = 0; i < nbFiles; i++) {
+                    indexes[i] = i;
+                }
+                start = System.nanoTime();
+                comparator.sort(files, indexes);
+                report("sort()", criterion, nbFiles, System.nanoTime() - start);
+
+                for (int i = 0; i < nbFiles; i++) {
+                    if (indexes[i] != boxedIndexes[i]) {
+                        throw new AssertionError("Sort orders differ at index " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void report(String name, int criterion, int nbFiles, long elapsed) {
+        System.out.println(String.format("%-10s criterion %d %8d files %8d ms", name, criterion, nbFiles, elapsed / 1000000));
+    }
+}
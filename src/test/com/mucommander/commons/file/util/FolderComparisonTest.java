@@ -0,0 +1,170 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.ByteCounter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A test case for {@link FolderComparison}.
+ */
+public class FolderComparisonTest {
+
+    private AbstractFile folder1;
+    private AbstractFile folder2;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        AbstractFile root = FileFactory.getTemporaryFile(getClass().getName(), true);
+        root.mkdir();
+        folder1 = root.getDirectChild("1");
+        folder1.mkdir();
+        folder2 = root.getDirectChild("2");
+        folder2.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder1.getParent().deleteRecursively();
+    }
+
+    /**
+     * Asserts that files that exist in one folder only differ, and that folders are ignored unless the comparison is
+     * recursive.
+     */
+    @Test
+    public void testMissingFiles() throws IOException {
+        write(folder1, "both", "same", 1000);
+        write(folder2, "both", "same", 1000);
+        write(folder1, "only1", "1", 1000);
+        write(folder2, "only2", "2", 1000);
+        folder1.getDirectChild("folder").mkdir();
+
+        FolderComparison comparison = compare(FolderComparison.Criterion.DATE, false);
+        assertDifferences(comparison.getDifferences1(), "only1");
+        assertDifferences(comparison.getDifferences2(), "only2");
+
+        comparison = compare(FolderComparison.Criterion.DATE, true);
+        assertDifferences(comparison.getDifferences1(), "only1", "folder");
+        assertDifferences(comparison.getDifferences2(), "only2");
+    }
+
+    /**
+     * Asserts that only the more recent of two files differs when comparing dates.
+     */
+    @Test
+    public void testDate() throws IOException {
+        write(folder1, "newer1", "a", 2000);
+        write(folder2, "newer1", "a", 1000);
+        write(folder1, "newer2", "a", 1000);
+        write(folder2, "newer2", "b", 2000);
+        write(folder1, "same", "a", 1000);
+        write(folder2, "same", "different", 1000);
+
+        FolderComparison comparison = compare(FolderComparison.Criterion.DATE, false);
+        assertDifferences(comparison.getDifferences1(), "newer1");
+        assertDifferences(comparison.getDifferences2(), "newer2");
+        Assert.assertEquals(comparison.getNbBytesToHash(), 0);
+    }
+
+    /**
+     * Asserts that files whose size or contents differ differ on both sides, and that only the files of equal size
+     * are hashed.
+     */
+    @Test
+    public void testContent() throws IOException {
+        write(folder1, "size", "abc", 1000);
+        write(folder2, "size", "abcd", 1000);
+        write(folder1, "content", "abc", 1000);
+        write(folder2, "content", "abd", 2000);
+        write(folder1, "same", "abcde", 1000);
+        write(folder2, "same", "abcde", 2000);
+
+        FolderComparison comparison = compare(FolderComparison.Criterion.CONTENT, false);
+        assertDifferences(comparison.getDifferences1(), "size", "content");
+        assertDifferences(comparison.getDifferences2(), "size", "content");
+        Assert.assertEquals(comparison.getNbBytesToHash(), 2 * 3 + 2 * 5);
+    }
+
+    /**
+     * Asserts that a difference in a subfolder is reported on the top-level folder.
+     */
+    @Test
+    public void testRecursive() throws IOException {
+        AbstractFile sub1 = folder1.getDirectChild("sub");
+        AbstractFile sub2 = folder2.getDirectChild("sub");
+        sub1.mkdir();
+        sub2.mkdir();
+        sub1.getDirectChild("deep").mkdir();
+        sub2.getDirectChild("deep").mkdir();
+        write(sub1.getDirectChild("deep"), "file", "abc", 1000);
+        write(sub2.getDirectChild("deep"), "file", "abd", 1000);
+        AbstractFile same1 = folder1.getDirectChild("same");
+        AbstractFile same2 = folder2.getDirectChild("same");
+        same1.mkdir();
+        same2.mkdir();
+        write(same1, "file", "abc", 1000);
+        write(same2, "file", "abc", 1000);
+
+        FolderComparison comparison = compare(FolderComparison.Criterion.CONTENT, false);
+        assertDifferences(comparison.getDifferences1());
+        assertDifferences(comparison.getDifferences2());
+
+        comparison = compare(FolderComparison.Criterion.CONTENT, true);
+        assertDifferences(comparison.getDifferences1(), "sub");
+        assertDifferences(comparison.getDifferences2(), "sub");
+    }
+
+    private FolderComparison compare(FolderComparison.Criterion criterion, boolean recursive) throws IOException {
+        FolderComparison comparison = new FolderComparison(criterion, recursive, null);
+        comparison.compare(folder1.ls(), folder2.ls());
+        ByteCounter counter = new ByteCounter();
+        comparison.compareContents(2, counter);
+        Assert.assertEquals(counter.getByteCount(), comparison.getNbBytesToHash());
+        return comparison;
+    }
+
+    private static void write(AbstractFile folder, String name, String content, long date) throws IOException {
+        AbstractFile file = folder.getDirectChild(name);
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        file.setLastModifiedDate(date);
+    }
+
+    private static void assertDifferences(Set<AbstractFile> differences, String... names) {
+        Set<String> differingNames = new HashSet<>();
+        for (AbstractFile file : differences) {
+            differingNames.add(file.getName());
+        }
+        Assert.assertEquals(differingNames, new HashSet<>(Arrays.asList(names)));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a TestNG test case for {@link FolderWatcher}.
+ */
+public class FolderWatcherTest implements FolderWatcher.Listener {
+
+    /** Number of milliseconds to wait for a notification before timing out */
+    private final static int TIMEOUT = 5000;
+
+    /** Temporary folder used by the current test */
+    private AbstractFile folder;
+
+    /** Notifications received by the current test, an empty set stands for {@link #folderChanged()} */
+    private BlockingQueue<Set<String>> notifications;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+        notifications = new LinkedBlockingQueue<>();
+        if (!FolderWatcher.watch(folder, this)) {
+            throw new SkipException("No native file system events on this platform");
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FolderWatcher.unwatch(folder, this);
+        folder.deleteRecursively();
+    }
+
+    /**
+     * Asserts that a burst of changes is reported at once, with the names of the changed files.
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        Assert.assertTrue(FolderWatcher.isWatchable(folder));
+        folder.getDirectChild("a").mkfile();
+        folder.getDirectChild("b").mkfile();
+        folder.getDirectChild("c").mkdir();
+        Assert.assertEquals(nextNotification(), new HashSet<>(Arrays.asList("a", "b", "c")));
+
+        folder.getDirectChild("b").delete();
+        Assert.assertEquals(nextNotification(), new HashSet<>(Arrays.asList("b")));
+        Assert.assertNull(notifications.poll(FolderWatcher.MAX_COALESCE_DELAY, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Asserts that the listener is not notified anymore once it has stopped watching the folder, and that watching a
+     * folder twice notifies the listener once.
+     */
+    @Test
+    public void testUnwatch() throws Exception {
+        Assert.assertTrue(FolderWatcher.watch(folder, this));
+        folder.getDirectChild("a").mkfile();
+        Assert.assertEquals(nextNotification(), new HashSet<>(Arrays.asList("a")));
+        Assert.assertNull(notifications.poll(FolderWatcher.MAX_COALESCE_DELAY, TimeUnit.MILLISECONDS));
+
+        FolderWatcher.unwatch(folder, this);
+        folder.getDirectChild("b").mkfile();
+        Assert.assertNull(notifications.poll(FolderWatcher.MAX_COALESCE_DELAY * 2, TimeUnit.MILLISECONDS));
+    }
+
+    private Set<String> nextNotification() throws InterruptedException {
+        Set<String> notification = notifications.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(notification, "no notification received");
+        return notification.isEmpty() ? null : notification;
+    }
+
+
+    ///////////////////////////////////////////
+    // FolderWatcher.Listener implementation //
+    ///////////////////////////////////////////
+
+    public void filesChanged(Set<String> names) {
+        notifications.add(names);
+    }
+
+    public void folderChanged() {
+        notifications.add(new HashSet<>());
+    }
+}
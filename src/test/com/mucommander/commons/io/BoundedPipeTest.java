@@ -0,0 +1,168 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a TestNG test case for {@link BoundedPipe}.
+ */
+public class BoundedPipeTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends data through a pipe much smaller than the data, with writes and reads of various sizes, and asserts that
+     * the data is received unaltered.
+     */
+    @Test
+    public void testTransfer() throws IOException {
+        final Random random = new Random(0);
+        final CRC32 writtenCrc = new CRC32();
+        final long totalSize = 8 * 1024 * 1024;
+        InputStream in = BoundedPipe.start(executor, 1000, out -> {
+            long written = 0;
+            while (written < totalSize) {
+                byte[] b = new byte[(int)Math.min(random.nextInt(5000) + 1, totalSize - written)];
+                random.nextBytes(b);
+                writtenCrc.update(b);
+                if (b.length == 1) {
+                    out.write(b[0]);
+                } else {
+                    out.write(b);
+                }
+                written += b.length;
+            }
+        });
+
+        CRC32 readCrc = new CRC32();
+        long read = 0;
+        byte[] b = new byte[3000];
+        int n;
+        while ((n = in.read(b, 0, 1 + (int)(read % b.length))) != -1) {
+            readCrc.update(b, 0, n);
+            read += n;
+            int c = in.read();
+            if (c != -1) {
+                readCrc.update(c);
+                read++;
+            }
+        }
+        in.close();
+
+        Assert.assertEquals(read, totalSize);
+        Assert.assertEquals(readCrc.getValue(), writtenCrc.getValue());
+    }
+
+    /**
+     * Asserts that the writer blocks when the pipe is full, and resumes when data is read.
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        final AtomicLong written = new AtomicLong();
+        InputStream in = BoundedPipe.start(executor, 1024, out -> {
+            byte[] b = new byte[100];
+            for (int i = 0; i < 1000; i++) {
+                out.write(b);
+                written.addAndGet(b.length);
+            }
+        });
+
+        Thread.sleep(200);
+        Assert.assertTrue(written.get() <= 1024, "written: " + written.get());
+
+        long read = 0;
+        byte[] b = new byte[300];
+        int n;
+        while ((n = in.read(b)) != -1) {
+            read += n;
+        }
+        Assert.assertEquals(read, 100000);
+        Assert.assertEquals(written.get(), 100000);
+        in.close();
+    }
+
+    /**
+     * Asserts that a failure of the writer is thrown to the reader after the data written before it.
+     */
+    @Test
+    public void testFailure() throws IOException {
+        InputStream in = BoundedPipe.start(executor, 1024, out -> {
+            out.write(new byte[10]);
+            throw new IOException("decoding error");
+        });
+
+        byte[] b = new byte[20];
+        int read = 0;
+        try {
+            int n;
+            while ((n = in.read(b, read, b.length - read)) != -1) {
+                read += n;
+            }
+            Assert.fail("the failure was not reported");
+        } catch (IOException e) {
+            Assert.assertEquals(e.getMessage(), "decoding error");
+        }
+        Assert.assertEquals(read, 10);
+    }
+
+    /**
+     * Asserts that closing the <code>InputStream</code> makes the writer fail instead of blocking forever.
+     */
+    @Test
+    public void testReaderClose() throws Exception {
+        final AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        InputStream in = BoundedPipe.start(executor, 1024, out -> {
+            try {
+                while (true) {
+                    out.write(new byte[100]);
+                }
+            } catch (IOException e) {
+                writeFailure.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+
+        Assert.assertEquals(in.read(new byte[10]), 10);
+        in.close();
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(writeFailure.get());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of {@link BufferPool} when several threads get and release buffers concurrently, as stream
+ * copies running in parallel do. Each thread alternates between a few buffer sizes. The same workload is also run
+ * with every call made under a single global lock, as it was before buffers were grouped by size class.
+ *
+ * <p>Usage: <code>BufferPoolBenchmark [number of get/release pairs per thread]</code></p>
+ */
+public class BufferPoolBenchmark {
+
+    private final static int SIZES[] = {8192, 65536, 131072, 65536};
+
+    private final static Object GLOBAL_LOCK = new Object();
+
+    public static void main(String[] args) throws InterruptedException {
+        int nbIterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        // Warm up
+        run(4, nbIterations / 10, false);
+        run(4, nbIterations / 10, true);
+
+        for (int nbThreads : new int[] {1, 2, 4, 8, 16}) {
+            for (boolean globalLock : new boolean[] {true, false}) {
+                BufferPool.resetStatistics();
+                long elapsed = run(nbThreads, nbIterations, globalLock);
+                System.out.println(String.format("%-11s %2d threads %8d ms %10.0f ops/s  hits=%d misses=%d peak=%d bytes",
+                        globalLock ? "global lock" : "lock-free", nbThreads, elapsed / 1000000,
+                        2.0 * nbThreads * nbIterations / (elapsed / 1e9),
+                        BufferPool.getHitCount(), BufferPool.getMissCount(), BufferPool.getPeakPoolSize()));
+            }
+        }
+    }
+
+    private static long run(int nbThreads, int nbIterations, boolean globalLock) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[nbThreads];
+        for (int t = 0; t < nbThreads; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < nbIterations; i++) {
+                    int size = SIZES[i % SIZES.length];
+                    byte buffer[];
+                    if (globalLock) {
+                        synchronized (GLOBAL_LOCK) {
+                            buffer = BufferPool.getByteArray(size);
+                        }
+                        buffer[0]++;
+                        synchronized (GLOBAL_LOCK) {
+                            BufferPool.releaseByteArray(buffer);
+                        }
+                    } else {
+                        buffer = BufferPool.getByteArray(size);
+                        buffer[0]++;
+                        BufferPool.releaseByteArray(buffer);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - startTime;
+    }
+}
@@ -22,6 +22,14 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -81,6 +89,85 @@ public class BufferPoolTest {
         testBuffer(new BufferPool.CharBufferFactory());
     }
 
+    /**
+     * Asserts that direct and heap <code>ByteBuffer</code> buffers are pooled separately.
+     */
+    @Test
+    public void testDirectAndHeapByteBuffers() {
+        BufferPool.BufferFactory directFactory = new BufferPool.ByteBufferFactory(true);
+        BufferPool.BufferFactory heapFactory = new BufferPool.ByteBufferFactory(false);
+
+        ByteBuffer directBuffer = (ByteBuffer)BufferPool.getBuffer(directFactory, TEST_BUFFER_SIZE_1);
+        ByteBuffer heapBuffer = (ByteBuffer)BufferPool.getBuffer(heapFactory, TEST_BUFFER_SIZE_1);
+        assert directBuffer.isDirect();
+        assert !heapBuffer.isDirect();
+
+        assert BufferPool.releaseBuffer(heapBuffer, heapFactory);
+        assert !BufferPool.releaseBuffer(directBuffer, heapFactory);
+        assert BufferPool.getBuffer(directFactory, TEST_BUFFER_SIZE_1) != heapBuffer;
+        assert BufferPool.getBuffer(heapFactory, TEST_BUFFER_SIZE_1) == heapBuffer;
+        assertBufferCount(0, heapFactory);
+    }
+
+    /**
+     * Asserts that hits, misses and the peak pool size are recorded.
+     */
+    @Test
+    public void testStatistics() {
+        BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        BufferPool.resetStatistics();
+        long originalPoolSize = BufferPool.getPoolSize();
+
+        Object buffer1 = BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+        Object buffer2 = BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_2);
+        Assert.assertEquals(BufferPool.getMissCount(), 2);
+        Assert.assertEquals(BufferPool.getHitCount(), 0);
+
+        BufferPool.releaseBuffer(buffer1, factory);
+        BufferPool.releaseBuffer(buffer2, factory);
+        BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+        Assert.assertEquals(BufferPool.getHitCount(), 1);
+        Assert.assertEquals(BufferPool.getPeakPoolSize(), originalPoolSize + TEST_BUFFER_SIZE_1 + TEST_BUFFER_SIZE_2);
+
+        BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_2);
+        Assert.assertEquals(BufferPool.getPoolSize(), originalPoolSize);
+    }
+
+    /**
+     * Asserts that a buffer is never handed to two threads at once, when several threads get and release buffers
+     * concurrently.
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        final Set<Object> buffersInUse = Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+        long originalPoolSize = BufferPool.getPoolSize();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Future<?> futures[] = new Future<?>[8];
+        for (int t = 0; t < futures.length; t++) {
+            futures[t] = executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    Object buffer = BufferPool.getBuffer(factory, i % 2 == 0 ? TEST_BUFFER_SIZE_1 : TEST_BUFFER_SIZE_2);
+                    Assert.assertTrue(buffersInUse.add(buffer), "buffer handed out twice");
+                    Assert.assertTrue(buffersInUse.remove(buffer));
+                    BufferPool.releaseBuffer(buffer, factory);
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Empty the pool, and assert that its size accounts for the buffers it contained
+        while (BufferPool.getBufferCount(factory) > 0) {
+            BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+            BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_2);
+        }
+        Assert.assertEquals(BufferPool.getPoolSize(), originalPoolSize);
+    }
+
     /**
      * Tests <code>BufferPool</code> with <code>ByteBuffer</code> buffers.
      *
@@ -0,0 +1,125 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a TestNG test case for {@link ReadAheadRandomInputStream}.
+ */
+public class ReadAheadRandomInputStreamTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final byte[] data = new byte[1000 * 1000];
+
+    public ReadAheadRandomInputStreamTest() {
+        new Random(42).nextBytes(data);
+    }
+
+    /**
+     * Reads the whole resource sequentially and asserts that the data is correct and that ranges grow.
+     */
+    @Test
+    public void testSequentialRead() throws IOException {
+        try (TestStream in = new TestStream()) {
+            byte[] read = new byte[data.length];
+            in.readFully(read);
+            Assert.assertEquals(read, data);
+            Assert.assertEquals(in.read(), -1);
+
+            // 977 blocks, requests grow up to 64 blocks
+            Assert.assertTrue(in.nbRequests.get() < 30, "requests: " + in.nbRequests.get());
+        }
+    }
+
+    /**
+     * Reads at random offsets, including single bytes, and asserts that the data is correct.
+     */
+    @Test
+    public void testRandomRead() throws IOException {
+        Random random = new Random(7);
+        try (TestStream in = new TestStream()) {
+            for (int i = 0; i < 500; i++) {
+                int offset = random.nextInt(data.length);
+                in.seek(offset);
+                if (random.nextBoolean()) {
+                    Assert.assertEquals(in.read(), data[offset] & 0xFF);
+                    Assert.assertEquals(in.getOffset(), offset + 1);
+                } else {
+                    byte[] read = new byte[Math.min(5000, data.length - offset)];
+                    in.readFully(read);
+                    for (int j = 0; j < read.length; j++) {
+                        Assert.assertEquals(read[j], data[offset + j]);
+                    }
+                    Assert.assertEquals(in.getOffset(), offset + read.length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Asserts that seeking back to recently read data doesn't fetch it again.
+     */
+    @Test
+    public void testCachedBlocks() throws IOException {
+        try (TestStream in = new TestStream()) {
+            in.seek(data.length - 100);
+            in.read(new byte[100]);
+            in.seek(10 * BLOCK_SIZE);
+            in.read(new byte[100]);
+            int nbRequests = in.nbRequests.get();
+
+            in.seek(data.length - 50);
+            in.read(new byte[50]);
+            in.seek(10 * BLOCK_SIZE + 50);
+            in.read(new byte[50]);
+            Assert.assertEquals(in.nbRequests.get(), nbRequests);
+        }
+    }
+
+    /**
+     * Serves ranges of {@link #data} and counts requests.
+     */
+    private class TestStream extends ReadAheadRandomInputStream {
+        private final AtomicInteger nbRequests = new AtomicInteger();
+
+        TestStream() {
+            super(BLOCK_SIZE, 64 * BLOCK_SIZE, 256 * BLOCK_SIZE, 2);
+        }
+
+        @Override
+        protected int readRange(long offset, byte[] b, int len) {
+            nbRequests.incrementAndGet();
+            int n = (int)Math.min(len, data.length - offset);
+            System.arraycopy(data, (int)offset, b, 0, n);
+            return n;
+        }
+
+        @Override
+        public long getLength() {
+            return data.length;
+        }
+    }
+}
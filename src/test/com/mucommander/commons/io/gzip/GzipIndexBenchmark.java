@@ -0,0 +1,111 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.gzip;
+
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures the time it takes to read a small range located at a random offset of a large GZIP stream, by
+ * decompressing the stream from its beginning with <code>java.util.zip.GZIPInputStream</code>, and by decompressing
+ * it from the closest checkpoint of a {@link GzipIndex}. Sequential throughput of both streams is reported as well.
+ *
+ * <p>Usage: <code>GzipIndexBenchmark [uncompressed size in MB] [number of reads]</code></p>
+ */
+public class GzipIndexBenchmark {
+
+    private static final int RANGE_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int nbReads = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        byte[] data = IndexedGzipInputStreamTest.createText(sizeMb * 1024 * 1024, 0);
+        byte[] compressed = IndexedGzipInputStreamTest.gzip(data, Deflater.DEFAULT_COMPRESSION);
+        System.out.println("Uncompressed: " + data.length + " bytes, compressed: " + compressed.length + " bytes");
+
+        // Warm up both implementations
+        for (int i = 0; i < 3; i++) {
+            drain(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+            drain(new IndexedGzipInputStream(new ByteArrayInputStream(compressed), null));
+        }
+
+        long start = System.nanoTime();
+        drain(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        report("Sequential, GZIPInputStream", start, 1);
+
+        GzipIndex index = new GzipIndex(1024 * 1024, GzipIndex.DEFAULT_MAX_CHECKPOINTS);
+        start = System.nanoTime();
+        drain(new IndexedGzipInputStream(new ByteArrayInputStream(compressed), index));
+        report("Sequential, IndexedGzipInputStream (building the index)", start, 1);
+        System.out.println("Index: " + index.size() + " checkpoints, " + index.getMemoryUsage() / 1024 + " KB");
+
+        Random random = new Random(1);
+        long[] offsets = new long[nbReads];
+        for (int i = 0; i < nbReads; i++) {
+            offsets[i] = (long)(random.nextDouble() * (data.length - RANGE_SIZE));
+        }
+
+        byte[] range = new byte[RANGE_SIZE];
+        start = System.nanoTime();
+        for (long offset : offsets) {
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+            StreamUtils.skipFully(in, offset);
+            StreamUtils.readFully(in, range);
+        }
+        report("Random reads, GZIPInputStream", start, nbReads);
+
+        start = System.nanoTime();
+        for (long offset : offsets) {
+            GzipIndex.Checkpoint checkpoint = index.getCheckpoint(offset);
+            InputStream compressedIn = new ByteArrayInputStream(compressed);
+            InputStream in;
+            long skip = offset;
+            if (checkpoint == null) {
+                in = new IndexedGzipInputStream(compressedIn, index);
+            } else {
+                StreamUtils.skipFully(compressedIn, checkpoint.getCompressedOffset());
+                in = new IndexedGzipInputStream(compressedIn, index, checkpoint);
+                skip -= checkpoint.getUncompressedOffset();
+            }
+            StreamUtils.skipFully(in, skip);
+            StreamUtils.readFully(in, range);
+        }
+        report("Random reads, IndexedGzipInputStream", start, nbReads);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[65536];
+        while (in.read(buffer) != -1) {
+            // Discard
+        }
+        in.close();
+    }
+
+    private static void report(String name, long startNanos, int nbOperations) {
+        double ms = (System.nanoTime() - startNanos) / 1000000.0;
+        System.out.println(String.format("%-56s %10.2f ms/op", name, ms / nbOperations));
+    }
+}
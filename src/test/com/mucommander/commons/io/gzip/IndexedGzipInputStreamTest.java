@@ -0,0 +1,186 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.gzip;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * This class is a TestNG test case for {@link IndexedGzipInputStream} and {@link GzipIndex}.
+ */
+public class IndexedGzipInputStreamTest {
+
+    private static final String[] WORDS = {"mu", "commander", "archive", "entry", "gzip", "deflate", "block", "\n"};
+
+    /**
+     * Returns compressible data made of random words, which exercises back-references and dynamic Huffman codes.
+     */
+    static byte[] createText(int length, long seed) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 16);
+        while (out.size() < length) {
+            byte[] word = WORDS[random.nextInt(WORDS.length)].getBytes();
+            out.write(word, 0, word.length);
+            out.write(random.nextInt(4) == 0 ? '0' + random.nextInt(10) : ' ');
+        }
+        return Arrays.copyOf(out.toByteArray(), length);
+    }
+
+    static byte[] gzip(byte[] data, final int level) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bout) {
+            {
+                def.setLevel(level);
+            }
+        };
+        out.write(data);
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7919];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertDecompresses(byte[] data, int level) throws IOException {
+        byte[] compressed = gzip(data, level);
+        Assert.assertEquals(readFully(new IndexedGzipInputStream(new ByteArrayInputStream(compressed), null)), data);
+    }
+
+    /**
+     * Decompresses data compressed with dynamic and fixed Huffman codes, as well as stored blocks.
+     */
+    @Test
+    public void testDecompression() throws IOException {
+        byte[] text = createText(1000000, 1);
+        assertDecompresses(text, Deflater.DEFAULT_COMPRESSION);
+        assertDecompresses(text, Deflater.BEST_SPEED);
+        assertDecompresses(text, Deflater.NO_COMPRESSION);
+
+        byte[] random = new byte[300000];
+        new Random(2).nextBytes(random);
+        assertDecompresses(random, Deflater.DEFAULT_COMPRESSION);
+
+        // Short inputs are compressed with fixed Huffman codes
+        assertDecompresses("muCommander".getBytes(), Deflater.DEFAULT_COMPRESSION);
+        assertDecompresses(new byte[0], Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Decompresses concatenated GZIP members.
+     */
+    @Test
+    public void testMultipleMembers() throws IOException {
+        byte[] first = createText(100000, 3);
+        byte[] second = createText(50000, 4);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(first, Deflater.DEFAULT_COMPRESSION));
+        compressed.write(gzip(second, Deflater.DEFAULT_COMPRESSION));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+
+        Assert.assertEquals(readFully(new IndexedGzipInputStream(new ByteArrayInputStream(compressed.toByteArray()), null)),
+                expected.toByteArray());
+    }
+
+    /**
+     * Asserts that a corrupt trailer is detected.
+     */
+    @Test(expectedExceptions = ZipException.class)
+    public void testCorruptCrc() throws IOException {
+        byte[] compressed = gzip(createText(10000, 5), Deflater.DEFAULT_COMPRESSION);
+        compressed[compressed.length - 8] ^= 1;
+        readFully(new IndexedGzipInputStream(new ByteArrayInputStream(compressed), null));
+    }
+
+    /**
+     * Builds an index while reading a stream, and then restarts decompression at every checkpoint and at random
+     * offsets, before and after the index has been serialized.
+     */
+    @Test
+    public void testCheckpoints() throws IOException {
+        byte[] data = createText(2000000, 6);
+        byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+
+        GzipIndex index = new GzipIndex(64 * 1024, 4);
+        IndexedGzipInputStream in = new IndexedGzipInputStream(new ByteArrayInputStream(compressed), index);
+        Assert.assertEquals(readFully(in), data);
+        Assert.assertEquals(in.getPosition(), data.length);
+        Assert.assertTrue(index.size() > 1);
+        Assert.assertTrue(index.size() <= 4);
+        // The cap was reached: the span must have been increased
+        Assert.assertTrue(index.getSpan() > 64 * 1024);
+
+        assertRandomAccess(data, compressed, index);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bout));
+        GzipIndex readIndex = GzipIndex.read(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+        Assert.assertEquals(readIndex.size(), index.size());
+        Assert.assertEquals(readIndex.getSpan(), index.getSpan());
+        assertRandomAccess(data, compressed, readIndex);
+    }
+
+    private static void assertRandomAccess(byte[] data, byte[] compressed, GzipIndex index) throws IOException {
+        Random random = new Random(7);
+        Assert.assertNull(index.getCheckpoint(0));
+        for (int i = 0; i < 20; i++) {
+            int offset = random.nextInt(data.length);
+            GzipIndex.Checkpoint checkpoint = index.getCheckpoint(offset);
+            long start = checkpoint == null ? 0 : checkpoint.getUncompressedOffset();
+            Assert.assertTrue(start <= offset);
+
+            InputStream compressedIn = new ByteArrayInputStream(compressed);
+            IndexedGzipInputStream in;
+            if (checkpoint == null) {
+                in = new IndexedGzipInputStream(compressedIn, index);
+            } else {
+                Assert.assertEquals(compressedIn.skip(checkpoint.getCompressedOffset()), checkpoint.getCompressedOffset());
+                in = new IndexedGzipInputStream(compressedIn, index, checkpoint);
+            }
+            Assert.assertEquals(in.skip(offset - start), offset - start);
+            Assert.assertEquals(in.getPosition(), offset);
+
+            byte[] expected = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + 100000));
+            byte[] actual = new byte[expected.length];
+            new DataInputStream(in).readFully(actual);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2017 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.ProxyFile;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a TestNG test case for the parallel walk of {@link FindFileJob}. The job is not started: its
+ * {@link FindFileJob#processFile(AbstractFile, Object)} method is called on the test thread.
+ */
+public class FindFileJobTest {
+
+    private static final int NB_FOLDERS = 6;
+    private static final int NB_FILES = 5;
+
+    private AbstractFile root;
+
+    /** Number of listings of remote folders in progress, and the maximum reached */
+    private final AtomicInteger nbListings = new AtomicInteger();
+    private final AtomicInteger maxListings = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = FileFactory.getTemporaryFile("find", true);
+        root.mkdir();
+        // Two levels of folders, each of them with text files that contain 'needle' every other file
+        for (int i = 0; i < NB_FOLDERS; i++) {
+            AbstractFile folder = root.getDirectChild("folder" + i);
+            folder.mkdir();
+            AbstractFile subFolder = folder.getDirectChild("sub");
+            subFolder.mkdir();
+            for (int j = 0; j < NB_FILES; j++) {
+                write(folder.getDirectChild("file" + j + ".txt"), j % 2 == 0 ? "hay needle hay" : "hay hay");
+                write(subFolder.getDirectChild("file" + j + ".txt"), j % 2 == 0 ? "hay needle hay" : "hay hay");
+                write(subFolder.getDirectChild("file" + j + ".bin"), "needle");
+            }
+        }
+        nbListings.set(0);
+        maxListings.set(0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        root.deleteRecursively();
+    }
+
+    private static void write(AbstractFile file, String content) throws IOException {
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static FindFileJob createJob(String mask, String content) {
+        FindFileJob job = new FindFileJob(null);
+        job.setup(mask, content, true, false, true, false, "UTF-8", false, null);
+        return job;
+    }
+
+    /**
+     * Returns the paths of the given files, relative to the root folder.
+     */
+    private Set<String> relativePaths(List<AbstractFile> files) {
+        Set<String> paths = new HashSet<>();
+        for (AbstractFile file : files) {
+            paths.add(file.getAbsolutePath(false).substring(root.getAbsolutePath(true).length()).replace('\\', '/'));
+        }
+        return paths;
+    }
+
+    /**
+     * Asserts that all the matching files are found, each of them once, and that a folder is always reported before
+     * the files it contains.
+     */
+    @Test
+    public void testResults() {
+        FindFileJob job = createJob("*", "");
+        List<AbstractFile> found = new ArrayList<>();
+        job.addResultListener(file -> {
+            synchronized (found) {
+                found.add(file);
+            }
+        });
+        job.processFile(root, null);
+
+        // The root, 2 folders and 3 * NB_FILES files per folder
+        Assert.assertEquals(found.size(), 1 + NB_FOLDERS * (2 + 3 * NB_FILES));
+        Assert.assertEquals(new HashSet<>(found).size(), found.size());
+        Assert.assertEquals(job.getResults().size(), found.size());
+        for (int i = 0; i < found.size(); i++) {
+            AbstractFile parent = found.get(i).getParent();
+            if (found.get(i).equals(root)) {
+                continue;
+            }
+            int parentIndex = found.indexOf(parent);
+            Assert.assertTrue(parentIndex >= 0 && parentIndex < i, found.get(i) + " reported before its folder");
+        }
+    }
+
+    /**
+     * Asserts that names and contents are matched when files are searched in parallel.
+     */
+    @Test
+    public void testContentSearch() {
+        FindFileJob job = createJob("*.txt", "needle");
+        job.processFile(root, null);
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < NB_FOLDERS; i++) {
+            for (int j = 0; j < NB_FILES; j += 2) {
+                expected.add("folder" + i + "/file" + j + ".txt");
+                expected.add("folder" + i + "/sub/file" + j + ".txt");
+            }
+        }
+        Assert.assertEquals(relativePaths(job.getResults()), expected);
+    }
+
+    /**
+     * Interrupts the job as soon as the first file has been found, and asserts that the walk stops.
+     */
+    @Test
+    public void testInterrupt() {
+        FindFileJob job = createJob("*.bin", "");
+        AtomicInteger nbFound = new AtomicInteger();
+        job.addResultListener(file -> {
+            nbFound.incrementAndGet();
+            job.interrupt();
+        });
+        job.processFile(new SlowFolder(root), null);
+
+        Assert.assertEquals(job.getState(), FileJob.State.INTERRUPTED);
+        int nbFoundWhenStopped = nbFound.get();
+        Assert.assertTrue(nbFoundWhenStopped >= 1 && nbFoundWhenStopped < NB_FOLDERS * NB_FILES, "Found " + nbFoundWhenStopped);
+        Assert.assertEquals(job.getResults().size(), nbFoundWhenStopped);
+    }
+
+    /**
+     * Pauses the job before the walk starts, and asserts that no folder is listed until it is resumed.
+     */
+    @Test
+    public void testPause() throws InterruptedException {
+        FindFileJob job = createJob("*.bin", "");
+        job.setPaused(true);
+        Thread thread = new Thread(() -> job.processFile(new SlowFolder(root), null));
+        thread.start();
+
+        Thread.sleep(300);
+        Assert.assertEquals(maxListings.get(), 0);
+        Assert.assertTrue(job.getResults().isEmpty());
+
+        job.setPaused(false);
+        thread.join(30000);
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertEquals(job.getResults().size(), NB_FOLDERS * NB_FILES);
+    }
+
+    /**
+     * Asserts that no more remote folders are listed at the same time than the limit for a remote scheme, and that
+     * all of them are listed even though the threads of the pool wait for a permit.
+     */
+    @Test
+    public void testRemoteConcurrencyLimit() {
+        FindFileJob job = createJob("*.bin", "");
+        job.processFile(new SlowFolder(root), null);
+
+        Assert.assertEquals(job.getResults().size(), NB_FOLDERS * NB_FILES);
+        Assert.assertTrue(maxListings.get() >= 1 && maxListings.get() <= 2, "Max concurrent listings: " + maxListings.get());
+    }
+
+
+    /**
+     * A folder of a remote file system, which takes some time to be listed.
+     */
+    private class SlowFolder extends ProxyFile {
+        SlowFolder(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public FileURL getURL() {
+            try {
+                return FileURL.getFileURL("sftp://localhost" + file.getURL().getPath());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public AbstractFile[] ls() throws IOException {
+            maxListings.accumulateAndGet(nbListings.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(30);
+                AbstractFile[] children = super.ls();
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = new SlowFolder(children[i]);
+                }
+                return children;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                nbListings.decrementAndGet();
+            }
+        }
+    }
+}
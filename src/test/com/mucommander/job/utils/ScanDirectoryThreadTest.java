@@ -0,0 +1,127 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.utils;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.ProxyFile;
+import com.mucommander.commons.file.util.FileSet;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a TestNG test case for {@link ScanDirectoryThread}.
+ */
+public class ScanDirectoryThreadTest {
+
+    private AbstractFile root;
+
+    /** Number of times a folder was listed */
+    private final AtomicInteger nbListings = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = FileFactory.getTemporaryFile("scan", true);
+        root.mkdir();
+        for (int i = 0; i < 3; i++) {
+            AbstractFile folder = root.getDirectChild("folder" + i);
+            folder.mkdir();
+            for (int j = 0; j < 4; j++) {
+                try (OutputStream out = folder.getDirectChild("file" + j).getOutputStream()) {
+                    out.write(new byte[10]);
+                }
+            }
+        }
+        nbListings.set(0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        root.deleteRecursively();
+    }
+
+    /**
+     * Walks the tree while it is being scanned and asserts that each folder is listed once, and that the scan
+     * totals are correct.
+     */
+    @Test
+    public void testSharedListings() throws Exception {
+        CountingFile countingRoot = new CountingFile(root);
+        ScanDirectoryThread thread = new ScanDirectoryThread(new FileSet(countingRoot.getParent(), countingRoot), true, true);
+        thread.start();
+
+        Assert.assertEquals(walk(thread, countingRoot), 12);
+        thread.join();
+
+        Assert.assertTrue(thread.isCompleted());
+        Assert.assertEquals(thread.getTotalBytes(), 120);
+        Assert.assertEquals(thread.getFilesCount(), 16);
+        Assert.assertEquals(nbListings.get(), 4);
+    }
+
+    /**
+     * Asserts that folders are listed by both the thread and the job when listings are not shared.
+     */
+    @Test
+    public void testUnsharedListings() throws Exception {
+        CountingFile countingRoot = new CountingFile(root);
+        ScanDirectoryThread thread = new ScanDirectoryThread(new FileSet(countingRoot.getParent(), countingRoot));
+        thread.start();
+        thread.join();
+
+        Assert.assertEquals(walk(thread, countingRoot), 12);
+        Assert.assertEquals(nbListings.get(), 8);
+    }
+
+    /**
+     * Lists the given folder recursively through the thread, returning the number of regular files found.
+     */
+    private int walk(ScanDirectoryThread thread, AbstractFile folder) throws IOException {
+        int nbFiles = 0;
+        for (AbstractFile child : thread.ls(folder)) {
+            nbFiles += child.isDirectory() ? walk(thread, child) : 1;
+        }
+        return nbFiles;
+    }
+
+    /**
+     * Counts the number of times folders are listed.
+     */
+    private class CountingFile extends ProxyFile {
+        CountingFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public AbstractFile[] ls() throws IOException {
+            nbListings.incrementAndGet();
+            AbstractFile[] children = super.ls();
+            for (int i = 0; i < children.length; i++) {
+                children[i] = new CountingFile(children[i]);
+            }
+            return children;
+        }
+    }
+}
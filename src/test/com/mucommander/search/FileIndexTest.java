@@ -0,0 +1,180 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is a TestNG test case for {@link FileIndex} and {@link FileIndexer}.
+ */
+public class FileIndexTest {
+
+    private Path root;
+    private Path indexFolder;
+
+    @BeforeMethod
+    public void createFolders() throws IOException {
+        root = Files.createTempDirectory("indexed");
+        indexFolder = Files.createTempDirectory("index");
+
+        Files.createDirectories(root.resolve("src/main"));
+        write("readme.txt", "This is a needle in a haystack");
+        write("src/Main.java", "public class Main { String s = \"Needle\"; }");
+        write("src/main/notes.txt", "nothing to see here");
+        Files.write(root.resolve("data.bin"), new byte[] {0, 1, 2, 'n', 'e', 'e', 'd', 'l', 'e', 0, 0, 0});
+    }
+
+    @AfterMethod
+    public void deleteFolders() throws IOException {
+        delete(root.toFile());
+        delete(indexFolder.toFile());
+    }
+
+    /**
+     * Asserts that files are looked up by name and by contents, in a folder and its subfolders.
+     */
+    @Test
+    public void testSearch() throws IOException {
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            Assert.assertFalse(index.isIndexed(root.toString()));
+            new FileIndexer(index, Collections.singletonList(root.toString())).update();
+            Assert.assertTrue(index.isIndexed(root.toString()));
+            Assert.assertTrue(index.isIndexed(root.resolve("src").toString()));
+
+            Assert.assertEquals(search(index, root, true, new String[] {"*.txt"}, null), paths("readme.txt", "src/main/notes.txt"));
+            Assert.assertEquals(search(index, root, false, new String[] {"*.txt"}, null), paths("readme.txt"));
+            Assert.assertEquals(search(index, root, true, new String[] {"main*"}, null), paths("src/Main.java", "src/main"));
+
+            // The binary file's contents are not indexed, it is always a candidate
+            Assert.assertEquals(search(index, root, true, null, "NEEDLE"), paths("readme.txt", "src/Main.java", "data.bin"));
+            Assert.assertEquals(search(index, root, true, null, "haystack"), paths("readme.txt", "data.bin"));
+            Assert.assertEquals(search(index, root.resolve("src"), true, new String[] {"*.txt", "*.java"}, "needle"), paths("src/Main.java"));
+        }
+    }
+
+    /**
+     * Asserts that an update re-indexes modified files and removes deleted ones, and that the index is persistent.
+     */
+    @Test
+    public void testUpdate() throws IOException {
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            new FileIndexer(index, Collections.singletonList(root.toString())).update();
+        }
+
+        write("src/main/notes.txt", "a needle after all");
+        Files.setLastModifiedTime(root.resolve("src/main/notes.txt"), FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        Files.delete(root.resolve("readme.txt"));
+
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            Assert.assertTrue(index.isIndexed(root.toString()));
+            new FileIndexer(index, Collections.singletonList(root.toString())).update();
+            Assert.assertEquals(search(index, root, true, new String[] {"*.txt"}, "needle"), paths("src/main/notes.txt"));
+        }
+
+        // Roots that are not indexed anymore are removed
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            new FileIndexer(index, Collections.emptyList());
+            Assert.assertFalse(index.isIndexed(root.toString()));
+        }
+    }
+
+    /**
+     * Asserts that a file whose contents have changed since it was indexed is returned even if its indexed contents
+     * don't contain the searched text, while unmodified files are still ruled out by their indexed contents.
+     */
+    @Test
+    public void testModifiedFile() throws IOException {
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            new FileIndexer(index, Collections.singletonList(root.toString())).update();
+            Assert.assertEquals(search(index, root, true, new String[] {"*.txt"}, "needle"), paths("readme.txt"));
+
+            // Appending to a file doesn't change the modification date of its folder
+            Path notes = root.resolve("src/main/notes.txt");
+            Files.write(notes, ", but a needle now".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            Files.setLastModifiedTime(notes, FileTime.fromMillis(Files.getLastModifiedTime(notes).toMillis() + 10000));
+
+            Assert.assertEquals(search(index, root, true, new String[] {"*.txt"}, "needle"), paths("readme.txt", "src/main/notes.txt"));
+            Assert.assertEquals(search(index, root, true, new String[] {"*.java"}, "haystack"), paths());
+        }
+    }
+
+    /**
+     * Asserts that the time of the last update and the indexed folders are returned, and that the time is persistent.
+     */
+    @Test
+    public void testUpdateTime() throws IOException {
+        long start = System.currentTimeMillis();
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            Assert.assertEquals(index.getUpdateTime(root.toString()), -1);
+            new FileIndexer(index, Collections.singletonList(root.toString())).update();
+            long updateTime = index.getUpdateTime(root.resolve("src").toString());
+            Assert.assertTrue(updateTime >= start && updateTime <= System.currentTimeMillis());
+            Assert.assertEquals(new HashSet<>(index.getFolders(root.toString())), paths("src", "src/main"));
+            Assert.assertEquals(new HashSet<>(index.getFolders(root.resolve("src").toString())), paths("src/main"));
+        }
+
+        try (FileIndex index = new FileIndex(indexFolder.toFile())) {
+            Assert.assertTrue(index.getUpdateTime(root.toString()) >= start);
+        }
+    }
+
+
+    private Set<String> search(FileIndex index, Path folder, boolean subfolders, String[] nameMasks, String text) throws IOException {
+        List<String> paths = index.search(folder.toString(), subfolders, nameMasks, text, "UTF-8");
+        return new HashSet<>(paths);
+    }
+
+    private Set<String> paths(String... relativePaths) {
+        Set<String> paths = new HashSet<>();
+        for (String relativePath : Arrays.asList(relativePaths)) {
+            paths.add(root.resolve(relativePath).toString());
+        }
+        return paths;
+    }
+
+    private void write(String relativePath, String content) throws IOException {
+        Files.write(root.resolve(relativePath), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
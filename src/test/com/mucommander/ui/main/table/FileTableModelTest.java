@@ -0,0 +1,204 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.ui.main.table.views.BaseFileTableModel;
+import com.mucommander.ui.main.table.views.full.FileTableModel;
+import com.mucommander.utils.text.CustomDateFormat;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.swing.event.TableModelEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is a TestNG test case for the incremental updates of {@link BaseFileTableModel}.
+ */
+public class FileTableModelTest {
+
+    private AbstractFile folder;
+    private BaseFileTableModel model;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+        for (String name : new String[] {"b", "d", "f", "h"}) {
+            folder.getDirectChild(name).mkfile();
+        }
+        CustomDateFormat.init();
+        model = new FileTableModel();
+        SortInfo sortInfo = new SortInfo();
+        sortInfo.setFoldersFirst(false);
+        model.setSortInfo(sortInfo);
+        model.setCurrentFolder(folder, folder.ls(), null);
+        model.sortRows();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder.deleteRecursively();
+    }
+
+    /**
+     * Asserts that added files are inserted in sort order, and that deleted files are removed.
+     */
+    @Test
+    public void testUpdateFiles() throws IOException {
+        folder.getDirectChild("d").delete();
+        folder.getDirectChild("a").mkfile();
+        folder.getDirectChild("e").mkfile();
+        folder.getDirectChild("i").mkfile();
+
+        model.updateFiles(files("i", "e", "a"), Collections.singletonList("d"));
+        Assert.assertEquals(names(), Arrays.asList("a", "b", "e", "f", "h", "i"));
+
+        model.updateFiles(new AbstractFile[0], Arrays.asList("a", "i"));
+        Assert.assertEquals(names(), Arrays.asList("b", "e", "f", "h"));
+    }
+
+    /**
+     * Asserts that marked files remain marked when they are replaced, and are unmarked when they are removed.
+     */
+    @Test
+    public void testMarkedFiles() throws IOException {
+        int offset = model.getFirstMarkableIndex();
+        model.setFileMarked(offset, true);      // b
+        model.setFileMarked(offset + 2, true);  // f
+        model.setFileMarked(offset + 3, true);  // h
+        Assert.assertEquals(model.getNbMarkedFiles(), 3);
+
+        model.updateFiles(files("f", "h"), Collections.singletonList("b"));
+        Assert.assertEquals(names(), Arrays.asList("d", "f", "h"));
+        Assert.assertEquals(model.getNbMarkedFiles(), 2);
+        Assert.assertFalse(model.isFileMarked(offset));
+        Assert.assertTrue(model.isFileMarked(offset + 1));
+        Assert.assertTrue(model.isFileMarked(offset + 2));
+        Assert.assertEquals(model.getMarkedFiles().size(), 2);
+    }
+
+    /**
+     * Asserts that a new listing of the folder is merged into the table: unchanged files are kept as they are, and
+     * only the rows that have changed are notified.
+     */
+    @Test
+    public void testMergeFiles() throws IOException {
+        int offset = model.getFirstMarkableIndex();
+        AbstractFile unchanged = model.getCachedFileAt(offset + 1);    // d
+        model.setFileMarked(offset + 1, true);
+        // Attributes are fetched lazily, as when the row of f is displayed
+        model.getCachedFileAt(offset + 2).getLastModifiedDate();
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        folder.getDirectChild("b").delete();
+        folder.getDirectChild("g").mkfile();
+        AbstractFile f = folder.getDirectChild("f");
+        f.setLastModifiedDate(f.getLastModifiedDate() - 10000);
+        refresh();
+
+        Assert.assertEquals(names(), Arrays.asList("d", "f", "g", "h"));
+        Assert.assertSame(model.getCachedFileAt(offset), unchanged);
+        Assert.assertTrue(model.isFileMarked(offset));
+        Assert.assertEquals(model.getNbMarkedFiles(), 1);
+        Assert.assertEquals(model.getCachedFileAt(offset + 1).getLastModifiedDate(), f.getLastModifiedDate());
+
+        // b is deleted, g is inserted and f is updated in place
+        Assert.assertEquals(events.size(), 3);
+        Assert.assertEquals(events.get(0).getType(), TableModelEvent.DELETE);
+        Assert.assertEquals(events.get(0).getFirstRow(), offset);
+        Assert.assertEquals(events.get(1).getType(), TableModelEvent.INSERT);
+        Assert.assertEquals(events.get(1).getFirstRow(), offset + 2);
+        Assert.assertEquals(events.get(2).getType(), TableModelEvent.UPDATE);
+        Assert.assertEquals(events.get(2).getFirstRow(), offset + 1);
+
+        // Nothing has changed
+        events.clear();
+        refresh();
+        Assert.assertTrue(events.isEmpty());
+    }
+
+
+    /**
+     * Asserts that files whose attributes have not been read while listing the folder display placeholders, until
+     * their attributes have been fetched in the background.
+     */
+    @Test
+    public void testPendingFiles() throws IOException {
+        // Files that are not listed don't carry their attributes
+        model.setCurrentFolder(folder, files("b", "d", "f", "h"), null);
+        model.sortRows();
+        int offset = model.getFirstMarkableIndex();
+        Assert.assertTrue(model.isPending(model.getCachedFileAt(offset)));
+        Assert.assertEquals(model.getValueAt(offset, Column.SIZE.ordinal()), "...");
+        Assert.assertEquals(model.getValueAt(offset, Column.NAME.ordinal()), "b");
+
+        List<BaseFileTableModel.PendingFile> pendingFiles = model.getPendingFiles(offset + 1, offset + 2);
+        Assert.assertEquals(pendingFiles.size(), 2);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+        for (BaseFileTableModel.PendingFile file : pendingFiles) {
+            file.prefetch();
+        }
+        model.setPrefetchedFiles(pendingFiles);
+
+        Assert.assertTrue(model.isPending(model.getCachedFileAt(offset)));
+        Assert.assertFalse(model.isPending(model.getCachedFileAt(offset + 1)));
+        Assert.assertFalse(model.isPending(model.getCachedFileAt(offset + 2)));
+        Assert.assertFalse("...".equals(model.getValueAt(offset + 1, Column.SIZE.ordinal())));
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertEquals(events.get(0).getFirstRow(), offset + 1);
+        Assert.assertEquals(events.get(1).getFirstRow(), offset + 2);
+
+        // Files that have been fetched already are ignored
+        model.setPrefetchedFiles(pendingFiles);
+        Assert.assertEquals(events.size(), 2);
+    }
+
+
+    private void refresh() throws IOException {
+        List<String> removedNames = new ArrayList<>();
+        AbstractFile[] updatedFiles = model.getChangedFiles(folder.ls(), removedNames);
+        model.mergeFiles(folder, updatedFiles, removedNames);
+    }
+
+    private AbstractFile[] files(String... names) throws IOException {
+        AbstractFile[] files = new AbstractFile[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = folder.getDirectChild(names[i]);
+        }
+        return files;
+    }
+
+    private List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (int i = model.getFirstMarkableIndex(); i < model.getFilesCount(); i++) {
+            names.add(model.getFileAt(i).getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.data;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class is a TestNG test case for the page cache of {@link AbstractByteBuffer}.
+ */
+public class AbstractByteBufferTest {
+
+    private static final int PAGE_SIZE = 16;
+    private static final int MAX_PAGES = 4;
+
+    /**
+     * Moves back and forth in a file that can be read randomly: the pages in memory are not read again, the evicted
+     * ones are.
+     */
+    @Test
+    public void testRandomAccess() throws IOException {
+        byte[] data = randomBytes(PAGE_SIZE * 10 + 5);
+        CountingByteBuffer buffer = new CountingByteBuffer(data, true);
+
+        // Scrolling backward within the pages in memory
+        for (int i = 4 * PAGE_SIZE - 1; i >= 0; i--) {
+            Assert.assertEquals(buffer.getByte(i), data[i]);
+        }
+        for (int i = 0; i < 4 * PAGE_SIZE; i++) {
+            Assert.assertEquals(buffer.getByte(i), data[i]);
+        }
+        Assert.assertEquals(buffer.loadedOffsets.size(), 4);
+
+        // The least recently used page is evicted
+        Assert.assertEquals(buffer.getByte(data.length - 1), data[data.length - 1]);
+        Assert.assertEquals(buffer.getByte(0), data[0]);
+        Assert.assertEquals(buffer.loadedOffsets.size(), 6);
+        Assert.assertEquals((long)buffer.loadedOffsets.get(4), 10 * PAGE_SIZE);
+        Assert.assertEquals((long)buffer.loadedOffsets.get(5), 0);
+
+        // Copies across pages
+        byte[] dest = new byte[data.length];
+        Assert.assertEquals(buffer.getBytes(3, dest, 0, data.length), data.length - 3);
+        for (int i = 3; i < data.length; i++) {
+            Assert.assertEquals(dest[i - 3], data[i]);
+        }
+        buffer.close();
+    }
+
+    /**
+     * Moves back and forth in a file that can only be read sequentially: the evicted pages are read back from the
+     * spill file, the file is read only once.
+     */
+    @Test
+    public void testSequentialAccess() throws IOException {
+        byte[] data = randomBytes(PAGE_SIZE * 10 + 5);
+        CountingByteBuffer buffer = new CountingByteBuffer(data, false);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int offset = random.nextInt(data.length);
+            Assert.assertEquals(buffer.getByte(offset), data[offset]);
+        }
+        Assert.assertEquals(buffer.loadedOffsets.size(), 11);
+        buffer.close();
+    }
+
+    /**
+     * Reads pages with the FORWARD strategy, which are not kept in memory.
+     */
+    @Test
+    public void testForwardScan() throws IOException {
+        byte[] data = randomBytes(PAGE_SIZE * 10);
+        CountingByteBuffer buffer = new CountingByteBuffer(data, true);
+        buffer.getByte(0);
+        buffer.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
+        byte[] dest = new byte[data.length];
+        buffer.getBytes(0, dest, 0, data.length);
+        Assert.assertEquals(dest, data);
+        buffer.setCacheStrategy(AbstractByteBuffer.CacheStrategy.CENTER);
+        Assert.assertEquals(buffer.getByte(1), data[1]);
+        Assert.assertEquals(buffer.loadedOffsets.size(), 10);
+        buffer.close();
+    }
+
+    /**
+     * Reads a local file, which is memory-mapped, across two mapped pages.
+     */
+    @Test
+    public void testMappedFile() throws IOException {
+        File tempFile = File.createTempFile("buffer", ".bin");
+        tempFile.deleteOnExit();
+        byte[] data = randomBytes(100);
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(AbstractByteBuffer.MAPPED_PAGE_SIZE + 50);
+            raf.seek(AbstractByteBuffer.MAPPED_PAGE_SIZE - 50);
+            raf.write(data);
+        }
+        FileByteBuffer buffer = new FileByteBuffer(tempFile.getAbsolutePath(), "r", PAGE_SIZE);
+        try {
+            byte[] dest = new byte[200];
+            Assert.assertEquals(buffer.getBytes(AbstractByteBuffer.MAPPED_PAGE_SIZE - 50, dest, 0, dest.length), 100);
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(dest[i], data[i]);
+            }
+            Assert.assertEquals(buffer.getByte(AbstractByteBuffer.MAPPED_PAGE_SIZE - 1), data[49]);
+            Assert.assertEquals(buffer.getByte(0), 0);
+        } finally {
+            buffer.close();
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Reads more mapped pages than can be kept in memory: the least recently used ones are evicted as well.
+     */
+    @Test
+    public void testMappedPagesEviction() throws IOException {
+        File tempFile = File.createTempFile("buffer", ".bin");
+        tempFile.deleteOnExit();
+        int nbPages = MAX_PAGES + 2;
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength((long)AbstractByteBuffer.MAPPED_PAGE_SIZE * nbPages);
+            for (int i = 0; i < nbPages; i++) {
+                raf.seek((long)AbstractByteBuffer.MAPPED_PAGE_SIZE * i);
+                raf.write(i + 1);
+            }
+        }
+        final RandomAccessFile raf = new RandomAccessFile(tempFile, "r");
+        AbstractByteBuffer buffer = new AbstractByteBuffer(PAGE_SIZE, MAX_PAGES) {
+            @Override
+            public FileChannel getFileChannel() {
+                return raf.getChannel();
+            }
+
+            @Override
+            protected void closeStream() throws IOException {
+                raf.close();
+            }
+
+            @Override
+            protected long getStreamSize() throws IOException {
+                return raf.length();
+            }
+
+            @Override
+            protected void loadBuffer() {
+                throw new AssertionError("Mapped files are not read");
+            }
+
+            @Override
+            protected boolean supportRandomAccess() {
+                return true;
+            }
+        };
+        try {
+            for (int i = 0; i < nbPages; i++) {
+                Assert.assertEquals(buffer.getByte((long)AbstractByteBuffer.MAPPED_PAGE_SIZE * i), i + 1);
+                Assert.assertTrue(buffer.getPageCount() <= MAX_PAGES);
+            }
+            Assert.assertEquals(buffer.getPageCount(), MAX_PAGES);
+            // The first page has been evicted, it is mapped again
+            Assert.assertEquals(buffer.getByte(0), 1);
+            Assert.assertEquals(buffer.getPageCount(), MAX_PAGES);
+        } finally {
+            buffer.close();
+            tempFile.delete();
+        }
+    }
+
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+
+    /**
+     * A buffer backed by an array, which records the offsets it loads.
+     */
+    private static class CountingByteBuffer extends AbstractByteBuffer {
+        private final byte[] data;
+        private final boolean randomAccess;
+        final List<Long> loadedOffsets = new ArrayList<>();
+
+        CountingByteBuffer(byte[] data, boolean randomAccess) {
+            super(PAGE_SIZE, MAX_PAGES);
+            this.data = data;
+            this.randomAccess = randomAccess;
+        }
+
+        @Override
+        protected void closeStream() {
+        }
+
+        @Override
+        protected long getStreamSize() {
+            return data.length;
+        }
+
+        @Override
+        protected void loadBuffer() {
+            loadedOffsets.add(offset);
+            size = (int)Math.min(capacity, data.length - offset);
+            System.arraycopy(data, (int)offset, buffer, 0, size);
+        }
+
+        @Override
+        protected boolean supportRandomAccess() {
+            return randomAccess;
+        }
+    }
+}
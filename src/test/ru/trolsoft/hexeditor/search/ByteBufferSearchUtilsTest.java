@@ -0,0 +1,171 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.search;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.trolsoft.hexeditor.data.FileByteBuffer;
+import ru.trolsoft.hexeditor.data.MemoryByteBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * This class is a TestNG test case for the multi-pattern, memory-mapped and cancellable searches of
+ * {@link ByteBufferSearchUtils}.
+ */
+public class ByteBufferSearchUtilsTest {
+
+    /**
+     * Searches several patterns of different lengths at once, and compares the result with the first occurrence of
+     * any of them.
+     */
+    @Test
+    public void testMultiplePatterns() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 300; i++) {
+            MemoryByteBuffer buffer = new MemoryByteBuffer(1 + random.nextInt(300));
+            for (int j = 0; j < buffer.getCapacity(); j++) {
+                buffer.setByte(j, random.nextInt(3));
+            }
+            byte[][] patterns = new byte[1 + random.nextInt(4)][];
+            for (int j = 0; j < patterns.length; j++) {
+                patterns[j] = new byte[1 + random.nextInt(6)];
+                for (int k = 0; k < patterns[j].length; k++) {
+                    patterns[j][k] = (byte)random.nextInt(3);
+                }
+            }
+            long from = random.nextInt(buffer.getCapacity());
+
+            long expected = -1;
+            for (byte[] pattern : patterns) {
+                long index = naiveIndexOf(buffer, pattern, from);
+                if (index >= 0 && (expected < 0 || index < expected)) {
+                    expected = index;
+                }
+            }
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, patterns, from), expected);
+        }
+
+        MemoryByteBuffer buffer = new MemoryByteBuffer(10);
+        Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[0][], 0), -1);
+        Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[][] {{}, {0, 0}}, 3), 3);
+    }
+
+    /**
+     * Searches a local file whose regions are memory-mapped, with occurrences that straddle two regions.
+     */
+    @Test
+    public void testMappedFile() throws IOException {
+        File tempFile = File.createTempFile("search", ".bin");
+        tempFile.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(ByteBufferSearchUtils.MAP_SIZE + 100);
+            raf.seek(ByteBufferSearchUtils.MAP_SIZE - 2);
+            raf.write(new byte[] {1, 2, 3, 4});
+            raf.seek(ByteBufferSearchUtils.MAP_SIZE + 96);
+            raf.write(new byte[] {5, 6, 7, 8});
+        }
+        FileByteBuffer buffer = new FileByteBuffer(tempFile.getAbsolutePath(), "r");
+        try {
+            Assert.assertNotNull(buffer.getFileChannel());
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[] {1, 2, 3, 4}, 0), ByteBufferSearchUtils.MAP_SIZE - 2);
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[][] {{7, 8}, {3, 4}}, 100), ByteBufferSearchUtils.MAP_SIZE);
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[] {5, 6, 7, 8}, 0), ByteBufferSearchUtils.MAP_SIZE + 96);
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, new byte[] {8, 0}, 0), -1);
+            Assert.assertEquals(ByteBufferSearchUtils.indexOfBackward(buffer, new byte[] {2, 3}, ByteBufferSearchUtils.MAP_SIZE + 50), ByteBufferSearchUtils.MAP_SIZE - 1);
+        } finally {
+            buffer.close();
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Follows the progress of searches made of several blocks, and cancels them.
+     */
+    @Test
+    public void testProgressAndCancel() throws IOException {
+        byte[] pattern = {1};
+        File tempFile = File.createTempFile("search", ".bin");
+        tempFile.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(100000);
+        }
+        // Searched in blocks of the buffer capacity rather than in a single mapped region
+        FileByteBuffer buffer = new FileByteBuffer(tempFile.getAbsolutePath(), "r", 1000) {
+            @Override
+            public FileChannel getFileChannel() {
+                return null;
+            }
+        };
+        try {
+            long[] progress = {0, 0};
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, pattern, 0, (searched, total) -> {
+                Assert.assertTrue(searched > progress[0] && searched < total);
+                progress[0] = searched;
+                progress[1] = total;
+                return true;
+            }), -1);
+            Assert.assertTrue(progress[0] > 90000);
+            Assert.assertEquals(progress[1], 100000);
+
+            try {
+                ByteBufferSearchUtils.indexOfBackward(buffer, pattern, 99999, (searched, total) -> searched < 5000);
+                Assert.fail("Search not cancelled");
+            } catch (InterruptedIOException e) {
+                // Expected
+            }
+
+            Thread.currentThread().interrupt();
+            try {
+                ByteBufferSearchUtils.indexOf(buffer, pattern, 0, null);
+                Assert.fail("Search not cancelled");
+            } catch (InterruptedIOException e) {
+                // Expected
+            } finally {
+                Thread.interrupted();
+            }
+        } finally {
+            buffer.close();
+            tempFile.delete();
+        }
+
+        // A search that ends in the first block is not notified
+        MemoryByteBuffer memoryBuffer = new MemoryByteBuffer(1000);
+        memoryBuffer.setByte(10, 1);
+        Assert.assertEquals(ByteBufferSearchUtils.indexOf(memoryBuffer, pattern, 0, (searched, total) -> false), 10);
+    }
+
+
+    private static long naiveIndexOf(MemoryByteBuffer buffer, byte[] pattern, long from) {
+        for (long i = from; i + pattern.length <= buffer.getCapacity(); i++) {
+            boolean matches = true;
+            for (int j = 0; j < pattern.length && matches; j++) {
+                matches = buffer.getByte(i + j) == pattern[j];
+            }
+            if (matches) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
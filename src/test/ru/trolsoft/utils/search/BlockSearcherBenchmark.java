@@ -0,0 +1,100 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the time it takes to search a pattern that doesn't occur in a large text, with the byte-by-byte KMP of
+ * {@link SearchUtils} and with {@link BlockSearcher} reading a stream and scanning a direct buffer, for case-sensitive
+ * and case-insensitive patterns of several lengths.
+ *
+ * <p>Usage: <code>BlockSearcherBenchmark [text size in MB] [number of runs]</code></p>
+ */
+public class BlockSearcherBenchmark {
+
+    private static final String[] PATTERNS = {"zq", "needle", "a needle in a haystack"};
+
+    public static void main(String[] args) throws IOException, SearchException {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        byte[] text = createText(sizeMb * 1024 * 1024);
+        ByteBuffer direct = ByteBuffer.allocateDirect(text.length);
+        direct.put(text);
+        direct.clear();
+        System.out.println("Text: " + text.length + " bytes");
+
+        for (String s : PATTERNS) {
+            for (boolean caseSensitive : new boolean[] {true, false}) {
+                SearchPattern pattern = caseSensitive ?
+                        new StringCaseSensitiveSearchPattern(s, "UTF-8") :
+                        new StringCaseInsensitiveSearchPattern(s, "UTF-8");
+                BlockSearcher searcher = new BlockSearcher(pattern);
+                String name = "\"" + s + "\"" + (caseSensitive ? "" : " (ignore case)");
+
+                // Warm up
+                for (int i = 0; i < 2; i++) {
+                    SearchUtils.indexOf(new InputStreamSource(new ByteArrayInputStream(text)), pattern);
+                    searcher.indexOf(new ByteArrayInputStream(text));
+                    searcher.indexOf(direct);
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < nbRuns; i++) {
+                    SearchUtils.indexOf(new InputStreamSource(new ByteArrayInputStream(text)), pattern);
+                }
+                report(name + ", KMP", start, nbRuns, text.length);
+
+                start = System.nanoTime();
+                for (int i = 0; i < nbRuns; i++) {
+                    searcher.indexOf(new ByteArrayInputStream(text));
+                }
+                report(name + ", BlockSearcher stream", start, nbRuns, text.length);
+
+                start = System.nanoTime();
+                for (int i = 0; i < nbRuns; i++) {
+                    searcher.indexOf(direct);
+                }
+                report(name + ", BlockSearcher direct buffer", start, nbRuns, text.length);
+            }
+        }
+    }
+
+    /**
+     * Returns lower case ASCII words separated by spaces, which contain none of the {@link #PATTERNS}.
+     */
+    private static byte[] createText(int size) {
+        Random random = new Random(0);
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // Letters 'b' to 'x' in words of up to four letters, which never spell a pattern
+            int c = random.nextInt(24);
+            text[i] = c == 0 || i % 5 == 4 ? (byte)' ' : (byte)('a' + c);
+        }
+        return text;
+    }
+
+    private static void report(String name, long startNanos, int nbOperations, int size) {
+        double ms = (System.nanoTime() - startNanos) / 1000000.0 / nbOperations;
+        System.out.println(String.format("%-60s %10.2f ms/op %10.1f MB/s", name, ms, size / 1024.0 / 1024 / (ms / 1000)));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
+import ru.trolsoft.hexeditor.search.ByteBufferSearchUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class is a TestNG test case for {@link BlockSearcher}. Results are compared with a naive search on random data
+ * made of a few byte values, so that partial matches are frequent.
+ */
+public class BlockSearcherTest {
+
+    /**
+     * Searches arrays and direct buffers, forward and backward.
+     */
+    @Test
+    public void testArrays() {
+        Random random = new Random(0);
+        for (int i = 0; i < 500; i++) {
+            byte[] data = randomBytes(random, random.nextInt(300));
+            byte[] pattern = randomBytes(random, 1 + random.nextInt(6));
+            BlockSearcher searcher = new BlockSearcher(pattern);
+            int from = data.length == 0 ? 0 : random.nextInt(data.length);
+
+            Assert.assertEquals(searcher.indexOf(data, from, data.length), naiveIndexOf(data, pattern, from));
+            Assert.assertEquals(searcher.lastIndexOf(data, 0, data.length), naiveLastIndexOf(data, pattern, data.length));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data);
+            direct.position(from);
+            Assert.assertEquals(searcher.indexOf(direct), naiveIndexOf(data, pattern, from));
+            Assert.assertEquals(direct.position(), from);
+        }
+    }
+
+    /**
+     * Searches streams that return a few bytes per read, with patterns that straddle blocks.
+     */
+    @Test
+    public void testStream() throws IOException {
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            byte[] data = randomBytes(random, BlockSearcher.BLOCK_SIZE * 3);
+            byte[] pattern = new byte[2 + random.nextInt(30)];
+            Arrays.fill(pattern, (byte)7);
+            // Place the pattern across a block boundary, or at the end of the data
+            int offset = i % 2 == 0 ? BlockSearcher.BLOCK_SIZE - pattern.length / 2 : data.length - pattern.length;
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+
+            Assert.assertEquals(new BlockSearcher(pattern).indexOf(new SlowInputStream(data)), (long)offset);
+        }
+
+        byte[] data = randomBytes(random, 1000);
+        Assert.assertEquals(new BlockSearcher(new byte[] {7}).indexOf(new ByteArrayInputStream(data)), -1);
+        Assert.assertEquals(new BlockSearcher(new byte[] {1}).indexOf(new ByteArrayInputStream(new byte[0])), -1);
+    }
+
+    /**
+     * Searches a case-insensitive pattern, in a single-byte and in a multi-byte encoding.
+     */
+    @Test
+    public void testCaseInsensitive() throws IOException {
+        BlockSearcher searcher = new BlockSearcher(new StringCaseInsensitiveSearchPattern("Needle", "UTF-8"));
+        Assert.assertEquals(searcher.indexOf(stream("a haystack with a nEEDLE in it", "UTF-8")), 18);
+        Assert.assertEquals(searcher.indexOf(stream("a haystack with a needl", "UTF-8")), -1);
+
+        searcher = new BlockSearcher(new StringCaseInsensitiveSearchPattern("Иголка", "UTF-8"));
+        Assert.assertEquals(searcher.indexOf(stream("в стоге ИГОЛКА", "UTF-8")), "в стоге ".getBytes("UTF-8").length);
+
+        searcher = new BlockSearcher(new StringCaseSensitiveSearchPattern("Needle", "UTF-8"));
+        Assert.assertEquals(searcher.indexOf(stream("needle Needle", "UTF-8")), 7);
+    }
+
+    /**
+     * Searches a hex viewer buffer whose capacity is smaller than the data, forward and backward.
+     */
+    @Test
+    public void testByteBufferSearchUtils() throws IOException {
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = randomBytes(random, 1 + random.nextInt(200));
+            byte[] pattern = randomBytes(random, 1 + random.nextInt(4));
+            AbstractByteBuffer buffer = new ArrayByteBuffer(data, 16);
+            int from = random.nextInt(data.length);
+
+            Assert.assertEquals(ByteBufferSearchUtils.indexOf(buffer, pattern, from), naiveIndexOf(data, pattern, from));
+            Assert.assertEquals(ByteBufferSearchUtils.indexOfBackward(buffer, pattern, from),
+                    naiveLastIndexOf(data, pattern, Math.min(data.length, from + pattern.length)));
+        }
+    }
+
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte)random.nextInt(3);
+        }
+        return bytes;
+    }
+
+    private static int naiveIndexOf(byte[] data, byte[] pattern, int from) {
+        for (int i = from; i + pattern.length <= data.length; i++) {
+            if (matches(data, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] data, byte[] pattern, int to) {
+        for (int i = to - pattern.length; i >= 0; i--) {
+            if (matches(data, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] data, byte[] pattern, int pos) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[pos + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static InputStream stream(String s, String charset) throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(s.getBytes(charset));
+    }
+
+
+    /**
+     * Returns at most 1000 bytes per read.
+     */
+    private static class SlowInputStream extends FilterInputStream {
+        SlowInputStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+
+    /**
+     * A hex viewer buffer backed by an array.
+     */
+    private static class ArrayByteBuffer extends AbstractByteBuffer {
+        private final byte[] data;
+
+        ArrayByteBuffer(byte[] data, int capacity) {
+            super(capacity);
+            this.data = data;
+        }
+
+        @Override
+        protected void closeStream() {
+        }
+
+        @Override
+        protected long getStreamSize() {
+            return data.length;
+        }
+
+        @Override
+        protected void loadBuffer() {
+            size = (int)Math.min(capacity, data.length - offset);
+            System.arraycopy(data, (int)offset, buffer, 0, size);
+        }
+
+        @Override
+        protected boolean supportRandomAccess() {
+            return true;
+        }
+    }
+}